@@ -0,0 +1,207 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.math;
+
+/**
+ * 4x4 matrices stored in float[16], column major like OpenGL and android.opengl.Matrix.
+ * The transforms are written directly in the destination in one pass, instead of chaining full 4x4 multiplies.
+ * No allocation and no shared state: can be used from any thread, and on the JVM without Android.
+ * Angles are in degrees.
+ */
+public final class Matrix4 {
+
+    public static final int SIZE = 16;
+
+    private static final double DEGREES_TO_RADIANS = Math.PI / 180;
+
+    private Matrix4() {
+    }
+
+    public static void setIdentity(float[] m) {
+        m[0] = 1; m[1] = 0; m[2] = 0; m[3] = 0;
+        m[4] = 0; m[5] = 1; m[6] = 0; m[7] = 0;
+        m[8] = 0; m[9] = 0; m[10] = 1; m[11] = 0;
+        m[12] = 0; m[13] = 0; m[14] = 0; m[15] = 1;
+    }
+
+    /**
+     * Sets translate(x, y, z) * rotateX(rotX) * rotateY(rotY) * rotateZ(rotZ) * scale(scaleX, scaleY, scaleZ):
+     * the points are scaled, then rotated around Z, Y and X, then translated
+     */
+    public static void setTranslateRotateScale(float[] m, float x, float y, float z, float rotX, float rotY, float rotZ,
+                                               float scaleX, float scaleY, float scaleZ) {
+        final float sinX = sin(rotX);
+        final float cosX = cos(rotX);
+        final float sinY = sin(rotY);
+        final float cosY = cos(rotY);
+        final float sinZ = sin(rotZ);
+        final float cosZ = cos(rotZ);
+
+        // rotateX * rotateY * rotateZ, by rows
+        final float r00 = cosY * cosZ;
+        final float r01 = -cosY * sinZ;
+        final float r02 = sinY;
+        final float r10 = cosX * sinZ + sinX * sinY * cosZ;
+        final float r11 = cosX * cosZ - sinX * sinY * sinZ;
+        final float r12 = -sinX * cosY;
+        final float r20 = sinX * sinZ - cosX * sinY * cosZ;
+        final float r21 = sinX * cosZ + cosX * sinY * sinZ;
+        final float r22 = cosX * cosY;
+
+        m[0] = r00 * scaleX; m[1] = r10 * scaleX; m[2] = r20 * scaleX; m[3] = 0;
+        m[4] = r01 * scaleY; m[5] = r11 * scaleY; m[6] = r21 * scaleY; m[7] = 0;
+        m[8] = r02 * scaleZ; m[9] = r12 * scaleZ; m[10] = r22 * scaleZ; m[11] = 0;
+        m[12] = x; m[13] = y; m[14] = z; m[15] = 1;
+    }
+
+    /**
+     * Sets rotateX(rotX) * rotateY(rotY) * rotateZ(rotZ) * translate(x, y, z), the view matrix of a camera
+     * at (-x, -y, -z) with the rotations (-rotX, -rotY, -rotZ)
+     */
+    public static void setRotateTranslate(float[] m, float rotX, float rotY, float rotZ, float x, float y, float z) {
+        setTranslateRotateScale(m, 0, 0, 0, rotX, rotY, rotZ, 1, 1, 1);
+        m[12] = m[0] * x + m[4] * y + m[8] * z;
+        m[13] = m[1] * x + m[5] * y + m[9] * z;
+        m[14] = m[2] * x + m[6] * y + m[10] * z;
+    }
+
+    /**
+     * Sets the 2D transform translate(x, y) * rotateZ(angle) * translate(-pivotX, -pivotY) * scale(scaleX, scaleY):
+     * the point (pivotX, pivotY) of the scaled object is placed at (x, y), and the object rotates around it
+     */
+    public static void setTransform2D(float[] m, float x, float y, float angle, float scaleX, float scaleY,
+                                      float pivotX, float pivotY) {
+        final float sin = sin(angle);
+        final float cos = cos(angle);
+        m[0] = cos * scaleX; m[1] = sin * scaleX; m[2] = 0; m[3] = 0;
+        m[4] = -sin * scaleY; m[5] = cos * scaleY; m[6] = 0; m[7] = 0;
+        m[8] = 0; m[9] = 0; m[10] = 1; m[11] = 0;
+        m[12] = x - (cos * pivotX - sin * pivotY);
+        m[13] = y - (sin * pivotX + cos * pivotY);
+        m[14] = 0;
+        m[15] = 1;
+    }
+
+    /**
+     * result = lhs * rhs. result can be rhs, but not lhs.
+     */
+    public static void multiply(float[] result, float[] lhs, float[] rhs) {
+        for (int col = 0; col < 16; col += 4) {
+            final float x = rhs[col];
+            final float y = rhs[col + 1];
+            final float z = rhs[col + 2];
+            final float w = rhs[col + 3];
+            result[col] = lhs[0] * x + lhs[4] * y + lhs[8] * z + lhs[12] * w;
+            result[col + 1] = lhs[1] * x + lhs[5] * y + lhs[9] * z + lhs[13] * w;
+            result[col + 2] = lhs[2] * x + lhs[6] * y + lhs[10] * z + lhs[14] * w;
+            result[col + 3] = lhs[3] * x + lhs[7] * y + lhs[11] * z + lhs[15] * w;
+        }
+    }
+
+    /**
+     * result4 = m * vector4. result4 can be vector4.
+     */
+    public static void multiplyVector(float[] result4, float[] m, float[] vector4) {
+        final float x = vector4[0];
+        final float y = vector4[1];
+        final float z = vector4[2];
+        final float w = vector4[3];
+        result4[0] = m[0] * x + m[4] * y + m[8] * z + m[12] * w;
+        result4[1] = m[1] * x + m[5] * y + m[9] * z + m[13] * w;
+        result4[2] = m[2] * x + m[6] * y + m[10] * z + m[14] * w;
+        result4[3] = m[3] * x + m[7] * y + m[11] * z + m[15] * w;
+    }
+
+    /**
+     * @return false if m can't be inverted, result is then unchanged. result can be m.
+     */
+    public static boolean invert(float[] result, float[] m) {
+        // 2x2 determinants of the 2 first columns and of the 2 last columns
+        final float s0 = m[0] * m[5] - m[1] * m[4];
+        final float s1 = m[0] * m[6] - m[2] * m[4];
+        final float s2 = m[0] * m[7] - m[3] * m[4];
+        final float s3 = m[1] * m[6] - m[2] * m[5];
+        final float s4 = m[1] * m[7] - m[3] * m[5];
+        final float s5 = m[2] * m[7] - m[3] * m[6];
+        final float c5 = m[10] * m[15] - m[11] * m[14];
+        final float c4 = m[9] * m[15] - m[11] * m[13];
+        final float c3 = m[9] * m[14] - m[10] * m[13];
+        final float c2 = m[8] * m[15] - m[11] * m[12];
+        final float c1 = m[8] * m[14] - m[10] * m[12];
+        final float c0 = m[8] * m[13] - m[9] * m[12];
+        final float determinant = s0 * c5 - s1 * c4 + s2 * c3 + s3 * c2 - s4 * c1 + s5 * c0;
+        if (determinant == 0) {
+            return false;
+        }
+        final float d = 1 / determinant;
+        final float m0 = m[0], m1 = m[1], m2 = m[2], m3 = m[3];
+        final float m4 = m[4], m5 = m[5], m6 = m[6], m7 = m[7];
+        final float m8 = m[8], m9 = m[9], m10 = m[10], m11 = m[11];
+        final float m12 = m[12], m13 = m[13], m14 = m[14], m15 = m[15];
+        result[0] = (m5 * c5 - m6 * c4 + m7 * c3) * d;
+        result[1] = (-m1 * c5 + m2 * c4 - m3 * c3) * d;
+        result[2] = (m13 * s5 - m14 * s4 + m15 * s3) * d;
+        result[3] = (-m9 * s5 + m10 * s4 - m11 * s3) * d;
+        result[4] = (-m4 * c5 + m6 * c2 - m7 * c1) * d;
+        result[5] = (m0 * c5 - m2 * c2 + m3 * c1) * d;
+        result[6] = (-m12 * s5 + m14 * s2 - m15 * s1) * d;
+        result[7] = (m8 * s5 - m10 * s2 + m11 * s1) * d;
+        result[8] = (m4 * c4 - m5 * c2 + m7 * c0) * d;
+        result[9] = (-m0 * c4 + m1 * c2 - m3 * c0) * d;
+        result[10] = (m12 * s4 - m13 * s2 + m15 * s0) * d;
+        result[11] = (-m8 * s4 + m9 * s2 - m11 * s0) * d;
+        result[12] = (-m4 * c3 + m5 * c1 - m6 * c0) * d;
+        result[13] = (m0 * c3 - m1 * c1 + m2 * c0) * d;
+        result[14] = (-m12 * s3 + m13 * s1 - m14 * s0) * d;
+        result[15] = (m8 * s3 - m9 * s1 + m10 * s0) * d;
+        return true;
+    }
+
+    /**
+     * Same as android.opengl.Matrix.perspectiveM()
+     * @param fovY field of view on the Y axis, in degrees
+     */
+    public static void setPerspective(float[] m, float fovY, float aspect, float near, float far) {
+        final float f = 1 / (float) Math.tan(fovY * (Math.PI / 360));
+        final float rangeReciprocal = 1 / (near - far);
+        m[0] = f / aspect; m[1] = 0; m[2] = 0; m[3] = 0;
+        m[4] = 0; m[5] = f; m[6] = 0; m[7] = 0;
+        m[8] = 0; m[9] = 0; m[10] = (far + near) * rangeReciprocal; m[11] = -1;
+        m[12] = 0; m[13] = 0; m[14] = 2 * far * near * rangeReciprocal; m[15] = 0;
+    }
+
+    /**
+     * Same as android.opengl.Matrix.orthoM()
+     */
+    public static void setOrtho(float[] m, float left, float right, float bottom, float top, float near, float far) {
+        final float width = 1 / (right - left);
+        final float height = 1 / (top - bottom);
+        final float depth = 1 / (far - near);
+        m[0] = 2 * width; m[1] = 0; m[2] = 0; m[3] = 0;
+        m[4] = 0; m[5] = 2 * height; m[6] = 0; m[7] = 0;
+        m[8] = 0; m[9] = 0; m[10] = -2 * depth; m[11] = 0;
+        m[12] = -(right + left) * width; m[13] = -(top + bottom) * height; m[14] = -(far + near) * depth; m[15] = 1;
+    }
+
+    // exact for 0, the most frequent angle
+    private static float sin(float degrees) {
+        return (degrees != 0) ? (float) Math.sin(degrees * DEGREES_TO_RADIANS) : 0;
+    }
+
+    private static float cos(float degrees) {
+        return (degrees != 0) ? (float) Math.cos(degrees * DEGREES_TO_RADIANS) : 1;
+    }
+}
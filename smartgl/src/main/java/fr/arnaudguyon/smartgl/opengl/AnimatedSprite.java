@@ -15,6 +15,8 @@
  */
 package fr.arnaudguyon.smartgl.opengl;
 
+import fr.arnaudguyon.smartgl.tools.Assert;
+
 public class AnimatedSprite extends Sprite implements AnimatedFace3D.AnimatedFaceListener {
 
 	public AnimatedSprite(int width, int height) {
@@ -47,6 +49,19 @@ public class AnimatedSprite extends Sprite implements AnimatedFace3D.AnimatedFac
 		face.addFrame(duration, uvList);
 	}
 	
+	/**
+	 * Adds a frame mapping a region of a TextureAtlas. All the frames must be in the same page of the atlas.
+	 */
+	public void addFrame(float duration, TextureAtlas.Region region) {
+		Face3D face = getFace();
+		if (face.getTexture() == null) {
+			face.setTexture(region.getTexture());
+		} else {
+			Assert.assertTrue("Frames in different textures", face.getTexture() == region.getTexture());
+		}
+		addFrame(duration, region.getUMin(), region.getVMin(), region.getUMax(), region.getVMax());
+	}
+
 	public final int getFrameNumber() {
 		AnimatedFace3D aniFace = (AnimatedFace3D) getFace();
 		return aniFace.getFrameNumber();
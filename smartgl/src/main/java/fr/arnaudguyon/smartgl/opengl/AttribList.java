@@ -19,13 +19,21 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 
+import android.opengl.GLES20;
+
+import fr.arnaudguyon.smartgl.tools.Assert;
+
 // parent class for VertexList, UVList, ColorList
 public class AttribList {
 
+	private final static int NO_BUFFER = 0;
+
 	private int mFloatsPerElement;
 	private FloatBuffer mFloatBuffer;
 	private float[] mInternalBuffer;
 	private int mCurrentIndex;
+	private int[] mBufferId = { NO_BUFFER };	// Vertex Buffer Object, when the Face3D uses buffer objects
+	private boolean mBufferDirty = true;
 
 	private AttribList() {
 		mFloatBuffer = null;
@@ -73,6 +81,19 @@ public class AttribList {
 		mCurrentIndex = 0;
 	}
 
+	/**
+	 * Uses the array as internal buffer, without copy, with all its values already added.
+	 * Faster than init() followed by add() for each element, when the values are computed in bulk.
+	 * @param values nbElements * getNbFloatsPerElement() floats
+	 */
+	public final void setInternalBuffer(float[] values, int nbElements) {
+		Assert.assertTrue("Internal buffer already set", mInternalBuffer == null);
+		Assert.assertTrue("Not enough values", (nbElements >= 0) && (values.length >= nbElements * mFloatsPerElement));
+
+		mInternalBuffer = values;
+		mCurrentIndex = nbElements * mFloatsPerElement;
+	}
+
 	private final void init(float[] source) {
 		assert ((mInternalBuffer == null) && (source != null));
 
@@ -119,7 +140,17 @@ public class AttribList {
 
 	public final void finalizeBuffer() {
 		mFloatBuffer = ByteBuffer.allocateDirect(mCurrentIndex * Display.BYTES_PER_FLOAT).order(ByteOrder.nativeOrder()).asFloatBuffer();
-		mFloatBuffer.put(mInternalBuffer).position(0);
+		mFloatBuffer.put(mInternalBuffer, 0, mCurrentIndex).position(0);
+		mBufferDirty = true;
+	}
+
+	/**
+	 * To call after the internal buffer has been modified: copies it to the FloatBuffer,
+	 * and marks the Vertex Buffer Object (if any) to be uploaded again before the next draw
+	 */
+	public final void updateFloatBuffer() {
+		mFloatBuffer.put(mInternalBuffer, 0, mCurrentIndex).position(0);
+		mBufferDirty = true;
 	}
 
 	public final int getNbElements() {
@@ -127,7 +158,58 @@ public class AttribList {
 	}
 
 	public final void destroyFloatBuffer() {
+		releaseBufferObject();
 		mFloatBuffer.clear();
 	}
 
+	public final boolean hasBufferObject() {
+		return (mBufferId[0] != NO_BUFFER);
+	}
+
+	// OpenGL Thread only. Uploads the buffer the first time, or again if it has been updated
+	final void bindBufferObject(OpenGLRenderer renderer) {
+		if (mBufferId[0] == NO_BUFFER) {
+			renderer.getBufferCalls().genBuffers(mBufferId);
+			renderer.getResourceManager().onBufferCreated(this);
+			renderer.getStateCache().invalidateBufferBinding(GLES20.GL_ARRAY_BUFFER);
+			mBufferDirty = true;
+		}
+		renderer.getStateCache().bindBuffer(GLES20.GL_ARRAY_BUFFER, mBufferId[0]);
+		if (mBufferDirty) {
+			final int size = mCurrentIndex * Display.BYTES_PER_FLOAT;
+			mFloatBuffer.position(0);
+			renderer.getBufferCalls().bufferData(GLES20.GL_ARRAY_BUFFER, size, mFloatBuffer, GLES20.GL_STATIC_DRAW);
+			renderer.getCurrentRenderStats().onBufferUpload(size);
+			mBufferDirty = false;
+		}
+	}
+
+	// OpenGL Thread only. Links the attribute of the Shader to the Vertex Buffer Object or to the FloatBuffer
+	final void setVertexAttribPointer(OpenGLRenderer renderer, int attribId, boolean useBufferObject) {
+		if (useBufferObject) {
+			bindBufferObject(renderer);
+			GLES20.glVertexAttribPointer(attribId, mFloatsPerElement, GLES20.GL_FLOAT, false, 0, 0);
+		} else {
+			renderer.getStateCache().bindBuffer(GLES20.GL_ARRAY_BUFFER, NO_BUFFER);
+			mFloatBuffer.position(0);
+			GLES20.glVertexAttribPointer(attribId, mFloatsPerElement, GLES20.GL_FLOAT, false, 0, mFloatBuffer);
+		}
+	}
+
+	// The buffer object was deleted with the OpenGL context, it's created again at the next bind
+	final boolean onContextLost() {
+		final boolean hadBufferObject = hasBufferObject();
+		mBufferId[0] = NO_BUFFER;
+		mBufferDirty = true;
+		return hadBufferObject;
+	}
+
+	public final void releaseBufferObject() {
+		if (hasBufferObject()) {
+			GLES20.glDeleteBuffers(1, mBufferId, 0);
+			mBufferId[0] = NO_BUFFER;
+		}
+		mBufferDirty = true;
+	}
+
 }
@@ -0,0 +1,200 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.opengl;
+
+/**
+ * Axis Aligned Bounding Box and Bounding Sphere of a Face3D or a RenderObject.
+ * Used by the OpenGLRenderer for the frustum culling.
+ */
+public class BoundingVolume {
+
+    private float mMinX, mMinY, mMinZ;
+    private float mMaxX, mMaxY, mMaxZ;
+    private float mCenterX, mCenterY, mCenterZ;
+    private float mRadius;
+    private boolean mEmpty = true;
+
+    public final boolean isEmpty() {
+        return mEmpty;
+    }
+
+    public final float getMinX() {
+        return mMinX;
+    }
+
+    public final float getMinY() {
+        return mMinY;
+    }
+
+    public final float getMinZ() {
+        return mMinZ;
+    }
+
+    public final float getMaxX() {
+        return mMaxX;
+    }
+
+    public final float getMaxY() {
+        return mMaxY;
+    }
+
+    public final float getMaxZ() {
+        return mMaxZ;
+    }
+
+    public final float getCenterX() {
+        return mCenterX;
+    }
+
+    public final float getCenterY() {
+        return mCenterY;
+    }
+
+    public final float getCenterZ() {
+        return mCenterZ;
+    }
+
+    public final float getRadius() {
+        return mRadius;
+    }
+
+    public final void clear() {
+        mEmpty = true;
+        mRadius = 0;
+    }
+
+    /**
+     * Computes the box and the sphere from a list of (x,y,z)
+     * @param vertex the VertexList internal buffer
+     * @param nbVertex number of vertex to use
+     */
+    public final void compute(float[] vertex, int nbVertex) {
+        clear();
+        if ((vertex == null) || (nbVertex <= 0)) {
+            return;
+        }
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+        final int nbFloats = nbVertex * 3;
+        for (int i = 0; i < nbFloats; i += 3) {
+            final float x = vertex[i];
+            final float y = vertex[i + 1];
+            final float z = vertex[i + 2];
+            if (x < minX) minX = x;
+            if (x > maxX) maxX = x;
+            if (y < minY) minY = y;
+            if (y > maxY) maxY = y;
+            if (z < minZ) minZ = z;
+            if (z > maxZ) maxZ = z;
+        }
+        setBox(minX, minY, minZ, maxX, maxY, maxZ);
+
+        // sphere centered on the box, radius from the farthest vertex (tighter than the half diagonal)
+        float maxDist2 = 0;
+        for (int i = 0; i < nbFloats; i += 3) {
+            final float dx = vertex[i] - mCenterX;
+            final float dy = vertex[i + 1] - mCenterY;
+            final float dz = vertex[i + 2] - mCenterZ;
+            final float dist2 = dx * dx + dy * dy + dz * dz;
+            if (dist2 > maxDist2) {
+                maxDist2 = dist2;
+            }
+        }
+        mRadius = (float) Math.sqrt(maxDist2);
+    }
+
+    /**
+     * Grows the box to contain the other volume. The sphere becomes the sphere around the new box.
+     */
+    public final void merge(BoundingVolume other) {
+        if ((other == null) || other.mEmpty) {
+            return;
+        }
+        if (mEmpty) {
+            set(other);
+            return;
+        }
+        setBox(Math.min(mMinX, other.mMinX), Math.min(mMinY, other.mMinY), Math.min(mMinZ, other.mMinZ),
+                Math.max(mMaxX, other.mMaxX), Math.max(mMaxY, other.mMaxY), Math.max(mMaxZ, other.mMaxZ));
+        final float dx = (mMaxX - mMinX) * 0.5f;
+        final float dy = (mMaxY - mMinY) * 0.5f;
+        final float dz = (mMaxZ - mMinZ) * 0.5f;
+        mRadius = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    public final void set(BoundingVolume other) {
+        mEmpty = other.mEmpty;
+        mMinX = other.mMinX;
+        mMinY = other.mMinY;
+        mMinZ = other.mMinZ;
+        mMaxX = other.mMaxX;
+        mMaxY = other.mMaxY;
+        mMaxZ = other.mMaxZ;
+        mCenterX = other.mCenterX;
+        mCenterY = other.mCenterY;
+        mCenterZ = other.mCenterZ;
+        mRadius = other.mRadius;
+    }
+
+    /**
+     * Sets this volume to the local volume transformed by a matrix (column major, as android.opengl.Matrix)
+     */
+    public final void transform(BoundingVolume local, float[] matrix) {
+        if (local.mEmpty) {
+            clear();
+            return;
+        }
+        // Box: transformed center, and extents projected on each axis (Arvo)
+        final float cx = (local.mMinX + local.mMaxX) * 0.5f;
+        final float cy = (local.mMinY + local.mMaxY) * 0.5f;
+        final float cz = (local.mMinZ + local.mMaxZ) * 0.5f;
+        final float ex = (local.mMaxX - local.mMinX) * 0.5f;
+        final float ey = (local.mMaxY - local.mMinY) * 0.5f;
+        final float ez = (local.mMaxZ - local.mMinZ) * 0.5f;
+        final float wcx = matrix[0] * cx + matrix[4] * cy + matrix[8] * cz + matrix[12];
+        final float wcy = matrix[1] * cx + matrix[5] * cy + matrix[9] * cz + matrix[13];
+        final float wcz = matrix[2] * cx + matrix[6] * cy + matrix[10] * cz + matrix[14];
+        final float wex = Math.abs(matrix[0]) * ex + Math.abs(matrix[4]) * ey + Math.abs(matrix[8]) * ez;
+        final float wey = Math.abs(matrix[1]) * ex + Math.abs(matrix[5]) * ey + Math.abs(matrix[9]) * ez;
+        final float wez = Math.abs(matrix[2]) * ex + Math.abs(matrix[6]) * ey + Math.abs(matrix[10]) * ez;
+        setBox(wcx - wex, wcy - wey, wcz - wez, wcx + wex, wcy + wey, wcz + wez);
+
+        // Sphere: transformed center, radius scaled by the biggest scale of the matrix
+        final float sx = local.mCenterX;
+        final float sy = local.mCenterY;
+        final float sz = local.mCenterZ;
+        mCenterX = matrix[0] * sx + matrix[4] * sy + matrix[8] * sz + matrix[12];
+        mCenterY = matrix[1] * sx + matrix[5] * sy + matrix[9] * sz + matrix[13];
+        mCenterZ = matrix[2] * sx + matrix[6] * sy + matrix[10] * sz + matrix[14];
+        final float scaleX2 = matrix[0] * matrix[0] + matrix[1] * matrix[1] + matrix[2] * matrix[2];
+        final float scaleY2 = matrix[4] * matrix[4] + matrix[5] * matrix[5] + matrix[6] * matrix[6];
+        final float scaleZ2 = matrix[8] * matrix[8] + matrix[9] * matrix[9] + matrix[10] * matrix[10];
+        mRadius = local.mRadius * (float) Math.sqrt(Math.max(scaleX2, Math.max(scaleY2, scaleZ2)));
+    }
+
+    private void setBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        mEmpty = false;
+        mMinX = minX;
+        mMinY = minY;
+        mMinZ = minZ;
+        mMaxX = maxX;
+        mMaxY = maxY;
+        mMaxZ = maxZ;
+        mCenterX = (minX + maxX) * 0.5f;
+        mCenterY = (minY + maxY) * 0.5f;
+        mCenterZ = (minZ + maxZ) * 0.5f;
+    }
+}
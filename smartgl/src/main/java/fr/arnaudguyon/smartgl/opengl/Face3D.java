@@ -15,21 +15,33 @@
  */
 package fr.arnaudguyon.smartgl.opengl;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * @author Arnaud Guyon
  * 
  *         Defines a face for an Object3D. A Face3D is composed of a Texture, a
- *         VertexList, a UVList and a NormalList
+ *         VertexList, a UVList and a NormalList, and optionally an IndexList
+ *         (drawn with glDrawElements instead of glDrawArrays)
  * 
  */
 public class Face3D {
 
+	private static final AtomicInteger sBoundsVersions = new AtomicInteger();
+
 	private Texture mTexture;
 	private VertexList mVertexList;
 	private UVList mUVList;
 	private ColorList mColorList;
 	private NormalList mNormalList;
+	private IndexList mIndexList;
 	private boolean mVisible = true;
+	private boolean mUseBufferObjects = false;
+	private BoundingVolume mBounds;			// in the Face3D space, computed once from the VertexList
+	private BoundingVolume mWorldBounds;	// transformed by the matrix of mWorldOwner
+	private RenderObject mWorldOwner;
+	private int mWorldMatrixVersion;
+	private int mBoundsVersion = sBoundsVersions.incrementAndGet();	// unique, changed when the bounds are invalidated
 
 	public Face3D() {
 		mVertexList = null;
@@ -39,6 +51,7 @@ public class Face3D {
 
 	final public void setVertexList(VertexList vertexList) {
 		mVertexList = vertexList;
+		invalidateBounds();
 	}
 
 	final public VertexList getVertexList() {
@@ -69,6 +82,27 @@ public class Face3D {
 		return mNormalList;
 	}
 
+	final public void setIndexList(IndexList indexList) {
+		mIndexList = indexList;
+	}
+
+	final public IndexList getIndexList() {
+		return mIndexList;
+	}
+
+	/**
+	 * GPU resident mode: the lists are uploaded once into Vertex (and Index) Buffer Objects,
+	 * and uploaded again only when they are updated. Otherwise the lists are sent at every frame.
+	 * @param useBufferObjects true to keep the lists in GPU memory
+	 */
+	final public void setUseBufferObjects(boolean useBufferObjects) {
+		mUseBufferObjects = useBufferObjects;
+	}
+
+	final public boolean useBufferObjects() {
+		return mUseBufferObjects;
+	}
+
 	final public void setTexture(Texture texture) {
 		mTexture = texture;
 	}
@@ -85,6 +119,71 @@ public class Face3D {
 		return mVisible;
 	}
 
+	/**
+	 * @return the bounding volume of the VertexList, or null if there is no VertexList
+	 */
+	final public BoundingVolume getBounds() {
+		if ((mBounds == null) && (mVertexList != null)) {
+			mBounds = new BoundingVolume();
+			mBounds.compute(mVertexList.getInternalBuffer(), mVertexList.getNbElements());
+		}
+		return mBounds;
+	}
+
+	/**
+	 * To call after the vertex have been modified, so that the bounding volume is computed again
+	 */
+	final public void invalidateBounds() {
+		mBounds = null;
+		mWorldOwner = null;
+		mBoundsVersion = sBoundsVersions.incrementAndGet();
+	}
+
+	final int getBoundsVersion() {
+		return mBoundsVersion;
+	}
+
+	// Bounding volume transformed by the matrix of the object, only computed again when the matrix changes
+	final BoundingVolume getWorldBounds(RenderObject owner) {
+		BoundingVolume bounds = getBounds();
+		if (bounds == null) {
+			return null;
+		}
+		float[] matrix = owner.getMatrix();
+		final int matrixVersion = owner.getMatrixVersion();
+		if (mWorldBounds == null) {
+			mWorldBounds = new BoundingVolume();
+		}
+		if ((mWorldOwner != owner) || (mWorldMatrixVersion != matrixVersion)) {
+			mWorldBounds.transform(bounds, matrix);
+			mWorldOwner = owner;
+			mWorldMatrixVersion = matrixVersion;
+		}
+		return mWorldBounds;
+	}
+
+	// OpenGL Thread only. Uploads the lists in GPU resident mode now, instead of at the first draw
+	final void createBufferObjects(OpenGLRenderer renderer) {
+		if (!mUseBufferObjects) {
+			return;
+		}
+		if (mVertexList != null) {
+			mVertexList.bindBufferObject(renderer);
+		}
+		if (mUVList != null) {
+			mUVList.bindBufferObject(renderer);
+		}
+		if (mColorList != null) {
+			mColorList.bindBufferObject(renderer);
+		}
+		if (mNormalList != null) {
+			mNormalList.bindBufferObject(renderer);
+		}
+		if (mIndexList != null) {
+			mIndexList.bindBufferObject(renderer);
+		}
+	}
+
 	public void releaseResources() {
 
 		if (mTexture != null) {
@@ -111,6 +210,13 @@ public class Face3D {
 			mNormalList.destroyFloatBuffer();
 			mNormalList = null;
 		}
+
+		if (mIndexList != null) {
+			mIndexList.destroyShortBuffer();
+			mIndexList = null;
+		}
+
+		invalidateBounds();
 	}
 	
 	public boolean shouldDisplay(OpenGLRenderer renderer) {
@@ -0,0 +1,106 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.opengl;
+
+/**
+ * Durations of the frames measured by the OpenGLRenderer: the CPU time spent in onDrawFrame, from the clear to the end
+ * of the last render pass. The frames over the budget are counted, and the ones that also uploaded textures, to check
+ * whether the texture upload budget (OpenGLRenderer.setTextureUploadBudget) keeps the frames smooth.
+ * Filled on the OpenGL thread, can be read from any thread.
+ */
+public class FrameTimeStats {
+
+    private static final long NANOS_PER_MS = 1000000;
+
+    private long mBudgetNanos = 16 * NANOS_PER_MS;
+    private int mNbFrames;
+    private long mTotalNanos;
+    private long mMaxNanos;
+    private long mLastNanos;
+    private int mFramesOverBudget;
+    private int mFramesOverBudgetWithUploads;
+
+    /**
+     * @param budgetMs duration over which a frame is counted as too long. 16 ms by default (60 fps).
+     */
+    public synchronized void setBudget(float budgetMs) {
+        mBudgetNanos = (long) (budgetMs * NANOS_PER_MS);
+    }
+
+    public synchronized float getBudget() {
+        return (float) mBudgetNanos / NANOS_PER_MS;
+    }
+
+    synchronized void onFrame(long durationNanos, boolean uploadedTextures) {
+        ++mNbFrames;
+        mTotalNanos += durationNanos;
+        mLastNanos = durationNanos;
+        if (durationNanos > mMaxNanos) {
+            mMaxNanos = durationNanos;
+        }
+        if (durationNanos > mBudgetNanos) {
+            ++mFramesOverBudget;
+            if (uploadedTextures) {
+                ++mFramesOverBudgetWithUploads;
+            }
+        }
+    }
+
+    public synchronized int getNbFrames() {
+        return mNbFrames;
+    }
+
+    /**
+     * @return duration of the last frame, in ms
+     */
+    public synchronized float getLastFrameTime() {
+        return (float) mLastNanos / NANOS_PER_MS;
+    }
+
+    /**
+     * @return average duration of the frames, in ms
+     */
+    public synchronized float getAverageFrameTime() {
+        return (mNbFrames > 0) ? (float) mTotalNanos / mNbFrames / NANOS_PER_MS : 0;
+    }
+
+    /**
+     * @return longest frame, in ms
+     */
+    public synchronized float getMaxFrameTime() {
+        return (float) mMaxNanos / NANOS_PER_MS;
+    }
+
+    public synchronized int getFramesOverBudget() {
+        return mFramesOverBudget;
+    }
+
+    /**
+     * @return number of frames over the budget that uploaded at least one texture, or a stripe of it
+     */
+    public synchronized int getFramesOverBudgetWithUploads() {
+        return mFramesOverBudgetWithUploads;
+    }
+
+    public synchronized void reset() {
+        mNbFrames = 0;
+        mTotalNanos = 0;
+        mMaxNanos = 0;
+        mLastNanos = 0;
+        mFramesOverBudget = 0;
+        mFramesOverBudgetWithUploads = 0;
+    }
+}
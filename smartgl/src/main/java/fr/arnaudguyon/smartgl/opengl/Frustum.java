@@ -0,0 +1,110 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.opengl;
+
+/**
+ * The 6 planes (left, right, bottom, top, near, far) of the camera, in world space.
+ * Extracted from the projection * view matrix (Gribb / Hartmann).
+ */
+public class Frustum {
+
+    private static final int NB_PLANES = 6;
+
+    private float[] mPlanes = new float[NB_PLANES * 4];    // a,b,c,d with (a,b,c) normalized, pointing inside
+    private boolean mValid = false;
+
+    public final boolean isValid() {
+        return mValid;
+    }
+
+    public final void invalidate() {
+        mValid = false;
+    }
+
+    /**
+     * @param matrix projection * view matrix, column major (as android.opengl.Matrix)
+     */
+    public final void extract(float[] matrix) {
+        // row i of the matrix is (m[i], m[4+i], m[8+i], m[12+i])
+        setPlane(0, matrix, 0, 1);     // left   = row3 + row0
+        setPlane(1, matrix, 0, -1);    // right  = row3 - row0
+        setPlane(2, matrix, 1, 1);     // bottom = row3 + row1
+        setPlane(3, matrix, 1, -1);    // top    = row3 - row1
+        setPlane(4, matrix, 2, 1);     // near   = row3 + row2
+        setPlane(5, matrix, 2, -1);    // far    = row3 - row2
+        mValid = true;
+    }
+
+    private void setPlane(int plane, float[] m, int row, float sign) {
+        float a = m[3] + sign * m[row];
+        float b = m[7] + sign * m[4 + row];
+        float c = m[11] + sign * m[8 + row];
+        float d = m[15] + sign * m[12 + row];
+        float length = (float) Math.sqrt(a * a + b * b + c * c);
+        if (length > 0) {
+            a /= length;
+            b /= length;
+            c /= length;
+            d /= length;
+        }
+        final int index = plane * 4;
+        mPlanes[index] = a;
+        mPlanes[index + 1] = b;
+        mPlanes[index + 2] = c;
+        mPlanes[index + 3] = d;
+    }
+
+    public final boolean isSphereVisible(float x, float y, float z, float radius) {
+        final float[] planes = mPlanes;
+        for (int i = 0; i < NB_PLANES * 4; i += 4) {
+            if (planes[i] * x + planes[i + 1] * y + planes[i + 2] * z + planes[i + 3] < -radius) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public final boolean isBoxVisible(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        final float[] planes = mPlanes;
+        for (int i = 0; i < NB_PLANES * 4; i += 4) {
+            final float a = planes[i];
+            final float b = planes[i + 1];
+            final float c = planes[i + 2];
+            // corner the most inside the plane
+            final float x = (a >= 0) ? maxX : minX;
+            final float y = (b >= 0) ? maxY : minY;
+            final float z = (c >= 0) ? maxZ : minZ;
+            if (a * x + b * y + c * z + planes[i + 3] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return false only if the volume is completely outside. An empty or invalid volume is considered visible.
+     */
+    public final boolean isVisible(BoundingVolume volume) {
+        if (!mValid || (volume == null) || volume.isEmpty()) {
+            return true;
+        }
+        // the sphere rejects quickly, the box is tighter for long objects
+        if (!isSphereVisible(volume.getCenterX(), volume.getCenterY(), volume.getCenterZ(), volume.getRadius())) {
+            return false;
+        }
+        return isBoxVisible(volume.getMinX(), volume.getMinY(), volume.getMinZ(), volume.getMaxX(), volume.getMaxY(), volume.getMaxZ());
+    }
+}
@@ -0,0 +1,35 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.opengl;
+
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+
+/**
+ * The OpenGL calls that create and fill the Vertex and Index Buffer Objects.
+ * Owned by the renderer, tests replace it to count the uploads. OpenGL Thread only.
+ */
+class GLBufferCalls {
+
+    void genBuffers(int[] bufferIds) {
+        GLES20.glGenBuffers(bufferIds.length, bufferIds, 0);
+    }
+
+    void bufferData(int target, int size, Buffer data, int usage) {
+        GLES20.glBufferData(target, size, data, usage);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.opengl;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Tracks the OpenGL objects created by the renderer: textures, vertex and index buffer objects.
+ * They are deleted with the OpenGL context, when the device can't preserve it during onPause. On the new context their ids
+ * are forgotten and, if the resources are kept on pause (OpenGLView.setKeepResourcesOnPause), they are all created again
+ * from their CPU side copies: the lists of the faces, the Bitmap or the drawable resource of the textures.
+ * The objects are weakly referenced: an object not used anymore is not restored. OpenGL Thread only.
+ */
+public class GLResourceManager {
+
+    private static final String TAG = "GLResourceManager";
+
+    private final Set<Texture> mTextures = Collections.newSetFromMap(new WeakHashMap<Texture, Boolean>());
+    private final Set<AttribList> mAttribLists = Collections.newSetFromMap(new WeakHashMap<AttribList, Boolean>());
+    private final Set<IndexList> mIndexLists = Collections.newSetFromMap(new WeakHashMap<IndexList, Boolean>());
+    private boolean mRestoreOnNewContext;
+    private boolean mHasContext;
+    private int mNbContextLosses;
+    private int mLastRestoredObjects;
+    private long mLastRestoreDuration;
+
+    /**
+     * @return number of OpenGL contexts lost since the creation of the renderer
+     */
+    public int getNbContextLosses() {
+        return mNbContextLosses;
+    }
+
+    /**
+     * @return number of textures and buffer objects created again after the last context loss
+     */
+    public int getLastRestoredObjects() {
+        return mLastRestoredObjects;
+    }
+
+    /**
+     * @return time spent to create the objects again after the last context loss, in ms
+     */
+    public long getLastRestoreDuration() {
+        return mLastRestoreDuration;
+    }
+
+    void setRestoreOnNewContext(boolean restore) {
+        mRestoreOnNewContext = restore;
+    }
+
+    void onTextureCreated(Texture texture) {
+        mTextures.add(texture);
+    }
+
+    void onBufferCreated(AttribList attribList) {
+        mAttribLists.add(attribList);
+    }
+
+    void onBufferCreated(IndexList indexList) {
+        mIndexLists.add(indexList);
+    }
+
+    /**
+     * Called by onSurfaceCreated(). The first context has nothing to restore, the next ones replace a lost context.
+     */
+    void onContextCreated(OpenGLRenderer renderer) {
+        if (!mHasContext) {
+            mHasContext = true;
+            return;
+        }
+        ++mNbContextLosses;
+        final long startTime = SystemClock.uptimeMillis();
+
+        // the ids of the previous context are not valid anymore, and must not be deleted
+        ArrayList<Texture> lostTextures = new ArrayList<>();
+        for (Texture texture : mTextures) {
+            if (texture.onContextLost()) {
+                lostTextures.add(texture);
+            }
+        }
+        ArrayList<AttribList> lostAttribLists = new ArrayList<>();
+        for (AttribList attribList : mAttribLists) {
+            if (attribList.onContextLost()) {
+                lostAttribLists.add(attribList);
+            }
+        }
+        ArrayList<IndexList> lostIndexLists = new ArrayList<>();
+        for (IndexList indexList : mIndexLists) {
+            if (indexList.onContextLost()) {
+                lostIndexLists.add(indexList);
+            }
+        }
+        mTextures.clear();
+        mAttribLists.clear();
+        mIndexLists.clear();
+
+        mLastRestoredObjects = 0;
+        if (mRestoreOnNewContext) {
+            for (Texture texture : lostTextures) {
+                if (texture.bindTexture()) {
+                    onTextureCreated(texture);
+                    ++mLastRestoredObjects;
+                } else {
+                    Log.w(TAG, "Texture lost with the context: its Bitmap was recycled, see recycleWhenBinded()");
+                }
+            }
+            for (AttribList attribList : lostAttribLists) {
+                attribList.bindBufferObject(renderer);
+                ++mLastRestoredObjects;
+            }
+            for (IndexList indexList : lostIndexLists) {
+                indexList.bindBufferObject(renderer);
+                ++mLastRestoredObjects;
+            }
+            renderer.getStateCache().invalidate();  // the textures are bound without the cache
+        }
+        mLastRestoreDuration = SystemClock.uptimeMillis() - startTime;
+    }
+}
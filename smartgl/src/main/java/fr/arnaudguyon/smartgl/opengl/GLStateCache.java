@@ -0,0 +1,253 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.opengl;
+
+import android.opengl.GLES20;
+
+/**
+ * Remembers the OpenGL state set by the renderer (program, textures, buffers, attributes, blend / depth / cull)
+ * and only calls OpenGL when the value changes. OpenGL Thread only.
+ * The cache is invalidated at each frame, as user code may change the state directly.
+ * Shaders and objects changing the state in their onPreRender hooks use it through OpenGLRenderer.getStateCache(),
+ * or call invalidate() after their direct OpenGL calls.
+ */
+public class GLStateCache {
+
+    private static final int UNKNOWN = -1;
+    private static final int MAX_TEXTURE_UNITS = 8;
+    private static final int MAX_VERTEX_ATTRIBS = 32;   // size of the bit masks
+
+    private final RenderStats mStats;
+
+    private int mProgram;
+    private int mActiveTexture;
+    private int[] mBoundTextures = new int[MAX_TEXTURE_UNITS];
+    private int mArrayBuffer;
+    private int mElementArrayBuffer;
+    private int mKnownAttribs;      // bit set if the enabled state of the attribute is known
+    private int mEnabledAttribs;    // bit set if the attribute array is enabled
+    private int mBlend;
+    private int mDepthTest;
+    private int mCullFace;
+    private int mCullFaceMode;
+    private int[] mBlendFunc = new int[4];
+
+    GLStateCache(RenderStats stats) {
+        mStats = stats;
+        invalidate();
+    }
+
+    public final void invalidate() {
+        mProgram = UNKNOWN;
+        mActiveTexture = UNKNOWN;
+        for (int i = 0; i < MAX_TEXTURE_UNITS; ++i) {
+            mBoundTextures[i] = UNKNOWN;
+        }
+        mArrayBuffer = UNKNOWN;
+        mElementArrayBuffer = UNKNOWN;
+        mKnownAttribs = 0;
+        mEnabledAttribs = 0;
+        mBlend = UNKNOWN;
+        mDepthTest = UNKNOWN;
+        mCullFace = UNKNOWN;
+        mCullFaceMode = UNKNOWN;
+        mBlendFunc[0] = UNKNOWN;
+    }
+
+    public final void useProgram(int programId) {
+        if (mProgram == programId) {
+            mStats.onStateCall(false);
+            return;
+        }
+        mProgram = programId;
+        GLES20.glUseProgram(programId);
+        mStats.onStateCall(true);
+    }
+
+    /**
+     * @param unit the texture unit, GLES20.GL_TEXTURE0 + n
+     */
+    public final void activeTexture(int unit) {
+        if (mActiveTexture == unit) {
+            mStats.onStateCall(false);
+            return;
+        }
+        mActiveTexture = unit;
+        GLES20.glActiveTexture(unit);
+        mStats.onStateCall(true);
+    }
+
+    // binds a GL_TEXTURE_2D on the active texture unit
+    public final void bindTexture(int textureId) {
+        final int unit = getActiveUnitIndex();
+        if ((unit >= 0) && (mBoundTextures[unit] == textureId)) {
+            mStats.onStateCall(false);
+            return;
+        }
+        if (unit >= 0) {
+            mBoundTextures[unit] = textureId;
+        }
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+        mStats.onStateCall(true);
+    }
+
+    // to call when a texture has been bound without the cache (texture upload)
+    final void invalidateTextureBinding() {
+        final int unit = getActiveUnitIndex();
+        if (unit >= 0) {
+            mBoundTextures[unit] = UNKNOWN;
+        }
+    }
+
+    private int getActiveUnitIndex() {
+        if (mActiveTexture == UNKNOWN) {
+            return UNKNOWN;
+        }
+        final int index = mActiveTexture - GLES20.GL_TEXTURE0;
+        return ((index >= 0) && (index < MAX_TEXTURE_UNITS)) ? index : UNKNOWN;
+    }
+
+    /**
+     * @param target GLES20.GL_ARRAY_BUFFER or GLES20.GL_ELEMENT_ARRAY_BUFFER
+     */
+    public final void bindBuffer(int target, int bufferId) {
+        final boolean isArray = (target == GLES20.GL_ARRAY_BUFFER);
+        final int current = isArray ? mArrayBuffer : mElementArrayBuffer;
+        if (current == bufferId) {
+            mStats.onStateCall(false);
+            return;
+        }
+        if (isArray) {
+            mArrayBuffer = bufferId;
+        } else {
+            mElementArrayBuffer = bufferId;
+        }
+        GLES20.glBindBuffer(target, bufferId);
+        mStats.onStateCall(true);
+    }
+
+    // to call when a buffer id has been created or deleted, as OpenGL can reuse ids
+    final void invalidateBufferBinding(int target) {
+        if (target == GLES20.GL_ARRAY_BUFFER) {
+            mArrayBuffer = UNKNOWN;
+        } else {
+            mElementArrayBuffer = UNKNOWN;
+        }
+    }
+
+    public final void enableVertexAttribArray(int attribId) {
+        setVertexAttribArray(attribId, true);
+    }
+
+    public final void disableVertexAttribArray(int attribId) {
+        setVertexAttribArray(attribId, false);
+    }
+
+    // disables all the attribute arrays not present in the mask, to call when the program changes
+    final void disableVertexAttribArraysExcept(int keepMask) {
+        for (int attribId = 0; attribId < MAX_VERTEX_ATTRIBS; ++attribId) {
+            final int bit = (1 << attribId);
+            if ((keepMask & bit) == 0) {
+                if (((mKnownAttribs & bit) != 0) && ((mEnabledAttribs & bit) != 0)) {
+                    setVertexAttribArray(attribId, false);
+                }
+            }
+        }
+    }
+
+    private void setVertexAttribArray(int attribId, boolean enable) {
+        if ((attribId < 0) || (attribId >= MAX_VERTEX_ATTRIBS)) {
+            return;
+        }
+        final int bit = (1 << attribId);
+        final boolean enabled = ((mEnabledAttribs & bit) != 0);
+        if (((mKnownAttribs & bit) != 0) && (enabled == enable)) {
+            mStats.onStateCall(false);
+            return;
+        }
+        mKnownAttribs |= bit;
+        if (enable) {
+            mEnabledAttribs |= bit;
+            GLES20.glEnableVertexAttribArray(attribId);
+        } else {
+            mEnabledAttribs &= ~bit;
+            GLES20.glDisableVertexAttribArray(attribId);
+        }
+        mStats.onStateCall(true);
+    }
+
+    static int attribMask(int attribId) {
+        return ((attribId >= 0) && (attribId < MAX_VERTEX_ATTRIBS)) ? (1 << attribId) : 0;
+    }
+
+    /**
+     * @param capability GLES20.GL_BLEND, GLES20.GL_DEPTH_TEST or GLES20.GL_CULL_FACE
+     */
+    public final void setEnabled(int capability, boolean enable) {
+        final int value = enable ? 1 : 0;
+        final int current;
+        switch (capability) {
+            case GLES20.GL_BLEND:
+                current = mBlend;
+                mBlend = value;
+                break;
+            case GLES20.GL_DEPTH_TEST:
+                current = mDepthTest;
+                mDepthTest = value;
+                break;
+            case GLES20.GL_CULL_FACE:
+                current = mCullFace;
+                mCullFace = value;
+                break;
+            default:
+                current = UNKNOWN;
+                break;
+        }
+        if (current == value) {
+            mStats.onStateCall(false);
+            return;
+        }
+        if (enable) {
+            GLES20.glEnable(capability);
+        } else {
+            GLES20.glDisable(capability);
+        }
+        mStats.onStateCall(true);
+    }
+
+    public final void cullFace(int mode) {
+        if (mCullFaceMode == mode) {
+            mStats.onStateCall(false);
+            return;
+        }
+        mCullFaceMode = mode;
+        GLES20.glCullFace(mode);
+        mStats.onStateCall(true);
+    }
+
+    public final void blendFuncSeparate(int srcRGB, int dstRGB, int srcAlpha, int dstAlpha) {
+        if ((mBlendFunc[0] == srcRGB) && (mBlendFunc[1] == dstRGB) && (mBlendFunc[2] == srcAlpha) && (mBlendFunc[3] == dstAlpha)) {
+            mStats.onStateCall(false);
+            return;
+        }
+        mBlendFunc[0] = srcRGB;
+        mBlendFunc[1] = dstRGB;
+        mBlendFunc[2] = srcAlpha;
+        mBlendFunc[3] = dstAlpha;
+        GLES20.glBlendFuncSeparate(srcRGB, dstRGB, srcAlpha, dstAlpha);
+        mStats.onStateCall(true);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.opengl;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+import fr.arnaudguyon.smartgl.tools.Assert;
+
+/**
+ * List of vertex indexes for a Face3D, drawn with glDrawElements.
+ * OpenGL ES 2.0 only handles unsigned short indexes, so a Face3D can reference up to 65536 vertices.
+ */
+public class IndexList {
+
+    public static final int MAX_VERTEX_INDEX = 0xFFFF;
+    private static final int BYTES_PER_SHORT = 2;
+    private static final int NO_BUFFER = 0;
+
+    private boolean mTriangleStrip;
+    private short[] mInternalBuffer;
+    private ShortBuffer mShortBuffer;
+    private int mCurrentIndex;
+    private int[] mBufferId = {NO_BUFFER};
+    private boolean mBufferDirty = true;
+
+    /**
+     * creates an IndexList of triangles (3 indexes per triangle)
+     */
+    public IndexList() {
+        this(false);
+    }
+
+    /**
+     * @param triangleStrip true if the indexes describe a triangle strip, false for a list of triangles
+     */
+    public IndexList(boolean triangleStrip) {
+        mTriangleStrip = triangleStrip;
+    }
+
+    public final void init(int nbIndexes) {
+        mInternalBuffer = new short[nbIndexes];
+        mCurrentIndex = 0;
+    }
+
+    /**
+     * Uses the array as internal buffer, without copy, with nbIndexes indexes already added
+     */
+    public final void setInternalBuffer(short[] values, int nbIndexes) {
+        Assert.assertTrue("Not enough values", (nbIndexes >= 0) && (nbIndexes <= values.length));
+        mInternalBuffer = values;
+        mCurrentIndex = nbIndexes;
+    }
+
+    public final void add(int index) {
+        Assert.assertTrue((index >= 0) && (index <= MAX_VERTEX_INDEX));
+        mInternalBuffer[mCurrentIndex++] = (short) index;
+    }
+
+    public final void add(int a, int b, int c) {
+        add(a);
+        add(b);
+        add(c);
+    }
+
+    public final void finalizeBuffer() {
+        mShortBuffer = ByteBuffer.allocateDirect(mCurrentIndex * BYTES_PER_SHORT).order(ByteOrder.nativeOrder()).asShortBuffer();
+        mShortBuffer.put(mInternalBuffer, 0, mCurrentIndex).position(0);
+        mBufferDirty = true;
+    }
+
+    /**
+     * To call after the internal buffer has been modified
+     */
+    public final void updateShortBuffer() {
+        mShortBuffer.put(mInternalBuffer, 0, mCurrentIndex).position(0);
+        mBufferDirty = true;
+    }
+
+    public final short[] getInternalBuffer() {
+        return mInternalBuffer;
+    }
+
+    public final ShortBuffer getShortBuffer() {
+        return mShortBuffer;
+    }
+
+    public final int getNbIndexes() {
+        return mCurrentIndex;
+    }
+
+    public final boolean isTriangleStrip() {
+        return mTriangleStrip;
+    }
+
+    final int getPrimitive() {
+        return (mTriangleStrip) ? GLES20.GL_TRIANGLE_STRIP : GLES20.GL_TRIANGLES;
+    }
+
+    public final boolean hasBufferObject() {
+        return (mBufferId[0] != NO_BUFFER);
+    }
+
+    // OpenGL Thread only. Uploads the buffer the first time, or again if it has been updated
+    final void bindBufferObject(OpenGLRenderer renderer) {
+        if (mBufferId[0] == NO_BUFFER) {
+            renderer.getBufferCalls().genBuffers(mBufferId);
+            renderer.getResourceManager().onBufferCreated(this);
+            renderer.getStateCache().invalidateBufferBinding(GLES20.GL_ELEMENT_ARRAY_BUFFER);
+            mBufferDirty = true;
+        }
+        renderer.getStateCache().bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mBufferId[0]);
+        if (mBufferDirty) {
+            final int size = mCurrentIndex * BYTES_PER_SHORT;
+            mShortBuffer.position(0);
+            renderer.getBufferCalls().bufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, size, mShortBuffer, GLES20.GL_STATIC_DRAW);
+            renderer.getCurrentRenderStats().onBufferUpload(size);
+            mBufferDirty = false;
+        }
+    }
+
+    // OpenGL Thread only
+    final void drawElements(OpenGLRenderer renderer, boolean useBufferObject) {
+        if (useBufferObject) {
+            bindBufferObject(renderer);
+            GLES20.glDrawElements(getPrimitive(), mCurrentIndex, GLES20.GL_UNSIGNED_SHORT, 0);
+        } else {
+            renderer.getStateCache().bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, NO_BUFFER);
+            mShortBuffer.position(0);
+            GLES20.glDrawElements(getPrimitive(), mCurrentIndex, GLES20.GL_UNSIGNED_SHORT, mShortBuffer);
+        }
+    }
+
+    // The buffer object was deleted with the OpenGL context, it's created again at the next bind
+    final boolean onContextLost() {
+        final boolean hadBufferObject = hasBufferObject();
+        mBufferId[0] = NO_BUFFER;
+        mBufferDirty = true;
+        return hadBufferObject;
+    }
+
+    public final void releaseBufferObject() {
+        if (hasBufferObject()) {
+            GLES20.glDeleteBuffers(1, mBufferId, 0);
+            mBufferId[0] = NO_BUFFER;
+        }
+        mBufferDirty = true;
+    }
+
+    public final void destroyShortBuffer() {
+        releaseBufferObject();
+        if (mShortBuffer != null) {
+            mShortBuffer.clear();
+        }
+    }
+}
@@ -15,7 +15,7 @@
  */
 package fr.arnaudguyon.smartgl.opengl;
 
-import android.opengl.Matrix;
+import fr.arnaudguyon.smartgl.math.Matrix4;
 
 public class Object3D extends RenderObject {
 
@@ -104,24 +104,37 @@ public class Object3D extends RenderObject {
 
 	@Override
 	final public void computeMatrix(float[] matrix) {
-		Matrix.setIdentityM(matrix, 0);
-		Matrix.translateM(matrix, 0, mPosX, mPosY, mPosZ);
+		computeMatrix(matrix, mPosX, mPosY, mPosZ, mRotX, mRotY, mRotZ, mScaleX, mScaleY, mScaleZ);
+	}
 
-		if (mRotX != 0) {
-			Matrix.rotateM(matrix, 0, mRotX, 1, 0, 0);
-		}
+	@Override
+	protected boolean canBeSimulated() {
+		return true;
+	}
 
-		if (mRotY != 0) {
-			Matrix.rotateM(matrix, 0, mRotY, 0, 1, 0);
-		}
+	@Override
+	protected void getTransform(float[] transform, int offset) {
+		transform[offset] = mPosX;
+		transform[offset + 1] = mPosY;
+		transform[offset + 2] = mPosZ;
+		transform[offset + 3] = mRotX;
+		transform[offset + 4] = mRotY;
+		transform[offset + 5] = mRotZ;
+		transform[offset + 6] = mScaleX;
+		transform[offset + 7] = mScaleY;
+		transform[offset + 8] = mScaleZ;
+	}
 
-		if (mRotZ != 0) {
-			Matrix.rotateM(matrix, 0, mRotZ, 0, 0, 1);
-		}
+	@Override
+	protected void computeTransformMatrix(float[] transform, float[] matrix) {
+		computeMatrix(matrix, transform[0], transform[1], transform[2], transform[3], transform[4], transform[5],
+				transform[6], transform[7], transform[8]);
+	}
 
-		if ((mScaleX != 1) || (mScaleY != 1) || (mScaleZ != 1)) {
-			Matrix.scaleM(matrix, 0, mScaleX, mScaleY, mScaleZ);
-		}
+	// translation, then rotations around X, Y and Z, then scale. Also used by RenderObjectContainer
+	static void computeMatrix(float[] matrix, float posX, float posY, float posZ, float rotX, float rotY, float rotZ,
+			float scaleX, float scaleY, float scaleZ) {
+		Matrix4.setTranslateRotateScale(matrix, posX, posY, posZ, rotX, rotY, rotZ, scaleX, scaleY, scaleZ);
 	}
 
 	@Override
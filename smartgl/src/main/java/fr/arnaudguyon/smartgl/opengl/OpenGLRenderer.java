@@ -16,10 +16,13 @@
 package fr.arnaudguyon.smartgl.opengl;
 
 import java.lang.ref.WeakReference;
-import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
@@ -28,12 +31,12 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
-import android.opengl.Matrix;
 import android.os.Handler;
 import android.os.SystemClock;
 import android.util.SparseArray;
 
 import fr.arnaudguyon.smartgl.R;
+import fr.arnaudguyon.smartgl.math.Matrix4;
 import fr.arnaudguyon.smartgl.math.Vector2D;
 import fr.arnaudguyon.smartgl.tools.Assert;
 
@@ -54,9 +57,25 @@ public abstract class OpenGLRenderer implements GLSurfaceView.Renderer {
     private float[] mProj3DMatrix = new float[16];
     private float[] mProj2DMatrix = new float[16];
     private float[] mTmpMatrix = new float[16];
-
-    private Vector<RenderPass> mRenderPasses;
-    private boolean mInitDone;
+    private float[] mPerspectiveMatrix = new float[16];
+    private float[] mViewMatrix = new float[16];
+
+    private static final RenderPass[] NO_RENDER_PASSES = new RenderPass[0];
+    private volatile RenderPass[] mRenderPasses = NO_RENDER_PASSES;    // replaced by the OpenGL Thread, never modified
+    private final ConcurrentLinkedQueue<Runnable> mGLThreadTasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean mInitDone;
+    private volatile boolean mResourcesAcquired;     // acquireResources() called, and the resources not released since
+    private final GLResourceManager mResourceManager = new GLResourceManager();
+    private static final int PLACEHOLDER_COLOR = 0xFF808080;
+
+    private TextureCache mTextureCache;
+    private volatile Simulation mSimulation;
+    private volatile UpdatePool mUpdatePool;
+    private boolean mObjectsUpdated;    // the objects of the pass being rendered are already ticked by the UpdatePool
+    private final TextureUploader mTextureUploader = new TextureUploader();
+    private Texture mPlaceholderTexture;
+    private final FrameTimeStats mFrameTimeStats = new FrameTimeStats();
+    private int mFrameNumber;
     private float[] mClearColor = {0.2f, 0.5f, 0.7f, 1};    // RGBA
     private OpenGLCamera mCamera;
 
@@ -67,9 +86,20 @@ public abstract class OpenGLRenderer implements GLSurfaceView.Renderer {
     private int mUvAttribId = -1;
     private int mColorAttribId = -1;
     private int mProjMatrixId = -1;
+    private int mAlphaTextureId = -1;
 
     private Boolean mDoubleSided = true;
 
+    private Frustum mFrustum = new Frustum();
+    private boolean mFrustumCulling = false;
+
+    private SpriteBatch mSpriteBatch;
+
+    private RenderStats mRenderStats = new RenderStats();            // being filled during the current frame
+    private RenderStats mLastFrameRenderStats = new RenderStats();   // values of the last complete frame
+    private GLStateCache mStateCache = new GLStateCache(mRenderStats);
+    private GLBufferCalls mBufferCalls = new GLBufferCalls();
+
     private static final float[] DEFAULT_AMBIANT_LIGHT = {1, 1, 1, 1};    // RVBA
     private LightAmbiant mLightAmbiant;
     private LightParallel mLightParallel;
@@ -82,7 +112,6 @@ public abstract class OpenGLRenderer implements GLSurfaceView.Renderer {
 
     public OpenGLRenderer(Context context) {
         super();
-        mRenderPasses = new Vector<>();
 //		mTouchHelper = new TouchHelper();
     }
 
@@ -102,6 +131,112 @@ public abstract class OpenGLRenderer implements GLSurfaceView.Renderer {
         return mFrameDurationRaw;
     }
 
+    /**
+     * @return the counters of the last complete frame (draw calls, buffer uploads...)
+     */
+    public RenderStats getRenderStats() {
+        return mLastFrameRenderStats;
+    }
+
+    final RenderStats getCurrentRenderStats() {
+        return mRenderStats;
+    }
+
+    /**
+     * @return the cache of the OpenGL state, to use instead of direct OpenGL calls in the onPreRender hooks
+     */
+    public final GLStateCache getStateCache() {
+        return mStateCache;
+    }
+
+    final GLBufferCalls getBufferCalls() {
+        return mBufferCalls;
+    }
+
+    // for tests
+    final void setBufferCalls(GLBufferCalls bufferCalls) {
+        mBufferCalls = bufferCalls;
+    }
+
+    final int getFrameNumber() {
+        return mFrameNumber;
+    }
+
+    /**
+     * @param textureCache cache whose textures are evicted at the end of the frames, when over its budget. Can be null.
+     */
+    public void setTextureCache(TextureCache textureCache) {
+        if (mTextureCache != null) {
+            mTextureCache.setRenderer(null);
+        }
+        mTextureCache = textureCache;
+        if (textureCache != null) {
+            textureCache.setRenderer(this);
+        }
+    }
+
+    public TextureCache getTextureCache() {
+        return mTextureCache;
+    }
+
+    /**
+     * @param simulation moves objects on its own thread, their transforms are interpolated at the start of each frame.
+     *                   Can be null. The objects of a replaced simulation stay where they are.
+     */
+    public void setSimulation(Simulation simulation) {
+        mSimulation = simulation;
+    }
+
+    public Simulation getSimulation() {
+        return mSimulation;
+    }
+
+    /**
+     * @param updatePool ticks the objects and computes their matrices before rendering each pass, in parallel.
+     *                   Null by default: the objects are ticked and their matrices computed while they are rendered.
+     */
+    public void setUpdatePool(UpdatePool updatePool) {
+        mUpdatePool = updatePool;
+    }
+
+    public UpdatePool getUpdatePool() {
+        return mUpdatePool;
+    }
+
+    /**
+     * Limits the textures uploaded during a frame, to avoid long frames when many textures are drawn for the first time.
+     * The textures decoded by a TextureLoader are uploaded by stripes. The textures waiting for their upload are drawn
+     * with the placeholder texture. At least one texture, or stripe, is uploaded per frame. Unlimited by default.
+     * @param maxBytesPerFrame for example 1 MB
+     * @param maxTexturesPerFrame for example 2. A texture uploaded by stripes counts once per frame, whatever its number of stripes.
+     */
+    public void setTextureUploadBudget(int maxBytesPerFrame, int maxTexturesPerFrame) {
+        Assert.assertTrue((maxBytesPerFrame > 0) && (maxTexturesPerFrame > 0));
+        mTextureUploader.setBudget(maxBytesPerFrame, maxTexturesPerFrame);
+    }
+
+    /**
+     * @param placeholder texture drawn instead of the textures not decoded or uploaded yet. Keep its Bitmap
+     *                    (recycleWhenBinded(false)) so that it survives a context loss. A grey pixel by default.
+     */
+    public void setPlaceholderTexture(Texture placeholder) {
+        mPlaceholderTexture = placeholder;
+    }
+
+    /**
+     * @return the durations of the frames, measured on the OpenGL thread
+     */
+    public FrameTimeStats getFrameTimeStats() {
+        return mFrameTimeStats;
+    }
+
+    /**
+     * @return the manager of the textures and buffer objects, that creates them again after a loss of the OpenGL context
+     */
+    public GLResourceManager getResourceManager() {
+        return mResourceManager;
+    }
+
     public float[] getProjection3DMatrix() {
         return mProj3DMatrix;
     }
@@ -141,32 +276,97 @@ public abstract class OpenGLRenderer implements GLSurfaceView.Renderer {
         mDoubleSided = doubleSided;
     }
 
+    /**
+     * Frustum culling: 3D objects and faces outside of the camera are not drawn. Disabled by default.
+     * The bounding volumes are computed once from the VertexList: call Face3D.invalidateBounds() if the vertex are modified,
+     * otherwise the modified objects may be culled while visible.
+     */
+    public void setFrustumCulling(boolean frustumCulling) {
+        mFrustumCulling = frustumCulling;
+    }
+
+    public boolean isFrustumCulling() {
+        return mFrustumCulling;
+    }
+
+    public Frustum getFrustum() {
+        return mFrustum;
+    }
+
     public void setDebugMode(Context context) {
         loadDebugData(context);
         mDebugMode = true;
     }
 
-    public void setRenderPasses(Vector<RenderPass> renderPasses) {
-        synchronized (this) {
-            mRenderPasses = renderPasses;
-        }
+    // The render passes are changed by the OpenGL Thread at the start of the frames, so the callers never wait for a frame
+
+    /**
+     * Any thread. The passes are rendered from the next frame.
+     */
+    public void setRenderPasses(List<RenderPass> renderPasses) {
+        final RenderPass[] passes = (renderPasses != null) ? renderPasses.toArray(new RenderPass[renderPasses.size()]) : NO_RENDER_PASSES;
+        runOnGLThread(new Runnable() {
+            @Override
+            public void run() {
+                mRenderPasses = passes;
+            }
+        });
     } // TODO: release lists inside programs when setting null
 
-    public void addRenderPass(RenderPass renderPass) {
-        synchronized (this) {
-            mRenderPasses.add(renderPass);
-        }
+    /**
+     * Any thread. The pass is rendered from the next frame.
+     */
+    public void addRenderPass(final RenderPass renderPass) {
+        Assert.assertNotNull(renderPass);
+        runOnGLThread(new Runnable() {
+            @Override
+            public void run() {
+                RenderPass[] passes = Arrays.copyOf(mRenderPasses, mRenderPasses.length + 1);
+                passes[passes.length - 1] = renderPass;
+                mRenderPasses = passes;
+            }
+        });
     }
 
     void clearRenderPasses() {
-        synchronized (this) {
-            mRenderPasses.clear();
-        }
+        setRenderPasses(null);
     }
 
-    public void removeRenderPass(RenderPass renderPass) {
-        synchronized (this) {
-            mRenderPasses.remove(renderPass);
+    /**
+     * Any thread. The pass is not rendered anymore from the next frame.
+     */
+    public void removeRenderPass(final RenderPass renderPass) {
+        runOnGLThread(new Runnable() {
+            @Override
+            public void run() {
+                ArrayList<RenderPass> passes = new ArrayList<>(Arrays.asList(mRenderPasses));
+                if (passes.remove(renderPass)) {
+                    mRenderPasses = passes.toArray(new RenderPass[passes.size()]);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the render passes of the last frame. Can't be modified, use addRenderPass() and removeRenderPass().
+     */
+    public List<RenderPass> getRenderPasses() {
+        return Collections.unmodifiableList(Arrays.asList(mRenderPasses));
+    }
+
+    /**
+     * Runs the task on the OpenGL thread, at the start of the next frame (before onPreRender). Can be called from any thread.
+     * For example to add an object loaded on a background thread, or to create its OpenGL resources.
+     */
+    public void runOnGLThread(Runnable task) {
+        mGLThreadTasks.add(task);
+    }
+
+    private void runGLThreadTasks() {
+        Runnable task = mGLThreadTasks.poll();
+        while (task != null) {
+            task.run();
+            task = mGLThreadTasks.poll();
         }
     }
 
@@ -186,100 +386,123 @@ public abstract class OpenGLRenderer implements GLSurfaceView.Renderer {
     public void onDrawFrame(GL10 gl10) {
 
         computeFps();
+        final long frameStartTime = System.nanoTime();
+
+        mLastFrameRenderStats.copyFrom(mRenderStats);
+        mRenderStats.reset();
+        mTextureUploader.onFrameStart();
+        ++mFrameNumber;
+        mStateCache.invalidate();   // the state may have been changed outside of the renderer
 
         GLES20.glClearColor(mClearColor[0], mClearColor[1], mClearColor[2], mClearColor[3]);    // RGBA
         GLES20.glClear(GLES20.GL_DEPTH_BUFFER_BIT | GLES20.GL_COLOR_BUFFER_BIT);
 
         checkDoubleSided(gl10);
 
-        synchronized (this) {
+        if (!mInitDone) {
+            return;
+        }
 
-            if (!mInitDone) {
-                return;
-            }
+        runGLThreadTasks();
 
-            if (mOpenGLView != null) {
-                OpenGLView view = mOpenGLView.get();
-                if (view != null) {
-                    view.onPreRender(this);
-                }
-            }
+        final Simulation simulation = mSimulation;
+        if (simulation != null) {
+            simulation.interpolate(frameStartTime);
+        }
 
-            if ((mCamera != null) && mCamera.isDirty()) {
-                computeProjMatrix3D(mProj3DMatrix);
+        if (mOpenGLView != null) {
+            OpenGLView view = mOpenGLView.get();
+            if (view != null) {
+                view.onPreRender(this);
             }
+        }
 
-            onPreRender(gl10);
+        if ((mCamera != null) && mCamera.isDirty()) {
+            computeProjMatrix3D(mProj3DMatrix);
+        }
 
-            if (mRenderPasses != null) {
+        onPreRender(gl10);
 
-                int passNumber = 0;
-                final int prgSize = mRenderPasses.size();
-                for (int prgIt = 0; prgIt < prgSize; ++prgIt) {
-                    final RenderPass renderPass = mRenderPasses.get(prgIt);
-                    if (!renderPass.isLoaded()) {
-                        renderPass.load();
-                    }
+        final RenderPass[] renderPasses = mRenderPasses;
+        int passNumber = 0;
+        for (int prgIt = 0; prgIt < renderPasses.length; ++prgIt) {
+            final RenderPass renderPass = renderPasses[prgIt];
+            if (!renderPass.isLoaded()) {
+                renderPass.load();
+            }
 
-                    renderPass.sortObjects();
+            renderPass.applyChanges();  // objects added or removed since the last frame, also in onPreRender
+            final UpdatePool updatePool = mUpdatePool;
+            mObjectsUpdated = (updatePool != null);
+            if (mObjectsUpdated) {
+                updatePool.update(this, renderPass.getRenderOrder(), mRenderStats);
+            }
+            renderPass.sortObjects(this);
 
-                    ++passNumber;
-                    onPreRenderPass(gl10, passNumber);
+            ++passNumber;
+            onPreRenderPass(gl10, passNumber);
 
-                    Vector<RenderObject> mainObjectList = renderPass.getRenderObjects();
-                    //Vector<RenderObject> objectList = buildObjectList(mainObjectList);	// recursive with Container Objects
+            final RenderObject[] mainObjectList = renderPass.getRenderOrder();
+            //Vector<RenderObject> objectList = buildObjectList(mainObjectList);	// recursive with Container Objects
 
-                    if (renderPass.useZBuffer()) {
-                        gl10.glEnable(GL10.GL_DEPTH_TEST);
-                        if (renderPass.clearZBuffer()) {
-                            GLES20.glClear(GLES20.GL_DEPTH_BUFFER_BIT);
-                        }
-                    } else {
-                        gl10.glDisable(GL10.GL_DEPTH_TEST);
-                    }
-
-                    mPreviousShader = null;
-                    mUseTexture = false;
-                    mUseColor = false;
-                    mVertexAttribId = -1;
-                    mUvAttribId = -1;
-                    mColorAttribId = -1;
-                    mProjMatrixId = -1;
-
-                    // OBJECTS
-                    for (int renderObjIt = 0; renderObjIt < mainObjectList.size(); ++renderObjIt) {
-                        RenderObject object = mainObjectList.get(renderObjIt);
-                        boolean render = object.shouldDisplay(this);
-                        if (object.isContainer()) {
-                            renderContainer(renderPass, (RenderObjectContainer) object, render);
-                        } else {
-                            renderObject(renderPass, object, render);
-                        }
+            mStateCache.setEnabled(GLES20.GL_DEPTH_TEST, renderPass.useZBuffer());
+            if (renderPass.useZBuffer() && renderPass.clearZBuffer()) {
+                GLES20.glClear(GLES20.GL_DEPTH_BUFFER_BIT);
+            }
 
+            mPreviousShader = null;
+            mUseTexture = false;
+            mUseColor = false;
+            mVertexAttribId = -1;
+            mUvAttribId = -1;
+            mColorAttribId = -1;
+            mProjMatrixId = -1;
+            mAlphaTextureId = -1;
+
+            // OBJECTS
+            if (renderPass.isBatchMode() && !mDebugMode && canBatch(renderPass.getShader())) {
+                renderSpriteBatch(renderPass, mainObjectList);
+            } else {
+                for (int renderObjIt = 0; renderObjIt < mainObjectList.length; ++renderObjIt) {
+                    RenderObject object = mainObjectList[renderObjIt];
+                    boolean render = object.shouldDisplay(this);
+                    if (object.isContainer()) {
+                        renderContainer(renderPass, (RenderObjectContainer) object, render);
+                    } else {
+                        renderObject(renderPass, object, render);
                     }
 
-                    onPostRenderPass(gl10, passNumber);
                 }
             }
-            //handleTouchEvents();
-            onPostRender(gl10);
 
-            if (mScreenshotListener != null) {
-                doTakeScreenshot(gl10);
-            }
+            onPostRenderPass(gl10, passNumber);
+        }
+        //handleTouchEvents();
+        onPostRender(gl10);
+
+        if (mTextureCache != null) {
+            mTextureCache.onFrameRendered(this);
+        }
+        mFrameTimeStats.onFrame(System.nanoTime() - frameStartTime, (mRenderStats.getTextureUploads() > 0));
+
+        if (mScreenshotListener != null) {
+            doTakeScreenshot(gl10);
         }
 
     }
 
     private void renderContainer(final RenderPass renderPass, RenderObjectContainer container, boolean render) {
-        container.tick(this);
+        if (!mObjectsUpdated) {
+            container.tick(this);
+        }
         if (render) {
             container.onPreRenderObject(this);
+            updateMatrix(container);    // before its children
         }
-        Vector<RenderObject> objects = container.getRenderObjects();
+        final RenderObject[] objects = container.getRenderObjectArray();
         if (objects != null) {
-            for (int i = 0; i < objects.size(); ++i) {
-                RenderObject object = objects.get(i);
+            for (int i = 0; i < objects.length; ++i) {
+                RenderObject object = objects[i];
                 if (object.isContainer()) {
                     renderContainer(renderPass, (RenderObjectContainer) object, render && object.shouldDisplay(this));
                 } else {
@@ -289,13 +512,174 @@ public abstract class OpenGLRenderer implements GLSurfaceView.Renderer {
         }
     }
 
+    // the world matrices are computed once per move, top down: the parents are rendered before their children
+    private void updateMatrix(RenderObject object) {
+        if (!object.isMatrixValid()) {
+            object.updateMatrix(mRenderStats);
+        }
+    }
+
+    private boolean canBatch(Shader shader) {
+        return (shader != null) && shader.isBatchable() && shader.useTexture() && !shader.useColor()
+                && (shader.getAlphaTextureId() < 0);
+    }
+
+    // Sprites are transformed on CPU side and drawn by texture runs, keeping the order of the list
+    private void renderSpriteBatch(final RenderPass renderPass, RenderObject[] objects) {
+        if (mSpriteBatch == null) {
+            mSpriteBatch = new SpriteBatch();
+        }
+        final SpriteBatch batch = mSpriteBatch;
+        final Shader shader = renderPass.getShader();
+
+        final int objectSize = objects.length;
+        for (int renderObjIt = 0; renderObjIt < objectSize; ++renderObjIt) {
+            RenderObject object = objects[renderObjIt];
+            boolean render = object.shouldDisplay(this);
+            if (object.isContainer()) {
+                flushSpriteBatch(renderPass);
+                renderContainer(renderPass, (RenderObjectContainer) object, render);
+                continue;
+            }
+            if (!mObjectsUpdated) {
+                object.tick(this);
+            }
+            if (!render) {
+                continue;
+            }
+            if (!isBatchable(object)) {
+                flushSpriteBatch(renderPass);
+                drawObject(renderPass, object);
+                continue;
+            }
+
+            object.onPreRenderObject(this);
+            updateMatrix(object);
+            Face3D face = ((Sprite) object).getFace();
+            if (!face.shouldDisplay(this)) {
+                continue;
+            }
+            Texture tex = face.getTexture();
+            if (tex == null) { // not ready yet
+                continue;
+            }
+            tex = prepareTexture(tex);
+            object.onPreRenderFace(this, shader, face);
+            face.onPreRenderFace(this, object, shader);
+            UVList uvList = face.getUVList();   // can be changed by an AnimatedFace3D
+            if (uvList == null) {
+                continue;
+            }
+            if ((tex != batch.getTexture()) || batch.isFull()) {
+                flushSpriteBatch(renderPass);
+            }
+            batch.add(tex, face.getVertexList().getInternalBuffer(), uvList.getInternalBuffer(), object.getMatrix());
+        }
+        flushSpriteBatch(renderPass);
+    }
+
+    private boolean isBatchable(RenderObject object) {
+        if (!(object instanceof Sprite) || object.is3D() || (object.getFaces().size() != 1)) {
+            return false;
+        }
+        VertexList vertexList = ((Sprite) object).getFace().getVertexList();
+        return (vertexList != null) && (vertexList.getNbElements() == 4);
+    }
+
+    private void flushSpriteBatch(final RenderPass renderPass) {
+        if (mSpriteBatch.isEmpty()) {
+            return;
+        }
+        Shader shader = prepareShader(renderPass);
+        mSpriteBatch.flush(this, shader, mProj2DMatrix);
+    }
+
+    // Uses the program of the RenderPass, and enables the attributes if the Shader changed.
+    // Redundant calls are filtered by the GLStateCache.
+    private Shader prepareShader(final RenderPass renderPass) {
+        mStateCache.useProgram(renderPass.getProgramId());
+
+        // Check for new Shader
+        Shader shader = renderPass.getShader();
+        if (shader != mPreviousShader) {
+            mPreviousShader = shader;
+            mUseTexture = shader.useTexture();
+            mUseColor = shader.useColor();
+            mVertexAttribId = shader.getVertexAttribId();
+            mUvAttribId = shader.getUVAttribId();
+            mColorAttribId = shader.getColorAttribId();
+            mProjMatrixId = shader.getProjMatrixId();
+            mAlphaTextureId = shader.getAlphaTextureId();
+            if (mAlphaTextureId >= 0) {
+                GLES20.glUniform1i(mAlphaTextureId, 1);     // separate alpha on texture unit 1
+            }
+
+            int attribMask = GLStateCache.attribMask(mVertexAttribId);
+            mStateCache.enableVertexAttribArray(mVertexAttribId);
+            if (mUseTexture) {
+                mStateCache.activeTexture(GLES20.GL_TEXTURE0);
+                mStateCache.enableVertexAttribArray(mUvAttribId);
+                attribMask |= GLStateCache.attribMask(mUvAttribId);
+
+                mStateCache.blendFuncSeparate(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA, GLES20.GL_ONE, GLES20.GL_ONE);
+                //GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);	// premultiply alpha
+                mStateCache.setEnabled(GLES20.GL_BLEND, true);
+            }
+            if (mUseColor) {
+                mStateCache.enableVertexAttribArray(mColorAttribId);
+                attribMask |= GLStateCache.attribMask(mColorAttribId);
+            }
+            // arrays left enabled by the previous Shader (normals...)
+            mStateCache.disableVertexAttribArraysExcept(attribMask);
+        }
+        return shader;
+    }
+
+    private boolean shouldCull(RenderObject object) {
+        return mFrustumCulling && object.is3D() && mFrustum.isValid();
+    }
+
     private void renderObject(final RenderPass renderPass, RenderObject object, boolean render) {
 
-        object.tick(this);
+        if (!mObjectsUpdated) {
+            object.tick(this);
+        }
         if (!render) {
             return;
         }
+        drawObject(renderPass, object);
+    }
+
+    // the texture to draw with: the placeholder until the texture is decoded and uploaded within the upload budget
+    private Texture prepareTexture(Texture texture) {
+        texture.setLastRenderedFrame(mFrameNumber);
+        if (mTextureUploader.upload(this, texture)) {
+            return texture;
+        }
+        if (mPlaceholderTexture == null) {
+            Bitmap bitmap = Bitmap.createBitmap(new int[] {PLACEHOLDER_COLOR}, 1, 1, Bitmap.Config.ARGB_8888);
+            mPlaceholderTexture = new Texture(1, 1, bitmap);
+            mPlaceholderTexture.recycleWhenBinded(false);   // restored after a context loss
+        }
+        if (!mPlaceholderTexture.isReady()) {   // not counted in the upload budget
+            if (mPlaceholderTexture.bindTexture()) {
+                mResourceManager.onTextureCreated(mPlaceholderTexture);
+            }
+            mStateCache.invalidateTextureBinding();
+        }
+        return mPlaceholderTexture;
+    }
+
+    private void drawObject(final RenderPass renderPass, RenderObject object) {
+
         object.onPreRenderObject(this);
+        updateMatrix(object);
+
+        final boolean cullFaces = shouldCull(object);
+        if (cullFaces && !mFrustum.isVisible(object.getBounds())) {
+            mRenderStats.onObjectCulled();
+            return;
+        }
 
         float[] modelViewMatrix = object.getMatrix(); // get transformation matrix from object
         Vector<Face3D> faces = object.getFaces();
@@ -306,38 +690,17 @@ public abstract class OpenGLRenderer implements GLSurfaceView.Renderer {
             if (!face.shouldDisplay(this)) {
                 continue;
             }
-            GLES20.glUseProgram(renderPass.getProgramId());
-
-            // Check for new Shader
-            Shader shader = renderPass.getShader();
-            if (shader != mPreviousShader) {
-                mPreviousShader = shader;
-                mUseTexture = shader.useTexture();
-                mUseColor = shader.useColor();
-                mVertexAttribId = shader.getVertexAttribId();
-                mUvAttribId = shader.getUVAttribId();
-                mColorAttribId = shader.getColorAttribId();
-                mProjMatrixId = shader.getProjMatrixId();
-
-                GLES20.glEnableVertexAttribArray(mVertexAttribId);
-                if (mUseTexture) {
-                    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-                    GLES20.glEnableVertexAttribArray(mUvAttribId);
-
-                    GLES20.glBlendFuncSeparate(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA, GLES20.GL_ONE, GLES20.GL_ONE);
-                    //GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);	// premultiply alpha
-                    GLES20.glEnable(GLES20.GL_BLEND);
-                }
-                if (mUseColor) {
-                    GLES20.glEnableVertexAttribArray(mColorAttribId);
-                }
+            if (cullFaces && (faceSize > 1) && !mFrustum.isVisible(face.getWorldBounds(object))) {
+                mRenderStats.onFaceCulled();
+                continue;
             }
+            Shader shader = prepareShader(renderPass);
+
+            final boolean useBufferObjects = face.useBufferObjects();
 
             // Vertex
             VertexList vertexList = face.getVertexList();
-            FloatBuffer vertexBuffer = vertexList.getFloatBuffer();
-            vertexBuffer.position(0);
-            GLES20.glVertexAttribPointer(mVertexAttribId, 3, GLES20.GL_FLOAT, false, 0, vertexBuffer);
+            vertexList.setVertexAttribPointer(this, mVertexAttribId, useBufferObjects);
 
             // Texture
             if (mUseTexture) {
@@ -345,29 +708,29 @@ public abstract class OpenGLRenderer implements GLSurfaceView.Renderer {
                 if (tex == null) { // not ready yet
                     continue;
                 }
-                if (!tex.isBinded()) {
-                    tex.bindTexture();
+                tex = prepareTexture(tex);
+                mStateCache.bindTexture(tex.getId());
+                if (mAlphaTextureId >= 0) {
+                    // a texture without separate alpha (placeholder) is its own alpha
+                    mStateCache.activeTexture(GLES20.GL_TEXTURE1);
+                    mStateCache.bindTexture(tex.hasSeparateAlpha() ? tex.getAlphaId() : tex.getId());
+                    mStateCache.activeTexture(GLES20.GL_TEXTURE0);
                 }
-                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, tex.getId());
                 // UVs
                 UVList uvList = face.getUVList();
-                FloatBuffer uvBuffer = (uvList != null) ? uvList.getFloatBuffer() : null;
-                if (uvBuffer == null) {
+                if ((uvList == null) || (uvList.getFloatBuffer() == null)) {
                     continue;
                 }
-                uvBuffer.position(0);
-                GLES20.glVertexAttribPointer(mUvAttribId, 2, GLES20.GL_FLOAT, false, 0, uvBuffer);
+                uvList.setVertexAttribPointer(this, mUvAttribId, useBufferObjects);
             }
 
             // Colors
             if (mUseColor) {
                 ColorList colorList = face.getColorList();
-                FloatBuffer colorBuffer = (colorList != null) ? colorList.getFloatBuffer() : null;
-                if (colorBuffer == null) {
+                if ((colorList == null) || (colorList.getFloatBuffer() == null)) {
                     continue;
                 }
-                colorBuffer.position(0);
-                GLES20.glVertexAttribPointer(mColorAttribId, 4, GLES20.GL_FLOAT, false, 0, colorBuffer);
+                colorList.setVertexAttribPointer(this, mColorAttribId, useBufferObjects);
             }
 
             object.onPreRenderFace(this, shader, face);
@@ -375,15 +738,21 @@ public abstract class OpenGLRenderer implements GLSurfaceView.Renderer {
 
             // Transformations
             if (object.is3D()) {
-                Matrix.multiplyMM(mTmpMatrix, 0, mProj3DMatrix, 0, modelViewMatrix, 0);
+                Matrix4.multiply(mTmpMatrix, mProj3DMatrix, modelViewMatrix);
             } else {
-                Matrix.multiplyMM(mTmpMatrix, 0, mProj2DMatrix, 0, modelViewMatrix, 0);
+                Matrix4.multiply(mTmpMatrix, mProj2DMatrix, modelViewMatrix);
             }
             GLES20.glUniformMatrix4fv(mProjMatrixId, 1, false, mTmpMatrix, 0);
 
             // Render
             shader.onPreRender(this, object, face);
-            GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, vertexList.getNbElements());
+            IndexList indexList = face.getIndexList();
+            if (indexList != null) {
+                indexList.drawElements(this, useBufferObjects);
+            } else {
+                GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, vertexList.getNbElements());
+            }
+            mRenderStats.onDrawCall();
         }
 
         if (mDebugMode) {
@@ -454,7 +823,8 @@ public abstract class OpenGLRenderer implements GLSurfaceView.Renderer {
 
         mPreviousTime = 0;
         // Prevent from calling acquireResources or onViewResized twice, because onSurfaceChanged is often called twice
-        if (mInitDone && (mWidth == width) && (mHeight == height)) {
+        final boolean resized = (mWidth != width) || (mHeight != height);
+        if (mInitDone && !resized) {
             return;
         }
 
@@ -468,18 +838,19 @@ public abstract class OpenGLRenderer implements GLSurfaceView.Renderer {
 
         OpenGLView view = getListener();
         if (view != null) {
-            if (mInitDone) {
-                view.onViewResized(width, height);
-            } else {
+            if (!mResourcesAcquired) {
                 view.acquireResources();
+            } else if (resized) {
+                view.onViewResized(width, height);  // also when resumed with the resources kept
             }
         }
 
+        mResourcesAcquired = true;
         mInitDone = true;
     }
 
     private void computeProjMatrix2D(float[] matrix2D) {
-        Matrix.orthoM(matrix2D, 0, 0f, mWidth, mHeight, 0, -1f, 1f);
+        Matrix4.setOrtho(matrix2D, 0f, mWidth, mHeight, 0, -1f, 1f);
     }
 
     private void computeProjMatrix3D(float[] matrix3D) {
@@ -488,6 +859,7 @@ public abstract class OpenGLRenderer implements GLSurfaceView.Renderer {
 //		Matrix.frustumM(matrix3D, 0, -near, near, -near / ratio, near / ratio, near, 100);
 
         if (mCamera == null) {
+            mFrustum.invalidate();
             return;
         }
 
@@ -495,24 +867,19 @@ public abstract class OpenGLRenderer implements GLSurfaceView.Renderer {
         final float near = mCamera.getNear();
         final float far = mCamera.getFar();
         float ratio = (float) getWidth() / (float) getHeight();
-        Matrix.perspectiveM(matrix3D, 0, FOV, ratio, near, far);
+        Matrix4.setPerspective(mPerspectiveMatrix, FOV, ratio, near, far);
 
-        // Rotation
+        // Rotation, then translation
         float ox = -mCamera.getRotX();
         float oy = -mCamera.getRotY();
         float oz = -mCamera.getRotZ();
-        if (ox != 0)
-            Matrix.rotateM(matrix3D, 0, ox, 1, 0, 0);
-        if (oy != 0)
-            Matrix.rotateM(matrix3D, 0, oy, 0, 1, 0);
-        if (oz != 0)
-            Matrix.rotateM(matrix3D, 0, oz, 0, 0, 1);
-
-        // Translation
         float x = -mCamera.getPosX();
         float y = -mCamera.getPosY();
         float z = -mCamera.getPosZ();
-        Matrix.translateM(matrix3D, 0, x, y, z);
+        Matrix4.setRotateTranslate(mViewMatrix, ox, oy, oz, x, y, z);
+        Matrix4.multiply(matrix3D, mPerspectiveMatrix, mViewMatrix);
+
+        mFrustum.extract(matrix3D);
 
         mCamera.setDirty(false);
     }
@@ -522,8 +889,17 @@ public abstract class OpenGLRenderer implements GLSurfaceView.Renderer {
 
         mPreviousTime = 0;
 
+        mStateCache.invalidate();   // new OpenGL context
+        if (mSpriteBatch != null) {
+            mSpriteBatch.onContextLost();
+        }
+        final RenderPass[] renderPasses = mRenderPasses;
+        for (int prgIt = 0; prgIt < renderPasses.length; ++prgIt) {
+            renderPasses[prgIt].onContextLost();
+        }
+        mResourceManager.onContextCreated(this);
         gl.glClearDepthf(1.0f);
-        gl.glEnable(GL10.GL_DEPTH_TEST);
+        mStateCache.setEnabled(GLES20.GL_DEPTH_TEST, true);
         gl.glDepthFunc(GL10.GL_LEQUAL);
 
         checkDoubleSided(gl);
@@ -532,10 +908,10 @@ public abstract class OpenGLRenderer implements GLSurfaceView.Renderer {
     private void checkDoubleSided(GL10 gl) {
         if (mDoubleSided != null) {
             if (mDoubleSided.booleanValue()) {
-                gl.glDisable(GL10.GL_CULL_FACE);
+                mStateCache.setEnabled(GLES20.GL_CULL_FACE, false);
             } else {
-                gl.glEnable(GL10.GL_CULL_FACE);
-                gl.glCullFace(GL10.GL_FRONT);
+                mStateCache.setEnabled(GLES20.GL_CULL_FACE, true);
+                mStateCache.cullFace(GLES20.GL_FRONT);
             }
             mDoubleSided = null;    // applied
         }
@@ -562,23 +938,21 @@ public abstract class OpenGLRenderer implements GLSurfaceView.Renderer {
 
     }
 
+    /**
+     * OpenGL Thread only.
+     * @return the Sprites with a touch listener, in the render order of the last frame (the top most last)
+     */
     public Vector<Sprite> getToucheableSprites() {
-        Vector<Sprite> result = null;
-        if (mRenderPasses != null) {
-            result = new Vector<>();
-            for (RenderPass renderPass : mRenderPasses) {
-                Vector<RenderObject> objects = renderPass.getRenderObjects();
-                if (objects != null) {
-                    for (RenderObject object : objects) {
-                        if (object.isContainer()) {
-                            RenderObjectContainer container = (RenderObjectContainer) object;
-                            addToucheableSprites(container, result);
-                        } else if (object instanceof Sprite) {
-                            Sprite sprite = (Sprite) object;
-                            if (sprite.handlesInput()) {
-                                result.add(sprite);
-                            }
-                        }
+        Vector<Sprite> result = new Vector<>();
+        for (RenderPass renderPass : mRenderPasses) {
+            for (RenderObject object : renderPass.getRenderOrder()) {
+                if (object.isContainer()) {
+                    RenderObjectContainer container = (RenderObjectContainer) object;
+                    addToucheableSprites(container, result);
+                } else if (object instanceof Sprite) {
+                    Sprite sprite = (Sprite) object;
+                    if (sprite.handlesInput()) {
+                        result.add(sprite);
                     }
                 }
             }
@@ -587,8 +961,8 @@ public abstract class OpenGLRenderer implements GLSurfaceView.Renderer {
     }
 
     private void addToucheableSprites(RenderObjectContainer container, Vector<Sprite> result) {
-        Vector<RenderObject> objects = container.getRenderObjects();
-        if ((objects != null) && (!objects.isEmpty())) {
+        final RenderObject[] objects = container.getRenderObjectArray();
+        if (objects != null) {
             for (RenderObject object : objects) {
                 if (object.isContainer()) {
                     RenderObjectContainer subContainer = (RenderObjectContainer) object;
@@ -638,14 +1012,34 @@ public abstract class OpenGLRenderer implements GLSurfaceView.Renderer {
 //	}
 
 
-    void onPause() {
-        synchronized (this) {
-            mInitDone = false;
-//            mRenderPasses.clear();
+    /**
+     * @param keepResources true if the scene is kept for the resume, acquireResources() is not called again
+     */
+    void onPause(boolean keepResources) {
+        mInitDone = false;
+        final Simulation simulation = mSimulation;
+        if (simulation != null) {
+            simulation.setViewPaused(true);
         }
+        if (!keepResources) {
+            mResourcesAcquired = false;
+            runOnGLThread(new Runnable() {
+                @Override
+                public void run() {
+                    if (mSpriteBatch != null) {
+                        mSpriteBatch.releaseBufferObjects();
+                    }
+                }
+            });
+        }
+        mResourceManager.setRestoreOnNewContext(keepResources);
     }
 
     void onResume() {
+        final Simulation simulation = mSimulation;
+        if (simulation != null) {
+            simulation.setViewPaused(false);
+        }
     }
 
     public void setLightAmbiant(LightAmbiant lightAmbiant) {
@@ -704,13 +1098,13 @@ public abstract class OpenGLRenderer implements GLSurfaceView.Renderer {
 
     // ********************** SCREENSHOT FEATURE **********************
 
-    private OnTakeScreenshot mScreenshotListener;
-    private Handler mScreenshotHandler;
+    private volatile OnTakeScreenshot mScreenshotListener;
+    private volatile Handler mScreenshotHandler;
 
     public void takeScreenshot(OnTakeScreenshot listener) {
         synchronized (this) {
+            mScreenshotHandler = new Handler();     // before the listener, read first by the OpenGL Thread
             mScreenshotListener = listener;
-            mScreenshotHandler = new Handler();
         }
     }
 
@@ -22,6 +22,7 @@ import android.util.AttributeSet;
 /* package */ abstract class OpenGLView extends GLSurfaceView {
 
     private OpenGLRenderer mOpenGLRenderer;
+    private boolean mKeepResourcesOnPause = false;
 
     public OpenGLView(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -53,19 +54,38 @@ import android.util.AttributeSet;
         return mOpenGLRenderer;
     }
 
+    /**
+     * Keeps the scene when the view is paused: the render passes, objects and textures stay, and the resources are not
+     * released and acquired again (no onReleaseView / onPrepareView on the controller), so the resume doesn't load anything.
+     * The OpenGL context is preserved if the device allows it. Otherwise the textures and buffer objects are created
+     * again from their CPU side copies by the GLResourceManager of the renderer.
+     * Textures created from a Bitmap need recycleWhenBinded(false) to survive a context loss.
+     */
+    public void setKeepResourcesOnPause(boolean keepResourcesOnPause) {
+        mKeepResourcesOnPause = keepResourcesOnPause;
+        setPreserveEGLContextOnPause(keepResourcesOnPause);
+    }
+
+    public boolean keepsResourcesOnPause() {
+        return mKeepResourcesOnPause;
+    }
+
     public void onPreRender(OpenGLRenderer renderer) {
     }
 
+    // The OpenGL Thread is paused first (after its current frame): the renderer doesn't lock the scene during the frames
     @Override
     public void onPause() {
+        super.onPause();
         if (mOpenGLRenderer != null) {
-            mOpenGLRenderer.onPause();
+            mOpenGLRenderer.onPause(mKeepResourcesOnPause);
         }
-        releaseResources();
-        if (mOpenGLRenderer != null) {
-            mOpenGLRenderer.clearRenderPasses();
+        if (!mKeepResourcesOnPause) {
+            releaseResources();
+            if (mOpenGLRenderer != null) {
+                mOpenGLRenderer.clearRenderPasses();
+            }
         }
-        super.onPause();
     }
 
     @Override
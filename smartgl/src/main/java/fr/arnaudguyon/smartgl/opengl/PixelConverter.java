@@ -0,0 +1,72 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.opengl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Conversions of ARGB pixels (as read by Bitmap.getPixels) to the 2 bytes per pixel formats of Texture.Format.
+ * Pure Java, row by row, so that a Texture never holds a converted copy of its Bitmap.
+ */
+final class PixelConverter {
+
+    private PixelConverter() {
+    }
+
+    /**
+     * @return true if the red, green and blue of the pixels are equal, whatever their alpha
+     */
+    static boolean isGrey(int[] pixels, int count) {
+        for (int i = 0; i < count; ++i) {
+            final int color = pixels[i];
+            final int green = (color >> 8) & 0xFF;
+            if ((((color >> 16) & 0xFF) != green) || ((color & 0xFF) != green)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Puts the grey level and the alpha of the pixels, the grey premultiplied by the alpha as the Bitmaps uploaded
+     * by GLUtils. For GL_LUMINANCE_ALPHA, GL_UNSIGNED_BYTE.
+     */
+    static void putLuminanceAlpha(int[] pixels, int count, ByteBuffer buffer) {
+        for (int i = 0; i < count; ++i) {
+            final int alpha = pixels[i] >>> 24;
+            final int luminance = (pixels[i] >> 8) & 0xFF;
+            buffer.put((byte) ((luminance * alpha + 127) / 255));
+            buffer.put((byte) alpha);
+        }
+    }
+
+    /**
+     * Puts the colors of the pixels in 5, 6 and 5 bits (rounded), alpha ignored, in the order of the buffer.
+     * For GL_RGB, GL_UNSIGNED_SHORT_5_6_5.
+     */
+    static void putRgb565(int[] pixels, int count, ByteBuffer buffer) {
+        for (int i = 0; i < count; ++i) {
+            buffer.putShort(toRgb565(pixels[i]));
+        }
+    }
+
+    static short toRgb565(int color) {
+        final int red = (((color >> 16) & 0xFF) * 31 + 127) / 255;
+        final int green = (((color >> 8) & 0xFF) * 63 + 127) / 255;
+        final int blue = ((color & 0xFF) * 31 + 127) / 255;
+        return (short) ((red << 11) | (green << 5) | blue);
+    }
+}
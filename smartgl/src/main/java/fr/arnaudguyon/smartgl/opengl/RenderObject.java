@@ -15,25 +15,48 @@
  */
 package fr.arnaudguyon.smartgl.opengl;
 
+import java.util.Arrays;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
-import android.opengl.Matrix;
+import fr.arnaudguyon.smartgl.math.Matrix4;
+import fr.arnaudguyon.smartgl.tools.Assert;
 
 public abstract class RenderObject implements IShaderTextureFade {
 
+    static final int TRANSFORM_SIZE = 9;    // position, rotation and scale on the 3 axes
+
+    private static final AtomicInteger sParentVersions = new AtomicInteger();   // unique version of each parent change
+    private static final AtomicReferenceFieldUpdater<RenderObject, RenderObjectContainer> PARENT_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(RenderObject.class, RenderObjectContainer.class, "mParent");
+
 	private boolean mIs3D;
 	private boolean mVisible;
 	private Vector<Face3D> mFaces;
 	private float[] mMatrix;
+    private float[] mWorldMatrix;   // parent world matrix * mMatrix, only used with a parent
+    private volatile RenderObjectContainer mParent;     // changed by any thread, with compare and set
+    private volatile int mParentVersion;                // changed after mParent
+    private RenderObjectContainer mMatrixParent;        // mParent used to compute mWorldMatrix
+    private int mMatrixParentVersion;                   // mParentVersion used to compute mWorldMatrix
     private float mAlpha = 1;
     private boolean mInvalidMatrix = true;
+    private boolean mInvalidWorldMatrix = true;  // if true, the world matrices of all the children are invalid too
+    private int mMatrixVersion;     // incremented each time the world matrix is computed
+    private BoundingVolume mBounds;
+    private int mBoundsMatrixVersion;   // mMatrixVersion used to compute mBounds
+    private int mBoundsFacesVersion;    // hash of the faces bounds versions used to compute mBounds
+    private long mSortKey;  // computed by the RenderPass before sorting
+    private volatile boolean mSimulated;    // the transform belongs to the Simulation thread
+    private float[] mRenderTransform;       // OpenGL Thread, transform interpolated by the Simulation
 
 	public RenderObject(boolean is3D) {
 		mIs3D = is3D;
 		mFaces = new Vector<Face3D>();
 		mMatrix = new float[16];
 		mVisible = true;
-		Matrix.setIdentityM(mMatrix, 0);
+		Matrix4.setIdentity(mMatrix);
 	}
 	
 	public final boolean is3D() {
@@ -63,6 +86,28 @@ public abstract class RenderObject implements IShaderTextureFade {
 		mFaces.add(face);
 	}
 
+	/**
+	 * Sets the GPU resident mode on all the faces of the object
+	 * @see Face3D#setUseBufferObjects(boolean)
+	 */
+	public final void setUseBufferObjects(boolean useBufferObjects) {
+		final int faceSize = mFaces.size();
+		for (int faceIt = 0; faceIt < faceSize; ++faceIt) {
+			mFaces.get(faceIt).setUseBufferObjects(useBufferObjects);
+		}
+	}
+
+	/**
+	 * OpenGL Thread only. Creates the buffer objects of the faces in GPU resident mode, so that the first draw
+	 * of the object doesn't upload them.
+	 */
+	public final void createBufferObjects(OpenGLRenderer renderer) {
+		final int faceSize = mFaces.size();
+		for (int faceIt = 0; faceIt < faceSize; ++faceIt) {
+			mFaces.get(faceIt).createBufferObjects(renderer);
+		}
+	}
+
 //	protected final float[] getMatrixArray() {
 //		return mMatrix;
 //	}
@@ -73,16 +118,199 @@ public abstract class RenderObject implements IShaderTextureFade {
 
 	abstract protected void computeMatrix(float[] matrix);
 
+    /**
+     * @return true if getTransform() and computeTransformMatrix() are implemented, so that a Simulation can move
+     * the object. Checked by Simulation.add(), on the caller's thread.
+     */
+    protected boolean canBeSimulated() {
+        return false;
+    }
+
+    /**
+     * Used by the Simulation after each step: writes the position, the rotation in degrees and the scale
+     * on the 3 axes at transform[offset]
+     */
+    protected void getTransform(float[] transform, int offset) {
+        Assert.assertTrue(getClass().getSimpleName() + " can't be simulated", false);
+    }
+
+    /**
+     * Same as computeMatrix(), with a transform written by getTransform() instead of the current one
+     */
+    protected void computeTransformMatrix(float[] transform, float[] matrix) {
+        Assert.assertTrue(getClass().getSimpleName() + " can't be simulated", false);
+    }
+
+    /**
+     * @return the world matrix: the matrix of the parent container multiplied by the local matrix, computed again only
+     * if the object or one of its parents moved
+     */
     public float[] getMatrix() {
+        if (!isMatrixValid()) {
+            updateMatrix(null);
+        }
+        return (mMatrixParent != null) ? mWorldMatrix : mMatrix;
+    }
+
+    /**
+     * @return the matrix of the object relative to its parent container, the world matrix if it has no parent
+     */
+    public final float[] getLocalMatrix() {
         if (mInvalidMatrix) {
-            computeMatrix(mMatrix);
+            if (mRenderTransform != null) {
+                computeTransformMatrix(mRenderTransform, mMatrix);
+            } else {
+                computeMatrix(mMatrix);
+            }
             mInvalidMatrix = false;
         }
         return mMatrix;
     }
 
     protected void invalidMatrix() {
+        if (mSimulated) {
+            return;     // moved by the Simulation thread, invalidated by setRenderTransform() on the OpenGL Thread
+        }
         mInvalidMatrix = true;
+        invalidWorldMatrix();
+    }
+
+    final void setSimulated(boolean simulated) {
+        mSimulated = simulated;
+    }
+
+    // OpenGL Thread, set by the Simulation at the start of each frame
+    final void setRenderTransform(float[] transform) {
+        if (mRenderTransform == null) {
+            mRenderTransform = new float[TRANSFORM_SIZE];
+        } else if (Arrays.equals(mRenderTransform, transform)) {
+            return;
+        }
+        System.arraycopy(transform, 0, mRenderTransform, 0, TRANSFORM_SIZE);
+        mInvalidMatrix = true;
+        invalidWorldMatrix();
+    }
+
+    // OpenGL Thread, the object is not simulated anymore
+    final void clearRenderTransform() {
+        mRenderTransform = null;
+        mInvalidMatrix = true;
+        invalidWorldMatrix();
+    }
+
+    // the subtree below an invalid world matrix is already invalid: only the valid part is visited
+    final void invalidWorldMatrix() {
+        if (mInvalidWorldMatrix) {
+            return;
+        }
+        mInvalidWorldMatrix = true;
+        if (isContainer()) {
+            final RenderObject[] children = ((RenderObjectContainer) this).getChildArray();
+            for (int childIt = 0; childIt < children.length; ++childIt) {
+                children[childIt].invalidWorldMatrix();
+            }
+        }
+    }
+
+    // also invalid once added to or removed from a container, which can happen on any thread
+    final boolean isMatrixValid() {
+        return !mInvalidWorldMatrix && (mMatrixParentVersion == mParentVersion);
+    }
+
+    final boolean isLocalMatrixValid() {
+        return !mInvalidMatrix;
+    }
+
+    /**
+     * Computes the local matrix if invalid, then the world matrix. The parents are computed first if invalid.
+     * @param stats counts the matrices computed, can be null
+     */
+    final void updateMatrix(RenderStats stats) {
+        final int parentVersion = mParentVersion;   // read before the parent: a later change invalidates the matrix
+        final RenderObjectContainer parent = mParent;
+        final boolean localComputed = mInvalidMatrix;
+        float[] localMatrix = getLocalMatrix();
+        if (parent != null) {
+            if (mWorldMatrix == null) {
+                mWorldMatrix = new float[16];
+            }
+            Matrix4.multiply(mWorldMatrix, parent.getMatrix(), localMatrix);
+        }
+        if ((parentVersion != mMatrixParentVersion) && isContainer()) {
+            // moved to another container: the subtree is invalidated here, not by the thread which moved it
+            final RenderObject[] children = ((RenderObjectContainer) this).getChildArray();
+            for (int childIt = 0; childIt < children.length; ++childIt) {
+                children[childIt].invalidWorldMatrix();
+            }
+        }
+        mMatrixParent = parent;
+        mMatrixParentVersion = parentVersion;
+        mInvalidWorldMatrix = false;
+        ++mMatrixVersion;
+        if (stats != null) {
+            stats.onMatrixComputed(localComputed);
+        }
+    }
+
+    /**
+     * @return the container of the object, or null at the top of the render pass
+     */
+    public final RenderObjectContainer getParent() {
+        return mParent;
+    }
+
+    // RenderObjectContainer.addChild(), any thread. False if the object is already in a container.
+    final boolean claimParent(RenderObjectContainer parent) {
+        if (!PARENT_UPDATER.compareAndSet(this, null, parent)) {
+            return false;
+        }
+        mParentVersion = sParentVersions.incrementAndGet();
+        return true;
+    }
+
+    // RenderObjectContainer.removeChild(), any thread
+    final void releaseParent(RenderObjectContainer parent) {
+        if (PARENT_UPDATER.compareAndSet(this, parent, null)) {
+            mParentVersion = sParentVersions.incrementAndGet();
+        }
+    }
+
+    final int getMatrixVersion() {
+        return mMatrixVersion;
+    }
+
+    /**
+     * @return the bounding volume of all the faces, in world space (transformed by getMatrix())
+     * Only merged again when the matrix, the faces or their bounds have changed.
+     */
+    public final BoundingVolume getBounds() {
+        getMatrix();    // computes the matrix first, so that the version is up to date
+        final int faceSize = mFaces.size();
+        int facesVersion = faceSize;
+        for (int faceIt = 0; faceIt < faceSize; ++faceIt) {
+            facesVersion = facesVersion * 31 + mFaces.get(faceIt).getBoundsVersion();
+        }
+        if ((mBounds != null) && (mBoundsMatrixVersion == mMatrixVersion) && (mBoundsFacesVersion == facesVersion)) {
+            return mBounds;
+        }
+        if (mBounds == null) {
+            mBounds = new BoundingVolume();
+        }
+        mBounds.clear();
+        for (int faceIt = 0; faceIt < faceSize; ++faceIt) {
+            mBounds.merge(mFaces.get(faceIt).getWorldBounds(this));
+        }
+        mBoundsMatrixVersion = mMatrixVersion;
+        mBoundsFacesVersion = facesVersion;
+        return mBounds;
+    }
+
+    final long getSortKey() {
+        return mSortKey;
+    }
+
+    final void setSortKey(long sortKey) {
+        mSortKey = sortKey;
     }
 
 	public void forceReleaseAll() {
@@ -124,6 +352,14 @@ public abstract class RenderObject implements IShaderTextureFade {
 	// always called, even if object is hidden
 	public void tick(OpenGLRenderer renderer) {}
 
+	/**
+	 * @return true if tick() only changes this object, so that it can run on a worker thread of the UpdatePool
+	 * at the same time as the ticks of other objects. False by default: ticked on the OpenGL Thread.
+	 */
+	public boolean isParallelSafe() {
+		return false;
+	}
+
 	public boolean shouldDisplay(OpenGLRenderer renderer) {
 		return mVisible;
 	}
@@ -148,6 +384,6 @@ public abstract class RenderObject implements IShaderTextureFade {
         result4f[1] = localY;
         result4f[2] = localZ;
         result4f[3] = 1;
-        Matrix.multiplyMV(result4f, 0, rectMatrix, 0, result4f, 0);
+        Matrix4.multiplyVector(result4f, rectMatrix, result4f);
     }
 }
@@ -15,10 +15,31 @@
  */
 package fr.arnaudguyon.smartgl.opengl;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicReference;
 
+import fr.arnaudguyon.smartgl.tools.Assert;
+
+/**
+ * Object containing other objects (Sprites, Object3D, other containers), transformed by the matrix of the container:
+ * the world matrix of a child is the one of its parent multiplied by its own matrix.
+ * Moving a container only invalidates the world matrices of its subtree, they are computed again once, when rendered.
+ * The transforms are changed on the OpenGL Thread (in tick() or with OpenGLRenderer.runOnGLThread()). The children
+ * can be added and removed from any thread: the list is copied on change and replaced with a compare and set, so an
+ * object can be added or removed while the container is rendered, and concurrent changes are never lost.
+ */
 public class RenderObjectContainer extends RenderObject {
-	
+
+	private static final RenderObject[] NO_CHILDREN = new RenderObject[0];
+
+	private final AtomicReference<RenderObject[]> mChildren = new AtomicReference<>(NO_CHILDREN);	// replaced, never modified
+	private float mPosX, mPosY, mPosZ;
+	private float mRotX, mRotY, mRotZ;
+	private float mScaleX = 1, mScaleY = 1, mScaleZ = 1;
+
 	public RenderObjectContainer( boolean is3d) {
 		super(is3d);
 	}
@@ -28,11 +49,155 @@ public class RenderObjectContainer extends RenderObject {
 		return true;
 	}
 
+	/**
+	 * Any thread. Adds the object to the container, it must not be in another container nor in a RenderPass
+	 */
+	public void addChild(RenderObject child) {
+		for (RenderObjectContainer parent = this; parent != null; parent = parent.getParent()) {
+			Assert.assertTrue("A container can't contain itself", parent != child);
+		}
+		Assert.assertTrue("Already in a container", child.claimParent(this));
+		RenderObject[] children;
+		RenderObject[] newChildren;
+		do {
+			children = mChildren.get();
+			newChildren = Arrays.copyOf(children, children.length + 1);
+			newChildren[children.length] = child;
+		} while (!mChildren.compareAndSet(children, newChildren));
+	}
+
+	/**
+	 * Any thread
+	 */
+	public void removeChild(RenderObject child) {
+		RenderObject[] children;
+		RenderObject[] newChildren;
+		do {
+			children = mChildren.get();
+			final int index = Arrays.asList(children).indexOf(child);
+			if (index < 0) {
+				return;
+			}
+			newChildren = new RenderObject[children.length - 1];
+			System.arraycopy(children, 0, newChildren, 0, index);
+			System.arraycopy(children, index + 1, newChildren, index, children.length - index - 1);
+		} while (!mChildren.compareAndSet(children, newChildren));
+		child.releaseParent(this);
+	}
+
+	public final List<RenderObject> getChildren() {
+		return Collections.unmodifiableList(Arrays.asList(mChildren.get()));
+	}
+
+	final RenderObject[] getChildArray() {
+		return mChildren.get();
+	}
+
+	final public void setPos(float x, float y, float z) {
+		mPosX = x;
+		mPosY = y;
+		mPosZ = z;
+		invalidMatrix();
+	}
+
+	final public float getPosX() {
+		return mPosX;
+	}
+
+	final public float getPosY() {
+		return mPosY;
+	}
+
+	final public float getPosZ() {
+		return mPosZ;
+	}
+
+	/**
+	 * Angles in degrees, applied in the order x, y, z. Only z for 2D containers.
+	 */
+	final public void setRotation(float x, float y, float z) {
+		mRotX = (x % 360f);
+		mRotY = (y % 360f);
+		mRotZ = (z % 360f);
+		invalidMatrix();
+	}
+
+	final public float getRotX() {
+		return mRotX;
+	}
+
+	final public float getRotY() {
+		return mRotY;
+	}
+
+	final public float getRotZ() {
+		return mRotZ;
+	}
+
+	final public void setScale(float x, float y, float z) {
+		mScaleX = x;
+		mScaleY = y;
+		mScaleZ = z;
+		invalidMatrix();
+	}
+
+	final public float getScaleX() {
+		return mScaleX;
+	}
+
+	final public float getScaleY() {
+		return mScaleY;
+	}
+
+	final public float getScaleZ() {
+		return mScaleZ;
+	}
+
     @Override
     protected void computeMatrix(float[] matrix) {
-
+		Object3D.computeMatrix(matrix, mPosX, mPosY, mPosZ, mRotX, mRotY, mRotZ, mScaleX, mScaleY, mScaleZ);
     }
 
+	@Override
+	protected boolean canBeSimulated() {
+		return true;
+	}
+
+	@Override
+	protected void getTransform(float[] transform, int offset) {
+		transform[offset] = mPosX;
+		transform[offset + 1] = mPosY;
+		transform[offset + 2] = mPosZ;
+		transform[offset + 3] = mRotX;
+		transform[offset + 4] = mRotY;
+		transform[offset + 5] = mRotZ;
+		transform[offset + 6] = mScaleX;
+		transform[offset + 7] = mScaleY;
+		transform[offset + 8] = mScaleZ;
+	}
+
+	@Override
+	protected void computeTransformMatrix(float[] transform, float[] matrix) {
+		Object3D.computeMatrix(matrix, transform[0], transform[1], transform[2], transform[3], transform[4], transform[5],
+				transform[6], transform[7], transform[8]);
+	}
+
+	/**
+	 * @return the objects rendered in the container, its children by default. Not modified by the renderer.
+	 */
+    protected RenderObject[] getRenderObjectArray() {
+		final Vector<RenderObject> objects = getRenderObjects();
+		if (objects != null) {	// subclass still overriding the deprecated method
+			return objects.toArray(new RenderObject[objects.size()]);
+		}
+		return mChildren.get();
+	}
+
+	/**
+	 * @return the objects rendered instead of the children, null by default
+	 * @deprecated override getRenderObjectArray(), or add the objects with addChild()
+	 */
+	@Deprecated
     protected Vector<RenderObject> getRenderObjects() {
 		return null;
 	}
@@ -15,18 +15,45 @@
  */
 package fr.arnaudguyon.smartgl.opengl;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Collection;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import android.opengl.GLES20;
 
 import fr.arnaudguyon.smartgl.tools.Assert;
 
+/**
+ * Objects rendered with the same Shader. The objects can be added and removed from any thread without lock:
+ * the changes are queued, and applied by the renderer before rendering the pass. The list is then copied,
+ * so a list being rendered is never modified.
+ */
 public class RenderPass {
 	private final static int NOPROGRAM = 0;
+	private final static RenderObject[] NO_OBJECTS = new RenderObject[0];
+
+	// change of the list, queued until the next render of the pass
+	private static class Change {
+		final RenderObject mAdded;
+		final RenderObject mRemoved;
+		final boolean mClear;
+
+		Change(RenderObject added, RenderObject removed, boolean clear) {
+			mAdded = added;
+			mRemoved = removed;
+			mClear = clear;
+		}
+	}
 
 	private int mProgramId = NOPROGRAM;
 	private Shader mShaders;
-	private Vector<RenderObject> mRenderObjects = new Vector<>();
+	private final ConcurrentLinkedQueue<Change> mChanges = new ConcurrentLinkedQueue<>();
+	private volatile RenderObject[] mRenderObjects = NO_OBJECTS;	// replaced, never modified
+	private RenderObject[] mRenderOrder = NO_OBJECTS;	// OpenGL Thread only, copy of mRenderObjects sorted by the pass
 	private boolean mUseZBuffer = false;
 	private boolean mClearZBuffer = false;
 	
@@ -53,8 +80,78 @@ public class RenderPass {
 		}
 	}
 
+	// The program was deleted with the OpenGL context, it's loaded again before the next render
+	/* package */ void onContextLost() {
+		mProgramId = NOPROGRAM;
+		if (mShaders != null) {
+			mShaders.onContextLost();
+		}
+	}
+
+	/**
+	 * @return the objects of the pass when last rendered, in the order they were added. Can't be modified: use
+	 * addRenderObject() and removeRenderObject().
+	 */
+	public List<RenderObject> getRenderObjectsSnapshot() {
+		return Collections.unmodifiableList(Arrays.asList(mRenderObjects));
+	}
+
+	/**
+	 * @return a copy of the objects of the pass when last rendered. Modifying it asserts, as the pass wouldn't change.
+	 * @deprecated use getRenderObjectsSnapshot() to read the objects, addRenderObject() and removeRenderObject() to
+	 * change them.
+	 */
+	@Deprecated
 	public Vector<RenderObject> getRenderObjects() {
-		return mRenderObjects;
+		return new ReadOnlyVector(mRenderObjects);
+	}
+
+	/**
+	 * Any thread. The object is rendered from the next frame.
+	 */
+	public void addRenderObject(RenderObject object) {
+		Assert.assertNotNull(object);
+		mChanges.add(new Change(object, null, false));
+	}
+
+	/**
+	 * Any thread. The object is not rendered anymore from the next frame.
+	 */
+	public void removeRenderObject(RenderObject object) {
+		mChanges.add(new Change(null, object, false));
+	}
+
+	/**
+	 * OpenGL Thread only. Applies the queued changes, in their order.
+	 * @return true if the list changed
+	 */
+	/* package */ boolean applyChanges() {
+		Change change = mChanges.poll();
+		if (change == null) {
+			return false;
+		}
+		ArrayList<RenderObject> objects = new ArrayList<>(Arrays.asList(mRenderObjects));
+		while (change != null) {
+			if (change.mClear) {
+				objects.clear();
+			} else if (change.mAdded != null) {
+				objects.add(change.mAdded);
+			} else {
+				objects.remove(change.mRemoved);
+			}
+			change = mChanges.poll();
+		}
+		RenderObject[] renderObjects = objects.toArray(new RenderObject[objects.size()]);
+		mRenderObjects = renderObjects;
+		mRenderOrder = renderObjects.clone();
+		return true;
+	}
+
+	/**
+	 * OpenGL Thread only. The objects in their render order, sorted in place by sortObjects().
+	 */
+	/* package */ final RenderObject[] getRenderOrder() {
+		return mRenderOrder;
 	}
 
 	public boolean useZBuffer() {
@@ -65,8 +162,11 @@ public class RenderPass {
 		return mClearZBuffer;
 	}
 
+	/**
+	 * Any thread. The pass is empty from the next frame.
+	 */
 	public void clearObjects() {
-		mRenderObjects.clear();
+		mChanges.add(new Change(null, null, true));
 	}
 
 	public RenderPass() {
@@ -90,15 +190,131 @@ public class RenderPass {
 		return mShaders;
 	}
 
+	/**
+	 * OpenGL Thread only. Releases the objects, and removes them from the pass.
+	 */
 	public void releaseResources() {
-		final int renderSize = mRenderObjects.size();
-		for (int renderIt = 0; renderIt < renderSize; ++renderIt) {
-			RenderObject renderObject = mRenderObjects.get(renderIt);
-			renderObject.releaseResources();
+		applyChanges();
+		final RenderObject[] renderObjects = mRenderObjects;
+		for (int renderIt = 0; renderIt < renderObjects.length; ++renderIt) {
+			renderObjects[renderIt].releaseResources();
 		}
-		mRenderObjects.clear();
+		mRenderObjects = NO_OBJECTS;
+		mRenderOrder = NO_OBJECTS;
 	}
 
-    /* package */ void sortObjects() {}
+    /* package */ void sortObjects(OpenGLRenderer renderer) {}
+
+    /* package */ boolean isBatchMode() {
+        return false;
+    }
+
+	// returned by the deprecated getRenderObjects(), which used to return the list of the pass itself
+	private static class ReadOnlyVector extends Vector<RenderObject> {
+
+		private static final String MESSAGE = "RenderPass.getRenderObjects() is a copy, use addRenderObject() and removeRenderObject()";
+
+		ReadOnlyVector(RenderObject[] objects) {
+			super(Arrays.asList(objects));
+		}
+
+		private static void onMutation() {
+			Assert.assertTrue(MESSAGE, false);
+		}
+
+		@Override
+		public synchronized boolean add(RenderObject object) {
+			onMutation();
+			return false;
+		}
+
+		@Override
+		public void add(int index, RenderObject object) {
+			onMutation();
+		}
+
+		@Override
+		public synchronized void addElement(RenderObject object) {
+			onMutation();
+		}
+
+		@Override
+		public synchronized void insertElementAt(RenderObject object, int index) {
+			onMutation();
+		}
+
+		@Override
+		public synchronized boolean addAll(Collection<? extends RenderObject> objects) {
+			onMutation();
+			return false;
+		}
+
+		@Override
+		public synchronized boolean addAll(int index, Collection<? extends RenderObject> objects) {
+			onMutation();
+			return false;
+		}
+
+		@Override
+		public synchronized RenderObject set(int index, RenderObject object) {
+			onMutation();
+			return null;
+		}
+
+		@Override
+		public synchronized void setElementAt(RenderObject object, int index) {
+			onMutation();
+		}
+
+		@Override
+		public boolean remove(Object object) {
+			onMutation();
+			return false;
+		}
+
+		@Override
+		public synchronized RenderObject remove(int index) {
+			onMutation();
+			return null;
+		}
+
+		@Override
+		public synchronized boolean removeElement(Object object) {
+			onMutation();
+			return false;
+		}
+
+		@Override
+		public synchronized void removeElementAt(int index) {
+			onMutation();
+		}
+
+		@Override
+		public synchronized boolean removeAll(Collection<?> objects) {
+			onMutation();
+			return false;
+		}
+
+		@Override
+		public synchronized boolean retainAll(Collection<?> objects) {
+			onMutation();
+			return false;
+		}
+
+		@Override
+		public synchronized void removeAllElements() {
+			onMutation();
+		}
+
+		@Override
+		public void clear() {
+			onMutation();
+		}
+
+		@Override
+		public synchronized void setSize(int newSize) {
+			onMutation();
+		}
+	}
 
 }
@@ -15,6 +15,10 @@
  */
 package fr.arnaudguyon.smartgl.opengl;
 
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Vector;
+
 /**
  * Created by arnaud on 20/11/2016.
  */
@@ -29,6 +33,19 @@ public class RenderPassObject3D extends RenderPass {
         SHADER_COLOR_LIGHTS
     }
 
+    /**
+     * Order of the objects in the pass. The Shader is the same for the whole pass, so objects are sorted
+     * by texture to reduce the texture binds, and / or by depth (front to back) to reduce the overdraw.
+     */
+    public enum SortMode {
+        NONE,
+        TEXTURE,
+        DEPTH,
+        TEXTURE_THEN_DEPTH
+    }
+
+    private SortMode mSortMode = SortMode.NONE;
+
     public RenderPassObject3D() {
         super(true, true);
         setShader(ShaderType.SHADER_TEXTURE);
@@ -65,6 +82,77 @@ public class RenderPassObject3D extends RenderPass {
     }
 
     public void addObject(Object3D object3D) {
-        getRenderObjects().add(object3D);
+        addRenderObject(object3D);
+    }
+
+    /**
+     * @param sortMode how to sort the objects before each render, NONE (default) keeps the order of the list
+     */
+    public void setSortMode(SortMode sortMode) {
+        mSortMode = (sortMode != null) ? sortMode : SortMode.NONE;
     }
+
+    public SortMode getSortMode() {
+        return mSortMode;
+    }
+
+    @Override
+    void sortObjects(OpenGLRenderer renderer) {
+        if (mSortMode == SortMode.NONE) {
+            return;
+        }
+        final boolean sortTexture = (mSortMode == SortMode.TEXTURE) || (mSortMode == SortMode.TEXTURE_THEN_DEPTH);
+        final boolean sortDepth = (mSortMode == SortMode.DEPTH) || (mSortMode == SortMode.TEXTURE_THEN_DEPTH);
+        final float[] projMatrix = renderer.getProjection3DMatrix();
+
+        final RenderObject[] objects = getRenderOrder();
+        final int objectSize = objects.length;
+        for (int i = 0; i < objectSize; ++i) {
+            RenderObject object = objects[i];
+            long key = 0;
+            if (sortTexture) {
+                key = ((long) getTextureId(object)) << 32;
+            }
+            if (sortDepth) {
+                key |= getDepthBits(object, projMatrix);
+            }
+            object.setSortKey(key);
+        }
+        Arrays.sort(objects, SORT_KEY_COMPARATOR);    // stable, objects with the same key keep their order
+    }
+
+    // texture of the first face, 0 if none or not binded yet
+    private static int getTextureId(RenderObject object) {
+        Vector<Face3D> faces = object.getFaces();
+        if ((faces != null) && !faces.isEmpty()) {
+            Texture texture = faces.get(0).getTexture();
+            if (texture != null) {
+                return texture.getId() & 0x7FFFFFFF;
+            }
+        }
+        return 0;
+    }
+
+    // w of the object position in clip space = distance along the camera axis.
+    // For positive floats, the bits have the same order as the values.
+    private static long getDepthBits(RenderObject object, float[] projMatrix) {
+        final float[] matrix = object.getMatrix();
+        final float x = matrix[12];
+        final float y = matrix[13];
+        final float z = matrix[14];
+        float depth = projMatrix[3] * x + projMatrix[7] * y + projMatrix[11] * z + projMatrix[15];
+        if (!(depth > 0)) {    // behind the camera, or NaN
+            depth = 0;
+        }
+        return Float.floatToIntBits(depth) & 0xFFFFFFFFL;
+    }
+
+    private static final Comparator<RenderObject> SORT_KEY_COMPARATOR = new Comparator<RenderObject>() {
+        @Override
+        public int compare(RenderObject leftO, RenderObject rightO) {
+            final long left = leftO.getSortKey();
+            final long right = rightO.getSortKey();
+            return (left < right) ? -1 : ((left == right) ? 0 : 1);
+        }
+    };
 }
@@ -15,9 +15,8 @@
  */
 package fr.arnaudguyon.smartgl.opengl;
 
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.Vector;
 
 /**
  * Created by arnaud on 20/11/2016.
@@ -25,20 +24,37 @@ import java.util.Vector;
 
 public class RenderPassSprite extends RenderPass {
 
+    private boolean mBatchMode = false;
+
     public RenderPassSprite() {
         super(false, false);
         ShaderTexture shader = new ShaderTexture();
         setShader(shader);
     }
 
+    /**
+     * In batch mode, the Sprites are transformed on CPU side and sent in a single vertex stream,
+     * with one draw call for each run of consecutive Sprites sharing the same Texture.
+     * The display priority order is kept. Only used with a Shader.isBatchable() shader (ShaderTexture): with the other
+     * shaders, which set uniforms per object in Shader.onPreRender(), the sprites are drawn one by one.
+     * @param batchMode true to enable the batch mode
+     */
+    public void setBatchMode(boolean batchMode) {
+        mBatchMode = batchMode;
+    }
+
+    @Override
+    boolean isBatchMode() {
+        return mBatchMode;
+    }
+
     public void addSprite(Sprite sprite) {
-        getRenderObjects().add(sprite);
+        addRenderObject(sprite);
     }
 
     @Override
-    void sortObjects() {
-        Vector<RenderObject> objects = getRenderObjects();
-        Collections.sort(objects, SPRITE_COMPARATOR);
+    void sortObjects(OpenGLRenderer renderer) {
+        Arrays.sort(getRenderOrder(), SPRITE_COMPARATOR);
     }
 
     private static final Comparator<RenderObject> SPRITE_COMPARATOR = new Comparator<RenderObject>() {
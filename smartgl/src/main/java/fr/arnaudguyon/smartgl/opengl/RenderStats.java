@@ -0,0 +1,173 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.opengl;
+
+/**
+ * Counters filled by the OpenGLRenderer during a frame.
+ * OpenGLRenderer.getRenderStats() returns the values of the last complete frame.
+ */
+public class RenderStats {
+
+    private int mDrawCalls;
+    private int mBufferUploads;
+    private int mBufferUploadBytes;
+    private int mTextureUploads;
+    private int mTextureUploadBytes;
+    private int mStateCallsIssued;
+    private int mStateCallsSuppressed;
+    private int mObjectsCulled;
+    private int mFacesCulled;
+    private int mMatricesComputed;
+    private int mLocalMatricesComputed;
+
+    public int getDrawCalls() {
+        return mDrawCalls;
+    }
+
+    /**
+     * @return number of glBufferData / glBufferSubData calls (vertex and index buffers)
+     */
+    public int getBufferUploads() {
+        return mBufferUploads;
+    }
+
+    public int getBufferUploadBytes() {
+        return mBufferUploadBytes;
+    }
+
+    /**
+     * @return number of textures uploaded, or stripes of textures decoded by a TextureLoader
+     */
+    public int getTextureUploads() {
+        return mTextureUploads;
+    }
+
+    public int getTextureUploadBytes() {
+        return mTextureUploadBytes;
+    }
+
+    /**
+     * @return number of OpenGL state calls (program, texture, buffer, attribute array, blend / depth / cull) sent to OpenGL
+     */
+    public int getStateCallsIssued() {
+        return mStateCallsIssued;
+    }
+
+    /**
+     * @return number of OpenGL state calls filtered because the state was already set
+     */
+    public int getStateCallsSuppressed() {
+        return mStateCallsSuppressed;
+    }
+
+    /**
+     * @return number of 3D objects not drawn because outside of the camera frustum
+     */
+    public int getObjectsCulled() {
+        return mObjectsCulled;
+    }
+
+    /**
+     * @return number of faces not drawn because outside of the camera frustum (inside a visible object)
+     */
+    public int getFacesCulled() {
+        return mFacesCulled;
+    }
+
+    /**
+     * @return number of world matrices computed again by the renderer, because the objects or their parents moved
+     */
+    public int getMatricesComputed() {
+        return mMatricesComputed;
+    }
+
+    /**
+     * @return number of local matrices computed again by the renderer (position, rotation or scale changed)
+     */
+    public int getLocalMatricesComputed() {
+        return mLocalMatricesComputed;
+    }
+
+    void onDrawCall() {
+        ++mDrawCalls;
+    }
+
+    void onBufferUpload(int bytes) {
+        ++mBufferUploads;
+        mBufferUploadBytes += bytes;
+    }
+
+    void onTextureUpload(int bytes) {
+        ++mTextureUploads;
+        mTextureUploadBytes += bytes;
+    }
+
+    void onStateCall(boolean issued) {
+        if (issued) {
+            ++mStateCallsIssued;
+        } else {
+            ++mStateCallsSuppressed;
+        }
+    }
+
+    void onObjectCulled() {
+        ++mObjectsCulled;
+    }
+
+    void onFaceCulled() {
+        ++mFacesCulled;
+    }
+
+    void onMatrixComputed(boolean localComputed) {
+        ++mMatricesComputed;
+        if (localComputed) {
+            ++mLocalMatricesComputed;
+        }
+    }
+
+    void onMatricesComputed(int matrices, int localMatrices) {
+        mMatricesComputed += matrices;
+        mLocalMatricesComputed += localMatrices;
+    }
+
+    void copyFrom(RenderStats other) {
+        mDrawCalls = other.mDrawCalls;
+        mBufferUploads = other.mBufferUploads;
+        mBufferUploadBytes = other.mBufferUploadBytes;
+        mTextureUploads = other.mTextureUploads;
+        mTextureUploadBytes = other.mTextureUploadBytes;
+        mStateCallsIssued = other.mStateCallsIssued;
+        mStateCallsSuppressed = other.mStateCallsSuppressed;
+        mObjectsCulled = other.mObjectsCulled;
+        mFacesCulled = other.mFacesCulled;
+        mMatricesComputed = other.mMatricesComputed;
+        mLocalMatricesComputed = other.mLocalMatricesComputed;
+    }
+
+    public void reset() {
+        mDrawCalls = 0;
+        mBufferUploads = 0;
+        mBufferUploadBytes = 0;
+        mTextureUploads = 0;
+        mTextureUploadBytes = 0;
+        mStateCallsIssued = 0;
+        mStateCallsSuppressed = 0;
+        mObjectsCulled = 0;
+        mFacesCulled = 0;
+        mMatricesComputed = 0;
+        mLocalMatricesComputed = 0;
+    }
+}
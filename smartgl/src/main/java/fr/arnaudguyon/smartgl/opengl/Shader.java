@@ -34,6 +34,7 @@ abstract public class Shader {
 	private int mUVAttribId;
 	private int mColorAttribId;
 	private int mProjMatrixId;
+	private int mAlphaTextureId = -1;
 
 	private Shader() {
 	}
@@ -65,6 +66,12 @@ abstract public class Shader {
 		}
 	}
 	
+	// The shaders were deleted with the OpenGL context
+	void onContextLost() {
+		mVertexScriptId = NOSHADER;
+		mPixelScriptId = NOSHADER;
+	}
+
 	public int getVertexScriptId() {
 		return mVertexScriptId;
 	}
@@ -80,6 +87,13 @@ abstract public class Shader {
 	protected abstract String getColorAttribName();
 	protected abstract String getProjMatrixAttribName();
 
+	/**
+	 * @return name of the sampler2D reading the separate alpha of the textures (ETC1, texture unit 1), or null
+	 */
+	protected String getAlphaTextureName() {
+		return null;
+	}
+
 	public int getVertexAttribId() {
 		return mVertexAttribId;
 	}
@@ -96,6 +110,10 @@ abstract public class Shader {
 		return mProjMatrixId;
 	}
 
+	public int getAlphaTextureId() {
+		return mAlphaTextureId;
+	}
+
 	private int loadShader(int shaderType, String script) {
 
 		int shader = GLES20.glCreateShader(shaderType);
@@ -120,18 +138,35 @@ abstract public class Shader {
 		final String uvAttribName = getUVAttribName();
 		final String colorAttribName = getColorAttribName();
 		final String projMatrixAttribName = getProjMatrixAttribName();
+		final String alphaTextureName = getAlphaTextureName();
 
 		mVertexAttribId = (vertexAttribName != null) ? GLES20.glGetAttribLocation(programId, vertexAttribName) : -1;
 		mUVAttribId = (uvAttribName != null) ? GLES20.glGetAttribLocation(programId, uvAttribName) : -1;
 		mColorAttribId = (colorAttribName != null) ? GLES20.glGetAttribLocation(programId, colorAttribName) : -1;
 		mProjMatrixId = (projMatrixAttribName != null) ? GLES20.glGetUniformLocation(programId, projMatrixAttribName) : -1;
+		mAlphaTextureId = (alphaTextureName != null) ? GLES20.glGetUniformLocation(programId, alphaTextureName) : -1;
 		Assert.assertTrue(mVertexAttribId >= 0);
 		Assert.assertTrue((mUVAttribId >= 0) || !useTexture());
 		Assert.assertTrue((mColorAttribId >= 0) || !useColor());
 		Assert.assertTrue(mProjMatrixId >= 0);
+		Assert.assertTrue((mAlphaTextureId >= 0) || (alphaTextureName == null));
 	}
 	
+	/**
+	 * Called before each face is drawn, to set the uniforms of the shader.
+	 * The program, textures, buffers and attributes must be changed through renderer.getStateCache(), the renderer
+	 * wouldn't know about direct OpenGL calls and would skip the calls restoring its state.
+	 */
 	public void onPreRender(OpenGLRenderer renderer, RenderObject object, Face3D face) {
 	}
 
+	/**
+	 * @return true if the shader sets no uniform in onPreRender(), so that the batch mode of RenderPassSprite can draw
+	 * many sprites with one draw call (onPreRender() is not called in batch mode). False by default: the sprites are
+	 * drawn one by one, with their own uniforms (alpha of ShaderTextureFade, model matrix of the lights...).
+	 */
+	public boolean isBatchable() {
+		return false;
+	}
+
 }
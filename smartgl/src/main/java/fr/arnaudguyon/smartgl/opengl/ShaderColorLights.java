@@ -2,8 +2,6 @@ package fr.arnaudguyon.smartgl.opengl;
 
 import android.opengl.GLES20;
 
-import java.nio.FloatBuffer;
-
 import fr.arnaudguyon.smartgl.tools.Assert;
 
 public class ShaderColorLights extends Shader {
@@ -107,11 +105,9 @@ public class ShaderColorLights extends Shader {
         float[] ambiant = renderer.getLightAmbiant();
         GLES20.glUniform4fv(mLightAmbiantId, 1, ambiant, 0);
 
-        GLES20.glEnableVertexAttribArray(mNormalsId);
+        renderer.getStateCache().enableVertexAttribArray(mNormalsId);
         NormalList normalList = face3D.getNormalList();
-        FloatBuffer vertexBuffer = normalList.getFloatBuffer();
-        vertexBuffer.position(0);
-        GLES20.glVertexAttribPointer(mNormalsId, 3, GLES20.GL_FLOAT, false, 0, vertexBuffer);
+        normalList.setVertexAttribPointer(renderer, mNormalsId, face3D.useBufferObjects());
     }
 
 }
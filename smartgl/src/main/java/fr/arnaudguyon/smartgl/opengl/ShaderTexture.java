@@ -48,5 +48,7 @@ public class ShaderTexture extends Shader {
 	@Override protected String getColorAttribName()			{ return null; }
 	@Override protected String getProjMatrixAttribName()	{ return "m_ProjectionMatrix"; }
 
+	@Override public boolean isBatchable()	{ return true; }
+
 	// @formatter:on
 }
\ No newline at end of file
@@ -17,8 +17,6 @@ package fr.arnaudguyon.smartgl.opengl;
 
 import android.opengl.GLES20;
 
-import java.nio.FloatBuffer;
-
 import fr.arnaudguyon.smartgl.tools.Assert;
 
 /**
@@ -129,11 +127,9 @@ public class ShaderTextureLights extends Shader {
         float[] ambiant = renderer.getLightAmbiant();
         GLES20.glUniform4fv(mLightAmbiantId, 1, ambiant, 0);
 
-        GLES20.glEnableVertexAttribArray(mNormalsId);
+        renderer.getStateCache().enableVertexAttribArray(mNormalsId);
         NormalList normalList = face3D.getNormalList();
-        FloatBuffer vertexBuffer = normalList.getFloatBuffer();
-        vertexBuffer.position(0);
-        GLES20.glVertexAttribPointer(mNormalsId, 3, GLES20.GL_FLOAT, false, 0, vertexBuffer);
+        normalList.setVertexAttribPointer(renderer, mNormalsId, face3D.useBufferObjects());
     }
 
 }
@@ -0,0 +1,387 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.opengl;
+
+import android.support.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import fr.arnaudguyon.smartgl.tools.Assert;
+
+/**
+ * Runs the game logic on its own thread at a fixed rate, so that its cost doesn't add to the frame time and the game
+ * speed doesn't depend on the frame rate. After each step, the transforms (position, rotation and scale) of the added
+ * objects are published to the renderer, which interpolates them between the last 2 steps at the start of each frame:
+ * the objects are displayed one step late, but move smoothly whatever the frame rate.
+ * The transforms of the added objects belong to the simulation thread: move them only in onSimulationStep().
+ * Their getMatrix() is the interpolated matrix, OpenGL Thread only. The objects can be added to or removed from
+ * the RenderPasses and the simulation from any thread. SmartGLViewController.onTick() and the touch events stay on
+ * the OpenGL thread.
+ * Set it with OpenGLRenderer.setSimulation(), then start() it, and stop() it in SmartGLViewController.onReleaseView().
+ * It is paused while the view is paused.
+ */
+public class Simulation {
+
+    private static final RenderObject[] NO_OBJECTS = new RenderObject[0];
+    private static final int MAX_CATCH_UP_STEPS = 5;    // when late, the other steps are dropped (slow motion instead of a spiral of late steps)
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    public interface Listener {
+        /**
+         * Simulation Thread. Moves the objects by one step.
+         * @param stepDuration duration of every step in seconds, 1 / stepsPerSecond
+         */
+        void onSimulationStep(Simulation simulation, float stepDuration);
+    }
+
+    // change of the simulated objects, queued until the next step
+    private static class Change {
+        final RenderObject mObject;
+        final boolean mAdded;
+
+        Change(RenderObject object, boolean added) {
+            mObject = object;
+            mAdded = added;
+        }
+    }
+
+    // transforms of the objects before and after a step. 3 of them: 1 written by the simulation, 1 read by the renderer,
+    // and the last published one in between
+    private static class State {
+        RenderObject[] mObjects = NO_OBJECTS;
+        float[] mPrevious = new float[0];
+        float[] mCurrent = new float[0];
+        long mStepTime;     // System.nanoTime() at which the current transforms are reached
+        int mStepNumber;
+
+        void set(RenderObject[] objects, float[] previous, float[] current, long stepTime, int stepNumber) {
+            final int size = objects.length * RenderObject.TRANSFORM_SIZE;
+            if (mCurrent.length < size) {
+                mPrevious = new float[size];
+                mCurrent = new float[size];
+            }
+            System.arraycopy(previous, 0, mPrevious, 0, size);
+            System.arraycopy(current, 0, mCurrent, 0, size);
+            mObjects = objects;
+            mStepTime = stepTime;
+            mStepNumber = stepNumber;
+        }
+    }
+
+    private final Listener mListener;
+    private final float mStepDuration;
+    private final long mStepNanos;
+    private final Object mLock = new Object();
+    private Thread mThread;
+    private boolean mRunning;       // mLock
+    private boolean mPaused;        // mLock
+    private boolean mViewPaused;    // mLock
+    private boolean mResumed;       // mLock, the time spent paused is skipped
+
+    // Simulation Thread
+    private final ConcurrentLinkedQueue<Change> mChanges = new ConcurrentLinkedQueue<>();
+    private RenderObject[] mObjects = NO_OBJECTS;   // replaced, never modified: shared with the published States
+    private float[] mPreviousTransforms = new float[0];
+    private float[] mCurrentTransforms = new float[0];
+    private State mBackState = new State();
+    private volatile int mNbSteps;
+    private volatile int mNbDroppedSteps;
+
+    private final AtomicReference<State> mPublishedState = new AtomicReference<>(new State());
+
+    // OpenGL Thread
+    private State mFrontState = new State();
+    private RenderObject[] mInterpolatedObjects = NO_OBJECTS;
+    private final float[] mInterpolatedTransform = new float[RenderObject.TRANSFORM_SIZE];
+    private float mAlpha;
+
+    /**
+     * @param stepsPerSecond fixed rate of the simulation, for example 60
+     */
+    public Simulation(int stepsPerSecond, @NonNull Listener listener) {
+        Assert.assertTrue(stepsPerSecond > 0);
+        mListener = listener;
+        mStepDuration = 1f / stepsPerSecond;
+        mStepNanos = 1000 * NANOS_PER_MILLI / stepsPerSecond;
+    }
+
+    public float getStepDuration() {
+        return mStepDuration;
+    }
+
+    /**
+     * Starts the simulation thread. The first step is done at once.
+     */
+    public void start() {
+        synchronized (mLock) {
+            Assert.assertTrue("Already started", mThread == null);
+            mRunning = true;
+            mResumed = true;
+            mThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runSteps();
+                }
+            }, "Simulation");
+            mThread.setDaemon(true);
+            mThread.start();
+        }
+    }
+
+    /**
+     * Stops the simulation thread, and waits for the end of the current step. The objects stay where they are.
+     */
+    public void stop() {
+        Thread thread;
+        synchronized (mLock) {
+            thread = mThread;
+            mThread = null;
+            mRunning = false;
+            mLock.notifyAll();
+        }
+        if ((thread != null) && (thread != Thread.currentThread())) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Pauses the game: no step is done until setPaused(false), and the time spent paused is not caught up
+     */
+    public void setPaused(boolean paused) {
+        synchronized (mLock) {
+            if (!paused && mPaused) {
+                mResumed = true;
+            }
+            mPaused = paused;
+            mLock.notifyAll();
+        }
+    }
+
+    public boolean isPaused() {
+        synchronized (mLock) {
+            return mPaused;
+        }
+    }
+
+    // called by the renderer when the view is paused or resumed
+    void setViewPaused(boolean paused) {
+        synchronized (mLock) {
+            if (!paused && mViewPaused) {
+                mResumed = true;
+            }
+            mViewPaused = paused;
+            mLock.notifyAll();
+        }
+    }
+
+    /**
+     * Interpolates the transform of the object from the next step. Can be called from any thread.
+     * The object must support getTransform() and computeTransformMatrix(): Sprites, Object3Ds and RenderObjectContainers.
+     * An object whose canBeSimulated() is false is rejected here, not on the Simulation thread.
+     */
+    public void add(@NonNull RenderObject object) {
+        Assert.assertTrue(object.getClass().getSimpleName() + " can't be simulated", object.canBeSimulated());
+        mChanges.add(new Change(object, true));
+    }
+
+    /**
+     * Stops interpolating the object. Can be called from any thread. Once removed by the next step, its transform
+     * belongs to the OpenGL Thread again.
+     */
+    public void remove(@NonNull RenderObject object) {
+        mChanges.add(new Change(object, false));
+    }
+
+    /**
+     * @return number of steps done since the creation
+     */
+    public int getNbSteps() {
+        return mNbSteps;
+    }
+
+    /**
+     * @return number of steps skipped because the simulation was late, the game slowed down instead
+     */
+    public int getNbDroppedSteps() {
+        return mNbDroppedSteps;
+    }
+
+    /**
+     * @return position between the last 2 steps of the last frame, between 0 and 1. OpenGL Thread only.
+     */
+    public float getInterpolationAlpha() {
+        return mAlpha;
+    }
+
+    // Simulation Thread
+    private void runSteps() {
+        long nextStepTime = 0;
+        while (true) {
+            synchronized (mLock) {
+                try {
+                    while (mRunning && (mPaused || mViewPaused)) {
+                        mLock.wait();
+                    }
+                    if (!mRunning) {
+                        return;
+                    }
+                    if (mResumed) {
+                        mResumed = false;
+                        nextStepTime = System.nanoTime();
+                    }
+                    final long waitTime = nextStepTime - System.nanoTime();
+                    if (waitTime > 0) {
+                        mLock.wait(waitTime / NANOS_PER_MILLI, (int) (waitTime % NANOS_PER_MILLI));
+                        continue;   // woken up by a pause or a stop, or on time
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+
+            final long now = System.nanoTime();
+            int nbSteps = 0;
+            while ((nextStepTime <= now) && (nbSteps < MAX_CATCH_UP_STEPS)) {
+                step(nextStepTime);
+                nextStepTime += mStepNanos;
+                ++nbSteps;
+            }
+            if (nextStepTime <= now) {
+                final long late = (now - nextStepTime) / mStepNanos + 1;
+                mNbDroppedSteps += (int) late;
+                nextStepTime += late * mStepNanos;
+            }
+        }
+    }
+
+    // Simulation Thread
+    private void step(long stepTime) {
+        if (applyChanges()) {
+            readTransforms(mPreviousTransforms);    // no interpolation for the objects just added
+        } else {
+            float[] previous = mPreviousTransforms;
+            mPreviousTransforms = mCurrentTransforms;
+            mCurrentTransforms = previous;
+        }
+
+        mListener.onSimulationStep(this, mStepDuration);
+
+        readTransforms(mCurrentTransforms);
+        final int stepNumber = mNbSteps + 1;
+        mBackState.set(mObjects, mPreviousTransforms, mCurrentTransforms, stepTime, stepNumber);
+        mBackState = mPublishedState.getAndSet(mBackState);
+        mNbSteps = stepNumber;
+    }
+
+    // Simulation Thread. @return true if objects were added or removed
+    private boolean applyChanges() {
+        Change change = mChanges.poll();
+        if (change == null) {
+            return false;
+        }
+        Set<RenderObject> objects = Collections.newSetFromMap(new IdentityHashMap<RenderObject, Boolean>());
+        Collections.addAll(objects, mObjects);
+        while (change != null) {
+            if (change.mAdded) {
+                objects.add(change.mObject);
+                change.mObject.setSimulated(true);
+            } else if (objects.remove(change.mObject)) {
+                change.mObject.setSimulated(false);
+            }
+            change = mChanges.poll();
+        }
+        mObjects = objects.toArray(new RenderObject[objects.size()]);
+        final int size = mObjects.length * RenderObject.TRANSFORM_SIZE;
+        if (mCurrentTransforms.length < size) {
+            mPreviousTransforms = new float[size];
+            mCurrentTransforms = new float[size];
+        }
+        return true;
+    }
+
+    private void readTransforms(float[] transforms) {
+        final RenderObject[] objects = mObjects;
+        for (int objectIt = 0; objectIt < objects.length; ++objectIt) {
+            objects[objectIt].getTransform(transforms, objectIt * RenderObject.TRANSFORM_SIZE);
+        }
+    }
+
+    /**
+     * OpenGL Thread, called by the renderer at the start of the frame: sets the transforms of the objects
+     * between the last 2 published steps
+     * @param time System.nanoTime() of the frame
+     */
+    void interpolate(long time) {
+        if (mPublishedState.get().mStepNumber > mFrontState.mStepNumber) {
+            mFrontState = mPublishedState.getAndSet(mFrontState);
+        }
+        final State state = mFrontState;
+        if (state.mObjects != mInterpolatedObjects) {
+            releaseRemovedObjects(state.mObjects);
+        }
+        if (state.mStepNumber == 0) {
+            return;
+        }
+
+        float alpha = (float) (time - state.mStepTime) / mStepNanos;
+        alpha = Math.max(0, Math.min(alpha, 1));
+        mAlpha = alpha;
+        final RenderObject[] objects = state.mObjects;
+        final float[] previous = state.mPrevious;
+        final float[] current = state.mCurrent;
+        final float[] transform = mInterpolatedTransform;
+        for (int objectIt = 0; objectIt < objects.length; ++objectIt) {
+            final int offset = objectIt * RenderObject.TRANSFORM_SIZE;
+            for (int i = 0; i < 3; ++i) {
+                transform[i] = previous[offset + i] + (current[offset + i] - previous[offset + i]) * alpha;   // position
+                transform[3 + i] = interpolateAngle(previous[offset + 3 + i], current[offset + 3 + i], alpha);
+                transform[6 + i] = previous[offset + 6 + i] + (current[offset + 6 + i] - previous[offset + 6 + i]) * alpha;   // scale
+            }
+            objects[objectIt].setRenderTransform(transform);
+        }
+    }
+
+    // OpenGL Thread. The objects removed from the simulation are rendered with their own transform again
+    private void releaseRemovedObjects(RenderObject[] objects) {
+        Set<RenderObject> kept = Collections.newSetFromMap(new IdentityHashMap<RenderObject, Boolean>());
+        Collections.addAll(kept, objects);
+        for (RenderObject object : mInterpolatedObjects) {
+            if (!kept.contains(object)) {
+                object.clearRenderTransform();
+            }
+        }
+        mInterpolatedObjects = objects;
+    }
+
+    // shortest way between the 2 angles, in degrees
+    static float interpolateAngle(float from, float to, float alpha) {
+        float delta = (to - from) % 360f;
+        if (delta > 180) {
+            delta -= 360;
+        } else if (delta < -180) {
+            delta += 360;
+        }
+        return from + delta * alpha;
+    }
+}
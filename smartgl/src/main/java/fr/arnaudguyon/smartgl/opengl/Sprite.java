@@ -16,11 +16,11 @@
 package fr.arnaudguyon.smartgl.opengl;
 
 import android.graphics.Bitmap;
-import android.opengl.Matrix;
 import android.util.SparseArray;
 
 import java.util.ArrayList;
 
+import fr.arnaudguyon.smartgl.math.Matrix4;
 import fr.arnaudguyon.smartgl.touch.SpriteTouchListener;
 import fr.arnaudguyon.smartgl.touch.TouchHelperEvent;
 
@@ -35,6 +35,9 @@ public class Sprite extends RenderObject {
 	private SpriteTouchListener mTouchListener;
     private SparseArray<ArrayList<Collision>> mCollisions;  // Type of Collision -> list of Collision
     private int mDisplayPriority = 1;   // used to sort sprites, 1 is higher priority than 2
+	private TextureAtlas.Region mRegion;	// part of the texture mapped on the sprite, or null for the whole texture
+	private float[] mTouchInverse;			// scratch arrays of touchedBy(), allocated by the first touch in a container
+	private float[] mTouchPosition;
 
 	public boolean handlesInput() {
 		return (mTouchListener != null);
@@ -76,6 +79,23 @@ public class Sprite extends RenderObject {
 	}
 
 	final public boolean touchedBy(float x, float y) {
+		RenderObjectContainer parent = getParent();
+		if (parent != null) {	// touch position in the space of the container
+			if (mTouchInverse == null) {
+				mTouchInverse = new float[Matrix4.SIZE];
+				mTouchPosition = new float[4];
+			}
+			if (Matrix4.invert(mTouchInverse, parent.getMatrix())) {
+				final float[] local = mTouchPosition;
+				local[0] = x;
+				local[1] = y;
+				local[2] = 0;
+				local[3] = 1;
+				Matrix4.multiplyVector(local, mTouchInverse, local);
+				x = local[0];
+				y = local[1];
+			}
+		}
 		return (x >= getPosX() && x < getPosX() + getWidth() && y >= getPosY() && y < getPosY() + getHeight());
 	}
 
@@ -106,9 +126,23 @@ public class Sprite extends RenderObject {
 	}
 	
 	public void setTexture(Texture texture) {
+		mRegion = null;
 		getFace().setTexture(texture);
 	}
 
+	/**
+	 * Maps a region of a TextureAtlas on the sprite: sets the texture of its page, and the UVs of the region.
+	 * An AnimatedSprite has no UVs of its own: only the texture is set, map the regions with addFrame(duration, region).
+	 */
+	public void setRegion(TextureAtlas.Region region) {
+		setTexture(region.getTexture());
+		mRegion = region;
+		resetUVs();
+	}
+	public final TextureAtlas.Region getRegion() {
+		return mRegion;
+	}
+
     public void setScale(float scaleX, float scaleY) {
         mScaleX = scaleX;
         mScaleY = scaleY;
@@ -240,31 +274,66 @@ public class Sprite extends RenderObject {
 
 	@Override
 	final public void computeMatrix(float[] matrix) {
-		Matrix.setIdentityM(matrix, 0);
-        final float shiftX = mPivotX * mWidth * mScaleX;
-        final float shiftY = mPivotY * mHeight * mScaleY;
-		if (mRotAngle != 0) {
-            Matrix.translateM(matrix, 0, mPosX, mPosY, 0);
-			Matrix.rotateM(matrix, 0, mRotAngle, 0, 0, 1);
-			Matrix.translateM(matrix, 0, -shiftX, -shiftY, 0);
-		} else {
-			Matrix.translateM(matrix, 0, mPosX - shiftX, mPosY - shiftY, 0);
-		}
-        if ((mScaleX != 1) || (mScaleY != 1)) {
-            Matrix.scaleM(matrix, 0, mScaleX, mScaleY, 1);
-        }
+		computeMatrix(matrix, mPosX, mPosY, mRotAngle, mScaleX, mScaleY);
+	}
+
+	@Override
+	protected boolean canBeSimulated() {
+		return true;
+	}
+
+	@Override
+	protected void getTransform(float[] transform, int offset) {
+		transform[offset] = mPosX;
+		transform[offset + 1] = mPosY;
+		transform[offset + 2] = 0;
+		transform[offset + 3] = 0;
+		transform[offset + 4] = 0;
+		transform[offset + 5] = mRotAngle;
+		transform[offset + 6] = mScaleX;
+		transform[offset + 7] = mScaleY;
+		transform[offset + 8] = 1;
+	}
+
+	@Override
+	protected void computeTransformMatrix(float[] transform, float[] matrix) {
+		computeMatrix(matrix, transform[0], transform[1], transform[5], transform[6], transform[7]);
+	}
+
+	private void computeMatrix(float[] matrix, float posX, float posY, float rotAngle, float scaleX, float scaleY) {
+        final float shiftX = mPivotX * mWidth * scaleX;
+        final float shiftY = mPivotY * mHeight * scaleY;
+		Matrix4.setTransform2D(matrix, posX, posY, rotAngle, scaleX, scaleY, shiftX, shiftY);
 	}
 
 	public void resetUVs() {
-		rebindUVs(0, 1, 0, 1, 1, 1);
+		if (mRegion != null) {
+			unflipMappingH();
+		} else {
+			rebindUVs(0, 1, 0, 1, 1, 1);
+		}
 	}
 	
 	public void flipMappingH() {
+		if (mRegion != null) {
+			final int x = mRegion.getX();
+			final int y = mRegion.getY();
+			Texture texture = mRegion.getTexture();
+			rebindUVs(x + mRegion.getWidth(), x, y, y + mRegion.getHeight(), texture.getWidth(), texture.getHeight());
+			return;
+		}
 		int w = (int) getWidth();
 		int h = (int) getHeight();
 		rebindUVs(w, 0, 0, h, w, h);
 	}
     public void unflipMappingH() {
+        if (mRegion != null) {
+            final int x = mRegion.getX();
+            final int y = mRegion.getY();
+            Texture texture = mRegion.getTexture();
+            rebindUVs(x, x + mRegion.getWidth(), y, y + mRegion.getHeight(), texture.getWidth(), texture.getHeight());
+            return;
+        }
         int w = (int) getWidth();
         int h = (int) getHeight();
         rebindUVs(0, w, 0, h, w, h);
@@ -279,7 +348,7 @@ public class Sprite extends RenderObject {
         internalBuffer[6] = mWidth - internalBuffer[6];
         internalBuffer[9] = mWidth - internalBuffer[9];
 
-        vertexList.getFloatBuffer().put(internalBuffer).position(0);
+        vertexList.updateFloatBuffer();
     }
 
 	public void rebindUVs(int xMin, int xMax, int yMin, int yMax, float texWidth, float texHeight) {
@@ -292,6 +361,9 @@ public class Sprite extends RenderObject {
 			float vMax = yMax / texHeight;
 
 			UVList uvList = face.getUVList();
+			if (uvList == null) {	// AnimatedSprite: the UVs are the ones of the frames
+				return;
+			}
 			float[] internal = uvList.getInternalBuffer();
 			int index = 0;
 
@@ -307,7 +379,7 @@ public class Sprite extends RenderObject {
 			internal[index++] = uMax;
 			internal[index++] = vMax;
 
-			uvList.getFloatBuffer().put(internal).position(0);
+			uvList.updateFloatBuffer();
 		}
 	}
 
@@ -336,7 +408,7 @@ public class Sprite extends RenderObject {
 		internalBuffer[10] = height;
 		//internalBuffer[11] = 0;
 
-		vertexList.getFloatBuffer().put(internalBuffer).position(0);
+		vertexList.updateFloatBuffer();
         invalidMatrix();
 	}
 
@@ -0,0 +1,192 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.opengl;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Used by the OpenGLRenderer when a RenderPassSprite is in batch mode.
+ * Sprite quads are transformed on CPU side into a single vertex stream (x,y,z,u,v),
+ * which is drawn with one call each time the texture changes.
+ */
+class SpriteBatch {
+
+    private static final int VERTEX_PER_SPRITE = 4;
+    private static final int INDEX_PER_SPRITE = 6;
+    private static final int FLOATS_PER_VERTEX = 5;    // x,y,z,u,v
+    private static final int FLOATS_PER_SPRITE = VERTEX_PER_SPRITE * FLOATS_PER_VERTEX;
+    private static final int STRIDE = FLOATS_PER_VERTEX * Display.BYTES_PER_FLOAT;
+    private static final int UV_OFFSET = 3 * Display.BYTES_PER_FLOAT;
+    private static final int MAX_SPRITES = (IndexList.MAX_VERTEX_INDEX + 1) / VERTEX_PER_SPRITE;
+    private static final int INITIAL_SPRITES = 64;
+    private static final int NO_BUFFER = 0;
+
+    private float[] mVertices = new float[INITIAL_SPRITES * FLOATS_PER_SPRITE];
+    private FloatBuffer mVertexBuffer;
+    private ShortBuffer mIndexBuffer;
+    private int mIndexCapacity;     // in sprites
+    private int mNbSprites;
+    private Texture mTexture;
+    private int[] mBufferIds = {NO_BUFFER, NO_BUFFER};  // vertex stream, quad indexes
+    private boolean mIndexDirty = true;
+
+    final Texture getTexture() {
+        return mTexture;
+    }
+
+    final boolean isFull() {
+        return (mNbSprites >= MAX_SPRITES);
+    }
+
+    final boolean isEmpty() {
+        return (mNbSprites == 0);
+    }
+
+    /**
+     * Adds a quad to the batch. The caller must flush before if the texture is different.
+     * @param vertex 4 vertex (x,y,z) in the Sprite space, in triangle strip order
+     * @param uvs 4 uvs (u,v)
+     * @param matrix the transformation matrix of the Sprite
+     */
+    final void add(Texture texture, float[] vertex, float[] uvs, float[] matrix) {
+        mTexture = texture;
+        ensureVertexCapacity(mNbSprites + 1);
+
+        int dst = mNbSprites * FLOATS_PER_SPRITE;
+        int src = 0;
+        int uv = 0;
+        final float[] vertices = mVertices;
+        for (int i = 0; i < VERTEX_PER_SPRITE; ++i) {
+            final float x = vertex[src++];
+            final float y = vertex[src++];
+            final float z = vertex[src++];
+            vertices[dst++] = matrix[0] * x + matrix[4] * y + matrix[8] * z + matrix[12];
+            vertices[dst++] = matrix[1] * x + matrix[5] * y + matrix[9] * z + matrix[13];
+            vertices[dst++] = matrix[2] * x + matrix[6] * y + matrix[10] * z + matrix[14];
+            vertices[dst++] = uvs[uv++];
+            vertices[dst++] = uvs[uv++];
+        }
+        ++mNbSprites;
+    }
+
+    /**
+     * Draws the pending quads with the current program. OpenGL Thread only.
+     */
+    final void flush(OpenGLRenderer renderer, Shader shader, float[] projMatrix) {
+        if (mNbSprites == 0) {
+            return;
+        }
+        final GLStateCache stateCache = renderer.getStateCache();
+
+        if (mBufferIds[0] == NO_BUFFER) {
+            GLES20.glGenBuffers(2, mBufferIds, 0);
+            stateCache.invalidateBufferBinding(GLES20.GL_ARRAY_BUFFER);
+            stateCache.invalidateBufferBinding(GLES20.GL_ELEMENT_ARRAY_BUFFER);
+            mIndexDirty = true;
+        }
+
+        stateCache.bindTexture(mTexture.getId());
+
+        // Vertex stream
+        final int nbFloats = mNbSprites * FLOATS_PER_SPRITE;
+        mVertexBuffer.position(0);
+        mVertexBuffer.put(mVertices, 0, nbFloats).position(0);
+        final int size = nbFloats * Display.BYTES_PER_FLOAT;
+        stateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, mBufferIds[0]);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, size, mVertexBuffer, GLES20.GL_STREAM_DRAW);
+        renderer.getCurrentRenderStats().onBufferUpload(size);
+        GLES20.glVertexAttribPointer(shader.getVertexAttribId(), 3, GLES20.GL_FLOAT, false, STRIDE, 0);
+        GLES20.glVertexAttribPointer(shader.getUVAttribId(), 2, GLES20.GL_FLOAT, false, STRIDE, UV_OFFSET);
+
+        // Quad indexes, only uploaded when the capacity grows
+        stateCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mBufferIds[1]);
+        if (mIndexDirty) {
+            final int indexSize = mIndexCapacity * INDEX_PER_SPRITE * 2;
+            mIndexBuffer.position(0);
+            GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexSize, mIndexBuffer, GLES20.GL_STATIC_DRAW);
+            renderer.getCurrentRenderStats().onBufferUpload(indexSize);
+            mIndexDirty = false;
+        }
+
+        GLES20.glUniformMatrix4fv(shader.getProjMatrixId(), 1, false, projMatrix, 0);
+        GLES20.glDrawElements(GLES20.GL_TRIANGLES, mNbSprites * INDEX_PER_SPRITE, GLES20.GL_UNSIGNED_SHORT, 0);
+        renderer.getCurrentRenderStats().onDrawCall();
+
+        mNbSprites = 0;
+        mTexture = null;
+    }
+
+    private void ensureVertexCapacity(int nbSprites) {
+        if (nbSprites * FLOATS_PER_SPRITE > mVertices.length) {
+            int newSize = Math.min(Math.max(nbSprites, mVertices.length / FLOATS_PER_SPRITE * 2), MAX_SPRITES);
+            float[] vertices = new float[newSize * FLOATS_PER_SPRITE];
+            System.arraycopy(mVertices, 0, vertices, 0, mNbSprites * FLOATS_PER_SPRITE);
+            mVertices = vertices;
+        }
+        final int capacity = mVertices.length / FLOATS_PER_SPRITE;
+        if ((mVertexBuffer == null) || (mVertexBuffer.capacity() < mVertices.length)) {
+            mVertexBuffer = ByteBuffer.allocateDirect(mVertices.length * Display.BYTES_PER_FLOAT).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+        if (mIndexCapacity < capacity) {
+            createIndexes(capacity);
+        }
+    }
+
+    // 2 triangles per quad: (0,1,2) (2,1,3), same winding as the Sprite triangle strip
+    private void createIndexes(int nbSprites) {
+        mIndexBuffer = ByteBuffer.allocateDirect(nbSprites * INDEX_PER_SPRITE * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
+        for (int i = 0; i < nbSprites; ++i) {
+            final int first = i * VERTEX_PER_SPRITE;
+            mIndexBuffer.put((short) first);
+            mIndexBuffer.put((short) (first + 1));
+            mIndexBuffer.put((short) (first + 2));
+            mIndexBuffer.put((short) (first + 2));
+            mIndexBuffer.put((short) (first + 1));
+            mIndexBuffer.put((short) (first + 3));
+        }
+        mIndexBuffer.position(0);
+        mIndexCapacity = nbSprites;
+        mIndexDirty = true;
+    }
+
+    /**
+     * The buffers were deleted with the OpenGL context, they are created again at the next flush
+     */
+    final void onContextLost() {
+        mBufferIds[0] = NO_BUFFER;
+        mBufferIds[1] = NO_BUFFER;
+        mIndexDirty = true;
+    }
+
+    /**
+     * GPU buffers are lost with the OpenGL context
+     */
+    final void releaseBufferObjects() {
+        if (mBufferIds[0] != NO_BUFFER) {
+            GLES20.glDeleteBuffers(2, mBufferIds, 0);
+            mBufferIds[0] = NO_BUFFER;
+            mBufferIds[1] = NO_BUFFER;
+        }
+        mIndexDirty = true;
+        mNbSprites = 0;
+        mTexture = null;
+    }
+}
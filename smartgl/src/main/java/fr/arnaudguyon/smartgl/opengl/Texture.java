@@ -21,19 +21,54 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Matrix;
 import android.media.ExifInterface;
+import android.opengl.ETC1Util;
 import android.opengl.GLES20;
 import android.opengl.GLUtils;
 import android.support.annotation.DrawableRes;
+import android.support.annotation.RawRes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import fr.arnaudguyon.smartgl.tools.Assert;
 
 public class Texture {
 	
 	private final static int UNBIND_VALUE = 0;
+	final static int BYTES_PER_PIXEL = 4;	// RGBA, of the pixels decoded by a TextureLoader
+
+	/**
+	 * Format of the texture in GPU memory
+	 */
+	public enum Format {
+		BITMAP,				// same as the Bitmap: ARGB_8888 (4 bytes per pixel) for the decoded pictures
+		RGB_565,			// 2 bytes per pixel, no alpha
+		LUMINANCE_ALPHA,	// 2 bytes per pixel, grey levels with alpha (masks, shadows, glyphs)
+		AUTO,				// RGB_565 if the Bitmap is opaque, LUMINANCE_ALPHA if it only has grey levels, else BITMAP
+		ETC1				// precompressed by the TextureConverter, half a byte per pixel (plus half for the alpha)
+	}
 
 	private int[] mId;
+	private int[] mAlphaId = {UNBIND_VALUE};	// separate alpha of an ETC1 texture
+	private Format mFormat = Format.BITMAP;
+	private Format mGpuFormat;				// format of the binded texture, AUTO resolved
+	private ETC1Util.ETC1Texture mEtc1Color;	// compressed data, kept to bind again
+	private ETC1Util.ETC1Texture mEtc1Alpha;
 	private int mWidth;
 	private int mHeight;
 	private Bitmap mBitmap;
 	private boolean mRecycleWhenBinded = true;
+	private Resources mResources;	// to decode the drawable again after a loss of the OpenGL context
+	private int mResourceId;
+	private String mFilePath;		// or the file
+	private int mGpuBytes;
+	private int mLastRenderedFrame;
+	private boolean mEvicted;
+	private volatile boolean mDecoding;		// decoded by a TextureLoader, not ready to upload yet
+	private ByteBuffer mPixels;				// pixels decoded by a TextureLoader, not uploaded yet
+	private int mUploadedRows;				// rows of mPixels uploaded
 
 	public final int getId() {
 		return mId[0];
@@ -50,11 +85,56 @@ public class Texture {
 	public final boolean isBinded() {
 		return (mId[0] != UNBIND_VALUE);
 	}
+
+	/**
+	 * @return true when the texture is completely uploaded and can be drawn
+	 */
+	public final boolean isReady() {
+		return isBinded() && (mPixels == null);
+	}
 	
 	public final void recycleWhenBinded(boolean recycle) {
 		mRecycleWhenBinded = recycle;
 	}
 
+	/**
+	 * @param format format of the texture in GPU memory, applied when binded. BITMAP by default.
+	 *               RGB_565 and LUMINANCE_ALPHA use half the memory and upload bandwidth of ARGB_8888.
+	 */
+	public final void setFormat(Format format) {
+		Assert.assertTrue("ETC1 textures are created with createEtc1()", (format != Format.ETC1) && (mEtc1Color == null));
+		mFormat = format;
+	}
+
+	public final Format getFormat() {
+		return mFormat;
+	}
+
+	/**
+	 * @return format chosen for the binded texture (AUTO resolved), or null if not binded
+	 */
+	public final Format getGpuFormat() {
+		return isBinded() ? mGpuFormat : null;
+	}
+
+	/**
+	 * @return true for an ETC1 texture with its alpha in a second texture, drawn with a ShaderTextureEtc1Alpha
+	 */
+	public final boolean hasSeparateAlpha() {
+		return (mEtc1Alpha != null);
+	}
+
+	final int getAlphaId() {
+		return mAlphaId[0];
+	}
+
+	/**
+	 * @return size of the texture in GPU memory, estimated from its Bitmap when binded, 0 if not binded
+	 */
+	public final int getEstimatedGpuBytes() {
+		return isBinded() ? mGpuBytes : 0;
+	}
+
 	private Texture() {
 		mId = new int[1];
 		mId[0] = UNBIND_VALUE;
@@ -78,17 +158,184 @@ public class Texture {
 		mBitmap = BitmapFactory.decodeResource(resources, resourceId);
 		mWidth = mBitmap.getWidth();
 		mHeight = mBitmap.getHeight();
+		mResources = resources;
+		mResourceId = resourceId;
+	}
+	public Texture(String filePath) {
+		this();
+		mBitmap = BitmapFactory.decodeFile(filePath);
+		if (mBitmap == null) {
+			throw new RuntimeException("Can't decode texture " + filePath);
+		}
+		mWidth = mBitmap.getWidth();
+		mHeight = mBitmap.getHeight();
+		mFilePath = filePath;
 	}
 
-	boolean bindTexture() {
-		if ((mBitmap != null) && (!mBitmap.isRecycled())) {
+	/**
+	 * Texture precompressed in ETC1 (PKM files written by the TextureConverter of smartgltools, in res/raw).
+	 * ETC1 has no alpha: the alpha of a translucent picture is a second ETC1 file, drawn with a ShaderTextureEtc1Alpha.
+	 * The compressed data is kept in memory (half a byte per pixel) to bind the texture again after a context loss.
+	 * @param alphaResourceId the PKM file of the alpha, 0 for an opaque picture
+	 */
+	public static Texture createEtc1(Context context, @RawRes int colorResourceId, @RawRes int alphaResourceId) {
+		Resources resources = context.getResources();
+		Texture texture = new Texture();
+		texture.mFormat = Format.ETC1;
+		texture.mEtc1Color = readEtc1(resources.openRawResource(colorResourceId));
+		if (alphaResourceId != 0) {
+			texture.mEtc1Alpha = readEtc1(resources.openRawResource(alphaResourceId));
+			Assert.assertTrue("Alpha size differs", (texture.mEtc1Alpha.getWidth() == texture.mEtc1Color.getWidth())
+					&& (texture.mEtc1Alpha.getHeight() == texture.mEtc1Color.getHeight()));
+		}
+		texture.mWidth = texture.mEtc1Color.getWidth();
+		texture.mHeight = texture.mEtc1Color.getHeight();
+		return texture;
+	}
+
+	private static ETC1Util.ETC1Texture readEtc1(InputStream inputStream) {
+		try {
+			try {
+				return ETC1Util.createTexture(inputStream);
+			} finally {
+				inputStream.close();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Can't read ETC1 texture: " + e.getMessage());
+		}
+	}
+
+	// Texture decoded on a background thread by a TextureLoader, the size is the one of the decoded bounds
+	static Texture createDecoding(Resources resources, int resourceId, String filePath, int width, int height) {
+		Texture texture = new Texture();
+		texture.mResources = resources;
+		texture.mResourceId = resourceId;
+		texture.mFilePath = filePath;
+		texture.mWidth = width;
+		texture.mHeight = height;
+		texture.mDecoding = true;
+		return texture;
+	}
+
+	// Background thread. RGBA pixels, uploaded by uploadRows()
+	final void onDecoded(ByteBuffer pixels, int width, int height) {
+		mPixels = pixels;
+		mWidth = width;
+		mHeight = height;
+		mDecoding = false;	// volatile: publishes the pixels to the OpenGL thread
+	}
+
+	// Background thread. The texture will never be binded
+	final void onDecodeFailed() {
+		mResources = null;
+		mFilePath = null;
+		mDecoding = false;
+	}
+
+	final boolean isDecoding() {
+		return mDecoding;
+	}
+
+	final boolean hasDecodedPixels() {
+		return (mPixels != null);
+	}
+
+	// true if the Bitmap can be decoded again once recycled
+	private boolean canDecode() {
+		return (mResources != null) || (mFilePath != null);
+	}
+
+	// true if the texture can be binded again once unbinded
+	final boolean canReload() {
+		return canDecode() || (mEtc1Color != null);
+	}
+
+	private static void setParameters() {
+		GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+		GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+	}
+
+	/**
+	 * OpenGL Thread only. Uploads the next rows of the decoded pixels, the texture is created by the first call.
+	 * @return number of bytes uploaded
+	 */
+	final int uploadRows(int maxRows) {
+		final int rowBytes = mWidth * BYTES_PER_PIXEL;
+		if (!isBinded()) {
 			GLES20.glGenTextures(1, mId, 0);
 			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mId[0]);
-			GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
-			GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
-			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
-			GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, mBitmap, 0); // GLES20.GL_RGBA
+			setParameters();
+			GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, mWidth, mHeight, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+			mGpuBytes = rowBytes * mHeight;
+			mGpuFormat = Format.BITMAP;
+			mUploadedRows = 0;
+		} else {
+			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mId[0]);
+		}
+		final int nbRows = Math.min(maxRows, mHeight - mUploadedRows);
+		mPixels.position(mUploadedRows * rowBytes);
+		GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, mUploadedRows, mWidth, nbRows, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, mPixels);
+		mUploadedRows += nbRows;
+		if (mUploadedRows == mHeight) {
+			mPixels = null;		// complete
+		}
+		return nbRows * rowBytes;
+	}
+
+	// the Bitmap of the texture, decoded again if recycled when binded before, or null
+	final Bitmap getBitmap() {
+		if (peekBitmap() == null) {
+			mBitmap = decodeBitmap();
+		}
+		return peekBitmap();
+	}
+
+	// the Bitmap of the texture if not recycled, or null. Never decodes.
+	final Bitmap peekBitmap() {
+		return ((mBitmap != null) && !mBitmap.isRecycled()) ? mBitmap : null;
+	}
+
+	// a new Bitmap decoded from the drawable or the file, not kept by the texture: recycled by the caller. Or null.
+	final Bitmap decodeBitmap() {
+		if (!canDecode()) {
+			return null;
+		}
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		if (mFormat == Format.RGB_565) {
+			options.inPreferredConfig = Bitmap.Config.RGB_565;	// no conversion when binded
+		}
+		return (mResources != null) ? BitmapFactory.decodeResource(mResources, mResourceId, options) : BitmapFactory.decodeFile(mFilePath, options);
+	}
+
+	boolean bindTexture() {
+		if (mEtc1Color != null) {
+			bindEtc1();
+			return true;
+		}
+		if (getBitmap() != null) {
+			if (!isBinded()) {
+				GLES20.glGenTextures(1, mId, 0);
+			}
+			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mId[0]);
+			setParameters();
+			mGpuFormat = (mFormat == Format.AUTO) ? chooseFormat(mBitmap) : mFormat;
+			if (mGpuFormat == Format.RGB_565) {
+				if (mBitmap.getConfig() == Bitmap.Config.RGB_565) {
+					GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, mBitmap, 0);	// GL_RGB, GL_UNSIGNED_SHORT_5_6_5
+				} else {
+					uploadRgb565(mBitmap);
+				}
+				mGpuBytes = mBitmap.getWidth() * mBitmap.getHeight() * 2;
+			} else if (mGpuFormat == Format.LUMINANCE_ALPHA) {
+				uploadLuminanceAlpha(mBitmap);
+				mGpuBytes = mBitmap.getWidth() * mBitmap.getHeight() * 2;
+			} else {
+				GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, mBitmap, 0); // GLES20.GL_RGBA
+				mGpuBytes = mBitmap.getByteCount();
+			}
+			mPixels = null;
 			if (mRecycleWhenBinded) {
 				mBitmap.recycle();
 				mBitmap = null;
@@ -98,19 +345,155 @@ public class Texture {
 		return false;
 	}
 
+	// RGB_565 for an opaque Bitmap, LUMINANCE_ALPHA if all its pixels are grey. The pixels are read row by row,
+	// until the first colored one.
+	private static Format chooseFormat(Bitmap bitmap) {
+		if (!bitmap.hasAlpha()) {
+			return Format.RGB_565;
+		}
+		if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+			return Format.BITMAP;	// ALPHA_8 is already small
+		}
+		final int width = bitmap.getWidth();
+		final int height = bitmap.getHeight();
+		int[] row = new int[width];
+		for (int y = 0; y < height; ++y) {
+			bitmap.getPixels(row, 0, width, 0, y, width, 1);
+			if (!PixelConverter.isGrey(row, width)) {
+				return Format.BITMAP;
+			}
+		}
+		return Format.LUMINANCE_ALPHA;
+	}
+
+	// Grey level and alpha of each pixel, the grey premultiplied by the alpha as the Bitmaps uploaded by GLUtils
+	private static void uploadLuminanceAlpha(Bitmap bitmap) {
+		final int width = bitmap.getWidth();
+		final int height = bitmap.getHeight();
+		ByteBuffer pixels = ByteBuffer.allocateDirect(width * height * 2);
+		pixels.order(ByteOrder.nativeOrder());
+		int[] row = new int[width];
+		for (int y = 0; y < height; ++y) {
+			bitmap.getPixels(row, 0, width, 0, y, width, 1);
+			PixelConverter.putLuminanceAlpha(row, width, pixels);
+		}
+		uploadShortPixels(width, height, GLES20.GL_LUMINANCE_ALPHA, GLES20.GL_UNSIGNED_BYTE, pixels);
+	}
+
+	// Colors of an opaque Bitmap in 16 bits, converted row by row instead of copying the Bitmap in RGB_565
+	private static void uploadRgb565(Bitmap bitmap) {
+		final int width = bitmap.getWidth();
+		final int height = bitmap.getHeight();
+		ByteBuffer pixels = ByteBuffer.allocateDirect(width * height * 2);
+		pixels.order(ByteOrder.nativeOrder());
+		int[] row = new int[width];
+		for (int y = 0; y < height; ++y) {
+			bitmap.getPixels(row, 0, width, 0, y, width, 1);
+			PixelConverter.putRgb565(row, width, pixels);
+		}
+		uploadShortPixels(width, height, GLES20.GL_RGB, GLES20.GL_UNSIGNED_SHORT_5_6_5, pixels);
+	}
+
+	private static void uploadShortPixels(int width, int height, int format, int type, ByteBuffer pixels) {
+		pixels.position(0);
+		GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 2);	// rows of an odd width are not aligned on 4 bytes
+		GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, format, width, height, 0, format, type, pixels);
+		GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 4);
+	}
+
+	// Without ETC1 support, ETC1Util decodes the texture in RGB_565
+	private void bindEtc1() {
+		if (!isBinded()) {
+			GLES20.glGenTextures(1, mId, 0);
+		}
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mId[0]);
+		setParameters();
+		ETC1Util.loadTexture(GLES20.GL_TEXTURE_2D, 0, 0, GLES20.GL_RGB, GLES20.GL_UNSIGNED_SHORT_5_6_5, mEtc1Color);
+		mGpuBytes = mEtc1Color.getData().capacity();
+		if (mEtc1Alpha != null) {
+			if (mAlphaId[0] == UNBIND_VALUE) {
+				GLES20.glGenTextures(1, mAlphaId, 0);
+			}
+			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mAlphaId[0]);
+			setParameters();
+			ETC1Util.loadTexture(GLES20.GL_TEXTURE_2D, 0, 0, GLES20.GL_RGB, GLES20.GL_UNSIGNED_SHORT_5_6_5, mEtc1Alpha);
+			mGpuBytes += mEtc1Alpha.getData().capacity();
+		}
+		mGpuFormat = Format.ETC1;
+	}
+
     public void release() {
         unbindTexture();
+        mResources = null;
+        mFilePath = null;
+        mPixels = null;
+        mEtc1Color = null;
+        mEtc1Alpha = null;
         if ((mBitmap != null) && !mBitmap.isRecycled()) {
             mBitmap.recycle();
             mBitmap = null;
         }
     }
 
+	// Any thread, for a texture not rendered anymore. Frees the CPU memory now, release() must still be called on the OpenGL thread
+	final void releaseBitmap() {
+		if ((mBitmap != null) && !mBitmap.isRecycled()) {
+			mBitmap.recycle();
+		}
+		mBitmap = null;
+		mPixels = null;
+		mEtc1Color = null;
+		mEtc1Alpha = null;
+	}
+
+	// OpenGL Thread only. Frees the GPU memory, the texture is decoded and binded again when rendered
+	final void evict() {
+		if (canReload()) {
+			unbindTexture();
+			if ((mBitmap != null) && !mBitmap.isRecycled()) {
+				mBitmap.recycle();
+			}
+			mBitmap = null;
+			mPixels = null;
+			mEvicted = true;
+		}
+	}
+
+	// true once, when the texture is binded again after evict()
+	final boolean onReloaded() {
+		if (mEvicted && isBinded()) {
+			mEvicted = false;
+			return true;
+		}
+		return false;
+	}
+
+	final void setLastRenderedFrame(int frameNumber) {
+		mLastRenderedFrame = frameNumber;
+	}
+
+	final int getLastRenderedFrame() {
+		return mLastRenderedFrame;
+	}
+
+	// The texture was deleted with the OpenGL context
+	final boolean onContextLost() {
+		final boolean wasBinded = isReady();	// a texture partially uploaded starts again from its decoded pixels
+		mId[0] = UNBIND_VALUE;
+		mAlphaId[0] = UNBIND_VALUE;
+		mUploadedRows = 0;
+		return wasBinded;
+	}
+
 	void unbindTexture() {
 		if (isBinded()) {
 			GLES20.glDeleteTextures(1, mId, 0);
 			mId[0] = UNBIND_VALUE;
 		}
+		if (mAlphaId[0] != UNBIND_VALUE) {
+			GLES20.glDeleteTextures(1, mAlphaId, 0);
+			mAlphaId[0] = UNBIND_VALUE;
+		}
 	}
 	
 	public static Bitmap loadAndTurnAndResize(Context context, String pictureName, int approxWidth) {
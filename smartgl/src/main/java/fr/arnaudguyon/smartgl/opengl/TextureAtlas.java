@@ -0,0 +1,294 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.opengl;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.support.annotation.DrawableRes;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import fr.arnaudguyon.smartgl.tools.AtlasPacker;
+import fr.arnaudguyon.smartgl.tools.Assert;
+
+/**
+ * Pictures packed in a few big textures, so that many Sprites share the same texture and are drawn in one batch
+ * by a RenderPassSprite. Each picture is a Region: Sprite.setRegion() and AnimatedSprite.addFrame(duration, region)
+ * set the texture and remap the UVs to the region.
+ * Built by the Builder at load time, not on the OpenGL thread: the pages are drawn in Bitmaps, and the Textures
+ * are binded when first rendered. The border pixels of the pictures are repeated in the padding, so that linear
+ * filtering doesn't blend the neighbours.
+ */
+public class TextureAtlas {
+
+    private static final int DEFAULT_MAX_PAGE_SIZE = 2048;
+    private static final int DEFAULT_PADDING = 2;
+
+    /**
+     * A picture of the atlas: its page and its position in pixels
+     */
+    public static class Region {
+        private final Texture mTexture;
+        private final int mX;
+        private final int mY;
+        private final int mWidth;
+        private final int mHeight;
+
+        Region(Texture texture, int x, int y, int width, int height) {
+            mTexture = texture;
+            mX = x;
+            mY = y;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        public Texture getTexture() {
+            return mTexture;
+        }
+
+        public int getX() {
+            return mX;
+        }
+
+        public int getY() {
+            return mY;
+        }
+
+        public int getWidth() {
+            return mWidth;
+        }
+
+        public int getHeight() {
+            return mHeight;
+        }
+
+        /**
+         * @return the part of the region at (x, y) in the picture, for example a frame of a sprite sheet
+         */
+        public Region getSubRegion(int x, int y, int width, int height) {
+            Assert.assertTrue((x >= 0) && (y >= 0) && (x + width <= mWidth) && (y + height <= mHeight));
+            return new Region(mTexture, mX + x, mY + y, width, height);
+        }
+
+        public float getUMin() {
+            return (float) mX / mTexture.getWidth();
+        }
+
+        public float getUMax() {
+            return (float) (mX + mWidth) / mTexture.getWidth();
+        }
+
+        public float getVMin() {
+            return (float) mY / mTexture.getHeight();
+        }
+
+        public float getVMax() {
+            return (float) (mY + mHeight) / mTexture.getHeight();
+        }
+    }
+
+    /**
+     * Collects the pictures, and packs them with build(). The Bitmaps and Textures given to add() are not recycled,
+     * the Bitmap of a Texture recycled when binded is decoded again in a temporary Bitmap.
+     */
+    public static class Builder {
+
+        private final ArrayList<String> mNames = new ArrayList<>();
+        private final ArrayList<Bitmap> mBitmaps = new ArrayList<>();
+        private final ArrayList<Integer> mResourceIds = new ArrayList<>();
+        private final ArrayList<Texture> mTextures = new ArrayList<>();
+        private final Resources mResources;
+        private int mMaxPageSize = DEFAULT_MAX_PAGE_SIZE;
+        private int mPadding = DEFAULT_PADDING;
+
+        public Builder(@NonNull Context context) {
+            mResources = context.getResources();
+        }
+
+        /**
+         * @param maxPageSize width and height of the biggest textures, 2048 by default (the minimum supported by most GPUs)
+         */
+        public Builder setMaxPageSize(int maxPageSize) {
+            mMaxPageSize = maxPageSize;
+            return this;
+        }
+
+        /**
+         * @param padding pixels repeated around each picture, 2 by default
+         */
+        public Builder setPadding(int padding) {
+            mPadding = padding;
+            return this;
+        }
+
+        public Builder add(@NonNull String name, @NonNull Bitmap bitmap) {
+            addName(name);
+            mBitmaps.add(bitmap);
+            mResourceIds.add(0);
+            mTextures.add(null);
+            return this;
+        }
+
+        /**
+         * Packs the Bitmap of a texture not binded yet, or that can be decoded again (drawable or file)
+         */
+        public Builder add(@NonNull String name, @NonNull Texture texture) {
+            addName(name);
+            mBitmaps.add(null);
+            mResourceIds.add(0);
+            mTextures.add(texture);
+            return this;
+        }
+
+        /**
+         * The drawable is decoded by build(), without density scaling
+         */
+        public Builder add(@NonNull String name, @DrawableRes int resourceId) {
+            addName(name);
+            mBitmaps.add(null);
+            mResourceIds.add(resourceId);
+            mTextures.add(null);
+            return this;
+        }
+
+        // a second picture with the same name would hide the first one in the atlas
+        private void addName(String name) {
+            Assert.assertTrue("Duplicate region name " + name, !mNames.contains(name));
+            mNames.add(name);
+        }
+
+        /**
+         * Decodes, packs and draws the pictures in the pages. Can take some time: call it on a background thread.
+         */
+        public TextureAtlas build() {
+            final int nbPictures = mNames.size();
+            Bitmap[] bitmaps = new Bitmap[nbPictures];
+            boolean[] temporary = new boolean[nbPictures];   // decoded by the builder, recycled once drawn
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inScaled = false;
+            AtlasPacker packer = new AtlasPacker(mMaxPageSize, mMaxPageSize, mPadding);
+            for (int i = 0; i < nbPictures; ++i) {
+                Bitmap bitmap = mBitmaps.get(i);
+                Texture texture = mTextures.get(i);
+                if (texture != null) {
+                    // a recycled Bitmap is decoded again, but not kept in the texture
+                    bitmap = texture.peekBitmap();
+                    if (bitmap == null) {
+                        bitmap = texture.decodeBitmap();
+                        temporary[i] = true;
+                    }
+                    Assert.assertNotNull("Texture " + mNames.get(i) + " without Bitmap", bitmap);
+                } else if (bitmap == null) {
+                    bitmap = BitmapFactory.decodeResource(mResources, mResourceIds.get(i), options);
+                    temporary[i] = true;
+                    Assert.assertNotNull("Can't decode " + mNames.get(i), bitmap);
+                }
+                bitmaps[i] = bitmap;
+                packer.add(bitmap.getWidth(), bitmap.getHeight());
+            }
+            packer.pack();
+
+            final int nbPages = packer.getNbPages();
+            Bitmap[] pageBitmaps = new Bitmap[nbPages];
+            Canvas[] canvases = new Canvas[nbPages];
+            for (int page = 0; page < nbPages; ++page) {
+                pageBitmaps[page] = Bitmap.createBitmap(packer.getPageWidth(page), packer.getPageHeight(page), Bitmap.Config.ARGB_8888);
+                canvases[page] = new Canvas(pageBitmaps[page]);
+            }
+            for (int i = 0; i < nbPictures; ++i) {
+                drawPicture(canvases[packer.getPage(i)], bitmaps[i], packer.getX(i), packer.getY(i), mPadding);
+                if (temporary[i]) {
+                    bitmaps[i].recycle();
+                }
+            }
+
+            TextureAtlas atlas = new TextureAtlas(packer.getEfficiency());
+            for (int page = 0; page < nbPages; ++page) {
+                atlas.mPages.add(new Texture(pageBitmaps[page].getWidth(), pageBitmaps[page].getHeight(), pageBitmaps[page]));
+            }
+            for (int i = 0; i < nbPictures; ++i) {
+                Texture texture = atlas.mPages.get(packer.getPage(i));
+                atlas.mRegions.put(mNames.get(i), new Region(texture, packer.getX(i), packer.getY(i), packer.getWidth(i), packer.getHeight(i)));
+            }
+            return atlas;
+        }
+
+        // draws the picture, and stretches its border pixels in the padding, and its corner pixels in the padding corners
+        private static void drawPicture(Canvas canvas, Bitmap bitmap, int x, int y, int padding) {
+            final int width = bitmap.getWidth();
+            final int height = bitmap.getHeight();
+            canvas.drawBitmap(bitmap, x, y, null);
+            if (padding == 0) {
+                return;
+            }
+            canvas.drawBitmap(bitmap, new Rect(0, 0, width, 1), new Rect(x, y - padding, x + width, y), null);
+            canvas.drawBitmap(bitmap, new Rect(0, height - 1, width, height), new Rect(x, y + height, x + width, y + height + padding), null);
+            canvas.drawBitmap(bitmap, new Rect(0, 0, 1, height), new Rect(x - padding, y, x, y + height), null);
+            canvas.drawBitmap(bitmap, new Rect(width - 1, 0, width, height), new Rect(x + width, y, x + width + padding, y + height), null);
+            canvas.drawBitmap(bitmap, new Rect(0, 0, 1, 1), new Rect(x - padding, y - padding, x, y), null);
+            canvas.drawBitmap(bitmap, new Rect(width - 1, 0, width, 1), new Rect(x + width, y - padding, x + width + padding, y), null);
+            canvas.drawBitmap(bitmap, new Rect(0, height - 1, 1, height), new Rect(x - padding, y + height, x, y + height + padding), null);
+            canvas.drawBitmap(bitmap, new Rect(width - 1, height - 1, width, height), new Rect(x + width, y + height, x + width + padding, y + height + padding), null);
+        }
+    }
+
+    private final ArrayList<Texture> mPages = new ArrayList<>();
+    private final HashMap<String, Region> mRegions = new HashMap<>();
+    private final float mEfficiency;
+
+    private TextureAtlas(float efficiency) {
+        mEfficiency = efficiency;
+    }
+
+    /**
+     * @return the region of the picture added with this name, or null
+     */
+    public Region getRegion(String name) {
+        return mRegions.get(name);
+    }
+
+    public int getNbPages() {
+        return mPages.size();
+    }
+
+    public Texture getPage(int page) {
+        return mPages.get(page);
+    }
+
+    /**
+     * @return area of the pictures divided by the area of the pages, between 0 and 1
+     */
+    public float getEfficiency() {
+        return mEfficiency;
+    }
+
+    /**
+     * Releases the textures of the pages. OpenGL Thread only.
+     */
+    public void release() {
+        for (Texture page : mPages) {
+            page.release();
+        }
+        mPages.clear();
+        mRegions.clear();
+    }
+}
@@ -0,0 +1,293 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.opengl;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.support.annotation.DrawableRes;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import fr.arnaudguyon.smartgl.tools.Assert;
+
+/**
+ * Shares the Textures loaded from a drawable resource or a file: each one is decoded once, and counts its users.
+ * The GPU memory of the textures is kept under a budget: the least recently rendered ones are evicted (unused ones first),
+ * and decoded and binded again when they are rendered. Memory pressure signals remove the unused textures at once (their Bitmap
+ * is recycled immediately, the GPU texture deleted on the OpenGL thread), and also evict all the textures not rendered in the
+ * last frame when critical.
+ * Set it to the renderer with OpenGLRenderer.setTextureCache(), the evictions are done at the end of the frames.
+ * Release the Textures with release(Texture), not Texture.release().
+ */
+public class TextureCache implements ComponentCallbacks2 {
+
+    private static final int NO_TRIM = 0;
+    private static final int TRIM_UNUSED = 1;
+    private static final int TRIM_ALL = 2;
+
+    private static class Entry {
+        final String mKey;
+        final Texture mTexture;
+        int mRefCount;
+
+        Entry(String key, Texture texture) {
+            mKey = key;
+            mTexture = texture;
+        }
+    }
+
+    // unused textures first, then least recently rendered first
+    private static final Comparator<Entry> EVICTION_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry left, Entry right) {
+            final boolean leftUsed = (left.mRefCount > 0);
+            final boolean rightUsed = (right.mRefCount > 0);
+            if (leftUsed != rightUsed) {
+                return leftUsed ? 1 : -1;
+            }
+            final int leftFrame = left.mTexture.getLastRenderedFrame();
+            final int rightFrame = right.mTexture.getLastRenderedFrame();
+            return (leftFrame < rightFrame) ? -1 : ((leftFrame == rightFrame) ? 0 : 1);
+        }
+    };
+
+    private final Context mContext;
+    private final long mBudgetBytes;
+    private final HashMap<String, Entry> mEntries = new HashMap<>();
+    private final HashMap<Texture, Entry> mTextureEntries = new HashMap<>();
+    private final ArrayList<Entry> mEvictionWork = new ArrayList<>();
+    private OpenGLRenderer mRenderer;   // set by OpenGLRenderer.setTextureCache()
+    private int mPendingTrim = NO_TRIM;
+    private long mGpuBytes;
+    private int mHits;
+    private int mMisses;
+    private int mEvictions;
+    private int mReloads;
+
+    /**
+     * @param budgetBytes GPU memory of the binded textures, for example 32 MB. A single frame can use more.
+     */
+    public TextureCache(@NonNull Context context, long budgetBytes) {
+        mContext = context.getApplicationContext();
+        mBudgetBytes = budgetBytes;
+        mContext.registerComponentCallbacks(this);
+    }
+
+    /**
+     * @return the shared Texture of the drawable, decoded if not in the cache. Call release(Texture) when not used anymore.
+     */
+    public synchronized Texture acquire(@DrawableRes int resourceId) {
+        final String key = "@" + resourceId;
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            entry = add(key, new Texture(mContext, resourceId));
+        } else {
+            ++mHits;
+        }
+        ++entry.mRefCount;
+        return entry.mTexture;
+    }
+
+    /**
+     * @return the shared Texture of the picture file, decoded if not in the cache. Call release(Texture) when not used anymore.
+     */
+    public synchronized Texture acquire(@NonNull String filePath) {
+        Entry entry = mEntries.get(filePath);
+        if (entry == null) {
+            entry = add(filePath, new Texture(filePath));
+        } else {
+            ++mHits;
+        }
+        ++entry.mRefCount;
+        return entry.mTexture;
+    }
+
+    private Entry add(String key, Texture texture) {
+        ++mMisses;
+        Entry entry = new Entry(key, texture);
+        mEntries.put(key, entry);
+        mTextureEntries.put(texture, entry);
+        return entry;
+    }
+
+    /**
+     * The texture is not used anymore by the caller. When it has no user left, it stays in the cache until evicted.
+     */
+    public synchronized void release(Texture texture) {
+        Entry entry = mTextureEntries.get(texture);
+        Assert.assertTrue("Texture not acquired from the cache", (entry != null) && (entry.mRefCount > 0));
+        --entry.mRefCount;
+    }
+
+    synchronized void setRenderer(OpenGLRenderer renderer) {
+        mRenderer = renderer;
+    }
+
+    /**
+     * OpenGL Thread only, called by the renderer after each frame: evicts textures if over budget or on memory pressure
+     */
+    synchronized void onFrameRendered(OpenGLRenderer renderer) {
+        final int frameNumber = renderer.getFrameNumber();
+        long gpuBytes = 0;
+        for (Entry entry : mEntries.values()) {
+            if (entry.mTexture.onReloaded()) {
+                ++mReloads;
+            }
+            gpuBytes += entry.mTexture.getEstimatedGpuBytes();
+        }
+        mGpuBytes = gpuBytes;
+        final int trim = mPendingTrim;
+        mPendingTrim = NO_TRIM;
+        if ((gpuBytes <= mBudgetBytes) && (trim == NO_TRIM)) {
+            return;
+        }
+
+        if (trim != NO_TRIM) {
+            removeUnused(true);
+        }
+        final long budget = (trim == TRIM_ALL) ? 0 : mBudgetBytes;
+        ArrayList<Entry> candidates = mEvictionWork;
+        for (Entry entry : mEntries.values()) {
+            Texture texture = entry.mTexture;
+            if (texture.isBinded() && texture.canReload() && (texture.getLastRenderedFrame() != frameNumber)) {
+                candidates.add(entry);
+            }
+        }
+        Collections.sort(candidates, EVICTION_ORDER);
+        for (int i = 0; (i < candidates.size()) && (mGpuBytes > budget); ++i) {
+            Texture texture = candidates.get(i).mTexture;
+            mGpuBytes -= texture.getEstimatedGpuBytes();
+            texture.evict();
+            ++mEvictions;
+        }
+        candidates.clear();
+    }
+
+    /**
+     * The textures without user leave the cache
+     * @param onGLThread false to recycle the Bitmaps now, and delete the GPU textures later on the OpenGL thread
+     */
+    private void removeUnused(boolean onGLThread) {
+        final OpenGLRenderer renderer = mRenderer;
+        Iterator<Entry> iterator = mEntries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.mRefCount == 0) {
+                final Texture texture = entry.mTexture;
+                mGpuBytes -= texture.getEstimatedGpuBytes();
+                if (texture.isBinded()) {
+                    ++mEvictions;
+                }
+                if (onGLThread || (renderer == null)) {
+                    texture.release();
+                } else {
+                    texture.releaseBitmap();
+                    renderer.runOnGLThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            texture.release();
+                        }
+                    });
+                }
+                mTextureEntries.remove(texture);
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Releases all the textures, even the ones still acquired. OpenGL Thread only, or once the OpenGL context is destroyed.
+     */
+    public synchronized void clear() {
+        for (Entry entry : mEntries.values()) {
+            entry.mTexture.release();
+        }
+        mEntries.clear();
+        mTextureEntries.clear();
+        mGpuBytes = 0;
+        mContext.unregisterComponentCallbacks(this);
+    }
+
+    @Override
+    public synchronized void onTrimMemory(int level) {
+        // no frame is rendered in the background: the unused textures are removed now,
+        // the evictions of the other ones are applied at the end of the next frame, on the OpenGL thread
+        removeUnused(false);
+        if ((level >= TRIM_MEMORY_MODERATE) || (level == TRIM_MEMORY_RUNNING_CRITICAL)) {
+            mPendingTrim = TRIM_ALL;
+        } else if (mPendingTrim == NO_TRIM) {
+            mPendingTrim = TRIM_UNUSED;
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    public long getBudgetBytes() {
+        return mBudgetBytes;
+    }
+
+    /**
+     * @return estimated GPU memory of the binded textures of the cache, at the end of the last frame
+     */
+    public synchronized long getGpuBytes() {
+        return mGpuBytes;
+    }
+
+    public synchronized int getNbTextures() {
+        return mEntries.size();
+    }
+
+    /**
+     * @return number of acquire() that found the texture in the cache
+     */
+    public synchronized int getHits() {
+        return mHits;
+    }
+
+    /**
+     * @return number of acquire() that decoded the texture
+     */
+    public synchronized int getMisses() {
+        return mMisses;
+    }
+
+    /**
+     * @return number of textures removed from the GPU memory
+     */
+    public synchronized int getEvictions() {
+        return mEvictions;
+    }
+
+    /**
+     * @return number of evicted textures decoded and binded again because they were rendered
+     */
+    public synchronized int getReloads() {
+        return mReloads;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.opengl;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.annotation.DrawableRes;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fr.arnaudguyon.smartgl.tools.Assert;
+
+/**
+ * Decodes textures on background threads. load() returns the Texture at once, it can be used by Sprites and Objects
+ * right away: the renderer draws the placeholder texture instead until the pixels are decoded and uploaded.
+ * The uploads are spread over several frames with OpenGLRenderer.setTextureUploadBudget().
+ * The Textures keep their drawable or file: they are decoded again on the OpenGL thread after an eviction or a context loss.
+ */
+public class TextureLoader {
+
+    private static final String TAG = "TextureLoader";
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final ThreadPoolExecutor mExecutor;
+
+    /**
+     * Loader using up to 2 threads
+     */
+    public TextureLoader() {
+        this(Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 1, 2)));
+    }
+
+    /**
+     * @param nbThreads maximum number of textures decoded at the same time, the others wait in a queue
+     */
+    public TextureLoader(int nbThreads) {
+        Assert.assertTrue(nbThreads > 0);
+        mExecutor = new ThreadPoolExecutor(nbThreads, nbThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new LoaderThreadFactory());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public Texture load(@NonNull Context context, @DrawableRes final int resourceId) {
+        final Resources resources = context.getResources();
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, resourceId, bounds);
+        final Texture texture = Texture.createDecoding(resources, resourceId, null, bounds.outWidth, bounds.outHeight);
+        mExecutor.execute(new DecodeTask(texture) {
+            @Override
+            Bitmap decodeBitmap() {
+                return BitmapFactory.decodeResource(resources, resourceId, createOptions());
+            }
+        });
+        return texture;
+    }
+
+    public Texture load(@NonNull final String filePath) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(filePath, bounds);
+        final Texture texture = Texture.createDecoding(null, 0, filePath, bounds.outWidth, bounds.outHeight);
+        mExecutor.execute(new DecodeTask(texture) {
+            @Override
+            Bitmap decodeBitmap() {
+                return BitmapFactory.decodeFile(filePath, createOptions());
+            }
+        });
+        return texture;
+    }
+
+    /**
+     * Stops the threads. The textures not decoded yet are never drawn.
+     */
+    public void release() {
+        for (Runnable task : mExecutor.shutdownNow()) {
+            ((DecodeTask) task).mTexture.onDecodeFailed();
+        }
+    }
+
+    private abstract static class DecodeTask implements Runnable {
+
+        final Texture mTexture;
+
+        DecodeTask(Texture texture) {
+            mTexture = texture;
+        }
+
+        abstract Bitmap decodeBitmap();
+
+        @Override
+        public void run() {
+            try {
+                decode(mTexture, decodeBitmap());
+            } catch (Throwable e) {     // OutOfMemoryError included: the texture must not stay in the decoding state
+                Log.w(TAG, "Texture can't be decoded: " + e);
+                mTexture.onDecodeFailed();
+            }
+        }
+    }
+
+    private static BitmapFactory.Options createOptions() {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        return options;
+    }
+
+    // Background thread. Copies the RGBA pixels out of the Bitmap, so that the renderer can upload them by stripes
+    private static void decode(Texture texture, Bitmap bitmap) {
+        if (bitmap == null) {
+            Log.w(TAG, "Texture can't be decoded");
+            texture.onDecodeFailed();
+            return;
+        }
+        if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+            Bitmap converted = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+            bitmap.recycle();
+            bitmap = converted;
+        }
+        ByteBuffer pixels = ByteBuffer.allocateDirect(bitmap.getWidth() * bitmap.getHeight() * Texture.BYTES_PER_PIXEL);
+        pixels.order(ByteOrder.nativeOrder());
+        bitmap.copyPixelsToBuffer(pixels);
+        pixels.position(0);
+        texture.onDecoded(pixels, bitmap.getWidth(), bitmap.getHeight());
+        bitmap.recycle();
+    }
+
+    private static class LoaderThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger mThreadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "TextureLoader-" + mThreadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    }
+}
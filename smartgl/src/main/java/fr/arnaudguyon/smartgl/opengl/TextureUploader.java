@@ -0,0 +1,88 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.opengl;
+
+import java.util.ArrayList;
+
+/**
+ * Uploads the textures drawn for the first time, within a budget of bytes and textures per frame.
+ * The textures decoded by a TextureLoader are uploaded by stripes of rows (glTexSubImage2D), so that a big picture
+ * is spread over several frames. The other textures are uploaded at once. OpenGL Thread only.
+ * A texture counts once in the textures of a frame, even if several of its stripes are uploaded.
+ */
+final class TextureUploader {
+
+    private int mMaxBytesPerFrame = Integer.MAX_VALUE;
+    private int mMaxTexturesPerFrame = Integer.MAX_VALUE;
+    private int mFrameBytes;
+    private final ArrayList<Texture> mFrameTextures = new ArrayList<>();   // uploaded during the frame, a few ones
+
+    void setBudget(int maxBytesPerFrame, int maxTexturesPerFrame) {
+        mMaxBytesPerFrame = maxBytesPerFrame;
+        mMaxTexturesPerFrame = maxTexturesPerFrame;
+    }
+
+    void onFrameStart() {
+        mFrameBytes = 0;
+        mFrameTextures.clear();
+    }
+
+    /**
+     * Uploads the texture, or its next stripe, if the budget of the frame allows it.
+     * The first upload of a frame is always done, even over the budget, so that all the textures are uploaded eventually.
+     * @return true if the texture is completely uploaded and can be drawn
+     */
+    boolean upload(OpenGLRenderer renderer, Texture texture) {
+        if (texture.isReady()) {
+            return true;
+        }
+        if (texture.isDecoding()) {
+            return false;
+        }
+        final boolean firstUpload = mFrameTextures.isEmpty();
+        final boolean newTexture = !mFrameTextures.contains(texture);
+        if (!firstUpload && ((mFrameBytes >= mMaxBytesPerFrame) || (newTexture && (mFrameTextures.size() >= mMaxTexturesPerFrame)))) {
+            return false;
+        }
+
+        final boolean created = !texture.isBinded();
+        final int bytes;
+        if (texture.hasDecodedPixels()) {
+            final int rowBytes = texture.getWidth() * Texture.BYTES_PER_PIXEL;
+            final int maxRows = Math.max(1, (mMaxBytesPerFrame - mFrameBytes) / rowBytes);
+            bytes = texture.uploadRows(maxRows);
+        } else {
+            final long estimatedBytes = (long) texture.getWidth() * texture.getHeight() * Texture.BYTES_PER_PIXEL;
+            if (!firstUpload && (mFrameBytes + estimatedBytes > mMaxBytesPerFrame)) {
+                return false;
+            }
+            if (!texture.bindTexture()) {
+                return false;
+            }
+            bytes = texture.getEstimatedGpuBytes();
+        }
+        if (created) {
+            renderer.getResourceManager().onTextureCreated(texture);
+        }
+        renderer.getStateCache().invalidateTextureBinding();
+        renderer.getCurrentRenderStats().onTextureUpload(bytes);
+        if (newTexture) {
+            mFrameTextures.add(texture);
+        }
+        mFrameBytes += bytes;
+        return texture.isReady();
+    }
+}
@@ -0,0 +1,352 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.opengl;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fr.arnaudguyon.smartgl.tools.Assert;
+
+/**
+ * Update phase of the render passes, run before sorting and drawing their objects: tick() of all the objects,
+ * then their world matrices if invalid. The work is split in slices, run by the worker threads and the OpenGL
+ * thread at the same time, each one taking the next slice when done.
+ * The objects whose isParallelSafe() is true are ticked in parallel, the others on the OpenGL thread, in the order
+ * of the pass, before them. The matrices are computed in parallel, parents first.
+ * Set it with OpenGLRenderer.setUpdatePool(). Worth it with thousands of objects, or with expensive ticks.
+ */
+public class UpdatePool {
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    private static final int MIN_SLICE_SIZE = 64;
+    private static final int SLICES_PER_THREAD = 4;     // smaller slices balance uneven ticks
+    private static final RenderObject[] NO_OBJECTS = new RenderObject[0];
+
+    // work on a range of objects
+    private interface SliceTask {
+        void run(RenderObject[] objects, int start, int end);
+    }
+
+    // one run of a SliceTask. A worker starting late only finds no slice left.
+    private static class Job {
+        final SliceTask mTask;
+        final RenderObject[] mObjects;
+        final int mStart;
+        final int mEnd;
+        final int mSliceSize;
+        final int mNbSlices;
+        final AtomicInteger mNextSlice = new AtomicInteger();
+        int mSlicesDone;        // synchronized on the Job
+        Throwable mError;       // synchronized on the Job, first error of a slice
+
+        Job(SliceTask task, RenderObject[] objects, int start, int end, int sliceSize) {
+            mTask = task;
+            mObjects = objects;
+            mStart = start;
+            mEnd = end;
+            mSliceSize = sliceSize;
+            mNbSlices = (end - start + sliceSize - 1) / sliceSize;
+        }
+
+        void runSlices() {
+            int slicesDone = 0;
+            Throwable error = null;
+            int slice = mNextSlice.getAndIncrement();
+            while (slice < mNbSlices) {
+                final int start = mStart + slice * mSliceSize;
+                try {
+                    mTask.run(mObjects, start, Math.min(start + mSliceSize, mEnd));
+                } catch (Throwable e) {
+                    if (error == null) {
+                        error = e;
+                    }
+                }
+                ++slicesDone;
+                slice = mNextSlice.getAndIncrement();
+            }
+            if (slicesDone > 0) {
+                synchronized (this) {
+                    mSlicesDone += slicesDone;
+                    if ((error != null) && (mError == null)) {
+                        mError = error;
+                    }
+                    if (mSlicesDone == mNbSlices) {
+                        notifyAll();
+                    }
+                }
+            }
+        }
+
+        synchronized void waitDone() {
+            boolean interrupted = false;
+            while (mSlicesDone < mNbSlices) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;     // the slices can't be abandoned
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (mError instanceof RuntimeException) {
+                throw (RuntimeException) mError;
+            } else if (mError instanceof Error) {
+                throw (Error) mError;
+            } else if (mError != null) {
+                throw new RuntimeException(mError);
+            }
+        }
+    }
+
+    private final ThreadPoolExecutor mExecutor;
+    private final int mNbWorkers;
+    private volatile boolean mReleased;     // the updates run on the OpenGL thread only
+    private volatile Job mJob;
+    private final Runnable mWorker = new Runnable() {
+        @Override
+        public void run() {
+            Job job = mJob;
+            if (job != null) {
+                job.runSlices();
+            }
+        }
+    };
+
+    // OpenGL Thread
+    private OpenGLRenderer mRenderer;
+    private RenderObject[] mParallelTicks = NO_OBJECTS;
+    private int mNbParallelTicks;
+    private RenderObject[] mMatrixObjects = NO_OBJECTS;    // visible objects, in the order of the tree
+    private int[] mMatrixDepths = new int[0];
+    private int mNbMatrixObjects;
+    private RenderObject[] mMatrixOrder = NO_OBJECTS;      // the same objects, by depth
+    private int[] mDepthCounts = new int[1];
+    private int[] mDepthPositions = new int[1];
+    private final AtomicInteger mMatricesComputed = new AtomicInteger();
+    private final AtomicInteger mLocalMatricesComputed = new AtomicInteger();
+
+    private final SliceTask mTickTask = new SliceTask() {
+        @Override
+        public void run(RenderObject[] objects, int start, int end) {
+            final OpenGLRenderer renderer = mRenderer;
+            for (int i = start; i < end; ++i) {
+                objects[i].tick(renderer);
+            }
+        }
+    };
+
+    private final SliceTask mMatrixTask = new SliceTask() {
+        @Override
+        public void run(RenderObject[] objects, int start, int end) {
+            int computed = 0;
+            int localComputed = 0;
+            for (int i = start; i < end; ++i) {
+                RenderObject object = objects[i];
+                if (!object.isMatrixValid()) {
+                    if (!object.isLocalMatrixValid()) {
+                        ++localComputed;
+                    }
+                    object.updateMatrix(null);
+                    ++computed;
+                }
+            }
+            mMatricesComputed.addAndGet(computed);
+            mLocalMatricesComputed.addAndGet(localComputed);
+        }
+    };
+
+    /**
+     * Pool using all the cores: a worker thread per core, except the core of the OpenGL thread
+     */
+    public UpdatePool() {
+        this(Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    /**
+     * @param nbWorkers threads helping the OpenGL thread, 0 to run everything on the OpenGL thread
+     */
+    public UpdatePool(int nbWorkers) {
+        Assert.assertTrue(nbWorkers >= 0);
+        mNbWorkers = nbWorkers;
+        if (nbWorkers > 0) {
+            mExecutor = new ThreadPoolExecutor(nbWorkers, nbWorkers, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory());
+            mExecutor.allowCoreThreadTimeOut(true);
+        } else {
+            mExecutor = null;
+        }
+    }
+
+    public int getNbWorkers() {
+        return mNbWorkers;
+    }
+
+    /**
+     * Any thread. Stops the worker threads: if still set in the renderer, the next updates run on the OpenGL thread only.
+     */
+    public void release() {
+        mReleased = true;
+        if (mExecutor != null) {
+            mExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * OpenGL Thread. Ticks the objects of a render pass and their children, then computes their invalid world matrices.
+     */
+    void update(OpenGLRenderer renderer, RenderObject[] objects, RenderStats stats) {
+        mRenderer = renderer;
+        mNbParallelTicks = 0;
+        mNbMatrixObjects = 0;
+        for (int i = 0; i < objects.length; ++i) {
+            collect(objects[i], 0, true);
+        }
+        run(mTickTask, mParallelTicks, 0, mNbParallelTicks);
+        clear(mParallelTicks, mNbParallelTicks);
+        mRenderer = null;
+
+        sortByDepth();
+        mMatricesComputed.set(0);
+        mLocalMatricesComputed.set(0);
+        int levelStart = 0;
+        for (int depth = 0; depth < mDepthCounts.length; ++depth) {
+            final int levelEnd = levelStart + mDepthCounts[depth];
+            run(mMatrixTask, mMatrixOrder, levelStart, levelEnd);     // the parents are computed by the previous level
+            levelStart = levelEnd;
+        }
+        clear(mMatrixOrder, mNbMatrixObjects);
+        clear(mMatrixObjects, mNbMatrixObjects);
+        stats.onMatricesComputed(mMatricesComputed.get(), mLocalMatricesComputed.get());
+    }
+
+    // the objects not parallel safe are ticked at once, before their children are read (like the rendering does)
+    private void collect(RenderObject object, int depth, boolean parentVisible) {
+        if (object.isParallelSafe()) {
+            if (mNbParallelTicks == mParallelTicks.length) {
+                mParallelTicks = grow(mParallelTicks);
+            }
+            mParallelTicks[mNbParallelTicks++] = object;
+        } else {
+            object.tick(mRenderer);
+        }
+        final boolean visible = parentVisible && object.shouldDisplay(mRenderer);     // same test as the rendering
+        if (visible) {
+            if (mNbMatrixObjects == mMatrixObjects.length) {
+                mMatrixObjects = grow(mMatrixObjects);
+                int[] depths = new int[mMatrixObjects.length];
+                System.arraycopy(mMatrixDepths, 0, depths, 0, mNbMatrixObjects);
+                mMatrixDepths = depths;
+            }
+            mMatrixObjects[mNbMatrixObjects] = object;
+            mMatrixDepths[mNbMatrixObjects] = depth;
+            ++mNbMatrixObjects;
+        }
+        if (object.isContainer()) {
+            final RenderObject[] children = ((RenderObjectContainer) object).getRenderObjectArray();
+            if (children != null) {
+                for (int i = 0; i < children.length; ++i) {
+                    collect(children[i], depth + 1, visible);
+                }
+            }
+        }
+    }
+
+    // counting sort, keeps the order of the tree in each level
+    private void sortByDepth() {
+        int maxDepth = 0;
+        for (int i = 0; i < mNbMatrixObjects; ++i) {
+            maxDepth = Math.max(maxDepth, mMatrixDepths[i]);
+        }
+        if (mDepthCounts.length != maxDepth + 1) {
+            mDepthCounts = new int[maxDepth + 1];
+        } else {
+            Arrays.fill(mDepthCounts, 0);
+        }
+        for (int i = 0; i < mNbMatrixObjects; ++i) {
+            ++mDepthCounts[mMatrixDepths[i]];
+        }
+        if (mMatrixOrder.length < mMatrixObjects.length) {
+            mMatrixOrder = new RenderObject[mMatrixObjects.length];
+        }
+        if (mDepthPositions.length != maxDepth + 1) {
+            mDepthPositions = new int[maxDepth + 1];
+        }
+        final int[] positions = mDepthPositions;
+        positions[0] = 0;
+        for (int depth = 1; depth <= maxDepth; ++depth) {
+            positions[depth] = positions[depth - 1] + mDepthCounts[depth - 1];
+        }
+        for (int i = 0; i < mNbMatrixObjects; ++i) {
+            mMatrixOrder[positions[mMatrixDepths[i]]++] = mMatrixObjects[i];
+        }
+    }
+
+    private void run(SliceTask task, RenderObject[] objects, int start, int end) {
+        final int count = end - start;
+        if ((mNbWorkers == 0) || mReleased || (count <= MIN_SLICE_SIZE)) {
+            task.run(objects, start, end);
+            return;
+        }
+        final int maxSlices = (mNbWorkers + 1) * SLICES_PER_THREAD;
+        final int sliceSize = Math.max(MIN_SLICE_SIZE, (count + maxSlices - 1) / maxSlices);
+        Job job = new Job(task, objects, start, end, sliceSize);
+        mJob = job;
+        final int nbHelpers = Math.min(mNbWorkers, job.mNbSlices - 1);
+        try {
+            for (int i = 0; i < nbHelpers; ++i) {
+                mExecutor.execute(mWorker);
+            }
+        } catch (RejectedExecutionException e) {
+            // released meanwhile: the slices not taken by a worker are run by this thread
+        }
+        job.runSlices();
+        job.waitDone();
+        mJob = null;
+    }
+
+    private static RenderObject[] grow(RenderObject[] objects) {
+        RenderObject[] grown = new RenderObject[Math.max(64, objects.length * 2)];
+        System.arraycopy(objects, 0, grown, 0, objects.length);
+        return grown;
+    }
+
+    // no reference kept on the removed objects
+    private static void clear(RenderObject[] objects, int count) {
+        for (int i = 0; i < count; ++i) {
+            objects[i] = null;
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger mThreadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "UpdatePool-" + mThreadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
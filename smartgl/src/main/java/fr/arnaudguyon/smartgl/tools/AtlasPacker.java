@@ -0,0 +1,259 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Packs rectangles in pages of a maximum size, with the MaxRects algorithm (bottom left rule: the free position
+ * giving the lowest bottom, which keeps the used part of the pages compact). The biggest rectangles are placed first,
+ * in the first page where they fit. A new page is opened when a rectangle fits in none of the open pages.
+ * Each page is then reduced to the smallest power of 2 size containing its rectangles.
+ * Only computes the positions: no Bitmap nor OpenGL, so it can run on any thread. Used by TextureAtlas.
+ */
+public class AtlasPacker {
+
+    private static class Page {
+        final ArrayList<int[]> mFreeRects = new ArrayList<>();    // x, y, width, height
+        int mUsedWidth;
+        int mUsedHeight;
+        int mWidth;
+        int mHeight;
+    }
+
+    private final int mMaxWidth;
+    private final int mMaxHeight;
+    private final int mPadding;
+    private final IntArray mSizes = new IntArray();     // width, height of each rectangle
+    private int[] mPositions;                           // page, x, y of each rectangle
+    private final ArrayList<Page> mPages = new ArrayList<>();
+
+    /**
+     * @param padding pixels around each rectangle, to avoid the bleeding of the neighbours with linear filtering
+     */
+    public AtlasPacker(int maxWidth, int maxHeight, int padding) {
+        Assert.assertTrue((maxWidth > 0) && (maxHeight > 0) && (padding >= 0));
+        mMaxWidth = maxWidth;
+        mMaxHeight = maxHeight;
+        mPadding = padding;
+    }
+
+    /**
+     * @return index of the rectangle, to read its position once packed
+     */
+    public int add(int width, int height) {
+        Assert.assertTrue("Rectangle " + width + "x" + height + " too big for the pages",
+                (width > 0) && (height > 0) && (width + 2 * mPadding <= mMaxWidth) && (height + 2 * mPadding <= mMaxHeight));
+        Assert.assertTrue("Already packed", mPositions == null);
+        mSizes.add(width, height);
+        return getNbRectangles() - 1;
+    }
+
+    public int getNbRectangles() {
+        return mSizes.size() / 2;
+    }
+
+    public void pack() {
+        Assert.assertTrue("Already packed", mPositions == null);
+        final int nbRectangles = getNbRectangles();
+        mPositions = new int[nbRectangles * 3];
+
+        // biggest side first, then biggest area
+        final int[] sizes = mSizes.getValues();
+        Integer[] order = new Integer[nbRectangles];
+        for (int i = 0; i < nbRectangles; ++i) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer left, Integer right) {
+                final int leftWidth = sizes[left * 2];
+                final int leftHeight = sizes[left * 2 + 1];
+                final int rightWidth = sizes[right * 2];
+                final int rightHeight = sizes[right * 2 + 1];
+                final int leftSide = Math.max(leftWidth, leftHeight);
+                final int rightSide = Math.max(rightWidth, rightHeight);
+                if (leftSide != rightSide) {
+                    return (leftSide > rightSide) ? -1 : 1;
+                }
+                final int leftArea = leftWidth * leftHeight;
+                final int rightArea = rightWidth * rightHeight;
+                return (leftArea > rightArea) ? -1 : ((leftArea == rightArea) ? 0 : 1);
+            }
+        });
+
+        for (int i = 0; i < nbRectangles; ++i) {
+            final int index = order[i];
+            final int width = sizes[index * 2] + 2 * mPadding;
+            final int height = sizes[index * 2 + 1] + 2 * mPadding;
+            if (!place(index, width, height)) {
+                Page page = new Page();
+                page.mFreeRects.add(new int[] {0, 0, mMaxWidth, mMaxHeight});
+                mPages.add(page);
+                place(index, width, height);
+            }
+        }
+        for (Page page : mPages) {
+            page.mWidth = Math.min(nextPowerOf2(page.mUsedWidth), mMaxWidth);
+            page.mHeight = Math.min(nextPowerOf2(page.mUsedHeight), mMaxHeight);
+        }
+    }
+
+    // places the rectangle at the best free position of the first page where it fits, so that the last pages stay small
+    private boolean place(int index, int width, int height) {
+        int bestPage = -1;
+        int[] bestRect = null;
+        int bestBottom = Integer.MAX_VALUE;
+        int bestLeft = Integer.MAX_VALUE;
+        for (int pageIndex = 0; (pageIndex < mPages.size()) && (bestRect == null); ++pageIndex) {
+            for (int[] free : mPages.get(pageIndex).mFreeRects) {
+                if ((width <= free[2]) && (height <= free[3])) {
+                    final int bottom = free[1] + height;
+                    if ((bottom < bestBottom) || ((bottom == bestBottom) && (free[0] < bestLeft))) {
+                        bestPage = pageIndex;
+                        bestRect = free;
+                        bestBottom = bottom;
+                        bestLeft = free[0];
+                    }
+                }
+            }
+        }
+        if (bestRect == null) {
+            return false;
+        }
+        final int x = bestRect[0];
+        final int y = bestRect[1];
+        Page page = mPages.get(bestPage);
+        splitFreeRects(page, x, y, width, height);
+        page.mUsedWidth = Math.max(page.mUsedWidth, x + width);
+        page.mUsedHeight = Math.max(page.mUsedHeight, y + height);
+        mPositions[index * 3] = bestPage;
+        mPositions[index * 3 + 1] = x + mPadding;
+        mPositions[index * 3 + 2] = y + mPadding;
+        return true;
+    }
+
+    // the free rectangles overlapped by the placed one are replaced by their (up to 4) remaining parts
+    private static void splitFreeRects(Page page, int x, int y, int width, int height) {
+        ArrayList<int[]> freeRects = page.mFreeRects;
+        final int nbFree = freeRects.size();
+        ArrayList<int[]> kept = new ArrayList<>(nbFree + 4);
+        for (int i = 0; i < nbFree; ++i) {
+            int[] free = freeRects.get(i);
+            if ((x >= free[0] + free[2]) || (x + width <= free[0]) || (y >= free[1] + free[3]) || (y + height <= free[1])) {
+                kept.add(free);
+                continue;
+            }
+            if (x > free[0]) {
+                kept.add(new int[] {free[0], free[1], x - free[0], free[3]});
+            }
+            if (x + width < free[0] + free[2]) {
+                kept.add(new int[] {x + width, free[1], free[0] + free[2] - x - width, free[3]});
+            }
+            if (y > free[1]) {
+                kept.add(new int[] {free[0], free[1], free[2], y - free[1]});
+            }
+            if (y + height < free[1] + free[3]) {
+                kept.add(new int[] {free[0], y + height, free[2], free[1] + free[3] - y - height});
+            }
+        }
+        // removes the free rectangles contained in another one
+        freeRects.clear();
+        final int nbKept = kept.size();
+        for (int i = 0; i < nbKept; ++i) {
+            int[] rect = kept.get(i);
+            boolean contained = false;
+            for (int j = 0; (j < nbKept) && !contained; ++j) {
+                if (i != j) {
+                    int[] other = kept.get(j);
+                    contained = (rect[0] >= other[0]) && (rect[1] >= other[1])
+                            && (rect[0] + rect[2] <= other[0] + other[2]) && (rect[1] + rect[3] <= other[1] + other[3])
+                            && (!Arrays.equals(rect, other) || (i > j));    // keeps one of the duplicates
+                }
+            }
+            if (!contained) {
+                freeRects.add(rect);
+            }
+        }
+    }
+
+    private static int nextPowerOf2(int value) {
+        int power = 1;
+        while (power < value) {
+            power <<= 1;
+        }
+        return power;
+    }
+
+    public int getNbPages() {
+        return mPages.size();
+    }
+
+    /**
+     * @return width of the page, the smallest power of 2 containing its rectangles (or the maximum width)
+     */
+    public int getPageWidth(int page) {
+        return mPages.get(page).mWidth;
+    }
+
+    public int getPageHeight(int page) {
+        return mPages.get(page).mHeight;
+    }
+
+    public int getPage(int index) {
+        return mPositions[index * 3];
+    }
+
+    /**
+     * @return left of the rectangle in its page, padding excluded
+     */
+    public int getX(int index) {
+        return mPositions[index * 3 + 1];
+    }
+
+    /**
+     * @return top of the rectangle in its page, padding excluded
+     */
+    public int getY(int index) {
+        return mPositions[index * 3 + 2];
+    }
+
+    public int getWidth(int index) {
+        return mSizes.get(index * 2);
+    }
+
+    public int getHeight(int index) {
+        return mSizes.get(index * 2 + 1);
+    }
+
+    /**
+     * @return area of the rectangles (padding excluded) divided by the area of the pages, between 0 and 1
+     */
+    public float getEfficiency() {
+        long usedArea = 0;
+        final int nbRectangles = getNbRectangles();
+        for (int i = 0; i < nbRectangles; ++i) {
+            usedArea += (long) getWidth(i) * getHeight(i);
+        }
+        long pagesArea = 0;
+        for (Page page : mPages) {
+            pagesArea += (long) page.mWidth * page.mHeight;
+        }
+        return (pagesArea > 0) ? (float) usedArea / pagesArea : 0;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of the texture atlasing done by toObject3D() on a model built with atlasTextures(true).
+ */
+public class AtlasingStats {
+
+    private int mMaterials;
+    private int mAtlasedMaterials;
+    private final ArrayList<String> mWrappedMaterials = new ArrayList<>();
+    private final ArrayList<String> mMaterialsWithoutTexture = new ArrayList<>();
+    private int mFacesBefore;
+    private int mFacesAfter;
+    private int mPages;
+    private float mEfficiency;
+
+    /**
+     * @return number of textured materials of the model
+     */
+    public int getMaterials() {
+        return mMaterials;
+    }
+
+    /**
+     * @return number of materials whose texture was packed in the atlas
+     */
+    public int getAtlasedMaterials() {
+        return mAtlasedMaterials;
+    }
+
+    /**
+     * @return materials kept with their own texture because their UVs are outside of 0..1: the texture is repeated
+     * (GL_REPEAT wrap mode expected by the model), which can't be done with a region of an atlas
+     */
+    public List<String> getWrappedMaterials() {
+        return Collections.unmodifiableList(mWrappedMaterials);
+    }
+
+    /**
+     * @return materials kept apart because no Texture was added for them, or its Bitmap is not available anymore
+     */
+    public List<String> getMaterialsWithoutTexture() {
+        return Collections.unmodifiableList(mMaterialsWithoutTexture);
+    }
+
+    /**
+     * @return number of faces (draw calls) the model would have without atlas
+     */
+    public int getFacesBefore() {
+        return mFacesBefore;
+    }
+
+    /**
+     * @return number of faces with the atlas: 1 per atlas page, plus 1 per material kept apart
+     */
+    public int getFacesAfter() {
+        return mFacesAfter;
+    }
+
+    public int getPages() {
+        return mPages;
+    }
+
+    /**
+     * @return area of the textures divided by the area of the atlas pages, between 0 and 1
+     */
+    public float getEfficiency() {
+        return mEfficiency;
+    }
+
+    void onMaterial() {
+        ++mMaterials;
+    }
+
+    void onWrappedMaterial(String materialName) {
+        mWrappedMaterials.add(materialName);
+    }
+
+    void onMaterialWithoutTexture(String materialName) {
+        mMaterialsWithoutTexture.add(materialName);
+    }
+
+    void onAtlas(int atlasedMaterials, int pages, float efficiency) {
+        mAtlasedMaterials = atlasedMaterials;
+        mPages = pages;
+        mEfficiency = efficiency;
+    }
+
+    void onFaces(int before, int after) {
+        mFacesBefore = before;
+        mFacesAfter = after;
+    }
+}
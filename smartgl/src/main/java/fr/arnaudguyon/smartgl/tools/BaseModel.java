@@ -13,13 +13,15 @@
     See the License for the specific language governing permissions and
     limitations under the License.
  */
-package com.quixiegames.krixwarestudios.covertops;
+package fr.arnaudguyon.smartgl.tools;
+
+import android.content.Context;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 
-import fr.arnaudguyon.smartgl.math.Vector3D;
 import fr.arnaudguyon.smartgl.opengl.Face3D;
+import fr.arnaudguyon.smartgl.opengl.Object3D;
 import fr.arnaudguyon.smartgl.opengl.Texture;
 
 /**
@@ -29,95 +31,151 @@ import fr.arnaudguyon.smartgl.opengl.Texture;
 public class BaseModel {
     protected float[] mColor = {1,0,0};
     protected ArrayList<Face3D> mFaces = new ArrayList<>();
-    protected ArrayList<Vertex> mVertex = new ArrayList<>();
-    protected ArrayList<UV> mUVs = new ArrayList<>(); //DAE's TEXCOORD (Texture Coordinate)
-    protected ArrayList<Normal> mNormals = new ArrayList<>();
-    protected ArrayList<Strip> mStrips = new ArrayList<>();
+    protected FloatArray mPositions = new FloatArray();  // x,y,z for each vertex
+    protected FloatArray mVertexColors;                 // r,g,b for each vertex, null if no vertex has colors
+    protected FloatArray mUVs = new FloatArray();        // u,v, DAE's TEXCOORD (Texture Coordinate)
+    protected FloatArray mNormals = new FloatArray();    // x,y,z
+    protected IntArray mCorners = new IntArray();        // vertex, uv, normal index (0 based) for each corner of the strips
+    ArrayList<MeshData.Strip> mStrips = new ArrayList<>();     // offsets in mCorners, the indexes are set by toMeshData()
     
     protected HashMap<String, Texture> mTextures = new HashMap<>();
-    
-    protected static class IndexInfo {
-        int mVertexIndex;
-        int mUVIndex;
-        int mNormalIndex;
-
-        static IndexInfo create(Integer vertexIndex, Integer uvIndex, Integer normalIndex) {
-            if (vertexIndex == null) {
-                return null;
+    MeshData mMeshData;    // when loaded from a MeshCache, instead of the arrays above
+    boolean mIndexed;
+    boolean mOptimizeVertexCache;
+    Context mAtlasContext;  // to pack the textures in an atlas, null if not
+    private IndexingStats mIndexingStats;
+    private AtlasingStats mAtlasingStats;
+    private MeshAtlas mMeshAtlas;   // built by the first toObject3D(), shared by the next ones
+
+    /**
+     * @return the deduplication counters of the last toObject3D(), or null if the model is not indexed
+     */
+    public IndexingStats getIndexingStats() {
+        return mIndexingStats;
+    }
+
+    /**
+     * @return the materials packed in the atlas by the first toObject3D(), or null if the textures are not atlased
+     */
+    public AtlasingStats getAtlasingStats() {
+        return mAtlasingStats;
+    }
+
+    // with or without indexes and atlas, as set by the Builder
+    Object3D createObject3D(MeshData meshData) {
+        HashMap<String, Texture> textures = mTextures;
+        if ((mAtlasContext != null) && (meshData.mUVs.length > 0)) {
+            if (mMeshAtlas == null) {
+                mAtlasingStats = new AtlasingStats();
+                mMeshAtlas = new MeshAtlas(mAtlasContext, meshData, mTextures, !mIndexed, mAtlasingStats);
             }
-            IndexInfo indexInfo = new IndexInfo();
-            indexInfo.mVertexIndex = vertexIndex - 1;
-            indexInfo.mUVIndex = (uvIndex != null) ? uvIndex - 1: 0;
-            indexInfo.mNormalIndex = (normalIndex != null) ? normalIndex - 1: 0;
-            return indexInfo;
+            meshData = mMeshAtlas.getMeshData();
+            textures = mMeshAtlas.getTextures();
         }
-        static IndexInfo create(int vertexIndex, int uvIndex, int normalIndex) {
-            IndexInfo indexInfo = new IndexInfo();
-            indexInfo.mVertexIndex = vertexIndex;
-            indexInfo.mUVIndex = uvIndex;
-            indexInfo.mNormalIndex = normalIndex;
-            return indexInfo;
+        if (mIndexed) {
+            mIndexingStats = new IndexingStats();
+            return MeshIndexer.toObject3D(meshData, textures, mColor, mOptimizeVertexCache, mIndexingStats);
         }
+        return meshData.toObject3D(textures, mColor);
     }
 
-    protected static class Strip {
-        String mTextureName;
-        ArrayList<IndexInfo> mIndexes = new ArrayList<>();
+    protected final int getNbVertex() {
+        return mPositions.size() / 3;
+    }
 
-        Strip(String textureName) {
-            mTextureName = textureName;
-        }
-        void addIndex(IndexInfo indexInfo) { mIndexes.add(indexInfo); }
-        void addAll(ArrayList<IndexInfo> indexes) {
-            mIndexes.addAll(indexes);
-        }
+    protected final int getNbUVs() {
+        return mUVs.size() / 2;
     }
-    
-    protected class Vertex {
-        float mX;
-        float mY;
-        float mZ;
-
-        float mR, mG, mB;
-        boolean mHasColors = false;
-
-        Vertex(float x, float y, float z) {
-            mX = x;
-            mY = y;
-            mZ = z;
-        }
 
-        void setColors(float r, float g, float b) {
-            mHasColors = true;
-            mR = r;
-            mG = g;
-            mB = b;
+    protected final int getNbNormals() {
+        return mNormals.size() / 3;
+    }
+
+    protected final void addVertex(float x, float y, float z) {
+        mPositions.add(x, y, z);
+        if (mVertexColors != null) {
+            mVertexColors.add(MeshData.NO_COLOR, MeshData.NO_COLOR, MeshData.NO_COLOR);
         }
     }
-    protected class Normal {
-        float mX;
-        float mY;
-        float mZ;
 
-        Normal(float x, float y, float z) {
-            mX = x;
-            mY = y;
-            mZ = z;
+    protected final void addVertex(float x, float y, float z, float r, float g, float b) {
+        createVertexColors();
+        mPositions.add(x, y, z);
+        mVertexColors.add(r, g, b);
+    }
+
+    protected final void setVertexColors(int vertexIndex, float r, float g, float b) {
+        createVertexColors();
+        final int index = vertexIndex * 3;
+        mVertexColors.set(index, r);
+        mVertexColors.set(index + 1, g);
+        mVertexColors.set(index + 2, b);
+    }
+
+    // first vertex with colors: the previous vertex don't have colors
+    protected final void createVertexColors() {
+        if (mVertexColors == null) {
+            mVertexColors = new FloatArray(mPositions.getValues().length);
+            for (int i = 0; i < mPositions.size(); ++i) {
+                mVertexColors.add(MeshData.NO_COLOR);
+            }
         }
+    }
+
+    protected final boolean hasVertexColors(int vertexIndex) {
+        return (mVertexColors != null) && (mVertexColors.get(vertexIndex * 3) != MeshData.NO_COLOR);
+    }
 
-        Normal(Vector3D vector) {
-            float[] values = vector.getArray();
-            mX = values[0];
-            mY = values[1];
-            mZ = values[2];
+    /**
+     * Normalizes the vector at the index of the array (x,y,z), as Vector3D.normalize()
+     */
+    protected static void normalize(float[] values, int index) {
+        final float x = values[index];
+        final float y = values[index + 1];
+        final float z = values[index + 2];
+        float norm = (float) Math.sqrt(x * x + y * y + z * z);
+        if (norm > 0) {
+            values[index] = x / norm;
+            values[index + 1] = y / norm;
+            values[index + 2] = z / norm;
+        } else {
+            values[index] = 1;
+            values[index + 1] = 0;
+            values[index + 2] = 0;
         }
     }
-    protected class UV {
-        float mU;
-        float mV;
-        UV(float u, float v) {
-            mU = u;
-            mV = v;
+
+    /**
+     * Converts the arrays to a MeshData, to write a MeshCache or to create the Object3D.
+     * The arrays and the strips are shared with the MeshData, to call once the model is complete.
+     */
+    MeshData toMeshData() {
+        MeshData meshData = new MeshData();
+        meshData.mPositions = mPositions.trimToSize();
+        meshData.mColors = (mVertexColors != null) ? mVertexColors.trimToSize() : null;
+        meshData.mUVs = mUVs.trimToSize();
+        meshData.mNormals = mNormals.trimToSize();
+
+        final int[] corners = mCorners.getValues();
+        for (MeshData.Strip strip : mStrips) {
+            strip.mIndexes = corners;
         }
+        meshData.mStrips = mStrips;
+        return meshData;
+    }
+
+    protected final int getNbCorners() {
+        return mCorners.size() / 3;
+    }
+
+    protected final void addCorner(int vertexIndex, int uvIndex, int normalIndex) {
+        mCorners.add(vertexIndex, uvIndex, normalIndex);
+    }
+
+    /**
+     * Adds a Strip made of the corners added since firstCorner
+     */
+    protected final void addStrip(String materialName, int firstCorner) {
+        mStrips.add(new MeshData.Strip(materialName, null, firstCorner * 3, (getNbCorners() - firstCorner) * 3));
     }
 }
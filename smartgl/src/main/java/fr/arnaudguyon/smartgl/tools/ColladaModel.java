@@ -23,20 +23,16 @@ import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Random;
 
-import fr.arnaudguyon.smartgl.opengl.ColorList;
-import fr.arnaudguyon.smartgl.opengl.Face3D;
-import fr.arnaudguyon.smartgl.opengl.NormalList;
 import fr.arnaudguyon.smartgl.opengl.Object3D;
 import fr.arnaudguyon.smartgl.opengl.Texture;
-import fr.arnaudguyon.smartgl.opengl.UVList;
-import fr.arnaudguyon.smartgl.opengl.VertexList;
 import fr.arnaudguyon.smartgl.tools.Assert;
 
 /**
@@ -48,12 +44,27 @@ public class ColladaModel extends BaseModel {
 
     private static final String TAG = "ColladaModel";
 
+    /**
+     * Libraries of the Collada file read by the Builder. The other ones are skipped without decoding their content:
+     * exported scenes are often mostly animations and effects.
+     */
+    public enum ParseProfile {
+        GEOMETRY,                   // library_geometries, and library_images for the texture names
+        GEOMETRY_AND_MATERIALS,     // + library_materials
+        FULL                        // + asset, animations, cameras, controllers, visual scenes
+    }
+
     public static class Builder {
         private Context mContext;
         private int mRawResourceId;
         private boolean mOptimizeModel = true;
+        private boolean mIndexed = false;
+        private boolean mOptimizeVertexCache = false;
+        private boolean mAtlasTextures = false;
         private HashMap<String, Texture> mTextures = new HashMap<>();
         private float[] mColor = {1, 1, 1};
+        private File mCacheFile;
+        private ParseProfile mParseProfile = ParseProfile.GEOMETRY;
 
         public Builder(Context context, int rawFileResourceId) {
             mContext = context;
@@ -63,6 +74,38 @@ public class ColladaModel extends BaseModel {
             mOptimizeModel = optimizeModel;
             return this;
         }
+        /**
+         * Shares the vertices used by several triangles and draws each material with indexes (glDrawElements).
+         * Saves memory on closed meshes, see getIndexingStats() after toObject3D().
+         */
+        public Builder indexed(boolean indexed) {
+            mIndexed = indexed;
+            return this;
+        }
+        /**
+         * Reorders the triangles and vertices for the GPU vertex cache, when toObject3D() is called. Implies indexed(true).
+         * See getIndexingStats().getAcmrBefore() and getAcmrAfter() for the vertices transformed per triangle.
+         */
+        public Builder optimizeVertexCache(boolean optimizeVertexCache) {
+            mOptimizeVertexCache = optimizeVertexCache;
+            return this;
+        }
+        /**
+         * @param parseProfile GEOMETRY by default, the only data used by toObject3D()
+         */
+        public Builder parseProfile(ParseProfile parseProfile) {
+            mParseProfile = parseProfile;
+            return this;
+        }
+        /**
+         * Packs the textures of the materials in an atlas when toObject3D() is called, so that the model is drawn with
+         * a single face per atlas page. The Textures must still have their Bitmap (not binded yet, or from a drawable or file).
+         * Materials whose UVs repeat the texture are kept apart, see getAtlasingStats().
+         */
+        public Builder atlasTextures(boolean atlasTextures) {
+            mAtlasTextures = atlasTextures;
+            return this;
+        }
         public Builder addTexture(String textureName, Texture texture) {
             mTextures.put(textureName, texture);
             return this;
@@ -74,13 +117,40 @@ public class ColladaModel extends BaseModel {
             return this;
         }
 
+        /**
+         * The model is written in a binary MeshCache file after the first parse, and read from it on next loads.
+         * The cache is ignored (and written again) when the application is updated.
+         * @param cacheFile for example new File(context.getCacheDir(), "model.mesh")
+         */
+        public Builder setCacheFile(File cacheFile) {
+            mCacheFile = cacheFile;
+            return this;
+        }
+
         public ColladaModel create() {
             ColladaModel collada = new ColladaModel();
-            collada.loadObject(mContext, mRawResourceId);
-            if (mOptimizeModel) {
-                //wavefront.mergeStrips();
+            long sourceStamp = MeshCache.ANY_SOURCE;
+            if (mCacheFile != null) {
+                sourceStamp = MeshCache.computeSourceStamp(mContext, mRawResourceId, mOptimizeModel);
+                collada.mMeshData = MeshCache.read(mCacheFile, sourceStamp);
+            }
+            if (collada.mMeshData == null) {
+                collada.loadObject(mContext, mRawResourceId, mParseProfile);
+                if (mOptimizeModel) {
+                    //wavefront.mergeStrips();
+                }
+                if ((mCacheFile != null) && (collada.mMeshData == null)) {
+                    try {
+                        MeshCache.write(collada.toMeshData(), mCacheFile, sourceStamp);
+                    } catch (IOException e) {
+                        Log.w(TAG, "Can't write mesh cache " + e.getMessage());
+                    }
+                }
             }
             collada.mTextures = mTextures;
+            collada.mIndexed = mIndexed || mOptimizeVertexCache;
+            collada.mOptimizeVertexCache = mOptimizeVertexCache;
+            collada.mAtlasContext = mAtlasTextures ? mContext : null;
             collada.mColor = mColor;
             return collada;
         }
@@ -91,16 +161,46 @@ public class ColladaModel extends BaseModel {
     private ColladaModel() {
         //
     }
-    private void loadObject(Context context, int rawResId) throws RuntimeException {
-        InputStream inputStream = context.getResources().openRawResource(rawResId);
+
+    static ColladaModel parse(InputStream inputStream, ParseProfile parseProfile) {
+        ColladaModel collada = new ColladaModel();
+        collada.loadObject(new BufferedInputStream(inputStream), parseProfile);
+        return collada;
+    }
+
+    private void loadObject(Context context, int rawResId, ParseProfile parseProfile) throws RuntimeException {
+        InputStream inputStream = new BufferedInputStream(context.getResources().openRawResource(rawResId));
+        try {
+            loadObject(inputStream, parseProfile);
+        } finally {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                Log.d("COLLADA!!!", "Error " + e.getMessage());
+            }
+        }
+    }
+
+    // inputStream must support mark()
+    private void loadObject(InputStream inputStream, ParseProfile parseProfile) throws RuntimeException {
         BufferedReader reader = null;
         try {
+            // MeshCache file created by MeshCacheConverter
+            byte[] header = new byte[4];
+            inputStream.mark(header.length);
+            final int headerSize = inputStream.read(header);
+            inputStream.reset();
+            if ((headerSize == header.length) && MeshCache.isMeshCache(header)) {
+                mMeshData = MeshCache.read(inputStream);
+                return;
+            }
+
             XmlPullParserFactory parserFactory = XmlPullParserFactory.newInstance();
             xmlPullParser = parserFactory.newPullParser();
             xmlPullParser.setFeature(XmlPullParser .FEATURE_PROCESS_NAMESPACES, false);
             xmlPullParser.setInput(inputStream, null);
 
-            colladaParser = new ColladaParser(xmlPullParser);
+            colladaParser = new ColladaParser(xmlPullParser, parseProfile);
         } catch (XmlPullParserException e) {
             Log.d("COLLADA!", "XMLError " + e.getMessage());
         } catch (IOException e) {
@@ -127,182 +227,115 @@ public class ColladaModel extends BaseModel {
         */
         Assert.assertNotNull(colladaParser.library_geometries);
         Assert.assertNotNull(colladaParser.library_geometries.geometry);
-        Assert.assertNotNull(colladaParser.library_geometries.geometry.get(0).mesh);
-        Assert.assertNotNull(colladaParser.library_geometries.geometry.get(0).mesh.source);
-        Assert.assertNotNull(colladaParser.library_geometries.geometry.get(0).mesh.triangles);
-
-            for (int i = 0; i < colladaParser.library_geometries.geometry.get(0).mesh.source.size(); ++i) {
-                Assert.assertNotNull(colladaParser.library_geometries.geometry.get(0).mesh.source);
-                Assert.assertNotNull(colladaParser.library_geometries.geometry.get(0).mesh.source.get(i));
-                Assert.assertNotNull(colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).float_array);
-                Assert.assertNotNull(colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).float_array.value);
-                if (colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).id.equals((colladaParser.library_geometries.geometry.get(0).id + "-positions"))) {
-                    Assert.assertNotNull(colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).technique_common);
-                    Assert.assertNotNull(colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).technique_common.accessor);
-                    Log.i("COLLADA", "populating Vertex count " + colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).float_array.count + " stride " + colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).technique_common.accessor.stride);
-                    for (int j = 0; j < colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).float_array.count; j += colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).technique_common.accessor.stride) {
-                        Vertex l_vertex = new Vertex(
-                                colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).float_array.value.get(j),
-                                colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).float_array.value.get(j + 1),
-                                colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).float_array.value.get(j + 2)
-                        );
-                        mVertex.add(l_vertex);
-                    }
-                } else if (colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).id.equals((colladaParser.library_geometries.geometry.get(0).id + "-normals"))) {
-                    Assert.assertNotNull(colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).technique_common);
-                    Assert.assertNotNull(colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).technique_common.accessor);
-                    Log.i("COLLADA", "populating Normals count " + colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).float_array.count + " stride " + colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).technique_common.accessor.stride);
-                    for (int j = 0; j < colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).float_array.count; j += colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).technique_common.accessor.stride) {
-                        Normal l_normal = new Normal(
-                                colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).float_array.value.get(j),
-                                colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).float_array.value.get(j + 1),
-                                colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).float_array.value.get(j + 2)
-                        );
-                        mNormals.add(l_normal);
-                    }
-                } else if (colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).id.equals((colladaParser.library_geometries.geometry.get(0).id + "-map-0"))) {
-                    Assert.assertNotNull(colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).technique_common);
-                    Assert.assertNotNull(colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).technique_common.accessor);
-                    Log.i("COLLADA", "populating UVs count " + colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).float_array.count + " stride " + colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).technique_common.accessor.stride);
-                    for (int j = 0; j < colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).float_array.count; j += colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).technique_common.accessor.stride) {
-                        UV l_uv = new UV(
-                                colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).float_array.value.get(j),
-                                1-colladaParser.library_geometries.geometry.get(0).mesh.source.get(i).float_array.value.get(j + 1)
-                        );
-                        mUVs.add(l_uv);
-                    }
+        final ColladaParser.SGeometry geometry = colladaParser.library_geometries.geometry.get(0);
+        final ColladaParser.SMesh mesh = geometry.mesh;
+        Assert.assertNotNull(mesh);
+        Assert.assertNotNull(mesh.source);
+        Assert.assertNotNull(mesh.triangles);
+
+        // the float_array values are read from primitive arrays, without boxing
+        for (ColladaParser.SSource source : mesh.source) {
+            Assert.assertNotNull(source);
+            Assert.assertNotNull(source.float_array);
+            Assert.assertNotNull(source.float_array.value);
+            final float[] values = source.float_array.value;
+            if (source.id.equals(geometry.id + "-positions")) {
+                final int stride = getStride(source);
+                Log.i("COLLADA", "populating Vertex count " + source.float_array.count + " stride " + stride);
+                mPositions.ensureCapacity(mPositions.size() + values.length / stride * 3);
+                for (int j = 0; j + 2 < values.length; j += stride) {
+                    addVertex(values[j], values[j + 1], values[j + 2]);
+                }
+            } else if (source.id.equals(geometry.id + "-normals")) {
+                final int stride = getStride(source);
+                Log.i("COLLADA", "populating Normals count " + source.float_array.count + " stride " + stride);
+                mNormals.ensureCapacity(mNormals.size() + values.length / stride * 3);
+                for (int j = 0; j + 2 < values.length; j += stride) {
+                    mNormals.add(values[j], values[j + 1], values[j + 2]);
+                }
+            } else if (source.id.equals(geometry.id + "-map-0")) {
+                final int stride = getStride(source);
+                Log.i("COLLADA", "populating UVs count " + source.float_array.count + " stride " + stride);
+                mUVs.ensureCapacity(mUVs.size() + values.length / stride * 2);
+                for (int j = 0; j + 1 < values.length; j += stride) {
+                    mUVs.add(values[j], 1 - values[j + 1]);
                 }
             }
+        }
 
-        for (triangleIndex = 0; triangleIndex < colladaParser.library_geometries.geometry.get(0).mesh.triangles.size(); ++triangleIndex) {
-            Assert.assertNotNull(colladaParser.library_geometries.geometry.get(0).mesh.triangles.get(triangleIndex).input);
-
-            for (int i = 0; i < colladaParser.library_geometries.geometry.get(0).mesh.triangles.get(triangleIndex).count; ++i) {
-                mFaces.add(new Face3D());
-            }
+        for (ColladaParser.STriangles triangles : mesh.triangles) {
+            Assert.assertNotNull(triangles.input);
+            Assert.assertNotNull(triangles.p);
 
             int INPUT_VERTEX = -1;
             int INPUT_NORMAL = -1;
             int INPUT_TEXCOORD = -1;
-            for (int i = 0; i < colladaParser.library_geometries.geometry.get(0).mesh.triangles.get(triangleIndex).input.size(); ++i) {
-                if (colladaParser.library_geometries.geometry.get(0).mesh.triangles.get(triangleIndex).input.get(i).semantic.equals("VERTEX")) {
-                    INPUT_VERTEX = colladaParser.library_geometries.geometry.get(0).mesh.triangles.get(triangleIndex).input.get(i).offset;
-                } else if (colladaParser.library_geometries.geometry.get(0).mesh.triangles.get(triangleIndex).input.get(i).semantic.equals("NORMAL")) {
-                    INPUT_NORMAL = colladaParser.library_geometries.geometry.get(0).mesh.triangles.get(triangleIndex).input.get(i).offset;
-                } else if (colladaParser.library_geometries.geometry.get(0).mesh.triangles.get(triangleIndex).input.get(i).semantic.equals("TEXCOORD")) {
-                    INPUT_TEXCOORD = colladaParser.library_geometries.geometry.get(0).mesh.triangles.get(triangleIndex).input.get(i).offset;
+            for (ColladaParser.STrianglesInput input : triangles.input) {
+                if (input.semantic.equals("VERTEX")) {
+                    INPUT_VERTEX = input.offset;
+                } else if (input.semantic.equals("NORMAL")) {
+                    INPUT_NORMAL = input.offset;
+                } else if (input.semantic.equals("TEXCOORD")) {
+                    INPUT_TEXCOORD = input.offset;
                 }
             }
-
-            int INPUT_increment = INPUT_VERTEX + INPUT_NORMAL + INPUT_TEXCOORD;
-            Assert.assertTrue((INPUT_increment != -3));
-            if (INPUT_increment == -2) {
-                INPUT_increment = 1;
-            } else if (INPUT_increment == 0) {
-                INPUT_increment = 2;
-            } else {
-                INPUT_increment = 3;
+            Assert.assertTrue((INPUT_VERTEX != -1));
+
+            // p: the indexes of each triangle corner, one per input offset
+            final int[] p = triangles.p.value;
+            final int stride = triangles.p.stride;
+            final int firstCorner = getNbCorners();
+            mCorners.ensureCapacity(mCorners.size() + p.length / stride * 3);
+            for (int i = 0; i + stride <= p.length; i += stride) {
+                final int vertexIndex = p[i + INPUT_VERTEX];
+                final int normalIndex = (INPUT_NORMAL != -1) ? p[i + INPUT_NORMAL] : 0;
+                final int uvIndex = (INPUT_TEXCOORD != -1) ? p[i + INPUT_TEXCOORD] : 0;
+                addCorner(vertexIndex, uvIndex, normalIndex);
             }
-            int numberOfVertex = colladaParser.library_geometries.geometry.get(0).mesh.triangles.get(triangleIndex).p.value.size();
-            ArrayList<IndexInfo> indexInfos = new ArrayList<>(numberOfVertex);
-            for (int i = 0; i < colladaParser.library_geometries.geometry.get(0).mesh.triangles.get(triangleIndex).p.value.size(); i += INPUT_increment) {
-                Integer l_vertexIndex = null;
-                Integer l_normalIndex = null;
-                Integer l_uvIndex = null;
-                if (INPUT_VERTEX != -1) { l_vertexIndex = colladaParser.library_geometries.geometry.get(0).mesh.triangles.get(triangleIndex).p.value.get(i + INPUT_VERTEX); }
-                if (INPUT_NORMAL != -1) { l_normalIndex = colladaParser.library_geometries.geometry.get(0).mesh.triangles.get(triangleIndex).p.value.get(i + INPUT_NORMAL); }
-                if (INPUT_TEXCOORD != -1) { l_uvIndex = colladaParser.library_geometries.geometry.get(0).mesh.triangles.get(triangleIndex).p.value.get(i + INPUT_TEXCOORD); }
-                IndexInfo indexInfo = IndexInfo.create(l_vertexIndex, l_uvIndex, l_normalIndex);
-                indexInfos.add(indexInfo);
-            }
-            Strip strip = new Strip("");
-            for(IndexInfo indexInfo : indexInfos) {
-                strip.addIndex(indexInfo);
-            }
-            mStrips.add(strip);
+            addStrip("", firstCorner);
         }
     }
 
-    private int triangleIndex = 0;
-
-    public Object3D toObject3D() {
-        final boolean hasUV = (mUVs.size() > 0);
-        final boolean hasNormals = (mNormals.size() > 0);
-
-        Object3D object3D = new Object3D();
-        for(Strip strip : mStrips) {
-
-            Face3D face3D = new Face3D();
-            int nbIndex = strip.mIndexes.size(); //triangleCount * 3
-
-            VertexList vertexList = new VertexList();
-            vertexList.init(nbIndex);
-
-            UVList uvList = null;
-            ColorList colorList = null;
-            if (hasUV) {
-                uvList = new UVList();
-                uvList.init(nbIndex);
-            } else {
-                colorList = new ColorList();
-                colorList.init(nbIndex);
-            }
+    private static int getStride(ColladaParser.SSource source) {
+        Assert.assertNotNull(source.technique_common);
+        Assert.assertNotNull(source.technique_common.accessor);
+        return source.technique_common.accessor.stride;
+    }
 
-            NormalList normalList = null;
-            if (hasNormals) {
-                normalList = new NormalList();
-                normalList.init(nbIndex);
+    // Names the strips with the texture used by toObject3D
+    @Override
+    MeshData toMeshData() {
+        MeshData meshData = super.toMeshData();
+        if ((mUVs.size() > 0) && (colladaParser.library_images != null) && (colladaParser.library_images.image != null)
+                && !colladaParser.library_images.image.isEmpty()) {
+            String textureName = colladaParser.library_images.image.get(0).id;
+            for (MeshData.Strip strip : meshData.mStrips) {
+                strip.mMaterialName = textureName;
             }
+        }
+        return meshData;
+    }
 
-            for(IndexInfo indexInfo : strip.mIndexes) {
-                int vertexIndex = indexInfo.mVertexIndex;
-                Vertex vertex = mVertex.get(vertexIndex+1);
-                vertexList.add(vertex.mX, vertex.mY, vertex.mZ);
-
-                if (hasUV) {
-                    int uvIndex = indexInfo.mUVIndex;
-                    UV uv = mUVs.get(uvIndex+1);
-                    uvList.add(uv.mU, uv.mV);
-                } else if (vertex.mHasColors) {
-                    colorList.add(vertex.mR, vertex.mG, vertex.mB, 1);
-                } else {
-                    Random r = new Random();
-                    mColor[0] = r.nextFloat();
-                    mColor[1] = r.nextFloat();
-                    mColor[2] = r.nextFloat();
-                    vertex.setColors(mColor[0], mColor[1], mColor[2]);
-                    colorList.add(vertex.mR, vertex.mG, vertex.mB, 1);
-                }
+    public Object3D toObject3D() {
+        if (mMeshData != null) {
+            return createObject3D(mMeshData);
+        }
 
-                if (hasNormals) {
-                    int normalIndex = indexInfo.mNormalIndex;
-                    Normal normal = mNormals.get(normalIndex+1);
-                    normalList.add(normal.mX, normal.mY, normal.mZ);
+        if (mUVs.size() > 0) {
+            Assert.assertNotNull(colladaParser.library_images);
+            Assert.assertNotNull(colladaParser.library_images.image);
+            Assert.assertNotNull(colladaParser.library_images.image.get(0));
+        } else {
+            // random color for each vertex without color
+            Random random = new Random();
+            final int[] corners = mCorners.getValues();
+            for (int i = 0; i < mCorners.size(); i += 3) {
+                final int vertexIndex = corners[i];
+                if (!hasVertexColors(vertexIndex)) {
+                    setVertexColors(vertexIndex, random.nextFloat(), random.nextFloat(), random.nextFloat());
                 }
             }
-            vertexList.finalizeBuffer();
-            face3D.setVertexList(vertexList);
-
-            if (hasUV) {
-                uvList.finalizeBuffer();
-                face3D.setUVList(uvList);
-                Assert.assertNotNull(colladaParser.library_images);
-                Assert.assertNotNull(colladaParser.library_images.image);
-                Assert.assertNotNull(colladaParser.library_images.image.get(0));
-                Texture texture = mTextures.get(colladaParser.library_images.image.get(0).id);
-                face3D.setTexture(texture);
-            } else {
-                colorList.finalizeBuffer();
-                face3D.setColorList(colorList);
-            }
-
-            if (hasNormals) {
-                normalList.finalizeBuffer();
-                face3D.setNormalList(normalList);
-            }
-
-            object3D.addFace(face3D);
         }
-        return object3D;
+        return createObject3D(toMeshData());
     }
 }
@@ -25,7 +25,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Vector;
 
+import fr.arnaudguyon.smartgl.opengl.Face3D;
 import fr.arnaudguyon.smartgl.opengl.NormalList;
+import fr.arnaudguyon.smartgl.opengl.Object3D;
 import fr.arnaudguyon.smartgl.opengl.UVList;
 import fr.arnaudguyon.smartgl.opengl.VertexList;
 import fr.arnaudguyon.smartgl.tools.Assert;
@@ -35,13 +37,54 @@ import fr.arnaudguyon.smartgl.tools.Assert;
  * Helper to load Collada XML file for use of ColladaModel
  */
 public class ColladaParser {
+    // per element logs, compiled out when false
+    private static final boolean DEBUG = false;
+
     XmlPullParser parser;
     private String xmlItem = "";
+    private final XmlNumberReader numberReader = new XmlNumberReader();
+    private ColladaModel.ParseProfile profile;
     public ColladaParser(XmlPullParser p_parser) throws IOException, XmlPullParserException {
+        this(p_parser, ColladaModel.ParseProfile.FULL);
+    }
+
+    /**
+     * @param p_profile libraries to read, the other ones are skipped without decoding their content
+     */
+    public ColladaParser(XmlPullParser p_parser, ColladaModel.ParseProfile p_profile) throws IOException, XmlPullParserException {
         parser = p_parser;
+        profile = p_profile;
         processCollada(parser);
     }
 
+    // children of COLLADA read with the profile
+    private boolean isParsed(String element) {
+        switch (element) {
+            case "library_geometries":
+            case "library_images":      // names of the textures
+                return true;
+            case "library_materials":
+                return (profile != ColladaModel.ParseProfile.GEOMETRY);
+            default:
+                return (profile == ColladaModel.ParseProfile.FULL);
+        }
+    }
+
+    // from the START_TAG of an element to its END_TAG, counting the depth of the children
+    private void skipElement() throws IOException, XmlPullParserException {
+        int depth = 1;
+        while (depth > 0) {
+            final int eventType = parser.next();
+            if (eventType == XmlPullParser.START_TAG) {
+                ++depth;
+            } else if (eventType == XmlPullParser.END_TAG) {
+                --depth;
+            } else if (eventType == XmlPullParser.END_DOCUMENT) {
+                return;
+            }
+        }
+    }
+
     public void processCollada(XmlPullParser parser) throws IOException, XmlPullParserException {
         int eventType = parser.getEventType();
 
@@ -49,35 +92,29 @@ public class ColladaParser {
             switch (eventType) {
                 case XmlPullParser.START_TAG:
                     xmlItem = parser.getName();
-                    Log.d("COLLADA?","COLLADA " + xmlItem);
+                    if (DEBUG) { Log.d("COLLADA?","COLLADA " + xmlItem); }
                     if ("COLLADA".equals(xmlItem)) {
                         xmlns = parser.getAttributeValue(null,"xmlns");
                         _version = parser.getAttributeValue(null,"version");
                         while (eventType != XmlPullParser.END_DOCUMENT) {
                             eventType = parser.next();
                             xmlItem = parser.getName();
-                            if ("asset".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
-                                Log.d("COLLADA!","asset IN");
+                            if (eventType == XmlPullParser.START_TAG && !isParsed(xmlItem)) {
+                                skipElement();
+                            } else if ("asset".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
+                                if (DEBUG) { Log.d("COLLADA!","asset IN"); }
                                 parseColladaAsset();
-                                Log.d("COLLADA!","asset OUT");
+                                if (DEBUG) { Log.d("COLLADA!","asset OUT"); }
                             } else if ("library_animations".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
-                                Log.d("COLLADA!","library_animations IN");
+                                if (DEBUG) { Log.d("COLLADA!","library_animations IN"); }
                                 parseColladaLibraryAnimations();
-                                Log.d("COLLADA!","library_animations OUT");
+                                if (DEBUG) { Log.d("COLLADA!","library_animations OUT"); }
                             } else if ("library_cameras".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
-                                Log.d("COLLADA!","library_cameras IN");
+                                if (DEBUG) { Log.d("COLLADA!","library_cameras IN"); }
                                 parseColladaLibraryCameras();
-                                Log.d("COLLADA!","library_cameras OUT");
+                                if (DEBUG) { Log.d("COLLADA!","library_cameras OUT"); }
                             } else if ("library_lights".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
-                                Log.d("COLLADA!", "library_lights " + xmlItem);
-                                Log.d("COLLADA!", "      getAttributeCount " + parser.getAttributeCount());
-                                Log.d("COLLADA!", "      getNamespace      " + parser.getNamespace());
-                                Log.d("COLLADA!", "      getAttributeValue " + parser.getAttributeValue(null,"value"));
-                                Log.d("COLLADA!", "      getText           " + parser.getText());
-                                if (parser.getAttributeCount() > 0) {
-                                    Log.d("COLLADA!", "      getAttributeValue " + parser.getAttributeValue(0));
-                                    Log.d("COLLADA!", "      getAttributeName " + parser.getAttributeName(0));
-                                }
+                                skipElement();
                                 //TODO: implement lights parsing
                                 //light
                                 //  -- technique_common
@@ -143,10 +180,11 @@ public class ColladaParser {
                                 //            -- sky_exposure
                                 //            -- sky_colorspace
                             } else if ("library_images".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
-                                Log.d("COLLADA!","library_images IN");
+                                if (DEBUG) { Log.d("COLLADA!","library_images IN"); }
                                 parseColladaLibraryImages();
-                                Log.d("COLLADA!","library_images OUT");
+                                if (DEBUG) { Log.d("COLLADA!","library_images OUT"); }
                             } else if ("library_effects".equals(xmlItem) && eventType == XmlPullParser.START_TAG) { //[optional?]
+                                skipElement();
                                 //TODO: implement effects parsing
                                 //effect
                                 //  -- profile_COMMON
@@ -165,21 +203,21 @@ public class ColladaParser {
                                 //                 -- index_of_refraction
                                 //                      -- float
                             } else if ("library_materials".equals(xmlItem) && eventType == XmlPullParser.START_TAG) { //[optional?]
-                                Log.d("COLLADA!","library_materials IN");
+                                if (DEBUG) { Log.d("COLLADA!","library_materials IN"); }
                                 parseColladaLibraryMaterials();
-                                Log.d("COLLADA!","library_materials OUT");
+                                if (DEBUG) { Log.d("COLLADA!","library_materials OUT"); }
                             } else if ("library_geometries".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
-                                Log.d("COLLADA!","library_geometries IN");
+                                if (DEBUG) { Log.d("COLLADA!","library_geometries IN"); }
                                 parseColladaLibraryGeometries();
-                                Log.d("COLLADA!","library_geometries OUT");
+                                if (DEBUG) { Log.d("COLLADA!","library_geometries OUT"); }
                             } else if ("library_controllers".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
-                                Log.d("COLLADA!","library_controllers IN");
+                                if (DEBUG) { Log.d("COLLADA!","library_controllers IN"); }
                                 parseColladaLibraryControllers();
-                                Log.d("COLLADA!","library_controllers OUT");
+                                if (DEBUG) { Log.d("COLLADA!","library_controllers OUT"); }
                             } else if ("library_visual_scenes".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
-                                Log.d("COLLADA!","library_visual_scenes IN");
+                                if (DEBUG) { Log.d("COLLADA!","library_visual_scenes IN"); }
                                 parseColladaLibraryVisualScenes();
-                                Log.d("COLLADA!","library_visual_scenes OUT");
+                                if (DEBUG) { Log.d("COLLADA!","library_visual_scenes OUT"); }
                             } else if ("scene".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
                                 scene = new SScene();
                                 parser.next();
@@ -187,15 +225,15 @@ public class ColladaParser {
                                     scene.instance_visual_scene_url = parser.getAttributeValue(null, "url");
                                 }
                             }
-                            Log.d("COLLADA","COLLADA loop " + xmlItem);
+                            if (DEBUG) { Log.d("COLLADA","COLLADA loop " + xmlItem); }
                         }
-                        Log.d("COLLADA","COLLADA exit " + xmlItem);
+                        if (DEBUG) { Log.d("COLLADA","COLLADA exit " + xmlItem); }
                     }
                     break;
             }
 
             eventType = parser.next();
-            Log.d("COLLADA","eventType " + eventType);
+            if (DEBUG) { Log.d("COLLADA","eventType " + eventType); }
         }
 
     }
@@ -295,9 +333,9 @@ public class ColladaParser {
                         //  -- sampler
                         //  -- channel
                         if ("source".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
-                            Log.d("COLLADA!","source IN");
+                            if (DEBUG) { Log.d("COLLADA!","source IN"); }
                             parseColladaLibraryAnimationsSource(l_animation);
-                            Log.d("COLLADA!","source OUT");
+                            if (DEBUG) { Log.d("COLLADA!","source OUT"); }
                         } else if ("sampler".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
 //                            SAnimation l_animation = new SAnimation();
                             l_animation.sampler = new SSampler();
@@ -312,20 +350,20 @@ public class ColladaParser {
                                         l_input.semantic = parser.getAttributeValue(null,"semantic");
                                         l_input.source = parser.getAttributeValue(null,"source");
                                     l_animation.sampler.input.add(l_input);
-                                    Log.d("COLLADA!xxx", "input exit " + xmlItem);
+                                    if (DEBUG) { Log.d("COLLADA!xxx", "input exit " + xmlItem); }
                                 } else if (xmlItem == null) {
                                     //do nothing
                                 } else if ("sampler".equals(xmlItem) && eventType == XmlPullParser.END_TAG) {
-                                    Log.d("COLLADA!f", "sampler legit exiting " + xmlItem);
+                                    if (DEBUG) { Log.d("COLLADA!f", "sampler legit exiting " + xmlItem); }
                                     break;
                                 }
                             }
                         } else if ("channel".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
-                            Log.d("COLLADA!","channel IN");
+                            if (DEBUG) { Log.d("COLLADA!","channel IN"); }
                             l_animation.channel = new SChannel();
                             l_animation.channel.source = parser.getAttributeValue(null,"source");
                             l_animation.channel.target = parser.getAttributeValue(null,"target");
-                            Log.d("COLLADA!","channel OUT");
+                            if (DEBUG) { Log.d("COLLADA!","channel OUT"); }
                         } else if (xmlItem == null) {
                             //do nothing
                         } else if ("animation".equals(xmlItem) && eventType == XmlPullParser.END_TAG) {
@@ -335,19 +373,19 @@ public class ColladaParser {
                 } else if (xmlItem == null) {
                     //do nothing
                 } else if ("library_animations".equals(xmlItem) && eventType == XmlPullParser.END_TAG) {
-                    Log.d("COLLADA!f", "library_animations legit exiting " + xmlItem);
+                    if (DEBUG) { Log.d("COLLADA!f", "library_animations legit exiting " + xmlItem); }
                     break;
                 }
-                Log.d("COLLADA!f", "library_animations loop " + xmlItem);
+                if (DEBUG) { Log.d("COLLADA!f", "library_animations loop " + xmlItem); }
             }
-            Log.d("COLLADA!g", "library_animations exit " + xmlItem);
+            if (DEBUG) { Log.d("COLLADA!g", "library_animations exit " + xmlItem); }
         } catch (XmlPullParserException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
         }
-        Log.d("COLLADA", "library_animations.animation " + library_animations.animation.size());
-        Log.d("COLLADA", "library_animations.animation.get(0).sources.size() " + library_animations.animation.get(0).sources.size());
+        if (DEBUG) { Log.d("COLLADA", "library_animations.animation " + library_animations.animation.size()); }
+        if (DEBUG) { Log.d("COLLADA", "library_animations.animation.get(0).sources.size() " + library_animations.animation.get(0).sources.size()); }
 /*        for (int i = 0; i < 999999999; i++){
             for (int j = 0; j < 999999999; j++) {
                 Math.abs(i*j/10);
@@ -378,14 +416,8 @@ public class ColladaParser {
                         l_source.float_array = new SFloatArray();
                         l_source.float_array.id = parser.getAttributeValue(null,"id");
                         l_source.float_array.count = Integer.parseInt(parser.getAttributeValue(null,"count"));
-                        l_source.float_array.value = new Vector<>();
-                        parser.next();
-                        String[] l_float = parser.getText().split(" ");
-                        for (int i = 0; i < l_float.length; ++i) {
-                            if (l_float[i].isEmpty()) continue;
-                            l_source.float_array.value.add(Float.parseFloat(l_float[i]));
-                        }
-                        Log.d("COLLADA!xxx", "float_array exit " + xmlItem);
+                        l_source.float_array.value = numberReader.readFloats(parser, l_source.float_array.count);
+                        if (DEBUG) { Log.d("COLLADA!xxx", "float_array exit " + xmlItem); }
                     } else if ("Number_array".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
                         l_source.Name_array = new SAnimationSourceNameArray();
                         l_source.Name_array.id = parser.getAttributeValue(null,"id");
@@ -397,7 +429,7 @@ public class ColladaParser {
                             if (l_Name[i].isEmpty()) continue;
                             l_source.Name_array.value.add(l_Name[i]);
                         }
-                        Log.d("COLLADA!xxx", "Number_array exit " + xmlItem);
+                        if (DEBUG) { Log.d("COLLADA!xxx", "Number_array exit " + xmlItem); }
                     } else if ("technique_common".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
                         l_source.technique_common = new SAnimationSourceTechniqueCommon();
                         while (eventType != XmlPullParser.END_DOCUMENT) {
@@ -425,14 +457,14 @@ public class ColladaParser {
                                         break;
                                     }
                                 }
-                                Log.d("COLLADA!xxx", "accessor exit " + xmlItem);
+                                if (DEBUG) { Log.d("COLLADA!xxx", "accessor exit " + xmlItem); }
                             } else if (xmlItem == null) {
                                 //do nothing
                             } else if ("technique_common".equals(xmlItem) && eventType == XmlPullParser.END_TAG) {
                                 break;
                             }
                         }
-                        Log.d("COLLADA!xxx", "technique_common exit " + xmlItem);
+                        if (DEBUG) { Log.d("COLLADA!xxx", "technique_common exit " + xmlItem); }
                     } else if ("technique".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
                         l_source.technique = new SAnimationSourceTechnique();
                         l_source.technique.profile = parser.getAttributeValue(null,"profile");
@@ -451,16 +483,16 @@ public class ColladaParser {
                                 break;
                             }
                         }
-                        Log.d("COLLADA!xxx", "technique exit " + xmlItem);
+                        if (DEBUG) { Log.d("COLLADA!xxx", "technique exit " + xmlItem); }
                     } else if (xmlItem == null) {
                         //do nothing
                     } else if ("source".equals(xmlItem) && eventType == XmlPullParser.END_TAG) {
-                        Log.d("COLLADA!f", "source legit exiting " + xmlItem);
+                        if (DEBUG) { Log.d("COLLADA!f", "source legit exiting " + xmlItem); }
                         break;
                     }
                     //Log.d("COLLADA!f", "source loop " + xmlItem);
                 }
-                Log.d("COLLADA!g", "source exit " + xmlItem);
+                if (DEBUG) { Log.d("COLLADA!g", "source exit " + xmlItem); }
             } catch (XmlPullParserException e) {
                 e.printStackTrace();
             } catch (IOException e) {
@@ -500,13 +532,13 @@ public class ColladaParser {
                         //  -- optics
                         //  -- extra
                         if ("optics".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
-                            Log.d("COLLADA!","optics IN");
+                            if (DEBUG) { Log.d("COLLADA!","optics IN"); }
                             parseColladaLibraryCamerasCameraOptics(l_camera);
-                            Log.d("COLLADA!","optics OUT");
+                            if (DEBUG) { Log.d("COLLADA!","optics OUT"); }
                         } else if ("extra".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
-                            Log.d("COLLADA!","extra IN");
+                            if (DEBUG) { Log.d("COLLADA!","extra IN"); }
                             parseColladaLibraryCamerasCameraExtra(l_camera);
-                            Log.d("COLLADA!","extra OUT");
+                            if (DEBUG) { Log.d("COLLADA!","extra OUT"); }
                         } else if ("camera".equals(xmlItem) && eventType == XmlPullParser.END_TAG) {
                             break;
                         }
@@ -514,12 +546,12 @@ public class ColladaParser {
                 } else if (xmlItem == null) {
                     //do nothing
                 } else if ("library_cameras".equals(xmlItem) && eventType == XmlPullParser.END_TAG) {
-                    Log.d("COLLADA!f", "library_cameras legit exiting " + xmlItem);
+                    if (DEBUG) { Log.d("COLLADA!f", "library_cameras legit exiting " + xmlItem); }
                     break;
                 }
-                Log.d("COLLADA!f", "library_cameras loop " + xmlItem);
+                if (DEBUG) { Log.d("COLLADA!f", "library_cameras loop " + xmlItem); }
             }
-            Log.d("COLLADA!g", "library_cameras exit " + xmlItem);
+            if (DEBUG) { Log.d("COLLADA!g", "library_cameras exit " + xmlItem); }
         } catch (XmlPullParserException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -546,23 +578,23 @@ public class ColladaParser {
                         xmlItem = parser.getName();
                         //            -- perspective
                         if ("perspective".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
-                            Log.d("COLLADA!","perspective IN");
+                            if (DEBUG) { Log.d("COLLADA!","perspective IN"); }
                             parseColladaLibraryCamerasCameraOpticsTechniqueCommonPerspective(p_camera.optics.technique_common);
-                            Log.d("COLLADA!","perspective OUT");
+                            if (DEBUG) { Log.d("COLLADA!","perspective OUT"); }
                         } else if ("technique_common".equals(xmlItem) && eventType == XmlPullParser.END_TAG) {
                             break;
                         }
                     }
-                    Log.d("COLLADA!xxx","technique_common exit " + xmlItem);
+                    if (DEBUG) { Log.d("COLLADA!xxx","technique_common exit " + xmlItem); }
                 } else if (xmlItem == null) {
                     //do nothing
                 } else if ("optics".equals(xmlItem) && eventType == XmlPullParser.END_TAG) {
-                    Log.d("COLLADA!f", "optics legit exiting " + xmlItem);
+                    if (DEBUG) { Log.d("COLLADA!f", "optics legit exiting " + xmlItem); }
                     break;
                 }
-                Log.d("COLLADA!f", "optics loop " + xmlItem);
+                if (DEBUG) { Log.d("COLLADA!f", "optics loop " + xmlItem); }
             }
-            Log.d("COLLADA!g", "optics exit " + xmlItem);
+            if (DEBUG) { Log.d("COLLADA!g", "optics exit " + xmlItem); }
         } catch (XmlPullParserException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -790,9 +822,9 @@ public class ColladaParser {
                         xmlItem = parser.getName();
                         //  -- mesh
                         if ("mesh".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
-                            Log.d("COLLADA!","mesh IN");
+                            if (DEBUG) { Log.d("COLLADA!","mesh IN"); }
                             parseColladaLibraryGeometriesMesh(l_geometry);
-                            Log.d("COLLADA!","mesh OUT");
+                            if (DEBUG) { Log.d("COLLADA!","mesh OUT"); }
                         } else if ("geometry".equals(xmlItem) && eventType == XmlPullParser.END_TAG) {
                             break;
                         }
@@ -854,20 +886,14 @@ public class ColladaParser {
                             //            -- float_array
                             //            -- technique_common
                             if ("technique_common".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
-                                Log.d("COLLADA!","technique_common IN");
+                                if (DEBUG) { Log.d("COLLADA!","technique_common IN"); }
                                 parseColladaLibraryGeometriesMeshTechniqueCommon(l_source);
-                                Log.d("COLLADA!","technique_common OUT");
+                                if (DEBUG) { Log.d("COLLADA!","technique_common OUT"); }
                             } else if ("float_array".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
                                 l_source.float_array = new SFloatArray();
                                 l_source.float_array.id = parser.getAttributeValue(null,"id");
                                 l_source.float_array.count = Integer.parseInt(parser.getAttributeValue(null,"count"));
-                                parser.next();
-                                l_source.float_array.value = new Vector<>();
-                                String[] l_float = parser.getText().split(" ");
-                                for (int i = 0; i < l_float.length; ++i) {
-                                    if (l_float[i].isEmpty()) continue;
-                                    l_source.float_array.value.add(Float.parseFloat(l_float[i]));
-                                }
+                                l_source.float_array.value = numberReader.readFloats(parser, l_source.float_array.count);
                             } else if ("source".equals(xmlItem) && eventType == XmlPullParser.END_TAG) {
                                 break;
                             }
@@ -910,15 +936,15 @@ public class ColladaParser {
                                     l_STrianglesInput.offset = Integer.parseInt(parser.getAttributeValue(null,"offset"));
                                 l_triangles.input.add(l_STrianglesInput);
                             } else if ("p".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
+                                // the inputs are before p: each triangle corner has an index per input offset
                                 l_triangles.p = new SP();
-                                parser.next();
-                                l_triangles.p.value = new Vector<>();
-                                String[] l_value = parser.getText().split(" ");
-                                Log.d("COLLADA", "l_value.length " + l_value.length);
-                                for (int i = 0; i < l_value.length; ++i) {
-                                    if (l_value[i].isEmpty()) continue;
-                                    l_triangles.p.value.add(Integer.parseInt(l_value[i]));
+                                l_triangles.p.stride = 1;
+                                if (l_triangles.input != null) {
+                                    for (STrianglesInput l_input : l_triangles.input) {
+                                        l_triangles.p.stride = Math.max(l_triangles.p.stride, l_input.offset + 1);
+                                    }
                                 }
+                                l_triangles.p.value = numberReader.readInts(parser, l_triangles.count * 3 * l_triangles.p.stride);
                             } else if ("triangles".equals(xmlItem) && eventType == XmlPullParser.END_TAG) {
                                 break;
                             }
@@ -1033,9 +1059,9 @@ public class ColladaParser {
                         xmlItem = parser.getName();
                         //  -- skin
                         if ("skin".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
-                            Log.d("COLLADA!","skin IN");
+                            if (DEBUG) { Log.d("COLLADA!","skin IN"); }
                             parseColladaLibraryControllersSkin(l_controller);
-                            Log.d("COLLADA!","skin OUT");
+                            if (DEBUG) { Log.d("COLLADA!","skin OUT"); }
                         } else if ("controller".equals(xmlItem) && eventType == XmlPullParser.END_TAG) {
                             break;
                         }
@@ -1094,9 +1120,9 @@ public class ColladaParser {
                                 l_controllerSource.float_array_count = Integer.parseInt(parser.getAttributeValue(null,"count"));
                                 l_controllerSource.float_array_value = parser.getText();
                             } else if ("technique_common".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
-                                Log.d("COLLADA!","technique_common IN");
+                                if (DEBUG) { Log.d("COLLADA!","technique_common IN"); }
                                 parseColladaLibraryControllersSkinTechniqueCommon(l_controllerSource);
-                                Log.d("COLLADA!","technique_common OUT");
+                                if (DEBUG) { Log.d("COLLADA!","technique_common OUT"); }
                             } else if ("source".equals(xmlItem) && eventType == XmlPullParser.END_TAG) {
                                 break;
                             }
@@ -1223,9 +1249,9 @@ public class ColladaParser {
                         xmlItem = parser.getName();
                         //  -- node
                         if ("node".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
-                            Log.d("COLLADA!","node IN");
+                            if (DEBUG) { Log.d("COLLADA!","node IN"); }
                             parseColladaLibraryVisualScenesNode(l_visualScene);
-                            Log.d("COLLADA!","node OUT");
+                            if (DEBUG) { Log.d("COLLADA!","node OUT"); }
                         } else if ("visual_scene".equals(xmlItem) && eventType == XmlPullParser.END_TAG) {
                             break;
                         }
@@ -1261,7 +1287,7 @@ public class ColladaParser {
                     l_node.id = parser.getAttributeValue(null,"id");
                     l_node.name = parser.getAttributeValue(null,"name");
                     l_node.type = parser.getAttributeValue(null,"type");
-                    Log.d("COLLADA?", "id " + l_node.id + " name " + l_node.name + " type " + l_node.type);
+                    if (DEBUG) { Log.d("COLLADA?", "id " + l_node.id + " name " + l_node.name + " type " + l_node.type); }
                 p_visualScene.node.add(l_node);
                 int eventType = parser.getEventType();
                 while (eventType != XmlPullParser.END_DOCUMENT) {
@@ -1282,10 +1308,10 @@ public class ColladaParser {
                                 || "instance_geometry".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
                         l_node.instance_url = parser.getAttributeValue(null,"url");
                     } else if ("node".equals(xmlItem) && eventType == XmlPullParser.START_TAG) {
-                        Log.d("COLLADA!","node-inception IN");
+                        if (DEBUG) { Log.d("COLLADA!","node-inception IN"); }
                         l_node.node = new SVisualSceneNode();
                         parseColladaLibraryVisualScenesNodeInception(l_node.node);
-                        Log.d("COLLADA!","node-inception OUT");
+                        if (DEBUG) { Log.d("COLLADA!","node-inception OUT"); }
                     } else if (xmlItem == null) {
                         //do nothing
                     } else if ("node".equals(xmlItem) && eventType == XmlPullParser.END_TAG) {
@@ -1332,9 +1358,9 @@ public class ColladaParser {
                             if (p_node.node == null) { p_node.node = new Vector<>(); }
                             SVisualSceneNode l_node = new SVisualSceneNode();
                             p_node.node.add(l_node);
-                            Log.d("COLLADA!","  node-inception IN");
+                            if (DEBUG) { Log.d("COLLADA!","  node-inception IN"); }
                                 parseColladaLibraryVisualScenesNodeInception(l_node);
-                            Log.d("COLLADA!","  node-inception OUT");
+                            if (DEBUG) { Log.d("COLLADA!","  node-inception OUT"); }
                         } else if (xmlItem == null) {
                             //do nothing
                         } else if ("node".equals(xmlItem) && eventType == XmlPullParser.END_TAG) {
@@ -1690,7 +1716,7 @@ public class ColladaParser {
                     class SFloatArray {
                         String id;
                         int count;
-                        Vector<Float> value;
+                        float[] value;
                     }
                     class SGeometryTechniqueCommon {
                         SAccessor accessor;
@@ -1725,7 +1751,8 @@ public class ColladaParser {
                         int offset;
                     }
                     class SP {
-                        Vector<Integer> value;
+                        int stride;     // indexes per triangle corner
+                        int[] value;
                     }
     class SLibraryControllers {
         Vector<SController> controller;
@@ -1910,28 +1937,28 @@ public class ColladaParser {
                 for (int k = 0; k < float_array.length; k += l_source.technique_common.accessor.stride) {
                     if (l_source.id.equals((l_geometry.id + "-map-0"))) {
                         for (int j = 0; j < l_source.float_array.count; j += l_source.technique_common.accessor.stride) {
-                            if (float_array[k] == l_source.float_array.value.get(j)
-                                    && (1-float_array[k + 1]) == l_source.float_array.value.get(j + 1)
-                                || float_array[k] == l_source.float_array.value.get(j)
-                                    && float_array[k + 1] == (1-(l_source.float_array.value.get(j + 1)))) {
+                            if (float_array[k] == l_source.float_array.value[j]
+                                    && (1-float_array[k + 1]) == l_source.float_array.value[j + 1]
+                                || float_array[k] == l_source.float_array.value[j]
+                                    && float_array[k + 1] == (1-(l_source.float_array.value[j + 1]))) {
                                 l_p_new_indices_map.add(j/l_source.technique_common.accessor.stride);
                                 break;
                             }
                         }
                     } else if (l_source.id.equals((l_geometry.id + "-positions"))) {
                         for (int j = 0; j < l_source.float_array.count; j += l_source.technique_common.accessor.stride) {
-                            if (float_array[k] == l_source.float_array.value.get(j)
-                                    && float_array[k + 1] == l_source.float_array.value.get(j + 1)
-                                    && float_array[k + 2] == l_source.float_array.value.get(j + 2)) {
+                            if (float_array[k] == l_source.float_array.value[j]
+                                    && float_array[k + 1] == l_source.float_array.value[j + 1]
+                                    && float_array[k + 2] == l_source.float_array.value[j + 2]) {
                                 l_p_new_indices_position.add(j/l_source.technique_common.accessor.stride);
                                 break;
                             }
                         }
                     } else if (l_source.id.equals((l_geometry.id + "-normals"))) {
                         for (int j = 0; j < l_source.float_array.count; j += l_source.technique_common.accessor.stride) {
-                            if (float_array[k] == l_source.float_array.value.get(j)
-                                    && float_array[k + 1] == l_source.float_array.value.get(j + 1)
-                                    && float_array[k + 2] == l_source.float_array.value.get(j + 2)) {
+                            if (float_array[k] == l_source.float_array.value[j]
+                                    && float_array[k + 1] == l_source.float_array.value[j + 1]
+                                    && float_array[k + 2] == l_source.float_array.value[j + 2]) {
                                 l_p_new_indices_normal.add(j/l_source.technique_common.accessor.stride);
                                 break;
                             }
@@ -1946,12 +1973,12 @@ public class ColladaParser {
             String l_float_array = "";/*
             for (int j = 0; j < l_source.float_array.count; j += l_source.technique_common.accessor.stride) {
                 if (l_source.id.equals((l_geometry.id + "-map-0"))) {
-                    l_float_array += l_source.float_array.value.get(j) + " " + l_source.float_array.value.get(j + 1) + " ";
+                    l_float_array += l_source.float_array.value[j] + " " + l_source.float_array.value[j + 1] + " ";
                 } else {
-                    l_float_array += l_source.float_array.value.get(j) + " " + l_source.float_array.value.get(j + 1) + " " + l_source.float_array.value.get(j + 2) + " ";
+                    l_float_array += l_source.float_array.value[j] + " " + l_source.float_array.value[j + 1] + " " + l_source.float_array.value[j + 2] + " ";
                 }
             }*/
-            l_xml += "          <float_array id=\"" + l_source.float_array.id + "\" count=\"" + l_source.float_array.value.size() + "\">" + l_float_array + "</float_array>\n";
+            l_xml += "          <float_array id=\"" + l_source.float_array.id + "\" count=\"" + l_source.float_array.value.length + "\">" + l_float_array + "</float_array>\n";
             l_xml += "          <technique_common>\n";
             SAccessor l_accessor = l_source.technique_common.accessor;
             l_xml += "            <accessor source=\"" + l_accessor.source + "\" count=\"" + l_accessor.count + "\" stride=\"" + l_accessor.stride + "\">\n";
@@ -1996,10 +2023,10 @@ public class ColladaParser {
             Log.d("COLLADA", "INPUT_VERTEX    " + INPUT_VERTEX);
             Log.d("COLLADA", "INPUT_NORMAL    " + INPUT_NORMAL);
             Log.d("COLLADA", "INPUT_TEXCOORD  " + INPUT_TEXCOORD);
-            for (int j = 0; j < l_triangle.p.value.size(); j += INPUT_increment) {
-                if (INPUT_VERTEX != -1) { l_p_indices += " " + l_triangle.p.value.get(j + INPUT_VERTEX); }
-                if (INPUT_NORMAL != -1) { l_p_indices += " " + l_triangle.p.value.get(j + INPUT_NORMAL); }
-                if (INPUT_TEXCOORD != -1) { l_p_indices += " " + l_triangle.p.value.get(j + INPUT_TEXCOORD); }
+            for (int j = 0; j < l_triangle.p.value.length; j += INPUT_increment) {
+                if (INPUT_VERTEX != -1) { l_p_indices += " " + l_triangle.p.value[j + INPUT_VERTEX]; }
+                if (INPUT_NORMAL != -1) { l_p_indices += " " + l_triangle.p.value[j + INPUT_NORMAL]; }
+                if (INPUT_TEXCOORD != -1) { l_p_indices += " " + l_triangle.p.value[j + INPUT_TEXCOORD]; }
             }
             Log.d("COLLADA", "l_p_new_indices_position " + l_p_new_indices_position.size() + " " + Arrays.toString(l_p_new_indices_position.toArray()));
             Log.d("COLLADA", "l_p_new_indices_normal   " + l_p_new_indices_normal.size() + " " + Arrays.toString(l_p_new_indices_normal.toArray()));
@@ -0,0 +1,125 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import java.util.Arrays;
+
+/**
+ * Growable array of floats, without boxing. Used by the model loaders.
+ * The capacity doubles when full: all the copies made while growing are smaller than the final array.
+ */
+final class FloatArray {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private float[] mValues;
+    private int mSize;
+
+    FloatArray() {
+        this(MIN_CAPACITY);
+    }
+
+    FloatArray(int capacity) {
+        mValues = new float[Math.max(capacity, MIN_CAPACITY)];
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    float get(int index) {
+        return mValues[index];
+    }
+
+    void set(int index, float value) {
+        mValues[index] = value;
+    }
+
+    void add(float value) {
+        if (mSize == mValues.length) {
+            grow(mSize + 1);
+        }
+        mValues[mSize++] = value;
+    }
+
+    void add(float a, float b) {
+        if (mSize + 2 > mValues.length) {
+            grow(mSize + 2);
+        }
+        mValues[mSize++] = a;
+        mValues[mSize++] = b;
+    }
+
+    void add(float a, float b, float c) {
+        if (mSize + 3 > mValues.length) {
+            grow(mSize + 3);
+        }
+        mValues[mSize++] = a;
+        mValues[mSize++] = b;
+        mValues[mSize++] = c;
+    }
+
+    /**
+     * Appends count values of the source array, with a single copy
+     */
+    void add(float[] source, int offset, int count) {
+        if (mSize + count > mValues.length) {
+            grow(mSize + count);
+        }
+        System.arraycopy(source, offset, mValues, mSize, count);
+        mSize += count;
+    }
+
+    void ensureCapacity(int capacity) {
+        if (capacity > mValues.length) {
+            grow(capacity);
+        }
+    }
+
+    void clear() {
+        mSize = 0;
+    }
+
+    /**
+     * @return the internal array, its length can be bigger than size()
+     */
+    float[] getValues() {
+        return mValues;
+    }
+
+    /**
+     * @return a copy with exactly size() values
+     */
+    float[] toArray() {
+        return Arrays.copyOf(mValues, mSize);
+    }
+
+    /**
+     * Shrinks the internal array to exactly size() values, when the array is complete
+     * @return the internal array, not a copy
+     */
+    float[] trimToSize() {
+        if (mValues.length != mSize) {
+            mValues = Arrays.copyOf(mValues, mSize);
+        }
+        return mValues;
+    }
+
+    private void grow(int minCapacity) {
+        final int capacity = mValues.length;
+        mValues = Arrays.copyOf(mValues, Math.max(minCapacity, capacity * 2));
+    }
+}
@@ -0,0 +1,127 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+/**
+ * Result of the vertex deduplication done by toObject3D() on a model built with indexed(true).
+ */
+public class IndexingStats {
+
+    private int mSourceVertices;
+    private int mUniqueVertices;
+    private int mTriangles;
+    private int mDegenerateTriangles;
+    private int mIndexes;
+    private int mFaces;
+    private int mSourceBytes;
+    private int mIndexedBytes;
+    private int mCacheMissesBefore;
+    private int mCacheMissesAfter;
+
+    /**
+     * @return number of vertices the model would have without indexes (1 per strip element)
+     */
+    public int getSourceVertices() {
+        return mSourceVertices;
+    }
+
+    /**
+     * @return number of vertices after deduplication (distinct position, uv, normal in each face)
+     */
+    public int getUniqueVertices() {
+        return mUniqueVertices;
+    }
+
+    /**
+     * @return source vertices / unique vertices
+     */
+    public float getDedupRatio() {
+        return (mUniqueVertices > 0) ? (float) mSourceVertices / mUniqueVertices : 1;
+    }
+
+    public int getTriangles() {
+        return mTriangles;
+    }
+
+    /**
+     * @return number of degenerate triangles removed (used to link strips, or with 2 identical corners)
+     */
+    public int getDegenerateTriangles() {
+        return mDegenerateTriangles;
+    }
+
+    public int getIndexes() {
+        return mIndexes;
+    }
+
+    public int getFaces() {
+        return mFaces;
+    }
+
+    /**
+     * @return size of the vertex attributes without indexes
+     */
+    public int getSourceBytes() {
+        return mSourceBytes;
+    }
+
+    /**
+     * @return size of the vertex attributes and indexes after deduplication
+     */
+    public int getIndexedBytes() {
+        return mIndexedBytes;
+    }
+
+    /**
+     * @return Average Cache Miss Ratio of the triangles as exported: vertices transformed per triangle, with a 16 entries FIFO
+     * vertex cache. From 3 (no vertex reused) to about 0.5 (regular grid).
+     */
+    public float getAcmrBefore() {
+        return (mTriangles > 0) ? (float) mCacheMissesBefore / mTriangles : 0;
+    }
+
+    /**
+     * @return Average Cache Miss Ratio after the vertex cache optimization, same as getAcmrBefore() if it's not enabled
+     */
+    public float getAcmrAfter() {
+        return (mTriangles > 0) ? (float) mCacheMissesAfter / mTriangles : 0;
+    }
+
+    void onSourceVertices(int nbVertices, int bytesPerVertex) {
+        mSourceVertices += nbVertices;
+        mSourceBytes += nbVertices * bytesPerVertex;
+    }
+
+    void onTriangle() {
+        ++mTriangles;
+    }
+
+    void onDegenerateTriangle() {
+        ++mDegenerateTriangles;
+    }
+
+    void onCacheMisses(int before, int after) {
+        mCacheMissesBefore += before;
+        mCacheMissesAfter += after;
+    }
+
+    void onFace(int nbVertices, int bytesPerVertex, int nbIndexes, int bytesPerIndex) {
+        ++mFaces;
+        mUniqueVertices += nbVertices;
+        mIndexes += nbIndexes;
+        mIndexedBytes += nbVertices * bytesPerVertex + nbIndexes * bytesPerIndex;
+    }
+}
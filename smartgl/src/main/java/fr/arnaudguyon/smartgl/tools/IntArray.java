@@ -0,0 +1,114 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import java.util.Arrays;
+
+/**
+ * Growable array of ints, without boxing. Used by the model loaders.
+ * The capacity doubles when full: all the copies made while growing are smaller than the final array.
+ */
+final class IntArray {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] mValues;
+    private int mSize;
+
+    IntArray() {
+        this(MIN_CAPACITY);
+    }
+
+    IntArray(int capacity) {
+        mValues = new int[Math.max(capacity, MIN_CAPACITY)];
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    int get(int index) {
+        return mValues[index];
+    }
+
+    void set(int index, int value) {
+        mValues[index] = value;
+    }
+
+    void add(int value) {
+        if (mSize == mValues.length) {
+            grow(mSize + 1);
+        }
+        mValues[mSize++] = value;
+    }
+
+    void add(int a, int b) {
+        if (mSize + 2 > mValues.length) {
+            grow(mSize + 2);
+        }
+        mValues[mSize++] = a;
+        mValues[mSize++] = b;
+    }
+
+    void add(int a, int b, int c) {
+        if (mSize + 3 > mValues.length) {
+            grow(mSize + 3);
+        }
+        mValues[mSize++] = a;
+        mValues[mSize++] = b;
+        mValues[mSize++] = c;
+    }
+
+    /**
+     * Appends count values of the source array, with a single copy
+     */
+    void add(int[] source, int offset, int count) {
+        if (mSize + count > mValues.length) {
+            grow(mSize + count);
+        }
+        System.arraycopy(source, offset, mValues, mSize, count);
+        mSize += count;
+    }
+
+    void ensureCapacity(int capacity) {
+        if (capacity > mValues.length) {
+            grow(capacity);
+        }
+    }
+
+    void clear() {
+        mSize = 0;
+    }
+
+    /**
+     * @return the internal array, its length can be bigger than size()
+     */
+    int[] getValues() {
+        return mValues;
+    }
+
+    /**
+     * @return a copy with exactly size() values
+     */
+    int[] toArray() {
+        return Arrays.copyOf(mValues, mSize);
+    }
+
+    private void grow(int minCapacity) {
+        final int capacity = mValues.length;
+        mValues = Arrays.copyOf(mValues, Math.max(minCapacity, capacity * 2));
+    }
+}
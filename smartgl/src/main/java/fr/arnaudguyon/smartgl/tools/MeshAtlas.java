@@ -0,0 +1,208 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+import fr.arnaudguyon.smartgl.opengl.Texture;
+import fr.arnaudguyon.smartgl.opengl.TextureAtlas;
+
+/**
+ * Packs the textures of the materials of a MeshData in a TextureAtlas, and rewrites the UVs of their strips into
+ * the region of their texture. The strips of the materials of a same atlas page get the same material, so that they
+ * are drawn as a single face: 1 draw call and 1 texture bind for a model whose textures fit in a page.
+ * A material whose UVs are outside of 0..1 repeats its texture: it keeps its own texture, see AtlasingStats.
+ */
+final class MeshAtlas {
+
+    private static final String PAGE_MATERIAL = "atlas#";   // material name of the strips of an atlas page
+    private static final float UV_TOLERANCE = 0.001f;       // export imprecision, clamped to 0..1
+
+    private MeshData mMeshData;
+    private HashMap<String, Texture> mTextures;
+
+    /**
+     * @param linkStrips true to link the strips of a material in one strip (for glDrawArrays), false to keep them
+     *                   (the MeshIndexer groups the strips of a material)
+     */
+    MeshAtlas(Context context, MeshData source, HashMap<String, Texture> textures, boolean linkStrips, AtlasingStats stats) {
+        mMeshData = source;
+        mTextures = textures;
+
+        // materials in order of first use, and the bounds of their UVs
+        final float[] uvs = source.mUVs;
+        LinkedHashMap<String, ArrayList<MeshData.Strip>> materials = new LinkedHashMap<>();
+        HashMap<String, float[]> uvBounds = new HashMap<>();    // uMin, vMin, uMax, vMax
+        for (MeshData.Strip strip : source.mStrips) {
+            ArrayList<MeshData.Strip> strips = materials.get(strip.mMaterialName);
+            float[] bounds = uvBounds.get(strip.mMaterialName);
+            if (strips == null) {
+                strips = new ArrayList<>();
+                materials.put(strip.mMaterialName, strips);
+                bounds = new float[] {Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+                uvBounds.put(strip.mMaterialName, bounds);
+            }
+            strips.add(strip);
+            final int end = strip.mOffset + strip.mLength;
+            for (int i = strip.mOffset + 1; i < end; i += 3) {
+                final float u = uvs[strip.mIndexes[i] * 2];
+                final float v = uvs[strip.mIndexes[i] * 2 + 1];
+                bounds[0] = Math.min(bounds[0], u);
+                bounds[1] = Math.min(bounds[1], v);
+                bounds[2] = Math.max(bounds[2], u);
+                bounds[3] = Math.max(bounds[3], v);
+            }
+        }
+
+        TextureAtlas.Builder atlasBuilder = new TextureAtlas.Builder(context);
+        int nbAtlased = 0;
+        for (String material : materials.keySet()) {
+            stats.onMaterial();
+            final float[] bounds = uvBounds.get(material);
+            if (textures.get(material) == null) {
+                stats.onMaterialWithoutTexture(material);
+            } else if ((bounds[0] < -UV_TOLERANCE) || (bounds[1] < -UV_TOLERANCE)
+                    || (bounds[2] > 1 + UV_TOLERANCE) || (bounds[3] > 1 + UV_TOLERANCE)) {
+                stats.onWrappedMaterial(material);
+            } else {
+                atlasBuilder.add(material, textures.get(material));
+                ++nbAtlased;
+            }
+        }
+        final int facesBefore = linkStrips ? source.mStrips.size() : materials.size();
+        if (nbAtlased < 2) {
+            stats.onFaces(facesBefore, facesBefore);    // nothing to merge
+            return;
+        }
+        TextureAtlas atlas = atlasBuilder.build();
+        stats.onAtlas(nbAtlased, atlas.getNbPages(), atlas.getEfficiency());
+
+        // UVs of each material moved to its region, a UV shared by 2 materials is duplicated
+        final int nbUVs = uvs.length / 2;
+        FloatArray newUVs = new FloatArray(uvs.length);
+        int[] uvRemap = new int[nbUVs];
+        Arrays.fill(uvRemap, -1);
+        String[] uvRemapMaterial = new String[nbUVs];
+        IntArray corners = new IntArray(source.mStrips.size() * 3 * 3);
+        ArrayList<MeshData.Strip> newStrips = new ArrayList<>();
+        LinkedHashMap<String, ArrayList<MeshData.Strip>> pageMaterials = new LinkedHashMap<>();
+        HashMap<String, Texture> newTextures = new HashMap<>(textures);
+        for (int page = 0; page < atlas.getNbPages(); ++page) {
+            newTextures.put(PAGE_MATERIAL + page, atlas.getPage(page));
+        }
+        for (String material : materials.keySet()) {
+            TextureAtlas.Region region = atlas.getRegion(material);
+            float uScale = 1;
+            float vScale = 1;
+            float uOffset = 0;
+            float vOffset = 0;
+            String newMaterial = material;
+            if (region != null) {
+                Texture page = region.getTexture();
+                uScale = (float) region.getWidth() / page.getWidth();
+                vScale = (float) region.getHeight() / page.getHeight();
+                uOffset = region.getUMin();
+                vOffset = region.getVMin();
+                for (int i = 0; i < atlas.getNbPages(); ++i) {
+                    if (atlas.getPage(i) == page) {
+                        newMaterial = PAGE_MATERIAL + i;
+                    }
+                }
+            }
+            ArrayList<MeshData.Strip> pageStrips = pageMaterials.get(newMaterial);
+            if (pageStrips == null) {
+                pageStrips = new ArrayList<>();
+                pageMaterials.put(newMaterial, pageStrips);
+            }
+            for (MeshData.Strip strip : materials.get(material)) {
+                final int offset = corners.size();
+                corners.add(strip.mIndexes, strip.mOffset, strip.mLength);
+                final int[] values = corners.getValues();
+                for (int i = offset + 1; i < offset + strip.mLength; i += 3) {
+                    final int uv = values[i];
+                    if ((uvRemap[uv] < 0) || !material.equals(uvRemapMaterial[uv])) {
+                        float u = uvs[uv * 2];
+                        float v = uvs[uv * 2 + 1];
+                        if (region != null) {
+                            u = uOffset + Math.min(Math.max(u, 0), 1) * uScale;
+                            v = vOffset + Math.min(Math.max(v, 0), 1) * vScale;
+                        }
+                        uvRemap[uv] = newUVs.size() / 2;
+                        uvRemapMaterial[uv] = material;
+                        newUVs.add(u, v);
+                    }
+                    values[i] = uvRemap[uv];
+                }
+                pageStrips.add(new MeshData.Strip(newMaterial, null, offset, strip.mLength));
+            }
+        }
+
+        // strips of a same material linked with degenerate triangles, as WavefrontModel.mergeStrips()
+        if (linkStrips) {
+            final int[] sourceCorners = corners.toArray();
+            corners = new IntArray(sourceCorners.length + source.mStrips.size() * 3 * 3);
+            for (String material : pageMaterials.keySet()) {
+                final int offset = corners.size();
+                boolean first = true;
+                for (MeshData.Strip strip : pageMaterials.get(material)) {
+                    if (!first) {
+                        final int lastCorner = corners.size() - 3;
+                        corners.add(corners.getValues(), lastCorner, 3);
+                        corners.add(corners.getValues(), lastCorner, 3);
+                        corners.add(sourceCorners, strip.mOffset, 3);
+                    }
+                    corners.add(sourceCorners, strip.mOffset, strip.mLength);
+                    first = false;
+                }
+                newStrips.add(new MeshData.Strip(material, null, offset, corners.size() - offset));
+            }
+        } else {
+            for (ArrayList<MeshData.Strip> strips : pageMaterials.values()) {
+                newStrips.addAll(strips);
+            }
+        }
+        final int[] newCorners = corners.getValues();
+        for (MeshData.Strip strip : newStrips) {
+            strip.mIndexes = newCorners;
+        }
+
+        MeshData meshData = new MeshData();
+        meshData.mPositions = source.mPositions;
+        meshData.mColors = source.mColors;
+        meshData.mUVs = newUVs.trimToSize();
+        meshData.mNormals = source.mNormals;
+        meshData.mStrips = newStrips;
+        mMeshData = meshData;
+        mTextures = newTextures;
+        stats.onFaces(facesBefore, pageMaterials.size());
+    }
+
+    MeshData getMeshData() {
+        return mMeshData;
+    }
+
+    /**
+     * @return the textures of the materials, with the pages of the atlas
+     */
+    HashMap<String, Texture> getTextures() {
+        return mTextures;
+    }
+}
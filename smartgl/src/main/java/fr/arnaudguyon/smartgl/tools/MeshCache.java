@@ -0,0 +1,281 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Binary mesh format written by the model Builders after the first parse, and read on later starts
+ * without parsing text. Files are memory mapped, arrays are read with bulk copies.
+ * <pre>
+ * int magic, int version, long sourceStamp
+ * int nbPositionFloats, int nbColorFloats, int nbUVFloats, int nbNormalFloats, int nbStrips
+ * float[] positions, float[] colors, float[] uvs, float[] normals
+ * for each strip: int nameLength, UTF-8 name padded to 4 bytes, int nbIndexes, int[] indexes (vertex, uv, normal)
+ * </pre>
+ * All values are little endian.
+ */
+public class MeshCache {
+
+    private static final int MAGIC = 0x4D4C4753;   // "SGLM"
+    private static final int VERSION = 2;   // 2: strips share an index array with an offset
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 5 * 4;
+    private static final int BYTES_PER_VALUE = 4;
+    private static final String CHARSET = "UTF-8";
+
+    /**
+     * Stamp accepted for any source, used by files created by MeshCacheConverter and shipped as raw resources
+     */
+    public static final long ANY_SOURCE = 0;
+
+    /**
+     * @return a stamp that changes when the application is updated, to invalidate the cache files
+     */
+    public static long computeSourceStamp(Context context, int rawResourceId, boolean optimized) {
+        long stamp = new File(context.getPackageCodePath()).lastModified();
+        stamp = stamp * 31 + rawResourceId;
+        stamp = stamp * 31 + (optimized ? 1 : 0);
+        return (stamp != ANY_SOURCE) ? stamp : 1;
+    }
+
+    /**
+     * @return true if the bytes start with the MeshCache magic number
+     */
+    static boolean isMeshCache(byte[] header) {
+        if ((header == null) || (header.length < 4)) {
+            return false;
+        }
+        return (ByteBuffer.wrap(header, 0, 4).order(ByteOrder.LITTLE_ENDIAN).getInt() == MAGIC);
+    }
+
+    /**
+     * Maps a cache file in memory
+     * @return the mesh, or null if the file doesn't exist, is outdated or corrupted
+     */
+    static MeshData read(File file, long sourceStamp) {
+        if ((file == null) || !file.isFile()) {
+            return null;
+        }
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            FileChannel channel = randomAccessFile.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer, sourceStamp);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (randomAccessFile != null) {
+                try {
+                    randomAccessFile.close();
+                } catch (IOException e) {
+                    // nothing
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a whole stream (a raw resource converted with MeshCacheConverter) into a direct ByteBuffer
+     */
+    static MeshData read(InputStream inputStream) throws IOException {
+        byte[] chunk = new byte[64 * 1024];
+        ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(inputStream.available(), chunk.length));
+        int read;
+        while ((read = inputStream.read(chunk)) > 0) {
+            if (buffer.remaining() < read) {
+                ByteBuffer bigger = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + read));
+                buffer.flip();
+                bigger.put(buffer);
+                buffer = bigger;
+            }
+            buffer.put(chunk, 0, read);
+        }
+        buffer.flip();
+        MeshData meshData = read(buffer, ANY_SOURCE);
+        if (meshData == null) {
+            throw new IOException("Invalid mesh cache");
+        }
+        return meshData;
+    }
+
+    /**
+     * The counts and the indexes are checked against the buffer size and the arrays, so that a corrupted file is a cache miss
+     * @param sourceStamp the expected stamp, or ANY_SOURCE
+     * @return the mesh, or null if the buffer is outdated, truncated or corrupted
+     */
+    static MeshData read(ByteBuffer buffer, long sourceStamp) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if ((buffer.getInt() != MAGIC) || (buffer.getInt() != VERSION)) {
+                return null;
+            }
+            final long fileStamp = buffer.getLong();
+            if ((sourceStamp != ANY_SOURCE) && (fileStamp != sourceStamp)) {
+                return null;
+            }
+            final int nbPositions = buffer.getInt();
+            final int nbColors = buffer.getInt();
+            final int nbUVs = buffer.getInt();
+            final int nbNormals = buffer.getInt();
+            final int nbStrips = buffer.getInt();
+            if ((nbPositions < 0) || (nbPositions % 3 != 0) || ((nbColors != 0) && (nbColors != nbPositions))
+                    || (nbUVs < 0) || (nbUVs % 2 != 0) || (nbNormals < 0) || (nbNormals % 3 != 0) || (nbStrips < 0)) {
+                return null;
+            }
+            final long arraysSize = ((long) nbPositions + nbColors + nbUVs + nbNormals) * BYTES_PER_VALUE;
+            if (arraysSize + (long) nbStrips * 2 * BYTES_PER_VALUE > buffer.remaining()) {
+                return null;
+            }
+
+            MeshData meshData = new MeshData();
+            meshData.mPositions = readFloats(buffer, nbPositions);
+            meshData.mColors = (nbColors > 0) ? readFloats(buffer, nbColors) : null;
+            meshData.mUVs = readFloats(buffer, nbUVs);
+            meshData.mNormals = readFloats(buffer, nbNormals);
+            meshData.mStrips.ensureCapacity(nbStrips);
+            for (int i = 0; i < nbStrips; ++i) {
+                final int nameLength = buffer.getInt();
+                if ((nameLength < 0) || (nameLength > buffer.remaining())) {
+                    return null;
+                }
+                byte[] nameBytes = new byte[nameLength];
+                buffer.get(nameBytes);
+                buffer.position(buffer.position() + padding(nameLength));
+                final int nbIndexes = buffer.getInt();
+                if ((nbIndexes < 0) || (nbIndexes % 3 != 0) || ((long) nbIndexes * BYTES_PER_VALUE > buffer.remaining())) {
+                    return null;
+                }
+                int[] indexes = new int[nbIndexes];
+                buffer.asIntBuffer().get(indexes);
+                buffer.position(buffer.position() + nbIndexes * BYTES_PER_VALUE);
+                if (!checkIndexes(indexes, 0, nbPositions / 3) || !checkIndexes(indexes, 1, nbUVs / 2)
+                        || !checkIndexes(indexes, 2, nbNormals / 3)) {
+                    return null;
+                }
+                meshData.mStrips.add(new MeshData.Strip(new String(nameBytes, CHARSET), indexes));
+            }
+            return meshData;
+        } catch (BufferUnderflowException | IllegalArgumentException | UnsupportedEncodingException | NegativeArraySizeException e) {
+            return null;    // truncated or corrupted
+        }
+    }
+
+    /**
+     * @param column 0 for the vertex indexes, 1 for the uv indexes, 2 for the normal indexes
+     * @return true if the indexes of the column are in the array. The uvs and normals can be empty, their indexes are not used then.
+     */
+    private static boolean checkIndexes(int[] indexes, int column, int nbElements) {
+        if (nbElements == 0) {
+            return (column != 0) || (indexes.length == 0);
+        }
+        for (int i = column; i < indexes.length; i += 3) {
+            final int index = indexes[i];
+            if ((index < 0) || (index >= nbElements)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static float[] readFloats(ByteBuffer buffer, int count) {
+        float[] values = new float[count];
+        buffer.asFloatBuffer().get(values);
+        buffer.position(buffer.position() + count * BYTES_PER_VALUE);
+        return values;
+    }
+
+    private static int padding(int length) {
+        return (BYTES_PER_VALUE - (length % BYTES_PER_VALUE)) % BYTES_PER_VALUE;
+    }
+
+    /**
+     * Writes the mesh in a temporary file, then renames it, so that a partially written file is never read
+     */
+    static void write(MeshData meshData, File file, long sourceStamp) throws IOException {
+        final int nbColors = (meshData.mColors != null) ? meshData.mColors.length : 0;
+        byte[][] names = new byte[meshData.mStrips.size()][];
+        int size = HEADER_SIZE;
+        size += (meshData.mPositions.length + nbColors + meshData.mUVs.length + meshData.mNormals.length) * BYTES_PER_VALUE;
+        for (int i = 0; i < names.length; ++i) {
+            MeshData.Strip strip = meshData.mStrips.get(i);
+            names[i] = strip.mMaterialName.getBytes(CHARSET);
+            size += BYTES_PER_VALUE + names[i].length + padding(names[i].length);
+            size += BYTES_PER_VALUE + strip.mLength * BYTES_PER_VALUE;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(sourceStamp);
+        buffer.putInt(meshData.mPositions.length);
+        buffer.putInt(nbColors);
+        buffer.putInt(meshData.mUVs.length);
+        buffer.putInt(meshData.mNormals.length);
+        buffer.putInt(names.length);
+        writeFloats(buffer, meshData.mPositions);
+        if (nbColors > 0) {
+            writeFloats(buffer, meshData.mColors);
+        }
+        writeFloats(buffer, meshData.mUVs);
+        writeFloats(buffer, meshData.mNormals);
+        for (int i = 0; i < names.length; ++i) {
+            buffer.putInt(names[i].length);
+            buffer.put(names[i]);
+            buffer.position(buffer.position() + padding(names[i].length));
+            MeshData.Strip strip = meshData.mStrips.get(i);
+            buffer.putInt(strip.mLength);
+            buffer.asIntBuffer().put(strip.mIndexes, strip.mOffset, strip.mLength);
+            buffer.position(buffer.position() + strip.mLength * BYTES_PER_VALUE);
+        }
+        buffer.flip();
+
+        File tmpFile = new File(file.getPath() + ".tmp");
+        FileOutputStream outputStream = new FileOutputStream(tmpFile);
+        try {
+            FileChannel channel = outputStream.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            outputStream.close();
+        }
+        if (!tmpFile.renameTo(file)) {
+            file.delete();
+            if (!tmpFile.renameTo(file)) {
+                tmpFile.delete();
+                throw new IOException("Can't write " + file.getPath());
+            }
+        }
+    }
+
+    private static void writeFloats(ByteBuffer buffer, float[] values) {
+        buffer.asFloatBuffer().put(values);
+        buffer.position(buffer.position() + values.length * BYTES_PER_VALUE);
+    }
+}
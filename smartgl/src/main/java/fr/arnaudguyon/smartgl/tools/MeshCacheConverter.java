@@ -0,0 +1,112 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+
+import fr.arnaudguyon.smartgl.opengl.Texture;
+
+/**
+ * Desktop (JVM) tool converting a Wavefront file to a MeshCache file, to ship in res/raw instead of the text file.
+ * The Builders detect the MeshCache files and read them without parsing.
+ * Usage: java -cp smartgl-classes fr.arnaudguyon.smartgl.tools.MeshCacheConverter [-noOptimize] model.obj model.mesh
+ * Big files are parsed on all the cores (Builder.parallelParse()). The written file is read again and compared to the parsed model.
+ * Also prints the vertex deduplication obtained with Builder.indexed(true), and the vertex cache miss ratio (ACMR)
+ * before and after Builder.optimizeVertexCache(true).
+ * Collada files depend on the Android XmlPullParser: they are cached on the device with Builder.setCacheFile().
+ */
+public class MeshCacheConverter {
+
+    public static void main(String[] args) throws IOException {
+        boolean optimize = true;
+        int argIndex = 0;
+        if ((args.length > 0) && args[0].equals("-noOptimize")) {
+            optimize = false;
+            ++argIndex;
+        }
+        if (args.length - argIndex != 2) {
+            System.err.println("Usage: MeshCacheConverter [-noOptimize] model.obj model.mesh");
+            System.exit(1);
+            return;
+        }
+        File input = new File(args[argIndex]);
+        File output = new File(args[argIndex + 1]);
+
+        long startTime = System.nanoTime();
+        WavefrontModel model;
+        InputStream inputStream = new FileInputStream(input);
+        try {
+            model = WavefrontModel.parse(inputStream, optimize, true);
+        } finally {
+            inputStream.close();
+        }
+        MeshData meshData = (model.mMeshData != null) ? model.mMeshData : model.toMeshData();
+        long parseTime = System.nanoTime() - startTime;
+
+        MeshCache.write(meshData, output, MeshCache.ANY_SOURCE);
+
+        startTime = System.nanoTime();
+        MeshData readData = MeshCache.read(output, MeshCache.ANY_SOURCE);
+        long readTime = System.nanoTime() - startTime;
+        if (!isSame(meshData, readData)) {
+            System.err.println("Round trip error: " + output.getPath() + " differs from " + input.getPath());
+            System.exit(2);
+            return;
+        }
+
+        System.out.println(input.getName() + " -> " + output.getName() + ": " + (meshData.mPositions.length / 3) + " vertex, "
+                + meshData.mStrips.size() + " strips, " + input.length() + " -> " + output.length() + " bytes, parse "
+                + (parseTime / 1000000) + "ms, read " + (readTime / 1000000) + "ms");
+
+        IndexingStats indexingStats = new IndexingStats();
+        MeshIndexer.toObject3D(meshData, new HashMap<String, Texture>(), new float[] {1, 1, 1}, true, indexingStats);
+        System.out.println("indexed: " + indexingStats.getSourceVertices() + " -> " + indexingStats.getUniqueVertices() + " vertex ("
+                + String.format(Locale.US, "%.2f", indexingStats.getDedupRatio()) + "x), " + indexingStats.getSourceBytes() + " -> "
+                + indexingStats.getIndexedBytes() + " bytes, " + indexingStats.getFaces() + " faces");
+        System.out.println("vertex cache: ACMR " + String.format(Locale.US, "%.3f", indexingStats.getAcmrBefore()) + " -> "
+                + String.format(Locale.US, "%.3f", indexingStats.getAcmrAfter()));
+    }
+
+    static boolean isSame(MeshData left, MeshData right) {
+        if ((left == null) || (right == null)) {
+            return false;
+        }
+        if (!Arrays.equals(left.mPositions, right.mPositions) || !Arrays.equals(left.mColors, right.mColors)
+                || !Arrays.equals(left.mUVs, right.mUVs) || !Arrays.equals(left.mNormals, right.mNormals)
+                || (left.mStrips.size() != right.mStrips.size())) {
+            return false;
+        }
+        for (int i = 0; i < left.mStrips.size(); ++i) {
+            MeshData.Strip leftStrip = left.mStrips.get(i);
+            MeshData.Strip rightStrip = right.mStrips.get(i);
+            if (!leftStrip.mMaterialName.equals(rightStrip.mMaterialName) || (leftStrip.mLength != rightStrip.mLength)) {
+                return false;
+            }
+            for (int j = 0; j < leftStrip.mLength; ++j) {
+                if (leftStrip.mIndexes[leftStrip.mOffset + j] != rightStrip.mIndexes[rightStrip.mOffset + j]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import fr.arnaudguyon.smartgl.opengl.ColorList;
+import fr.arnaudguyon.smartgl.opengl.Face3D;
+import fr.arnaudguyon.smartgl.opengl.NormalList;
+import fr.arnaudguyon.smartgl.opengl.Object3D;
+import fr.arnaudguyon.smartgl.opengl.Texture;
+import fr.arnaudguyon.smartgl.opengl.UVList;
+import fr.arnaudguyon.smartgl.opengl.VertexList;
+
+/**
+ * Mesh of a WavefrontModel or ColladaModel stored in primitive arrays, as written in a MeshCache file.
+ * Indexes are already resolved (0 based) for each loader.
+ */
+class MeshData {
+
+    static final float NO_COLOR = -1;   // in mColors, for a vertex without color
+
+    static class Strip {
+        String mMaterialName;
+        int[] mIndexes;     // vertex, uv, normal index for each strip element, can be shared by several strips
+        int mOffset;        // first index of the strip in mIndexes
+        int mLength;        // number of indexes of the strip
+
+        Strip(String materialName, int[] indexes) {
+            this(materialName, indexes, 0, indexes.length);
+        }
+
+        Strip(String materialName, int[] indexes, int offset, int length) {
+            mMaterialName = materialName;
+            mIndexes = indexes;
+            mOffset = offset;
+            mLength = length;
+        }
+
+        int getNbElements() {
+            return mLength / 3;
+        }
+    }
+
+    float[] mPositions = new float[0];  // x,y,z
+    float[] mColors;                    // r,g,b per position, null if no vertex has colors
+    float[] mUVs = new float[0];        // u,v
+    float[] mNormals = new float[0];    // x,y,z
+    ArrayList<Strip> mStrips = new ArrayList<>();
+
+    /**
+     * Creates 1 Face3D per Strip. Each AttribList is filled column by column in a float[] then used without copy.
+     */
+    Object3D toObject3D(HashMap<String, Texture> textures, float[] defaultColor) {
+
+        final boolean hasUV = (mUVs.length > 0);
+        final boolean hasNormals = (mNormals.length > 0);
+
+        Object3D object3D = new Object3D();
+        for (Strip strip : mStrips) {
+
+            Face3D face3D = new Face3D();
+            final int nbIndex = strip.getNbElements();
+
+            VertexList vertexList = new VertexList();
+            vertexList.setInternalBuffer(gather(mPositions, 3, strip, 0), nbIndex);
+            vertexList.finalizeBuffer();
+            face3D.setVertexList(vertexList);
+
+            if (hasUV) {
+                UVList uvList = new UVList();
+                uvList.setInternalBuffer(gather(mUVs, 2, strip, 1), nbIndex);
+                uvList.finalizeBuffer();
+                face3D.setUVList(uvList);
+                face3D.setTexture(textures.get(strip.mMaterialName));
+            } else {
+                ColorList colorList = new ColorList();
+                colorList.setInternalBuffer(gatherColors(strip, defaultColor), nbIndex);
+                colorList.finalizeBuffer();
+                face3D.setColorList(colorList);
+            }
+
+            if (hasNormals) {
+                NormalList normalList = new NormalList();
+                normalList.setInternalBuffer(gather(mNormals, 3, strip, 2), nbIndex);
+                normalList.finalizeBuffer();
+                face3D.setNormalList(normalList);
+            }
+
+            object3D.addFace(face3D);
+        }
+        return object3D;
+    }
+
+    /**
+     * @param column 0 for the vertex index, 1 for the uv index, 2 for the normal index
+     * @return the elements of source pointed by the indexes of the strip, in strip order
+     */
+    private static float[] gather(float[] source, int floatsPerElement, Strip strip, int column) {
+        final int[] indexes = strip.mIndexes;
+        final int end = strip.mOffset + strip.mLength;
+        float[] values = new float[strip.getNbElements() * floatsPerElement];
+        int dst = 0;
+        if (floatsPerElement == 3) {
+            for (int i = strip.mOffset + column; i < end; i += 3) {
+                final int src = indexes[i] * 3;
+                values[dst] = source[src];
+                values[dst + 1] = source[src + 1];
+                values[dst + 2] = source[src + 2];
+                dst += 3;
+            }
+        } else {
+            for (int i = strip.mOffset + column; i < end; i += 3) {
+                System.arraycopy(source, indexes[i] * floatsPerElement, values, dst, floatsPerElement);
+                dst += floatsPerElement;
+            }
+        }
+        return values;
+    }
+
+    // r,g,b,a for each element: the vertex color if any, or the default color
+    private float[] gatherColors(Strip strip, float[] defaultColor) {
+        final int[] indexes = strip.mIndexes;
+        final int end = strip.mOffset + strip.mLength;
+        float[] values = new float[strip.getNbElements() * 4];
+        int dst = 0;
+        for (int i = strip.mOffset; i < end; i += 3) {
+            final int vertex = indexes[i] * 3;
+            if ((mColors != null) && (mColors[vertex] != NO_COLOR)) {
+                values[dst] = mColors[vertex];
+                values[dst + 1] = mColors[vertex + 1];
+                values[dst + 2] = mColors[vertex + 2];
+            } else {
+                values[dst] = defaultColor[0];
+                values[dst + 1] = defaultColor[1];
+                values[dst + 2] = defaultColor[2];
+            }
+            values[dst + 3] = 1;
+            dst += 4;
+        }
+        return values;
+    }
+}
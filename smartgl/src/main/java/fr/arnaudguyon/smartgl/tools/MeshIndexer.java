@@ -0,0 +1,261 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+import fr.arnaudguyon.smartgl.opengl.ColorList;
+import fr.arnaudguyon.smartgl.opengl.Face3D;
+import fr.arnaudguyon.smartgl.opengl.IndexList;
+import fr.arnaudguyon.smartgl.opengl.NormalList;
+import fr.arnaudguyon.smartgl.opengl.Object3D;
+import fr.arnaudguyon.smartgl.opengl.Texture;
+import fr.arnaudguyon.smartgl.opengl.UVList;
+import fr.arnaudguyon.smartgl.opengl.VertexList;
+
+/**
+ * Converts a MeshData to an Object3D drawn with indexes: the strip elements having the same vertex, uv and normal
+ * become a single vertex, found with a hash table, and each material becomes a list of triangles.
+ * The degenerate triangles linking the strips are removed.
+ * Indexes are unsigned shorts: a material using more than 65536 vertices is split in several faces.
+ * Optionally, the triangles and vertices of each face are reordered for the GPU vertex cache (VertexCacheOptimizer).
+ */
+final class MeshIndexer {
+
+    private static final int MAX_VERTICES = IndexList.MAX_VERTEX_INDEX + 1;
+    private static final int EMPTY = -1;
+    private static final int BYTES_PER_FLOAT = 4;
+    private static final int BYTES_PER_INDEX = 2;
+
+    private final MeshData mMeshData;
+    private final boolean mHasUV;
+    private final boolean mHasNormals;
+    private final int mBytesPerVertex;
+    private final boolean mOptimizeVertexCache;
+    private final IndexingStats mStats;
+
+    // face being built
+    private final IntArray mUniqueKeys = new IntArray();   // vertex, uv, normal of each unique vertex
+    private final IntArray mIndexes = new IntArray();
+    private int[] mHashTable;                               // unique vertex number, or EMPTY
+
+    private MeshIndexer(MeshData meshData, boolean optimizeVertexCache, IndexingStats stats) {
+        mMeshData = meshData;
+        mHasUV = (meshData.mUVs.length > 0);
+        mHasNormals = (meshData.mNormals.length > 0);
+        mBytesPerVertex = (3 + (mHasUV ? 2 : 4) + (mHasNormals ? 3 : 0)) * BYTES_PER_FLOAT;
+        mOptimizeVertexCache = optimizeVertexCache;
+        mStats = stats;
+    }
+
+    /**
+     * @param optimizeVertexCache true to reorder the triangles and vertices of each face for the vertex cache
+     * @param stats receives the deduplication counters
+     */
+    static Object3D toObject3D(MeshData meshData, HashMap<String, Texture> textures, float[] defaultColor,
+                               boolean optimizeVertexCache, IndexingStats stats) {
+        MeshIndexer indexer = new MeshIndexer(meshData, optimizeVertexCache, stats);
+
+        // strips of each material, materials in order of first use
+        LinkedHashMap<String, ArrayList<MeshData.Strip>> materials = new LinkedHashMap<>();
+        for (MeshData.Strip strip : meshData.mStrips) {
+            ArrayList<MeshData.Strip> strips = materials.get(strip.mMaterialName);
+            if (strips == null) {
+                strips = new ArrayList<>();
+                materials.put(strip.mMaterialName, strips);
+            }
+            strips.add(strip);
+        }
+
+        Object3D object3D = new Object3D();
+        for (ArrayList<MeshData.Strip> strips : materials.values()) {
+            indexer.indexMaterial(strips, object3D, textures, defaultColor);
+        }
+        return object3D;
+    }
+
+    private void indexMaterial(ArrayList<MeshData.Strip> strips, Object3D object3D, HashMap<String, Texture> textures, float[] defaultColor) {
+        final Texture texture = (mHasUV) ? textures.get(strips.get(0).mMaterialName) : null;
+        int nbElements = 0;
+        for (MeshData.Strip strip : strips) {
+            nbElements += strip.getNbElements();
+        }
+        resetFace(Math.min(nbElements, MAX_VERTICES));
+
+        for (MeshData.Strip strip : strips) {
+            final int[] indexes = strip.mIndexes;
+            final int nbStripElements = strip.getNbElements();
+            mStats.onSourceVertices(nbStripElements, mBytesPerVertex);
+
+            // triangle strip: triangle t is (t, t+1, t+2), or (t+1, t, t+2) for odd t to keep the same orientation
+            for (int t = 0; t + 2 < nbStripElements; ++t) {
+                int c0 = strip.mOffset + t * 3;
+                int c1 = c0 + 3;
+                final int c2 = c0 + 6;
+                if ((t & 1) != 0) {
+                    c0 = c1;
+                    c1 = c0 - 3;
+                }
+                if (isSameVertex(indexes, c0, c1) || isSameVertex(indexes, c1, c2) || isSameVertex(indexes, c0, c2)) {
+                    mStats.onDegenerateTriangle();
+                    continue;
+                }
+                if (mUniqueKeys.size() / 3 + 3 > MAX_VERTICES) {
+                    addFace(object3D, texture, defaultColor);
+                    resetFace(MAX_VERTICES);
+                }
+                mIndexes.add(findOrAdd(indexes, c0), findOrAdd(indexes, c1), findOrAdd(indexes, c2));
+                mStats.onTriangle();
+            }
+        }
+        addFace(object3D, texture, defaultColor);
+    }
+
+    // uv and normal indexes are ignored when the model has none
+    private boolean isSameVertex(int[] indexes, int a, int b) {
+        return (indexes[a] == indexes[b])
+                && (!mHasUV || (indexes[a + 1] == indexes[b + 1]))
+                && (!mHasNormals || (indexes[a + 2] == indexes[b + 2]));
+    }
+
+    private void resetFace(int maxVertices) {
+        mUniqueKeys.clear();
+        mIndexes.clear();
+        // load factor <= 0.5
+        final int tableSize = Integer.highestOneBit(Math.max(maxVertices, 1) * 2 - 1) << 1;
+        if ((mHashTable == null) || (mHashTable.length < tableSize)) {
+            mHashTable = new int[tableSize];
+        }
+        Arrays.fill(mHashTable, EMPTY);
+    }
+
+    /**
+     * @return the unique vertex number of the strip element at index
+     */
+    private int findOrAdd(int[] indexes, int index) {
+        final int vertex = indexes[index];
+        final int uv = (mHasUV) ? indexes[index + 1] : 0;
+        final int normal = (mHasNormals) ? indexes[index + 2] : 0;
+
+        final int mask = mHashTable.length - 1;
+        int hash = vertex * 0x9E3779B1 ^ uv * 0x85EBCA6B ^ normal * 0xC2B2AE35;
+        hash ^= (hash >>> 16);
+        int slot = hash & mask;
+        final int[] keys = mUniqueKeys.getValues();
+        while (true) {
+            final int unique = mHashTable[slot];
+            if (unique == EMPTY) {
+                final int newUnique = mUniqueKeys.size() / 3;
+                mUniqueKeys.add(vertex, uv, normal);
+                mHashTable[slot] = newUnique;
+                return newUnique;
+            }
+            final int key = unique * 3;
+            if ((keys[key] == vertex) && (keys[key + 1] == uv) && (keys[key + 2] == normal)) {
+                return unique;
+            }
+            slot = (slot + 1) & mask;   // linear probing
+        }
+    }
+
+    private void addFace(Object3D object3D, Texture texture, float[] defaultColor) {
+        final int nbIndexes = mIndexes.size();
+        if (nbIndexes == 0) {
+            return;
+        }
+        final int nbVertices = mUniqueKeys.size() / 3;
+        final int[] indexes = mIndexes.getValues();
+        int[] keys = mUniqueKeys.getValues();
+
+        final int missesBefore = VertexCacheOptimizer.countCacheMisses(indexes, nbIndexes, nbVertices, VertexCacheOptimizer.FIFO_CACHE_SIZE);
+        int missesAfter = missesBefore;
+        if (mOptimizeVertexCache) {
+            VertexCacheOptimizer.optimizeTriangleOrder(indexes, nbIndexes, nbVertices);
+            final int[] previousNumbers = VertexCacheOptimizer.optimizeVertexFetch(indexes, nbIndexes, nbVertices);
+            int[] sortedKeys = new int[nbVertices * 3];
+            for (int i = 0; i < nbVertices; ++i) {
+                System.arraycopy(keys, previousNumbers[i] * 3, sortedKeys, i * 3, 3);
+            }
+            keys = sortedKeys;
+            missesAfter = VertexCacheOptimizer.countCacheMisses(indexes, nbIndexes, nbVertices, VertexCacheOptimizer.FIFO_CACHE_SIZE);
+        }
+        mStats.onCacheMisses(missesBefore, missesAfter);
+        final float[] sourcePositions = mMeshData.mPositions;
+        final float[] sourceColors = mMeshData.mColors;
+
+        float[] positions = new float[nbVertices * 3];
+        float[] uvs = (mHasUV) ? new float[nbVertices * 2] : null;
+        float[] colors = (mHasUV) ? null : new float[nbVertices * 4];
+        float[] normals = (mHasNormals) ? new float[nbVertices * 3] : null;
+        for (int i = 0; i < nbVertices; ++i) {
+            final int vertex = keys[i * 3] * 3;
+            System.arraycopy(sourcePositions, vertex, positions, i * 3, 3);
+            if (mHasUV) {
+                System.arraycopy(mMeshData.mUVs, keys[i * 3 + 1] * 2, uvs, i * 2, 2);
+            } else {
+                final int color = i * 4;
+                if ((sourceColors != null) && (sourceColors[vertex] != MeshData.NO_COLOR)) {
+                    System.arraycopy(sourceColors, vertex, colors, color, 3);
+                } else {
+                    System.arraycopy(defaultColor, 0, colors, color, 3);
+                }
+                colors[color + 3] = 1;
+            }
+            if (mHasNormals) {
+                System.arraycopy(mMeshData.mNormals, keys[i * 3 + 2] * 3, normals, i * 3, 3);
+            }
+        }
+
+        Face3D face3D = new Face3D();
+        VertexList vertexList = new VertexList();
+        vertexList.setInternalBuffer(positions, nbVertices);
+        vertexList.finalizeBuffer();
+        face3D.setVertexList(vertexList);
+        if (mHasUV) {
+            UVList uvList = new UVList();
+            uvList.setInternalBuffer(uvs, nbVertices);
+            uvList.finalizeBuffer();
+            face3D.setUVList(uvList);
+            face3D.setTexture(texture);
+        } else {
+            ColorList colorList = new ColorList();
+            colorList.setInternalBuffer(colors, nbVertices);
+            colorList.finalizeBuffer();
+            face3D.setColorList(colorList);
+        }
+        if (mHasNormals) {
+            NormalList normalList = new NormalList();
+            normalList.setInternalBuffer(normals, nbVertices);
+            normalList.finalizeBuffer();
+            face3D.setNormalList(normalList);
+        }
+
+        short[] shortIndexes = new short[nbIndexes];
+        for (int i = 0; i < nbIndexes; ++i) {
+            shortIndexes[i] = (short) indexes[i];
+        }
+        IndexList indexList = new IndexList();
+        indexList.setInternalBuffer(shortIndexes, nbIndexes);
+        indexList.finalizeBuffer();
+        face3D.setIndexList(indexList);
+
+        object3D.addFace(face3D);
+        mStats.onFace(nbVertices, mBytesPerVertex, nbIndexes, BYTES_PER_INDEX);
+    }
+}
@@ -0,0 +1,190 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import android.support.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fr.arnaudguyon.smartgl.opengl.Face3D;
+import fr.arnaudguyon.smartgl.opengl.Object3D;
+import fr.arnaudguyon.smartgl.opengl.OpenGLRenderer;
+
+/**
+ * Loads models on background threads, so that the OpenGL thread doesn't stop rendering while a file is parsed.
+ * The file is read, parsed and converted to an Object3D in the background. The Object3D is then handed to the
+ * renderer, which creates its buffer objects and calls the Listener at the start of the next frame, on the OpenGL thread.
+ * The Object3D can be added to a RenderPass from the Listener.
+ */
+public class ModelLoader {
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Called on the OpenGL thread
+     */
+    public interface Listener {
+        void onModelLoaded(Object3D object3D);
+        void onModelError(Throwable error);
+    }
+
+    private final OpenGLRenderer mRenderer;
+    private final ThreadPoolExecutor mExecutor;
+    private final Set<LoadingTask> mTasks = Collections.newSetFromMap(new ConcurrentHashMap<LoadingTask, Boolean>());    // queued or running
+    private volatile boolean mReleased;
+
+    /**
+     * Loader using up to 4 threads, leaving a core for the OpenGL thread
+     */
+    public ModelLoader(@NonNull OpenGLRenderer renderer) {
+        this(renderer, Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 1, 4)));
+    }
+
+    /**
+     * @param nbThreads maximum number of models loaded at the same time, the others wait in a queue
+     */
+    public ModelLoader(@NonNull OpenGLRenderer renderer, int nbThreads) {
+        Assert.assertTrue(nbThreads > 0);
+        mRenderer = renderer;
+        mExecutor = new ThreadPoolExecutor(nbThreads, nbThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new LoaderThreadFactory());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public Future<Object3D> load(@NonNull final WavefrontModel.Builder builder, @NonNull Listener listener) {
+        return load(new Callable<Object3D>() {
+            @Override
+            public Object3D call() throws Exception {
+                return builder.create().toObject3D();
+            }
+        }, listener);
+    }
+
+    public Future<Object3D> load(@NonNull final ColladaModel.Builder builder, @NonNull Listener listener) {
+        return load(new Callable<Object3D>() {
+            @Override
+            public Object3D call() throws Exception {
+                return builder.create().toObject3D();
+            }
+        }, listener);
+    }
+
+    /**
+     * Loads an Object3D created by any code that doesn't need the OpenGL thread
+     * @return the Future of the Object3D. Cancelling it before the end of the loading prevents the call of the Listener.
+     */
+    public Future<Object3D> load(@NonNull Callable<Object3D> loading, @NonNull Listener listener) {
+        Assert.assertTrue("ModelLoader released", !mReleased);
+        LoadingTask task = new LoadingTask(loading, listener);
+        mTasks.add(task);
+        mExecutor.execute(task);
+        return task;
+    }
+
+    /**
+     * Stops the threads. The models being loaded are cancelled (the running ones are interrupted), and no Listener is called
+     * after this call, even for the models loaded but not delivered yet.
+     */
+    public void release() {
+        mReleased = true;
+        // cancelled before the shutdown, which interrupts the threads: an interrupted loading would end with an error
+        for (LoadingTask task : mTasks) {
+            task.cancel(true);
+        }
+        mTasks.clear();
+        mExecutor.shutdownNow();
+    }
+
+    private class LoadingTask extends FutureTask<Object3D> {
+
+        private final Listener mListener;
+
+        LoadingTask(final Callable<Object3D> loading, Listener listener) {
+            super(new Callable<Object3D>() {
+                @Override
+                public Object3D call() throws Exception {
+                    Object3D object3D = loading.call();
+                    // CPU side work of the first frame
+                    for (Face3D face : object3D.getFaces()) {
+                        face.getBounds();
+                    }
+                    return object3D;
+                }
+            });
+            mListener = listener;
+        }
+
+        @Override
+        protected void done() {
+            mTasks.remove(this);
+            if (isCancelled() || mReleased) {
+                return;
+            }
+            mRenderer.runOnGLThread(new Runnable() {
+                @Override
+                public void run() {
+                    deliver();
+                }
+            });
+        }
+
+        // OpenGL Thread only
+        private void deliver() {
+            if (mReleased) {
+                return;
+            }
+            Object3D object3D;
+            try {
+                object3D = get();
+            } catch (CancellationException e) {
+                return;
+            } catch (ExecutionException e) {
+                mListener.onModelError(e.getCause());
+                return;
+            } catch (InterruptedException e) {
+                mListener.onModelError(e);
+                return;
+            }
+            object3D.createBufferObjects(mRenderer);
+            mListener.onModelLoaded(object3D);
+        }
+    }
+
+    private static class LoaderThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger mThreadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "ModelLoader-" + mThreadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    }
+}
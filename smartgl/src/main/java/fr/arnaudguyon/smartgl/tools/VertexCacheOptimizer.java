@@ -0,0 +1,243 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import java.util.Arrays;
+
+/**
+ * Reorders indexed triangles for the post-transform vertex cache of the GPU, then the vertices in order of first use.
+ * Triangle order: Tom Forsyth, "Linear-Speed Vertex Cache Optimisation" (2006). Each vertex has a score depending on its
+ * position in a simulated LRU cache and on the number of triangles still using it, the next triangle is the one with the
+ * best score among the triangles of the vertices in cache.
+ */
+final class VertexCacheOptimizer {
+
+    private static final int CACHE_SIZE = 32;
+    private static final float CACHE_DECAY_POWER = 1.5f;
+    private static final float LAST_TRIANGLE_SCORE = 0.75f;
+    private static final float VALENCE_BOOST_SCALE = 2.0f;
+    private static final float VALENCE_BOOST_POWER = 0.5f;
+    private static final int MAX_PRECOMPUTED_VALENCE = 64;
+
+    /**
+     * Size of the FIFO cache simulated by countCacheMisses(), as found on mobile GPUs
+     */
+    static final int FIFO_CACHE_SIZE = 16;
+
+    private static final float[] CACHE_POSITION_SCORES = new float[CACHE_SIZE];
+    private static final float[] VALENCE_SCORES = new float[MAX_PRECOMPUTED_VALENCE];
+    static {
+        for (int position = 0; position < CACHE_SIZE; ++position) {
+            if (position < 3) {
+                // the last triangle's vertices: a fixed score, so that strips are not favored over fans
+                CACHE_POSITION_SCORES[position] = LAST_TRIANGLE_SCORE;
+            } else {
+                final float scale = 1.0f / (CACHE_SIZE - 3);
+                CACHE_POSITION_SCORES[position] = (float) Math.pow(1.0f - (position - 3) * scale, CACHE_DECAY_POWER);
+            }
+        }
+        for (int valence = 1; valence < MAX_PRECOMPUTED_VALENCE; ++valence) {
+            VALENCE_SCORES[valence] = computeValenceScore(valence);
+        }
+    }
+
+    private VertexCacheOptimizer() {
+    }
+
+    // bonus for the vertices used by few remaining triangles, to finish them instead of leaving lonely triangles
+    private static float computeValenceScore(int remainingTriangles) {
+        return VALENCE_BOOST_SCALE * (float) Math.pow(remainingTriangles, -VALENCE_BOOST_POWER);
+    }
+
+    private static float computeVertexScore(int cachePosition, int remainingTriangles) {
+        if (remainingTriangles == 0) {
+            return -1;  // no triangle left
+        }
+        float score = (cachePosition >= 0) ? CACHE_POSITION_SCORES[cachePosition] : 0;
+        score += (remainingTriangles < MAX_PRECOMPUTED_VALENCE) ? VALENCE_SCORES[remainingTriangles] : computeValenceScore(remainingTriangles);
+        return score;
+    }
+
+    /**
+     * Reorders the triangles of a triangle list
+     * @param indexes nbIndexes vertex indexes, 3 per triangle, modified
+     * @param nbVertices vertex indexes are in [0, nbVertices[
+     */
+    static void optimizeTriangleOrder(int[] indexes, int nbIndexes, int nbVertices) {
+        final int nbTriangles = nbIndexes / 3;
+        if (nbTriangles < 2) {
+            return;
+        }
+
+        // triangles of each vertex, the first ones of the list are not drawn yet
+        int[] remainingTriangles = new int[nbVertices];
+        for (int i = 0; i < nbIndexes; ++i) {
+            ++remainingTriangles[indexes[i]];
+        }
+        int[] vertexOffsets = new int[nbVertices + 1];
+        for (int vertex = 0; vertex < nbVertices; ++vertex) {
+            vertexOffsets[vertex + 1] = vertexOffsets[vertex] + remainingTriangles[vertex];
+        }
+        int[] vertexTriangles = new int[nbIndexes];
+        int[] fillPositions = Arrays.copyOf(vertexOffsets, nbVertices);
+        for (int i = 0; i < nbIndexes; ++i) {
+            vertexTriangles[fillPositions[indexes[i]]++] = i / 3;
+        }
+
+        int[] cachePositions = new int[nbVertices];
+        Arrays.fill(cachePositions, -1);
+        float[] vertexScores = new float[nbVertices];
+        for (int vertex = 0; vertex < nbVertices; ++vertex) {
+            vertexScores[vertex] = computeVertexScore(-1, remainingTriangles[vertex]);
+        }
+        float[] triangleScores = new float[nbTriangles];
+        int bestTriangle = 0;
+        for (int triangle = 0; triangle < nbTriangles; ++triangle) {
+            final int index = triangle * 3;
+            triangleScores[triangle] = vertexScores[indexes[index]] + vertexScores[indexes[index + 1]] + vertexScores[indexes[index + 2]];
+            if (triangleScores[triangle] > triangleScores[bestTriangle]) {
+                bestTriangle = triangle;
+            }
+        }
+
+        boolean[] drawn = new boolean[nbTriangles];
+        int[] cache = new int[CACHE_SIZE + 3];
+        int[] newCache = new int[CACHE_SIZE + 3];
+        int cacheCount = 0;
+        int[] output = new int[nbIndexes];
+        int outputCount = 0;
+        int nextUndrawn = 0;
+
+        while (outputCount < nbIndexes) {
+            if (bestTriangle < 0) {
+                // no triangle around the cache: restart from the next triangle not drawn
+                while (drawn[nextUndrawn]) {
+                    ++nextUndrawn;
+                }
+                bestTriangle = nextUndrawn;
+            }
+            drawn[bestTriangle] = true;
+            final int bestIndex = bestTriangle * 3;
+
+            // new cache: the vertices of the triangle, then the previous ones
+            int newCacheCount = 0;
+            for (int corner = 0; corner < 3; ++corner) {
+                final int vertex = indexes[bestIndex + corner];
+                output[outputCount++] = vertex;
+                newCache[newCacheCount++] = vertex;
+                removeTriangle(vertexTriangles, vertexOffsets[vertex], remainingTriangles[vertex], bestTriangle);
+                --remainingTriangles[vertex];
+            }
+            for (int i = 0; i < cacheCount; ++i) {
+                final int vertex = cache[i];
+                if ((vertex != newCache[0]) && (vertex != newCache[1]) && (vertex != newCache[2])) {
+                    newCache[newCacheCount++] = vertex;
+                }
+            }
+
+            // scores of the vertices in the cache, or just evicted from it
+            for (int i = 0; i < newCacheCount; ++i) {
+                final int vertex = newCache[i];
+                cachePositions[vertex] = (i < CACHE_SIZE) ? i : -1;
+                vertexScores[vertex] = computeVertexScore(cachePositions[vertex], remainingTriangles[vertex]);
+            }
+
+            // next triangle: the best one using a vertex of the cache
+            bestTriangle = -1;
+            float bestScore = -1;
+            for (int i = 0; i < newCacheCount; ++i) {
+                final int vertex = newCache[i];
+                final int start = vertexOffsets[vertex];
+                final int end = start + remainingTriangles[vertex];
+                for (int t = start; t < end; ++t) {
+                    final int triangle = vertexTriangles[t];
+                    final int index = triangle * 3;
+                    final float score = vertexScores[indexes[index]] + vertexScores[indexes[index + 1]] + vertexScores[indexes[index + 2]];
+                    triangleScores[triangle] = score;
+                    if (score > bestScore) {
+                        bestScore = score;
+                        bestTriangle = triangle;
+                    }
+                }
+            }
+
+            cacheCount = Math.min(newCacheCount, CACHE_SIZE);
+            int[] swap = cache;
+            cache = newCache;
+            newCache = swap;
+        }
+        System.arraycopy(output, 0, indexes, 0, nbIndexes);
+    }
+
+    // removes the triangle from the triangles still to draw of a vertex (swapped with the last one)
+    private static void removeTriangle(int[] vertexTriangles, int offset, int count, int triangle) {
+        final int last = offset + count - 1;
+        for (int t = offset; t <= last; ++t) {
+            if (vertexTriangles[t] == triangle) {
+                vertexTriangles[t] = vertexTriangles[last];
+                vertexTriangles[last] = triangle;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Renumbers the vertices in order of first use by the indexes, so that the vertex buffer is read sequentially
+     * @param indexes modified with the new vertex numbers
+     * @return for each new vertex number, the previous one
+     */
+    static int[] optimizeVertexFetch(int[] indexes, int nbIndexes, int nbVertices) {
+        int[] newNumbers = new int[nbVertices];
+        Arrays.fill(newNumbers, -1);
+        int[] previousNumbers = new int[nbVertices];
+        int nbUsed = 0;
+        for (int i = 0; i < nbIndexes; ++i) {
+            final int vertex = indexes[i];
+            if (newNumbers[vertex] < 0) {
+                newNumbers[vertex] = nbUsed;
+                previousNumbers[nbUsed] = vertex;
+                ++nbUsed;
+            }
+            indexes[i] = newNumbers[vertex];
+        }
+        // vertices not used by any triangle are kept at the end
+        for (int vertex = 0; vertex < nbVertices; ++vertex) {
+            if (newNumbers[vertex] < 0) {
+                previousNumbers[nbUsed++] = vertex;
+            }
+        }
+        return previousNumbers;
+    }
+
+    /**
+     * Simulates a FIFO vertex cache of cacheSize entries
+     * @return number of vertices transformed by the GPU (ACMR = misses / triangles)
+     */
+    static int countCacheMisses(int[] indexes, int nbIndexes, int nbVertices, int cacheSize) {
+        // a vertex is in the cache if less than cacheSize misses happened since it was loaded
+        int[] loadTimes = new int[nbVertices];
+        Arrays.fill(loadTimes, -cacheSize - 1);
+        int misses = 0;
+        for (int i = 0; i < nbIndexes; ++i) {
+            final int vertex = indexes[i];
+            if (misses - loadTimes[vertex] > cacheSize - 1) {
+                loadTimes[vertex] = misses;
+                ++misses;
+            }
+        }
+        return misses;
+    }
+}
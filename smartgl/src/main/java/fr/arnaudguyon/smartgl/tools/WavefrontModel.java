@@ -19,18 +19,24 @@ import android.content.Context;
 import android.support.annotation.FloatRange;
 import android.util.Log;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-
-import fr.arnaudguyon.smartgl.math.Vector3D;
-import fr.arnaudguyon.smartgl.opengl.ColorList;
-import fr.arnaudguyon.smartgl.opengl.NormalList;
-import fr.arnaudguyon.smartgl.opengl.UVList;
-import fr.arnaudguyon.smartgl.opengl.VertexList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fr.arnaudguyon.smartgl.opengl.Object3D;
+import fr.arnaudguyon.smartgl.opengl.Texture;
 
 /**
  * Created by aguyon on 21.11.16.
@@ -40,13 +46,24 @@ import fr.arnaudguyon.smartgl.opengl.VertexList;
 public class WavefrontModel extends BaseModel {
 
     private static final String TAG = "WavefrontModel";
+    private static final int MIN_CHUNK_SIZE = 256 * 1024;
+    private static final int CHUNKS_PER_THREAD = 4;     // balances the threads when some chunks are slower
+    private static final int READ_SIZE = 64 * 1024;
+    private static final long PARSE_THREADS_KEEP_ALIVE_SECONDS = 10;
+
+    private static ThreadPoolExecutor sParseExecutor;   // shared by the parallel parses, its threads stop when unused
 
     public static class Builder {
         private Context mContext;
         private int mRawResourceId;
         private boolean mOptimizeModel = true;
+        private boolean mIndexed = false;
+        private boolean mOptimizeVertexCache = false;
+        private boolean mAtlasTextures = false;
+        private boolean mParallelParse = false;
         private HashMap<String, Texture> mTextures = new HashMap<>();
         private float[] mColor = {1,1,1};
+        private File mCacheFile;
 
         public Builder(Context context, int rawFileResourceId) {
             mContext = context;
@@ -56,6 +73,39 @@ public class WavefrontModel extends BaseModel {
             mOptimizeModel = optimizeModel;
             return this;
         }
+        /**
+         * Shares the vertices used by several triangles and draws each material with indexes (glDrawElements).
+         * Saves memory on closed meshes, see getIndexingStats() after toObject3D().
+         */
+        public Builder indexed(boolean indexed) {
+            mIndexed = indexed;
+            return this;
+        }
+        /**
+         * Reorders the triangles and vertices for the GPU vertex cache, when toObject3D() is called. Implies indexed(true).
+         * See getIndexingStats().getAcmrBefore() and getAcmrAfter() for the vertices transformed per triangle.
+         */
+        public Builder optimizeVertexCache(boolean optimizeVertexCache) {
+            mOptimizeVertexCache = optimizeVertexCache;
+            return this;
+        }
+        /**
+         * Parses big files on all the cores: the file is split in chunks of lines, parsed at the same time, then appended.
+         * Gives the same model as the single thread parse, useful above a few MB.
+         */
+        public Builder parallelParse(boolean parallelParse) {
+            mParallelParse = parallelParse;
+            return this;
+        }
+        /**
+         * Packs the textures of the materials in an atlas when toObject3D() is called, so that the model is drawn with
+         * a single face per atlas page. The Textures must still have their Bitmap (not binded yet, or from a drawable or file).
+         * Materials whose UVs repeat the texture are kept apart, see getAtlasingStats().
+         */
+        public Builder atlasTextures(boolean atlasTextures) {
+            mAtlasTextures = atlasTextures;
+            return this;
+        }
         public Builder addTexture(String textureName, Texture texture) {
             mTextures.put(textureName, texture);
             return this;
@@ -67,95 +117,106 @@ public class WavefrontModel extends BaseModel {
             return this;
         }
 
+        /**
+         * The model is written in a binary MeshCache file after the first parse, and read from it on next loads.
+         * The cache is ignored (and written again) when the application is updated.
+         * @param cacheFile for example new File(context.getCacheDir(), "model.mesh")
+         */
+        public Builder setCacheFile(File cacheFile) {
+            mCacheFile = cacheFile;
+            return this;
+        }
+
         public WavefrontModel create() {
             WavefrontModel wavefront = new WavefrontModel();
-            wavefront.loadObject(mContext, mRawResourceId);
-            if (mOptimizeModel) {
-                wavefront.mergeStrips();
+            final boolean indexed = mIndexed || mOptimizeVertexCache;
+            // the indexes group the materials: merging strips is useless
+            final boolean mergeStrips = mOptimizeModel && !indexed;
+            long sourceStamp = MeshCache.ANY_SOURCE;
+            if (mCacheFile != null) {
+                sourceStamp = MeshCache.computeSourceStamp(mContext, mRawResourceId, mergeStrips);
+                wavefront.mMeshData = MeshCache.read(mCacheFile, sourceStamp);
+            }
+            if (wavefront.mMeshData == null) {
+                wavefront.loadObject(mContext, mRawResourceId, mParallelParse);
+                if (mergeStrips) {
+                    wavefront.mergeStrips();
+                }
+                if ((mCacheFile != null) && (wavefront.mMeshData == null)) {
+                    try {
+                        MeshCache.write(wavefront.toMeshData(), mCacheFile, sourceStamp);
+                    } catch (IOException e) {
+                        Log.w(TAG, "Can't write mesh cache " + e.getMessage());
+                    }
+                }
             }
             wavefront.mTextures = mTextures;
+            wavefront.mIndexed = indexed;
+            wavefront.mOptimizeVertexCache = mOptimizeVertexCache;
+            wavefront.mAtlasContext = mAtlasTextures ? mContext : null;
             wavefront.mColor = mColor;
             return wavefront;
         }
 
     }
 
+    // chunk of a parallel parse only
+    private IntArray mRelativeCorners;     // positions in mCorners of the negative file indexes, relative to the chunk
+    private String mLastMaterial;          // null if the chunk has no usemtl
+
     private WavefrontModel() {
     }
 
-    private void loadObject(Context context, int rawResId) throws RuntimeException {
+    /**
+     * Parses a Wavefront file outside of Android, used by MeshCacheConverter
+     */
+    static WavefrontModel parse(InputStream inputStream, boolean optimize) {
+        return parse(inputStream, optimize, false);
+    }
+
+    static WavefrontModel parse(InputStream inputStream, boolean optimize, boolean parallel) {
+        WavefrontModel wavefront = new WavefrontModel();
+        wavefront.loadObject(inputStream, parallel);
+        if (optimize) {
+            wavefront.mergeStrips();
+        }
+        return wavefront;
+    }
+
+    private void loadObject(Context context, int rawResId, boolean parallel) throws RuntimeException {
         InputStream inputStream = context.getResources().openRawResource(rawResId);
-        BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
-        String line;
         try {
+            loadObject(inputStream, parallel);
+        } finally {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
 
-            String stripTextureName = "";
-            int lineNumber = 0;
-            while ((line = bufferedReader.readLine()) != null) {
-                ++lineNumber;
-                String[] elements = line.split("\\s+");
-                switch (elements[0]) {
-                    case "v":   // VERTEX
-                        if (elements.length > 3) {
-                            Float x = fromString(elements[1]);
-                            Float y = fromString(elements[2]);
-                            Float z = fromString(elements[3]);
-                            if ((x != null) && (y != null) && (z != null)) {
-                                Vertex vertex = new Vertex(x, y, z);
-                                mVertex.add(vertex);
-
-                                if (elements.length > 6) {  // get vertex colors
-                                    Float r = fromString(elements[4]);
-                                    Float g = fromString(elements[5]);
-                                    Float b = fromString(elements[6]);
-                                    if (    (r != null) && (g != null) && (b != null) &&
-                                            (r >= 0) && (r <= 1) && (g >= 0) && (g <=1) && (b >= 0) && (b <= 1)) {
-                                        vertex.setColors(r, g, b);
-                                        break;
-                                    } else {
-                                        throw new RuntimeException("Vertex Colors error line " + lineNumber);
-                                    }
-                                }
-                                break;
-                            }
-                        }
-                        throw new RuntimeException("Vertex error line " + lineNumber);
-                    case "vt":  // TEXTURE MAPPING
-                        if (elements.length > 2) {
-                            Float u = fromString(elements[1]);
-                            Float v = fromString(elements[2]);
-                            if ((u != null) && (v != null)) {
-                                UV uv = new UV(u, 1 - v);   // uv are upside down, use (u, 1-v)
-                                mUVs.add(uv);
-                                break;
-                            }
-                        }
-                        throw new RuntimeException("Texture Mapping error line " + lineNumber);
-                    case "vn":  // NORMAL
-                        if (elements.length > 3) {
-                            Float x = fromString(elements[1]);
-                            Float y = fromString(elements[2]);
-                            Float z = fromString(elements[3]);
-                            if ((x != null) && (y != null) && (z != null)) {
-                                Normal normal = new Normal(x, y, z);
-                                mNormals.add(normal);
-                                break;
-                            }
-                        }
-                        throw new RuntimeException("Normal error line " + lineNumber);
-                    case "usemtl":  // MATERIAL
-                        if (elements.length > 1) {
-                            stripTextureName = elements[1];
-                        }
-                        break;
-                    case "f":   // FACES
-                        if (elements.length == 4) {    // Triangle
-                            addFaceStrips(lineNumber, stripTextureName, elements, 1, 3);
-                        } else {
-                            throw new RuntimeException("Only triangles supported, error line " + lineNumber);
-                        }
-                        break;
-                }
+    // Reads a Wavefront text file, or a MeshCache file created by MeshCacheConverter
+    private void loadObject(InputStream rawInputStream, boolean parallel) throws RuntimeException {
+        BufferedInputStream inputStream = new BufferedInputStream(rawInputStream);
+        try {
+            byte[] header = new byte[4];
+            inputStream.mark(header.length);
+            final int headerSize = inputStream.read(header);
+            inputStream.reset();
+            if ((headerSize == header.length) && MeshCache.isMeshCache(header)) {
+                mMeshData = MeshCache.read(inputStream);
+                return;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Can't read model: " + e.getMessage());
+        }
+
+        try {
+            if (parallel) {
+                parseInParallel(inputStream);
+            } else {
+                parse(new WavefrontTokenizer(inputStream), "");
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -163,193 +224,401 @@ public class WavefrontModel extends BaseModel {
 
         if (mNormals.size() == 0) {
             // compute normals
+            final float[] positions = mPositions.getValues();
+            final int[] corners = mCorners.getValues();
+            mNormals.ensureCapacity(mStrips.size() * 3);
             for(int faceIndex=0; faceIndex<mStrips.size(); ++faceIndex) {
-                Strip strip = mStrips.get(faceIndex);
-                Vertex v0 = mVertex.get(strip.mIndexes.get(0).mVertexIndex);
-                Vertex v1 = mVertex.get(strip.mIndexes.get(1).mVertexIndex);
-                Vertex v2 = mVertex.get(strip.mIndexes.get(2).mVertexIndex);
-                Vector3D vec0 = new Vector3D(v1.mX - v0.mX, v1.mY - v0.mY, v1.mZ - v0.mZ);
-                Vector3D vec1 = new Vector3D(v2.mX - v0.mX, v2.mY - v0.mY, v2.mZ - v0.mZ);
-                vec0.normalize();
-                vec1.normalize();
-                Vector3D normal3D = vec1.vectorProduct(vec0);
-                normal3D.normalize();
-                Normal normal = new Normal(normal3D);
-                mNormals.add(normal);
-                strip.mIndexes.get(0).mNormalIndex = mNormals.size() - 1;
-                strip.mIndexes.get(1).mNormalIndex = mNormals.size() - 1;
-                strip.mIndexes.get(2).mNormalIndex = mNormals.size() - 1;
+                final int corner = mStrips.get(faceIndex).mOffset;
+                final int v0 = corners[corner] * 3;
+                final int v1 = corners[corner + 3] * 3;
+                final int v2 = corners[corner + 6] * 3;
+                final float[] vectors = mNormalWork;
+                vectors[0] = positions[v1] - positions[v0];
+                vectors[1] = positions[v1 + 1] - positions[v0 + 1];
+                vectors[2] = positions[v1 + 2] - positions[v0 + 2];
+                vectors[3] = positions[v2] - positions[v0];
+                vectors[4] = positions[v2 + 1] - positions[v0 + 1];
+                vectors[5] = positions[v2 + 2] - positions[v0 + 2];
+                normalize(vectors, 0);
+                normalize(vectors, 3);
+                // vec1 x vec0
+                vectors[6] = vectors[4] * vectors[2] - vectors[5] * vectors[1];
+                vectors[7] = vectors[5] * vectors[0] - vectors[3] * vectors[2];
+                vectors[8] = vectors[3] * vectors[1] - vectors[4] * vectors[0];
+                normalize(vectors, 6);
+                mNormals.add(vectors[6], vectors[7], vectors[8]);
+                final int normalIndex = getNbNormals() - 1;
+                corners[corner + 2] = normalIndex;
+                corners[corner + 5] = normalIndex;
+                corners[corner + 8] = normalIndex;
             }
         } else {
             // normalize normals
-            for(Normal normal : mNormals) {
-                Vector3D vec = new Vector3D(normal.mX, normal.mY, normal.mZ);
-                vec.normalize();
-                float[] values = vec.getArray();
-                normal.mX = values[0];
-                normal.mY = values[1];
-                normal.mZ = values[2];
+            final float[] normals = mNormals.getValues();
+            for(int i=0; i<mNormals.size(); i+=3) {
+                normalize(normals, i);
             }
         }
-
-        Log.i("DONE", "DONE");
     }
 
-    private void addFaceStrips(int lineNumber, String materialName, String[] elements, int offsetStart, int numberOfVertex) {
+    private final float[] mNormalWork = new float[9];
+    private final int[] mCorner = new int[3];
+    private final int[] mFaceCorners = new int[3 * 3];
 
-        // TODO: check order, seem to be dependant on file loaded :/
-        // Maybe suggest to use a tool to re-export (http://meshlab.sourceforge.net/ ?)
-        int[] triangleIndex = {0, 2 , 1};
-//        int[] quadIndex = {0, 2, 1, 3};
-//        // TODO: convex polygon should be like 0,1,2 0,2,3 0,3,4 0,4,5 ...
-//        int[] order = (numberOfVertex == 3) ? triangleIndex : quadIndex;
-
-        ArrayList<IndexInfo> indexInfos = new ArrayList<>(numberOfVertex);
-        for(int i=0; i<numberOfVertex; ++i) {
-            int index = triangleIndex[i];
-            Integer vA = intPart(elements, offsetStart + index, 0);   // Vertex A
-            Integer tA = intPart(elements, offsetStart + index, 1);   // Texture UV A
-            Integer nA = intPart(elements, offsetStart + index ,2);   // Normal A
-            IndexInfo indexA = IndexInfo.create(vA, tA, nA);
-            if (indexA == null) {
-                throw new RuntimeException("Face error line " + lineNumber);
+    /**
+     * @param stripTextureName material of the faces before the first usemtl
+     * @return material of the last usemtl, or stripTextureName if none
+     */
+    private String parse(WavefrontTokenizer tokenizer, String stripTextureName) throws IOException {
+        while (tokenizer.nextLine()) {
+            if (!tokenizer.nextToken()) {
+                continue;   // empty line
+            }
+            final int lineNumber = tokenizer.getLineNumber();
+            tokenizer.clearError();
+            if (tokenizer.tokenEquals("v")) {   // VERTEX
+                if (tokenizer.nextToken()) {
+                    final float x = tokenizer.tokenToFloat();
+                    if (tokenizer.nextToken()) {
+                        final float y = tokenizer.tokenToFloat();
+                        if (tokenizer.nextToken()) {
+                            final float z = tokenizer.tokenToFloat();
+                            if (!tokenizer.hasError()) {
+                                if (tokenizer.nextToken()) {    // get vertex colors
+                                    final float r = tokenizer.tokenToFloat();
+                                    if (tokenizer.nextToken()) {
+                                        final float g = tokenizer.tokenToFloat();
+                                        if (tokenizer.nextToken()) {
+                                            final float b = tokenizer.tokenToFloat();
+                                            if (    !tokenizer.hasError() &&
+                                                    (r >= 0) && (r <= 1) && (g >= 0) && (g <=1) && (b >= 0) && (b <= 1)) {
+                                                addVertex(x, y, z, r, g, b);
+                                                continue;
+                                            } else {
+                                                throw new RuntimeException("Vertex Colors error line " + lineNumber);
+                                            }
+                                        }
+                                    }
+                                }
+                                addVertex(x, y, z);
+                                continue;
+                            }
+                        }
+                    }
+                }
+                throw new RuntimeException("Vertex error line " + lineNumber);
+            } else if (tokenizer.tokenEquals("vt")) {   // TEXTURE MAPPING
+                if (tokenizer.nextToken()) {
+                    final float u = tokenizer.tokenToFloat();
+                    if (tokenizer.nextToken()) {
+                        final float v = tokenizer.tokenToFloat();
+                        if (!tokenizer.hasError()) {
+                            mUVs.add(u, 1 - v);   // uv are upside down, use (u, 1-v)
+                            continue;
+                        }
+                    }
+                }
+                throw new RuntimeException("Texture Mapping error line " + lineNumber);
+            } else if (tokenizer.tokenEquals("vn")) {   // NORMAL
+                if (tokenizer.nextToken()) {
+                    final float x = tokenizer.tokenToFloat();
+                    if (tokenizer.nextToken()) {
+                        final float y = tokenizer.tokenToFloat();
+                        if (tokenizer.nextToken()) {
+                            final float z = tokenizer.tokenToFloat();
+                            if (!tokenizer.hasError()) {
+                                mNormals.add(x, y, z);
+                                continue;
+                            }
+                        }
+                    }
+                }
+                throw new RuntimeException("Normal error line " + lineNumber);
+            } else if (tokenizer.tokenEquals("usemtl")) {   // MATERIAL
+                if (tokenizer.nextToken()) {
+                    stripTextureName = tokenizer.tokenToString();
+                }
+            } else if (tokenizer.tokenEquals("f")) {    // FACES
+                addFaceStrip(tokenizer, stripTextureName);
             }
-            indexInfos.add(indexA);
-        }
-        Strip strip = new Strip(materialName);
-        for(IndexInfo indexInfo : indexInfos) {
-            strip.addIndex(indexInfo);
         }
-        mStrips.add(strip);
+        return stripTextureName;
     }
 
-    private Float fromString(String string) {
+    // Reads the whole file, splits it in chunks ending at a new line and parses them on several threads.
+    // Positive indexes are absolute in the file, the negative ones are relative to the chunk until it's appended.
+    private void parseInParallel(InputStream inputStream) throws IOException {
+        final int nbThreads = Runtime.getRuntime().availableProcessors();
+        if (nbThreads < 2) {
+            parse(new WavefrontTokenizer(inputStream), "");
+            return;
+        }
+        byte[] data = new byte[Math.max(inputStream.available() + 1, READ_SIZE)];
+        int length = 0;
+        int read;
+        while ((read = inputStream.read(data, length, data.length - length)) >= 0) {
+            length += read;
+            if (length == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+        }
+
+        final int chunkSize = Math.max(MIN_CHUNK_SIZE, length / (nbThreads * CHUNKS_PER_THREAD));
+        if (length < 2 * chunkSize) {
+            parse(new WavefrontTokenizer(data, 0, length), "");
+            return;
+        }
+
+        ThreadPoolExecutor executor = getParseExecutor(nbThreads);
+        ArrayList<WavefrontModel> chunks = new ArrayList<>();
+        ArrayList<Future<WavefrontModel>> futures = new ArrayList<>();
         try {
-            return Float.parseFloat(string);
-        } catch (NumberFormatException exception) {
+            int start = 0;
+            while (start < length) {
+                int end = Math.min(start + chunkSize, length);
+                while ((end < length) && (data[end - 1] != '\n')) {
+                    ++end;
+                }
+                futures.add(executor.submit(new ChunkParser(data, start, end)));
+                start = end;
+            }
+            for (Future<WavefrontModel> future : futures) {
+                chunks.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            // the line numbers of a chunk are relative to the chunk: parse again on this thread, for the exception with the
+            // line number of the file
+            Log.w(TAG, "Parallel parse failed: " + e.getCause() + ", parsing again on a single thread");
+            cancel(futures);
+            parse(new WavefrontTokenizer(data, 0, length), "");
+            return;
+        } catch (InterruptedException e) {
+            cancel(futures);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Parse interrupted");
         }
-        return null;
-    }
 
-    private Integer intPart(String[] elements, int elementNumber, int partNumber) {
-        String element = elements[elementNumber];
-        return intPart(element, partNumber);
+        String material = "";
+        for (WavefrontModel chunk : chunks) {
+            material = appendChunk(chunk, material);
+        }
     }
 
-    private Integer intPart(String string, int part) {
-        String[] parts = string.split("/");
-        if ((parts != null) && (parts.length > part)) {
-            String firstString = parts[part];
-            try {
-                return Integer.parseInt(firstString);
-            } catch (NumberFormatException exception) {
-            }
+    private static synchronized ThreadPoolExecutor getParseExecutor(int nbThreads) {
+        if (sParseExecutor == null) {
+            sParseExecutor = new ThreadPoolExecutor(nbThreads, nbThreads, PARSE_THREADS_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ParseThreadFactory());
+            sParseExecutor.allowCoreThreadTimeOut(true);
         }
-        return null;
+        return sParseExecutor;
     }
 
-    // Groups Strips of same material into 1 big strip (1 triangle strip per face)
-    private void mergeStrips() {
-        for(int iStrip = 0; iStrip<mStrips.size() - 1; ++iStrip) {
-            Strip origin = mStrips.get(iStrip);
-            String originTexture = origin.mTextureName;
-            for(int iOther = iStrip+1; iOther<mStrips.size(); ++iOther) {
-                Strip other = mStrips.get(iOther);
-                if (originTexture.equals(other.mTextureName)) {
-
-                    IndexInfo originLastIndex = origin.mIndexes.get(origin.mIndexes.size() - 1);
-                    IndexInfo otherFirstIndex = other.mIndexes.get(0);
-                    origin.addIndex(originLastIndex);
-                    origin.addIndex(originLastIndex);
-                    origin.addIndex(otherFirstIndex);
-                    origin.addAll(other.mIndexes);
-
-                    mStrips.remove(iOther);
-                    --iOther;
-                }
-            }
+    private static void cancel(ArrayList<Future<WavefrontModel>> futures) {
+        for (Future<WavefrontModel> future : futures) {
+            future.cancel(true);
         }
     }
 
-    /**
-     * Converts the model to an Object3D
-     * @return an Object3D
-     */
-    public Object3D toObject3D() {
+    private static class ParseThreadFactory implements ThreadFactory {
 
-        final boolean hasUV = (mUVs.size() > 0);
-        final boolean hasNormals = (mNormals.size() > 0);
+        private final AtomicInteger mThreadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "WavefrontParser-" + mThreadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 
-        Object3D object3D = new Object3D();
-        for(Strip strip : mStrips) {
+    private static class ChunkParser implements Callable<WavefrontModel> {
 
-            Face3D face3D = new Face3D();
-            int nbIndex = strip.mIndexes.size();
+        private final byte[] mData;
+        private final int mStart;
+        private final int mEnd;
 
-            VertexList vertexList = new VertexList();
-            vertexList.init(nbIndex);
+        ChunkParser(byte[] data, int start, int end) {
+            mData = data;
+            mStart = start;
+            mEnd = end;
+        }
 
-            UVList uvList = null;
-            ColorList colorList = null;
-            if (hasUV) {
-                uvList = new UVList();
-                uvList.init(nbIndex);
-            } else {
-                colorList = new ColorList();
-                colorList.init(nbIndex);
+        @Override
+        public WavefrontModel call() throws IOException {
+            WavefrontModel chunk = new WavefrontModel();
+            chunk.mRelativeCorners = new IntArray();
+            // the material of the first faces is the last one of the previous chunks, set by appendChunk()
+            chunk.mLastMaterial = chunk.parse(new WavefrontTokenizer(mData, mStart, mEnd), null);
+            return chunk;
+        }
+    }
+
+    /**
+     * Appends a chunk parsed in parallel, its relative indexes are offset by the elements of the previous chunks
+     * @param material material in use at the end of the previous chunks
+     * @return material in use at the end of this chunk
+     */
+    private String appendChunk(WavefrontModel chunk, String material) {
+        final int[] offsets = {getNbVertex(), getNbUVs(), getNbNormals()};
+        final int cornerOffset = mCorners.size();
+
+        if (chunk.mVertexColors != null) {
+            createVertexColors();
+            mVertexColors.add(chunk.mVertexColors.getValues(), 0, chunk.mVertexColors.size());
+        } else if (mVertexColors != null) {
+            for (int i = 0; i < chunk.mPositions.size(); ++i) {
+                mVertexColors.add(MeshData.NO_COLOR);
             }
+        }
+        mPositions.add(chunk.mPositions.getValues(), 0, chunk.mPositions.size());
+        mUVs.add(chunk.mUVs.getValues(), 0, chunk.mUVs.size());
+        mNormals.add(chunk.mNormals.getValues(), 0, chunk.mNormals.size());
+
+        final int[] corners = chunk.mCorners.getValues();
+        final int[] relativeCorners = chunk.mRelativeCorners.getValues();
+        for (int i = 0; i < chunk.mRelativeCorners.size(); ++i) {
+            final int position = relativeCorners[i];
+            corners[position] += offsets[position % 3];     // vertex, uv or normal index
+        }
+        mCorners.add(corners, 0, chunk.mCorners.size());
 
-            NormalList normalList = null;
-            if (hasNormals) {
-                normalList = new NormalList();
-                normalList.init(nbIndex);
+        for (MeshData.Strip strip : chunk.mStrips) {
+            strip.mOffset += cornerOffset;
+            if (strip.mMaterialName == null) {
+                strip.mMaterialName = material;
             }
+            mStrips.add(strip);
+        }
+        return (chunk.mLastMaterial != null) ? chunk.mLastMaterial : material;
+    }
 
-            for(IndexInfo indexInfo : strip.mIndexes) {
-                int vertexIndex = indexInfo.mVertexIndex;
-                Vertex vertex = mVertex.get(vertexIndex);
-                vertexList.add(vertex.mX, vertex.mY, vertex.mZ);
-
-                if (hasUV) {
-                    int uvIndex = indexInfo.mUVIndex;
-                    UV uv = mUVs.get(uvIndex);
-                    uvList.add(uv.mU, uv.mV);
-                } else if (vertex.mHasColors) {
-                    colorList.add(vertex.mR, vertex.mG, vertex.mB, 1);  // TODO: find a way to change the alpha channel?
-                } else {
-                    vertex.setColors(mColor[0], mColor[1], mColor[2]);
-                    colorList.add(vertex.mR, vertex.mG, vertex.mB, 1);
-//                    throw new RuntimeException("Model must have texture UVs or vertex Colors");
-                }
+    private void addFaceStrip(WavefrontTokenizer tokenizer, String materialName) {
 
-                if (hasNormals) {
-                    int normalIndex = indexInfo.mNormalIndex;
-                    Normal normal = mNormals.get(normalIndex);
-                    normalList.add(normal.mX, normal.mY, normal.mZ);
+        // TODO: check order, seem to be dependant on file loaded :/
+        // Maybe suggest to use a tool to re-export (http://meshlab.sourceforge.net/ ?)
+        final int lineNumber = tokenizer.getLineNumber();
+        final int[] faceCorners = mFaceCorners;
+        int numberOfVertex = 0;
+        int relativeMask = 0;   // bit of each negative index of faceCorners, for a chunk only
+        while (tokenizer.nextToken()) {
+            if (numberOfVertex == 3) {
+                throw new RuntimeException("Only triangles supported, error line " + lineNumber);
+            }
+            if (!tokenizer.tokenToCorner(mCorner)) {
+                throw new RuntimeException("Face error line " + lineNumber);
+            }
+            final int corner = numberOfVertex * 3;
+            faceCorners[corner] = toIndex(mCorner[0], getNbVertex());
+            faceCorners[corner + 1] = toIndex(mCorner[1], getNbUVs());
+            faceCorners[corner + 2] = toIndex(mCorner[2], getNbNormals());
+            if (mRelativeCorners != null) {
+                for (int i = 0; i < 3; ++i) {
+                    if ((mCorner[i] < 0) && (mCorner[i] != WavefrontTokenizer.MISSING)) {
+                        relativeMask |= 1 << (corner + i);
+                    }
                 }
-
             }
-            vertexList.finalizeBuffer();
-            face3D.setVertexList(vertexList);
-
-            if (hasUV) {
-                uvList.finalizeBuffer();
-                face3D.setUVList(uvList);
-                Texture texture = mTextures.get(strip.mTextureName);
-                face3D.setTexture(texture);
-            } else {
-                colorList.finalizeBuffer();
-                face3D.setColorList(colorList);
+            ++numberOfVertex;
+        }
+        if (numberOfVertex != 3) {
+            throw new RuntimeException("Only triangles supported, error line " + lineNumber);
+        }
+        final int firstCorner = getNbCorners();
+        addCorner(faceCorners[0], faceCorners[1], faceCorners[2]);  // triangle order {0, 2, 1}
+        addCorner(faceCorners[6], faceCorners[7], faceCorners[8]);
+        addCorner(faceCorners[3], faceCorners[4], faceCorners[5]);
+        addStrip(materialName, firstCorner);
+        if (relativeMask != 0) {
+            for (int i = 0; i < 3 * 3; ++i) {
+                final int faceCorner = (3 - i / 3) % 3;     // same order {0, 2, 1}
+                if ((relativeMask & (1 << (faceCorner * 3 + i % 3))) != 0) {
+                    mRelativeCorners.add(firstCorner * 3 + i);
+                }
             }
+        }
+    }
+
+    // Wavefront indexes start at 1, negative indexes are relative to the end of the current list
+    private static int toIndex(int fileIndex, int count) {
+        if (fileIndex == WavefrontTokenizer.MISSING) {
+            return 0;
+        }
+        return (fileIndex < 0) ? count + fileIndex : fileIndex - 1;
+    }
 
-            if (hasNormals) {
-                normalList.finalizeBuffer();
-                face3D.setNormalList(normalList);
+    // Groups Strips of same material into 1 big strip (1 triangle strip per face), materials in order of first use.
+    // The strips are linked with degenerate triangles: last element of a strip twice, then first element of the next one.
+    void mergeStrips() {
+        final int nbStrips = mStrips.size();
+
+        // material number of each strip
+        HashMap<String, Integer> materialNumbers = new HashMap<>();
+        ArrayList<String> materials = new ArrayList<>();
+        IntArray materialNbStrips = new IntArray();
+        int[] stripMaterials = new int[nbStrips];
+        String previousName = null;
+        int previousNumber = 0;
+        for(int iStrip = 0; iStrip<nbStrips; ++iStrip) {
+            String name = mStrips.get(iStrip).mMaterialName;
+            int number = previousNumber;
+            if (name != previousName) {     // consecutive faces share the same String
+                Integer knownNumber = materialNumbers.get(name);
+                if (knownNumber == null) {
+                    number = materials.size();
+                    materialNumbers.put(name, number);
+                    materials.add(name);
+                    materialNbStrips.add(0);
+                } else {
+                    number = knownNumber;
+                }
+                previousName = name;
+                previousNumber = number;
             }
+            stripMaterials[iStrip] = number;
+            materialNbStrips.set(number, materialNbStrips.get(number) + 1);
+        }
+        final int nbMaterials = materials.size();
 
-            object3D.addFace(face3D);
+        // strips sorted by material, keeping their order (counting sort)
+        int[] materialStarts = new int[nbMaterials + 1];
+        for(int i = 0; i < nbMaterials; ++i) {
+            materialStarts[i + 1] = materialStarts[i] + materialNbStrips.get(i);
+        }
+        int[] nextPositions = Arrays.copyOf(materialStarts, nbMaterials);
+        int[] sortedStrips = new int[nbStrips];
+        for(int iStrip = 0; iStrip<nbStrips; ++iStrip) {
+            sortedStrips[nextPositions[stripMaterials[iStrip]]++] = iStrip;
+        }
+
+        // concatenation, 3 linking elements between 2 strips
+        final int[] corners = mCorners.getValues();
+        IntArray mergedCorners = new IntArray(mCorners.size() + (nbStrips - nbMaterials) * 3 * 3);
+        ArrayList<MeshData.Strip> mergedStrips = new ArrayList<>(nbMaterials);
+        for(int material = 0; material < nbMaterials; ++material) {
+            final int offset = mergedCorners.size();
+            for(int i = materialStarts[material]; i < materialStarts[material + 1]; ++i) {
+                MeshData.Strip strip = mStrips.get(sortedStrips[i]);
+                if (i > materialStarts[material]) {
+                    final int lastCorner = mergedCorners.size() - 3;
+                    mergedCorners.add(mergedCorners.getValues(), lastCorner, 3);
+                    mergedCorners.add(mergedCorners.getValues(), lastCorner, 3);
+                    mergedCorners.add(corners, strip.mOffset, 3);
+                }
+                mergedCorners.add(corners, strip.mOffset, strip.mLength);
+            }
+            mergedStrips.add(new MeshData.Strip(materials.get(material), null, offset, mergedCorners.size() - offset));
         }
-        return object3D;
+        mCorners = mergedCorners;
+        mStrips = mergedStrips;
+    }
+
+    /**
+     * Converts the model to an Object3D
+     * @return an Object3D
+     */
+    public Object3D toObject3D() {
+        MeshData meshData = (mMeshData != null) ? mMeshData : toMeshData();
+        return createObject3D(meshData);
     }
 
 }
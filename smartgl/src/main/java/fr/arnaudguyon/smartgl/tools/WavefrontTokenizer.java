@@ -0,0 +1,317 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Splits a Wavefront file in lines and tokens, directly in a byte buffer.
+ * Numbers are parsed in place: no String, no boxing, no allocation per line.
+ */
+final class WavefrontTokenizer {
+
+    static final int MISSING = Integer.MIN_VALUE;   // index not present in a face corner (ex: "1//3")
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_EXACT_DIGITS = 15;     // mantissa stays exact in a double
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final InputStream mInputStream;
+    private byte[] mBuffer = new byte[BUFFER_SIZE];
+    private int mBufferEnd;
+    private boolean mEndOfStream;
+    private int mNextLine;
+    private int mLineEnd;
+    private int mPosition;
+    private int mTokenStart;
+    private int mTokenEnd;
+    private int mLineNumber;
+    private boolean mError;
+
+    WavefrontTokenizer(InputStream inputStream) {
+        mInputStream = inputStream;
+    }
+
+    /**
+     * Tokenizer of the lines in [start, end[ of a file already in memory, without copy
+     */
+    WavefrontTokenizer(byte[] buffer, int start, int end) {
+        mInputStream = null;
+        mBuffer = buffer;
+        mNextLine = start;
+        mBufferEnd = end;
+        mEndOfStream = true;
+    }
+
+    int getLineNumber() {
+        return mLineNumber;
+    }
+
+    /**
+     * @return true if a number could not be parsed since the last call to clearError()
+     */
+    boolean hasError() {
+        return mError;
+    }
+
+    void clearError() {
+        mError = false;
+    }
+
+    /**
+     * Moves to the next line. The previous tokens are not valid anymore.
+     * @return false at the end of the stream
+     */
+    boolean nextLine() throws IOException {
+        int newLine = indexOfNewLine(mNextLine);
+        while ((newLine < 0) && !mEndOfStream) {
+            fill();
+            newLine = indexOfNewLine(mNextLine);
+        }
+        if (newLine < 0) {
+            if (mNextLine >= mBufferEnd) {
+                return false;
+            }
+            newLine = mBufferEnd;   // last line without end of line
+        }
+        mPosition = mNextLine;
+        mLineEnd = newLine;
+        if ((mLineEnd > mPosition) && (mBuffer[mLineEnd - 1] == '\r')) {
+            --mLineEnd;
+        }
+        mNextLine = newLine + 1;
+        ++mLineNumber;
+        return true;
+    }
+
+    private int indexOfNewLine(int from) {
+        final byte[] buffer = mBuffer;
+        final int end = mBufferEnd;
+        for (int i = from; i < end; ++i) {
+            if (buffer[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // keeps the current incomplete line at the start of the buffer, and reads after it
+    private void fill() throws IOException {
+        final int remaining = mBufferEnd - mNextLine;
+        if (mNextLine > 0) {
+            System.arraycopy(mBuffer, mNextLine, mBuffer, 0, remaining);
+            mNextLine = 0;
+            mBufferEnd = remaining;
+        }
+        if (mBufferEnd == mBuffer.length) {   // line longer than the buffer
+            byte[] bigger = new byte[mBuffer.length * 2];
+            System.arraycopy(mBuffer, 0, bigger, 0, mBufferEnd);
+            mBuffer = bigger;
+        }
+        final int read = mInputStream.read(mBuffer, mBufferEnd, mBuffer.length - mBufferEnd);
+        if (read < 0) {
+            mEndOfStream = true;
+        } else {
+            mBufferEnd += read;
+        }
+    }
+
+    /**
+     * Moves to the next token of the line, separated by spaces or tabs
+     * @return false at the end of the line
+     */
+    boolean nextToken() {
+        final byte[] buffer = mBuffer;
+        int position = mPosition;
+        while ((position < mLineEnd) && isSpace(buffer[position])) {
+            ++position;
+        }
+        if (position >= mLineEnd) {
+            mPosition = position;
+            return false;
+        }
+        mTokenStart = position;
+        while ((position < mLineEnd) && !isSpace(buffer[position])) {
+            ++position;
+        }
+        mTokenEnd = position;
+        mPosition = position;
+        return true;
+    }
+
+    private static boolean isSpace(byte b) {
+        return (b == ' ') || (b == '\t') || (b == '\f') || (b == 0x0B);
+    }
+
+    boolean tokenEquals(String keyword) {
+        final int length = mTokenEnd - mTokenStart;
+        if (length != keyword.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (mBuffer[mTokenStart + i] != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    String tokenToString() {
+        try {
+            return new String(mBuffer, mTokenStart, mTokenEnd - mTokenStart, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return new String(mBuffer, mTokenStart, mTokenEnd - mTokenStart);
+        }
+    }
+
+    /**
+     * @return the current token as a float, or 0 with hasError() set if it's not a number
+     */
+    float tokenToFloat() {
+        final byte[] buffer = mBuffer;
+        final int end = mTokenEnd;
+        int i = mTokenStart;
+        boolean negative = false;
+        if ((i < end) && ((buffer[i] == '-') || (buffer[i] == '+'))) {
+            negative = (buffer[i] == '-');
+            ++i;
+        }
+        long mantissa = 0;
+        int nbDigits = 0;       // significant digits in the mantissa
+        int exponent = 0;
+        boolean hasDigit = false;
+        boolean exact = true;
+        while ((i < end) && isDigit(buffer[i])) {
+            hasDigit = true;
+            if (nbDigits < MAX_EXACT_DIGITS) {
+                mantissa = mantissa * 10 + (buffer[i] - '0');
+                if (mantissa != 0) {
+                    ++nbDigits;
+                }
+            } else {
+                exact = false;
+            }
+            ++i;
+        }
+        if ((i < end) && (buffer[i] == '.')) {
+            ++i;
+            while ((i < end) && isDigit(buffer[i])) {
+                hasDigit = true;
+                if (nbDigits < MAX_EXACT_DIGITS) {
+                    mantissa = mantissa * 10 + (buffer[i] - '0');
+                    if (mantissa != 0) {
+                        ++nbDigits;
+                    }
+                    --exponent;
+                } else {
+                    exact = false;
+                }
+                ++i;
+            }
+        }
+        if (hasDigit && (i < end) && ((buffer[i] == 'e') || (buffer[i] == 'E'))) {
+            ++i;
+            boolean negativeExponent = false;
+            if ((i < end) && ((buffer[i] == '-') || (buffer[i] == '+'))) {
+                negativeExponent = (buffer[i] == '-');
+                ++i;
+            }
+            int value = 0;
+            boolean hasExponentDigit = false;
+            while ((i < end) && isDigit(buffer[i])) {
+                hasExponentDigit = true;
+                if (value < 10000) {
+                    value = value * 10 + (buffer[i] - '0');
+                }
+                ++i;
+            }
+            if (!hasExponentDigit) {
+                hasDigit = false;
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+
+        if (!hasDigit || (i != end) || !exact || (exponent < -22) || (exponent > 22)) {
+            return slowParseFloat();    // NaN, Infinity, too many digits, big exponents or errors
+        }
+        double value = mantissa;
+        if (exponent < 0) {
+            value /= POWERS_OF_TEN[-exponent];
+        } else if (exponent > 0) {
+            value *= POWERS_OF_TEN[exponent];
+        }
+        final float result = (float) value;
+        return negative ? -result : result;
+    }
+
+    private float slowParseFloat() {
+        try {
+            return Float.parseFloat(tokenToString());
+        } catch (NumberFormatException e) {
+            mError = true;
+            return 0;
+        }
+    }
+
+    /**
+     * Parses a face corner "v", "v/t", "v//n" or "v/t/n" of the current token
+     * @param corner receives the 3 indexes (as written in the file), MISSING if not present
+     * @return false if the vertex index is missing, a part is not a number, or there are more than 3 parts
+     */
+    boolean tokenToCorner(int[] corner) {
+        final byte[] buffer = mBuffer;
+        final int end = mTokenEnd;
+        int i = mTokenStart;
+        for (int part = 0; part < 3; ++part) {
+            corner[part] = MISSING;
+            if (i > end) {
+                continue;
+            }
+            boolean negative = false;
+            if ((i < end) && (buffer[i] == '-')) {
+                negative = true;
+                ++i;
+            }
+            int value = 0;
+            boolean hasDigit = false;
+            while ((i < end) && isDigit(buffer[i])) {
+                hasDigit = true;
+                value = value * 10 + (buffer[i] - '0');
+                ++i;
+            }
+            if ((i < end) && (buffer[i] != '/')) {
+                return false;
+            }
+            if (hasDigit) {
+                corner[part] = negative ? -value : value;
+            }
+            ++i;    // skip the '/'
+        }
+        if (i <= end) {     // a '/' after the third part
+            return false;
+        }
+        return (corner[0] != MISSING);
+    }
+
+    private static boolean isDigit(byte b) {
+        return (b >= '0') && (b <= '9');
+    }
+}
@@ -0,0 +1,219 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Reads the lists of numbers of a Collada file (float_array, p) in a primitive array sized from the count attribute.
+ * The text is scanned once in the characters of the XmlPullParser: no String, no split, no boxing.
+ */
+final class XmlNumberReader {
+
+    private static final int MAX_EXACT_DIGITS = 15;     // mantissa stays exact in a double
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final int[] mHolder = new int[2];   // start and length of the text characters
+    private char[] mText;
+    private int mPosition;
+    private int mEnd;
+    private int mTokenStart;
+
+    /**
+     * Reads the floats of the element the parser is on (START_TAG). The parser is moved to its text.
+     * @param count number of values announced by the element
+     * @return count values, or less if the text is shorter
+     */
+    float[] readFloats(XmlPullParser parser, int count) throws XmlPullParserException, IOException {
+        float[] values = new float[count];
+        int nbValues = 0;
+        if (startText(parser)) {
+            while (nextToken()) {
+                if (nbValues == count) {
+                    throw new RuntimeException("More than " + count + " values in " + parser.getName());
+                }
+                values[nbValues++] = tokenToFloat();
+            }
+        }
+        return (nbValues == count) ? values : Arrays.copyOf(values, nbValues);
+    }
+
+    /**
+     * Reads the ints of the element the parser is on (START_TAG). The parser is moved to its text.
+     * @param count number of values expected
+     * @return count values, or less if the text is shorter
+     */
+    int[] readInts(XmlPullParser parser, int count) throws XmlPullParserException, IOException {
+        int[] values = new int[count];
+        int nbValues = 0;
+        if (startText(parser)) {
+            while (nextToken()) {
+                if (nbValues == count) {
+                    throw new RuntimeException("More than " + count + " values in " + parser.getName());
+                }
+                values[nbValues++] = tokenToInt();
+            }
+        }
+        return (nbValues == count) ? values : Arrays.copyOf(values, nbValues);
+    }
+
+    private boolean startText(XmlPullParser parser) throws XmlPullParserException, IOException {
+        if (parser.next() != XmlPullParser.TEXT) {
+            return false;   // empty element
+        }
+        mText = parser.getTextCharacters(mHolder);
+        mPosition = mHolder[0];
+        mEnd = mHolder[0] + mHolder[1];
+        return (mText != null);
+    }
+
+    private boolean nextToken() {
+        final char[] text = mText;
+        int position = mPosition;
+        while ((position < mEnd) && isSpace(text[position])) {
+            ++position;
+        }
+        if (position >= mEnd) {
+            mPosition = position;
+            return false;
+        }
+        mTokenStart = position;
+        while ((position < mEnd) && !isSpace(text[position])) {
+            ++position;
+        }
+        mPosition = position;
+        return true;
+    }
+
+    private static boolean isSpace(char c) {
+        return (c == ' ') || (c == '\n') || (c == '\r') || (c == '\t');
+    }
+
+    private static boolean isDigit(char c) {
+        return (c >= '0') && (c <= '9');
+    }
+
+    private int tokenToInt() {
+        final char[] text = mText;
+        final int end = mPosition;
+        int i = mTokenStart;
+        boolean negative = false;
+        if (text[i] == '-') {
+            negative = true;
+            ++i;
+        }
+        if (i == end) {
+            throw new NumberFormatException(tokenToString());
+        }
+        int value = 0;
+        for (; i < end; ++i) {
+            if (!isDigit(text[i])) {
+                throw new NumberFormatException(tokenToString());
+            }
+            value = value * 10 + (text[i] - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    // same algorithm as WavefrontTokenizer.tokenToFloat()
+    private float tokenToFloat() {
+        final char[] text = mText;
+        final int end = mPosition;
+        int i = mTokenStart;
+        boolean negative = false;
+        if ((text[i] == '-') || (text[i] == '+')) {
+            negative = (text[i] == '-');
+            ++i;
+        }
+        long mantissa = 0;
+        int nbDigits = 0;       // significant digits in the mantissa
+        int exponent = 0;
+        boolean hasDigit = false;
+        boolean exact = true;
+        while ((i < end) && isDigit(text[i])) {
+            hasDigit = true;
+            if (nbDigits < MAX_EXACT_DIGITS) {
+                mantissa = mantissa * 10 + (text[i] - '0');
+                if (mantissa != 0) {
+                    ++nbDigits;
+                }
+            } else {
+                exact = false;
+            }
+            ++i;
+        }
+        if ((i < end) && (text[i] == '.')) {
+            ++i;
+            while ((i < end) && isDigit(text[i])) {
+                hasDigit = true;
+                if (nbDigits < MAX_EXACT_DIGITS) {
+                    mantissa = mantissa * 10 + (text[i] - '0');
+                    if (mantissa != 0) {
+                        ++nbDigits;
+                    }
+                    --exponent;
+                } else {
+                    exact = false;
+                }
+                ++i;
+            }
+        }
+        if (hasDigit && (i < end) && ((text[i] == 'e') || (text[i] == 'E'))) {
+            ++i;
+            boolean negativeExponent = false;
+            if ((i < end) && ((text[i] == '-') || (text[i] == '+'))) {
+                negativeExponent = (text[i] == '-');
+                ++i;
+            }
+            int value = 0;
+            boolean hasExponentDigit = false;
+            while ((i < end) && isDigit(text[i])) {
+                hasExponentDigit = true;
+                if (value < 10000) {
+                    value = value * 10 + (text[i] - '0');
+                }
+                ++i;
+            }
+            if (!hasExponentDigit) {
+                hasDigit = false;
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+
+        if (!hasDigit || (i != end) || !exact || (exponent < -22) || (exponent > 22)) {
+            return Float.parseFloat(tokenToString());   // NaN, Infinity, too many digits, big exponents or errors
+        }
+        double value = mantissa;
+        if (exponent < 0) {
+            value /= POWERS_OF_TEN[-exponent];
+        } else if (exponent > 0) {
+            value *= POWERS_OF_TEN[exponent];
+        }
+        final float result = (float) value;
+        return negative ? -result : result;
+    }
+
+    private String tokenToString() {
+        return new String(mText, mTokenStart, mPosition - mTokenStart);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.math;
+
+/**
+ * The Java code of android.opengl.Matrix used by the chained transforms, without the offsets. android.opengl.Matrix
+ * only exists on Android: rotateM goes through the shared temporary array under a lock, and multiplyMM (native on
+ * Android) is in Java here. Reference of Matrix4Test and MatrixBenchmark.
+ */
+final class ChainedMatrix {
+
+    private static final float[] sTemp = new float[32];
+
+    private ChainedMatrix() {
+    }
+
+    // the transform of Object3D: translation, rotations around X, Y and Z, then scale
+    static void setObject3D(float[] m, float x, float y, float z, float rotX, float rotY, float rotZ,
+                            float scaleX, float scaleY, float scaleZ) {
+        setIdentityM(m);
+        translateM(m, x, y, z);
+        rotateM(m, rotX, 1, 0, 0);
+        rotateM(m, rotY, 0, 1, 0);
+        rotateM(m, rotZ, 0, 0, 1);
+        scaleM(m, scaleX, scaleY, scaleZ);
+    }
+
+    // the transform of Sprite: translation, rotation around the pivot, then scale
+    static void setSprite(float[] m, float x, float y, float angle, float scaleX, float scaleY, float pivotX, float pivotY) {
+        setIdentityM(m);
+        translateM(m, x, y, 0);
+        rotateM(m, angle, 0, 0, 1);
+        translateM(m, -pivotX, -pivotY, 0);
+        scaleM(m, scaleX, scaleY, 1);
+    }
+
+    static void setIdentityM(float[] m) {
+        for (int i = 0; i < 16; ++i) {
+            m[i] = 0;
+        }
+        for (int i = 0; i < 16; i += 5) {
+            m[i] = 1.0f;
+        }
+    }
+
+    static void translateM(float[] m, float x, float y, float z) {
+        for (int i = 0; i < 4; ++i) {
+            m[12 + i] += m[i] * x + m[4 + i] * y + m[8 + i] * z;
+        }
+    }
+
+    static void scaleM(float[] m, float x, float y, float z) {
+        for (int i = 0; i < 4; ++i) {
+            m[i] *= x;
+            m[4 + i] *= y;
+            m[8 + i] *= z;
+        }
+    }
+
+    static void rotateM(float[] m, float a, float x, float y, float z) {
+        synchronized (sTemp) {
+            setRotateM(sTemp, a, x, y, z);
+            multiplyMM(sTemp, 16, m, sTemp);
+            System.arraycopy(sTemp, 16, m, 0, 16);
+        }
+    }
+
+    private static void setRotateM(float[] rm, float a, float x, float y, float z) {
+        rm[3] = 0;
+        rm[7] = 0;
+        rm[11] = 0;
+        rm[12] = 0;
+        rm[13] = 0;
+        rm[14] = 0;
+        rm[15] = 1;
+        a *= (float) (Math.PI / 180.0f);
+        final float s = (float) Math.sin(a);
+        final float c = (float) Math.cos(a);
+        if ((x == 1.0f) && (y == 0.0f) && (z == 0.0f)) {
+            rm[5] = c;  rm[10] = c;
+            rm[6] = s;  rm[9] = -s;
+            rm[1] = 0;  rm[2] = 0;
+            rm[4] = 0;  rm[8] = 0;
+            rm[0] = 1;
+        } else if ((x == 0.0f) && (y == 1.0f) && (z == 0.0f)) {
+            rm[0] = c;  rm[10] = c;
+            rm[8] = s;  rm[2] = -s;
+            rm[1] = 0;  rm[4] = 0;
+            rm[6] = 0;  rm[9] = 0;
+            rm[5] = 1;
+        } else {    // around Z, the only other axis used
+            rm[0] = c;  rm[5] = c;
+            rm[1] = s;  rm[4] = -s;
+            rm[2] = 0;  rm[6] = 0;
+            rm[8] = 0;  rm[9] = 0;
+            rm[10] = 1;
+        }
+    }
+
+    // result[resultOffset] = lhs * rhs, with rhs at the start of result
+    private static void multiplyMM(float[] result, int resultOffset, float[] lhs, float[] rhs) {
+        for (int col = 0; col < 4; ++col) {
+            for (int row = 0; row < 4; ++row) {
+                float sum = 0;
+                for (int k = 0; k < 4; ++k) {
+                    sum += lhs[k * 4 + row] * rhs[col * 4 + k];
+                }
+                result[resultOffset + col * 4 + row] = sum;
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.math;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Matrix4 gives the same matrices as the chained calls of android.opengl.Matrix, and inverts them.
+ */
+public class Matrix4Test {
+
+    private static final float TOLERANCE = 1e-5f;
+
+    // difference relative to the chained value, absolute below 1
+    private static void assertSameMatrix(String message, float[] expected, float[] actual) {
+        for (int i = 0; i < Matrix4.SIZE; ++i) {
+            final float difference = Math.abs(expected[i] - actual[i]) / Math.max(1, Math.abs(expected[i]));
+            assertTrue(message + " [" + i + "] " + expected[i] + " != " + actual[i], difference < TOLERANCE);
+        }
+    }
+
+    @Test
+    public void setTranslateRotateScale_sameAsChained() {
+        float[] chained = new float[Matrix4.SIZE];
+        float[] matrix4 = new float[Matrix4.SIZE];
+        for (int angle = 0; angle < 360; ++angle) {
+            ChainedMatrix.setObject3D(chained, angle, 2, -3, angle, 30 - angle, 45, 2, 0.5f, 3);
+            Matrix4.setTranslateRotateScale(matrix4, angle, 2, -3, angle, 30 - angle, 45, 2, 0.5f, 3);
+            assertSameMatrix("angle " + angle, chained, matrix4);
+        }
+    }
+
+    @Test
+    public void setTransform2D_sameAsChained() {
+        float[] chained = new float[Matrix4.SIZE];
+        float[] matrix4 = new float[Matrix4.SIZE];
+        for (int angle = 0; angle < 360; ++angle) {
+            ChainedMatrix.setSprite(chained, angle, 20, angle, 2, 3, 16, 8);
+            Matrix4.setTransform2D(matrix4, angle, 20, angle, 2, 3, 16, 8);
+            assertSameMatrix("angle " + angle, chained, matrix4);
+        }
+    }
+
+    @Test
+    public void invert_multipliesToIdentity() {
+        float[] matrix = new float[Matrix4.SIZE];
+        float[] inverse = new float[Matrix4.SIZE];
+        float[] product = new float[Matrix4.SIZE];
+        float[] identity = new float[Matrix4.SIZE];
+        Matrix4.setIdentity(identity);
+        Matrix4.setTranslateRotateScale(matrix, 10, -5, 3, 20, 40, 60, 2, 3, 4);
+        assertTrue(Matrix4.invert(inverse, matrix));
+        Matrix4.multiply(product, matrix, inverse);
+        assertSameMatrix("matrix * inverse", identity, product);
+
+        float[] point = {1, 2, 3, 1};
+        Matrix4.multiplyVector(point, matrix, point);
+        Matrix4.multiplyVector(point, inverse, point);
+        assertEquals(1, point[0], TOLERANCE * 10);
+        assertEquals(2, point[1], TOLERANCE * 10);
+        assertEquals(3, point[2], TOLERANCE * 10);
+    }
+
+    @Test
+    public void invert_singular() {
+        float[] matrix = new float[Matrix4.SIZE];
+        Matrix4.setTranslateRotateScale(matrix, 1, 2, 3, 0, 0, 0, 0, 1, 1);
+        assertFalse(Matrix4.invert(new float[Matrix4.SIZE], matrix));
+    }
+}
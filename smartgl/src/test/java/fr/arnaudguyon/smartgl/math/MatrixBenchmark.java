@@ -0,0 +1,92 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.math;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of Matrix4 against the chained translateM / rotateM / scaleM of android.opengl.Matrix (reproduced in
+ * ChainedMatrix), for the matrices of Object3D (3 rotations and a scale) and of Sprite (a rotation around a pivot and
+ * a scale). The AllCores variants show the contention on the lock of rotateM.
+ * ./gradlew :smartgl:jmh -Pjmh.args="MatrixBenchmark"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatrixBenchmark {
+
+    private final float[] mMatrix = new float[Matrix4.SIZE];
+    private int mAngle;     // changes the matrix at each call
+
+    private int nextAngle() {
+        mAngle = (mAngle + 1) & 0xFF;
+        return mAngle;
+    }
+
+    @Benchmark
+    public float[] object3DChained() {
+        final int angle = nextAngle();
+        ChainedMatrix.setObject3D(mMatrix, angle, 2, 3, angle, 30, 45, 2, 2, 2);
+        return mMatrix;
+    }
+
+    @Benchmark
+    public float[] object3DMatrix4() {
+        final int angle = nextAngle();
+        Matrix4.setTranslateRotateScale(mMatrix, angle, 2, 3, angle, 30, 45, 2, 2, 2);
+        return mMatrix;
+    }
+
+    @Benchmark
+    public float[] spriteChained() {
+        final int angle = nextAngle();
+        ChainedMatrix.setSprite(mMatrix, angle, 20, angle, 2, 2, 16, 16);
+        return mMatrix;
+    }
+
+    @Benchmark
+    public float[] spriteMatrix4() {
+        final int angle = nextAngle();
+        Matrix4.setTransform2D(mMatrix, angle, 20, angle, 2, 2, 16, 16);
+        return mMatrix;
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public float[] object3DChainedAllCores() {
+        return object3DChained();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public float[] object3DMatrix4AllCores() {
+        return object3DMatrix4();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.opengl;
+
+import android.opengl.GLES20;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.Buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The Vertex and Index Buffer Objects are uploaded once, and again only when their content or the OpenGL context changes.
+ */
+public class BufferUploadTest {
+
+    private static final int NB_FRAMES = 5;
+
+    private OpenGLRenderer mRenderer;
+    private RecordingBufferCalls mCalls;
+
+    @Before
+    public void setUp() {
+        mRenderer = new SmartGLRenderer(null);
+        mCalls = new RecordingBufferCalls();
+        mRenderer.setBufferCalls(mCalls);
+    }
+
+    @Test
+    public void cleanLists_uploadOnce() {
+        Sprite sprite = new Sprite(10, 20);
+        Face3D face = sprite.getFace();
+        IndexList indexList = createIndexList();
+        bindFrames(face.getVertexList(), face.getUVList(), indexList);
+
+        assertEquals(3, mCalls.mNbGenerated);
+        assertEquals(3, mCalls.mNbUploads);
+        assertEquals(3, mRenderer.getCurrentRenderStats().getBufferUploads());
+        assertTrue(face.getVertexList().hasBufferObject());
+        assertTrue(indexList.hasBufferObject());
+    }
+
+    @Test
+    public void updateFloatBuffer_uploadsOnceMore() {
+        Sprite sprite = new Sprite(10, 20);
+        VertexList vertexList = sprite.getFace().getVertexList();
+        UVList uvList = sprite.getFace().getUVList();
+        bindFrames(vertexList, uvList, null);
+        assertEquals(2, mCalls.mNbUploads);
+
+        sprite.resize(30, 40);
+        bindFrames(vertexList, uvList, null);
+        assertEquals(3, mCalls.mNbUploads);
+        assertEquals(GLES20.GL_ARRAY_BUFFER, mCalls.mLastTarget);
+
+        sprite.rebindUVs(0, 16, 0, 16, 64, 64);
+        bindFrames(vertexList, uvList, null);
+        assertEquals(4, mCalls.mNbUploads);
+
+        sprite.flipVertexH();
+        bindFrames(vertexList, uvList, null);
+        assertEquals(5, mCalls.mNbUploads);
+
+        assertEquals(2, mCalls.mNbGenerated);   // the buffers are updated, not created again
+    }
+
+    @Test
+    public void updateShortBuffer_uploadsOnceMore() {
+        IndexList indexList = createIndexList();
+        bindFrames(null, null, indexList);
+        assertEquals(1, mCalls.mNbUploads);
+
+        indexList.updateShortBuffer();
+        bindFrames(null, null, indexList);
+        assertEquals(2, mCalls.mNbUploads);
+        assertEquals(GLES20.GL_ELEMENT_ARRAY_BUFFER, mCalls.mLastTarget);
+        assertEquals(1, mCalls.mNbGenerated);
+    }
+
+    @Test
+    public void contextLost_uploadsOnceMore() {
+        Sprite sprite = new Sprite(10, 20);
+        VertexList vertexList = sprite.getFace().getVertexList();
+        IndexList indexList = createIndexList();
+        bindFrames(vertexList, null, indexList);
+        assertEquals(2, mCalls.mNbUploads);
+
+        assertTrue(vertexList.onContextLost());
+        assertTrue(indexList.onContextLost());
+        bindFrames(vertexList, null, indexList);
+        assertEquals(4, mCalls.mNbUploads);
+        assertEquals(4, mCalls.mNbGenerated);
+        assertTrue(vertexList.hasBufferObject());
+        assertTrue(indexList.hasBufferObject());
+    }
+
+    private IndexList createIndexList() {
+        IndexList indexList = new IndexList();
+        indexList.init(6);
+        indexList.add(0, 1, 2);
+        indexList.add(2, 1, 3);
+        indexList.finalizeBuffer();
+        return indexList;
+    }
+
+    private void bindFrames(AttribList attribList1, AttribList attribList2, IndexList indexList) {
+        for (int frame = 0; frame < NB_FRAMES; ++frame) {
+            mRenderer.getStateCache().invalidate();     // as at the start of each frame
+            if (attribList1 != null) {
+                attribList1.bindBufferObject(mRenderer);
+            }
+            if (attribList2 != null) {
+                attribList2.bindBufferObject(mRenderer);
+            }
+            if (indexList != null) {
+                indexList.bindBufferObject(mRenderer);
+            }
+        }
+    }
+
+    // The GL calls are stubbed in unit tests: gives buffer ids and counts the uploads
+    private static class RecordingBufferCalls extends GLBufferCalls {
+
+        private int mNextId = 1;
+        private int mNbGenerated;
+        private int mNbUploads;
+        private int mLastTarget;
+
+        @Override
+        void genBuffers(int[] bufferIds) {
+            for (int i = 0; i < bufferIds.length; ++i) {
+                bufferIds[i] = mNextId++;
+                ++mNbGenerated;
+            }
+        }
+
+        @Override
+        void bufferData(int target, int size, Buffer data, int usage) {
+            ++mNbUploads;
+            mLastTarget = target;
+        }
+    }
+}
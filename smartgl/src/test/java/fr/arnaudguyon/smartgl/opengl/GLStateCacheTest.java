@@ -0,0 +1,177 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.opengl;
+
+import android.opengl.GLES20;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the issued / suppressed state calls counted by the GLStateCache.
+ * GLES20 calls are no-ops in unit tests (returnDefaultValues), only the counters are checked.
+ */
+public class GLStateCacheTest {
+
+    private RenderStats mStats;
+    private GLStateCache mCache;
+
+    @Before
+    public void setUp() {
+        mStats = new RenderStats();
+        mCache = new GLStateCache(mStats);
+    }
+
+    private void assertCalls(int issued, int suppressed) {
+        assertEquals("issued", issued, mStats.getStateCallsIssued());
+        assertEquals("suppressed", suppressed, mStats.getStateCallsSuppressed());
+    }
+
+    @Test
+    public void useProgram_sameProgramIsSuppressed() {
+        mCache.useProgram(3);
+        mCache.useProgram(3);
+        mCache.useProgram(3);
+        assertCalls(1, 2);
+
+        mCache.useProgram(4);
+        assertCalls(2, 2);
+    }
+
+    @Test
+    public void invalidate_forcesNextCall() {
+        mCache.useProgram(3);
+        mCache.setEnabled(GLES20.GL_BLEND, true);
+        mCache.invalidate();
+        mCache.useProgram(3);
+        mCache.setEnabled(GLES20.GL_BLEND, true);
+        assertCalls(4, 0);
+    }
+
+    @Test
+    public void bindTexture_isCachedPerUnit() {
+        mCache.activeTexture(GLES20.GL_TEXTURE0);
+        mCache.bindTexture(10);
+        mCache.activeTexture(GLES20.GL_TEXTURE1);
+        mCache.bindTexture(11);
+        assertCalls(4, 0);
+
+        mCache.activeTexture(GLES20.GL_TEXTURE0);
+        mCache.bindTexture(10);     // still bound on unit 0
+        assertCalls(5, 1);
+        mCache.bindTexture(11);     // bound on unit 1 only
+        assertCalls(6, 1);
+    }
+
+    @Test
+    public void bindTexture_unknownUnitIsAlwaysIssued() {
+        mCache.bindTexture(10);
+        mCache.bindTexture(10);
+        assertCalls(2, 0);
+    }
+
+    @Test
+    public void invalidateTextureBinding_forcesRebind() {
+        mCache.activeTexture(GLES20.GL_TEXTURE0);
+        mCache.bindTexture(10);
+        mCache.invalidateTextureBinding();
+        mCache.bindTexture(10);
+        assertCalls(3, 0);
+    }
+
+    @Test
+    public void bindBuffer_isCachedPerTarget() {
+        mCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, 1);
+        mCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 1);
+        mCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, 1);
+        mCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 1);
+        assertCalls(2, 2);
+
+        mCache.invalidateBufferBinding(GLES20.GL_ARRAY_BUFFER);
+        mCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, 1);
+        mCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 1);
+        assertCalls(3, 3);
+    }
+
+    @Test
+    public void vertexAttribArrays() {
+        mCache.enableVertexAttribArray(0);
+        mCache.enableVertexAttribArray(1);
+        mCache.enableVertexAttribArray(0);
+        assertCalls(2, 1);
+
+        mCache.disableVertexAttribArray(1);
+        mCache.disableVertexAttribArray(1);
+        assertCalls(3, 2);
+
+        // out of range ids are ignored
+        mCache.enableVertexAttribArray(-1);
+        mCache.enableVertexAttribArray(32);
+        assertCalls(3, 2);
+    }
+
+    @Test
+    public void disableVertexAttribArraysExcept_onlyDisablesEnabledArrays() {
+        mCache.enableVertexAttribArray(0);
+        mCache.enableVertexAttribArray(1);
+        mCache.enableVertexAttribArray(2);
+        mCache.disableVertexAttribArraysExcept(GLStateCache.attribMask(1));
+        assertCalls(5, 0);
+
+        mCache.disableVertexAttribArraysExcept(GLStateCache.attribMask(1));
+        assertCalls(5, 0);
+        mCache.enableVertexAttribArray(1);
+        assertCalls(5, 1);
+    }
+
+    @Test
+    public void setEnabled_isCachedPerCapability() {
+        mCache.setEnabled(GLES20.GL_BLEND, true);
+        mCache.setEnabled(GLES20.GL_DEPTH_TEST, true);
+        mCache.setEnabled(GLES20.GL_CULL_FACE, false);
+        assertCalls(3, 0);
+
+        mCache.setEnabled(GLES20.GL_BLEND, true);
+        mCache.setEnabled(GLES20.GL_DEPTH_TEST, true);
+        mCache.setEnabled(GLES20.GL_CULL_FACE, false);
+        assertCalls(3, 3);
+
+        mCache.setEnabled(GLES20.GL_BLEND, false);
+        assertCalls(4, 3);
+    }
+
+    @Test
+    public void cullFaceAndBlendFunc() {
+        mCache.cullFace(GLES20.GL_BACK);
+        mCache.cullFace(GLES20.GL_BACK);
+        mCache.blendFuncSeparate(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA, GLES20.GL_ONE, GLES20.GL_ONE);
+        mCache.blendFuncSeparate(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA, GLES20.GL_ONE, GLES20.GL_ONE);
+        assertCalls(2, 2);
+
+        mCache.blendFuncSeparate(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA, GLES20.GL_ONE, GLES20.GL_ZERO);
+        assertCalls(3, 2);
+    }
+
+    @Test
+    public void reset_clearsCounters() {
+        mCache.useProgram(3);
+        mCache.useProgram(3);
+        mStats.reset();
+        assertCalls(0, 0);
+    }
+}
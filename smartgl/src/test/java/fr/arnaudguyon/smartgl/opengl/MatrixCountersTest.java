@@ -0,0 +1,175 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.opengl;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Matrices computed per frame, read from RenderStats.getMatricesComputed() and getLocalMatricesComputed():
+ * a move only computes the matrices of the moved subtree again, an idle frame computes none. Checked with the
+ * top down update of the renderer, and with an UpdatePool with and without worker threads.
+ */
+public class MatrixCountersTest {
+
+    private static final int NB_CHILDREN = 500;
+
+    private UpdatePool mPool;
+
+    @After
+    public void releasePool() {
+        if (mPool != null) {
+            mPool.release();
+        }
+    }
+
+    // the renderer computes the invalid world matrices when it renders the objects, parents first
+    private static void updateAsRenderer(RenderObject object, RenderStats stats) {
+        if (!object.isMatrixValid()) {
+            object.updateMatrix(stats);
+        }
+        if (object.isContainer()) {
+            for (RenderObject child : ((RenderObjectContainer) object).getRenderObjectArray()) {
+                updateAsRenderer(child, stats);
+            }
+        }
+    }
+
+    // one frame: the matrices computed by the pool if any, else as the renderer does
+    private RenderStats frame(RenderObject root) {
+        RenderStats stats = new RenderStats();
+        if (mPool != null) {
+            mPool.update(null, new RenderObject[] {root}, stats);
+        } else {
+            updateAsRenderer(root, stats);
+        }
+        return stats;
+    }
+
+    private static void assertCounters(RenderStats stats, int matrices, int localMatrices) {
+        assertEquals("world matrices", matrices, stats.getMatricesComputed());
+        assertEquals("local matrices", localMatrices, stats.getLocalMatricesComputed());
+    }
+
+    private static RenderObjectContainer createPanel() {
+        RenderObjectContainer panel = new RenderObjectContainer(true);
+        for (int i = 0; i < NB_CHILDREN; ++i) {
+            Object3D child = new Object3D();
+            child.setPos(i, 0, 0);
+            panel.addChild(child);
+        }
+        return panel;
+    }
+
+    private void checkPanel() {
+        RenderObjectContainer panel = createPanel();
+        assertCounters(frame(panel), NB_CHILDREN + 1, NB_CHILDREN + 1);
+        assertCounters(frame(panel), 0, 0);
+
+        panel.setPos(0, 10, 0);
+        assertCounters(frame(panel), NB_CHILDREN + 1, 1);
+        assertCounters(frame(panel), 0, 0);
+
+        ((Object3D) panel.getChildArray()[42]).setPos(0, 0, 1);
+        assertCounters(frame(panel), 1, 1);
+
+        panel.setScale(2, 2, 2);
+        ((Object3D) panel.getChildArray()[7]).setPos(0, 0, 2);
+        assertCounters(frame(panel), NB_CHILDREN + 1, 2);
+    }
+
+    private void checkNested() {
+        RenderObjectContainer root = new RenderObjectContainer(true);
+        RenderObjectContainer vehicle = new RenderObjectContainer(true);
+        RenderObjectContainer wheels = new RenderObjectContainer(true);
+        Object3D body = new Object3D();
+        root.addChild(vehicle);
+        root.addChild(new Object3D());
+        vehicle.addChild(body);
+        vehicle.addChild(wheels);
+        for (int i = 0; i < 4; ++i) {
+            wheels.addChild(new Object3D());
+        }
+        assertCounters(frame(root), 9, 9);
+
+        wheels.setRotation(0, 0, 90);   // the wheels and their container only
+        assertCounters(frame(root), 5, 1);
+
+        vehicle.setPos(10, 0, 0);
+        body.setPos(1, 0, 0);
+        assertCounters(frame(root), 7, 2);
+        assertEquals(11, body.getMatrix()[12], 0.0001f);
+    }
+
+    private void checkLazyMatrix() {
+        RenderObjectContainer panel = createPanel();
+        frame(panel);
+        Object3D child = (Object3D) panel.getChildArray()[0];
+        child.setPos(5, 0, 0);
+        assertEquals(5, child.getMatrix()[12], 0.0001f);    // computed out of the frame: not counted
+        assertCounters(frame(panel), 0, 0);
+    }
+
+    private void checkRemovedChild() {
+        RenderObjectContainer panel = createPanel();
+        frame(panel);
+        RenderObject child = panel.getChildArray()[3];
+        panel.removeChild(child);
+        assertCounters(frame(panel), 0, 0);
+        panel.setPos(1, 1, 1);
+        assertCounters(frame(panel), NB_CHILDREN, 1);
+        panel.addChild(child);      // its world matrix now depends on the panel
+        assertCounters(frame(panel), 1, 0);
+    }
+
+    private void checkAll() {
+        checkPanel();
+        checkNested();
+        checkLazyMatrix();
+        checkRemovedChild();
+    }
+
+    @Test
+    public void counters_renderer() {
+        checkAll();
+    }
+
+    @Test
+    public void counters_updatePoolOnGLThread() {
+        mPool = new UpdatePool(0);
+        checkAll();
+    }
+
+    @Test
+    public void counters_updatePoolWithWorkers() {
+        mPool = new UpdatePool(2);
+        checkAll();
+    }
+
+    @Test
+    public void counters_updatePoolSkipsHiddenSubtrees() {
+        mPool = new UpdatePool(2);
+        RenderObjectContainer root = new RenderObjectContainer(true);
+        RenderObjectContainer panel = createPanel();
+        root.addChild(panel);
+        panel.setVisible(false);
+        assertCounters(frame(root), 1, 1);
+        panel.setVisible(true);
+        assertCounters(frame(root), NB_CHILDREN + 1, NB_CHILDREN + 1);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.opengl;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * RGB_565 and LUMINANCE_ALPHA conversions of the Texture formats, on ARGB pixels as read from a Bitmap.
+ */
+public class PixelConverterTest {
+
+    @Test
+    public void toRgb565_extremes() {
+        assertEquals(0x0000, PixelConverter.toRgb565(0xFF000000));
+        assertEquals((short) 0xFFFF, PixelConverter.toRgb565(0xFFFFFFFF));
+        assertEquals((short) 0xF800, PixelConverter.toRgb565(0xFFFF0000));
+        assertEquals(0x07E0, PixelConverter.toRgb565(0xFF00FF00));
+        assertEquals(0x001F, PixelConverter.toRgb565(0xFF0000FF));
+    }
+
+    @Test
+    public void toRgb565_alphaIgnored() {
+        assertEquals(PixelConverter.toRgb565(0xFF336699), PixelConverter.toRgb565(0x00336699));
+    }
+
+    @Test
+    public void toRgb565_rounded() {
+        // each channel expanded back to 8 bits is the closest value of its 5 or 6 bits
+        for (int value = 0; value < 256; ++value) {
+            final int rgb565 = PixelConverter.toRgb565(0xFF000000 | (value << 16) | (value << 8) | value) & 0xFFFF;
+            final int red = (rgb565 >> 11) * 255 / 31;
+            final int green = ((rgb565 >> 5) & 0x3F) * 255 / 63;
+            final int blue = (rgb565 & 0x1F) * 255 / 31;
+            assertTrue("red " + value, Math.abs(red - value) <= 255 / 31 / 2 + 1);
+            assertTrue("green " + value, Math.abs(green - value) <= 255 / 63 / 2 + 1);
+            assertTrue("blue " + value, Math.abs(blue - value) <= 255 / 31 / 2 + 1);
+        }
+    }
+
+    @Test
+    public void putRgb565_nativeOrder() {
+        final int[] pixels = {0xFFFF0000, 0xFF0000FF, 0xFFFFFFFF};
+        ByteBuffer buffer = ByteBuffer.allocate(8).order(ByteOrder.nativeOrder());
+        PixelConverter.putRgb565(pixels, 2, buffer);
+        assertEquals(4, buffer.position());
+        assertEquals((short) 0xF800, buffer.getShort(0));
+        assertEquals(0x001F, buffer.getShort(2));
+    }
+
+    @Test
+    public void putLuminanceAlpha_premultiplied() {
+        final int[] pixels = {0xFFFFFFFF, 0x80FFFFFF, 0x00FFFFFF, 0x40808080};
+        ByteBuffer buffer = ByteBuffer.allocate(pixels.length * 2);
+        PixelConverter.putLuminanceAlpha(pixels, pixels.length, buffer);
+        final byte[] expected = {
+                (byte) 0xFF, (byte) 0xFF,
+                (byte) 0x80, (byte) 0x80,
+                0, 0,
+                (byte) 0x20, (byte) 0x40,
+        };
+        for (int i = 0; i < expected.length; ++i) {
+            assertEquals("byte " + i, expected[i], buffer.get(i));
+        }
+    }
+
+    @Test
+    public void isGrey() {
+        assertTrue(PixelConverter.isGrey(new int[] {0xFF000000, 0x80808080, 0x00FFFFFF}, 3));
+        assertFalse(PixelConverter.isGrey(new int[] {0xFF808080, 0xFF808081}, 2));
+        assertFalse(PixelConverter.isGrey(new int[] {0xFF818080}, 1));
+        assertTrue("only the first pixels are read", PixelConverter.isGrey(new int[] {0xFF808080, 0xFF0000FF}, 1));
+    }
+}
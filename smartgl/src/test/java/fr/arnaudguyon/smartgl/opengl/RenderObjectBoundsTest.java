@@ -0,0 +1,85 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.opengl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that RenderObject.getBounds() is only merged again when the matrix or the faces change.
+ */
+public class RenderObjectBoundsTest {
+
+    private static Face3D createFace(float size) {
+        VertexList vertexList = new VertexList();
+        vertexList.init(2);
+        vertexList.add(-size, -size, -size);
+        vertexList.add(size, size, size);
+        vertexList.finalizeBuffer();
+        Face3D face = new Face3D();
+        face.setVertexList(vertexList);
+        return face;
+    }
+
+    @Test
+    public void bounds_followTheMatrix() {
+        Object3D object = new Object3D();
+        object.addFace(createFace(1));
+        BoundingVolume bounds = object.getBounds();
+        assertFalse(bounds.isEmpty());
+        assertEquals(1, bounds.getMaxX(), 0.0001f);
+
+        object.setPos(10, 0, 0);
+        bounds = object.getBounds();
+        assertEquals(9, bounds.getMinX(), 0.0001f);
+        assertEquals(11, bounds.getMaxX(), 0.0001f);
+    }
+
+    @Test
+    public void bounds_cachedWhileUnchanged() {
+        Object3D object = new Object3D();
+        object.addFace(createFace(1));
+        BoundingVolume bounds = object.getBounds();
+        final float radius = bounds.getRadius();
+        bounds.clear();     // a merge would restore the radius
+        assertSame(bounds, object.getBounds());
+        assertEquals(0, object.getBounds().getRadius(), 0);
+        object.setPos(0, 0, 0);
+        assertEquals(radius, object.getBounds().getRadius(), 0.0001f);
+    }
+
+    @Test
+    public void bounds_followTheFaces() {
+        Object3D object = new Object3D();
+        Face3D face = createFace(1);
+        object.addFace(face);
+        assertEquals(1, object.getBounds().getMaxX(), 0.0001f);
+
+        object.addFace(createFace(2));
+        assertEquals(2, object.getBounds().getMaxX(), 0.0001f);
+
+        object.getFaces().remove(1);
+        assertEquals(1, object.getBounds().getMaxX(), 0.0001f);
+
+        float[] vertex = face.getVertexList().getInternalBuffer();
+        vertex[3] = 5;
+        face.invalidateBounds();
+        assertEquals(5, object.getBounds().getMaxX(), 0.0001f);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.opengl;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Producer threads add, remove and move children between 2 containers while a render thread computes the frames.
+ * No change is lost, no child is listed twice, and the world matrices follow the final parents.
+ */
+public class RenderObjectContainerStressTest {
+
+    private static final int NB_PRODUCERS = 4;
+    private static final int OBJECTS_PER_PRODUCER = 50;
+    private static final int CHANGES_PER_PRODUCER = 20000;
+    private static final float LEFT_X = 100;
+    private static final float RIGHT_X = 200;
+
+    private final RenderObjectContainer mRoot = new RenderObjectContainer(true);
+    private final RenderObjectContainer mLeft = new RenderObjectContainer(true);
+    private final RenderObjectContainer mRight = new RenderObjectContainer(true);
+    private final AtomicReference<Throwable> mError = new AtomicReference<>();
+
+    // the renderer computes the invalid world matrices when it renders the objects, parents first
+    private static void updateAsRenderer(RenderObject object) {
+        if (!object.isMatrixValid()) {
+            object.updateMatrix(null);
+        }
+        if (object.isContainer()) {
+            for (RenderObject child : ((RenderObjectContainer) object).getRenderObjectArray()) {
+                updateAsRenderer(child);
+            }
+        }
+    }
+
+    private static void assertNoDuplicate(RenderObjectContainer container) {
+        IdentityHashMap<RenderObject, Boolean> seen = new IdentityHashMap<>();
+        for (RenderObject child : container.getChildArray()) {
+            assertNull("listed twice", seen.put(child, Boolean.TRUE));
+        }
+    }
+
+    // each producer only changes its own objects, so it knows their parents
+    private class Producer extends Thread {
+        final Object3D[] mObjects = new Object3D[OBJECTS_PER_PRODUCER];
+        final RenderObjectContainer[] mParents = new RenderObjectContainer[OBJECTS_PER_PRODUCER];
+        private final Random mRandom;
+        private final CountDownLatch mStart;
+
+        Producer(int seed, CountDownLatch start) {
+            mRandom = new Random(seed);
+            mStart = start;
+            for (int i = 0; i < OBJECTS_PER_PRODUCER; ++i) {
+                mObjects[i] = new Object3D();
+                mObjects[i].setPos(seed * OBJECTS_PER_PRODUCER + i, 0, 0);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                mStart.await();
+                for (int change = 0; change < CHANGES_PER_PRODUCER; ++change) {
+                    final int index = mRandom.nextInt(OBJECTS_PER_PRODUCER);
+                    final RenderObjectContainer parent = mParents[index];
+                    final RenderObjectContainer other = (parent == mLeft) ? mRight : mLeft;
+                    if (parent == null) {
+                        other.addChild(mObjects[index]);
+                        mParents[index] = other;
+                    } else {
+                        parent.removeChild(mObjects[index]);
+                        mParents[index] = null;
+                        if (mRandom.nextBoolean()) {    // moved to the other container
+                            other.addChild(mObjects[index]);
+                            mParents[index] = other;
+                        }
+                    }
+                }
+            } catch (Throwable e) {
+                mError.compareAndSet(null, e);
+            }
+        }
+    }
+
+    @Test
+    public void concurrentChanges_whileRendering() throws InterruptedException {
+        mLeft.setPos(LEFT_X, 0, 0);
+        mRight.setPos(RIGHT_X, 0, 0);
+        mRoot.addChild(mLeft);
+        mRoot.addChild(mRight);
+
+        CountDownLatch start = new CountDownLatch(1);
+        ArrayList<Producer> producers = new ArrayList<>();
+        for (int i = 0; i < NB_PRODUCERS; ++i) {
+            Producer producer = new Producer(i, start);
+            producers.add(producer);
+            producer.start();
+        }
+        UpdatePool pool = new UpdatePool(2);
+        RenderStats stats = new RenderStats();
+        RenderObject[] passObjects = new RenderObject[] {mRoot};
+        int frames = 0;
+        try {
+            start.countDown();
+            boolean running = true;
+            while (running) {
+                if ((frames & 1) == 0) {
+                    updateAsRenderer(mRoot);
+                } else {
+                    pool.update(null, passObjects, stats);
+                }
+                assertNoDuplicate(mLeft);
+                assertNoDuplicate(mRight);
+                ++frames;
+                running = false;
+                for (Producer producer : producers) {
+                    running |= producer.isAlive();
+                }
+            }
+        } finally {
+            pool.release();
+        }
+        for (Producer producer : producers) {
+            producer.join();
+        }
+        if (mError.get() != null) {
+            throw new AssertionError(mError.get());
+        }
+        assertTrue(frames > 1);
+
+        updateAsRenderer(mRoot);
+        int nbLeft = 0;
+        int nbRight = 0;
+        for (Producer producer : producers) {
+            for (int i = 0; i < OBJECTS_PER_PRODUCER; ++i) {
+                Object3D object = producer.mObjects[i];
+                RenderObjectContainer parent = producer.mParents[i];
+                assertSame(parent, object.getParent());
+                float parentX = 0;
+                if (parent == mLeft) {
+                    ++nbLeft;
+                    parentX = LEFT_X;
+                } else if (parent == mRight) {
+                    ++nbRight;
+                    parentX = RIGHT_X;
+                }
+                if (parent != null) {
+                    assertTrue(parent.getChildren().contains(object));
+                    assertTrue("matrix of the final parent", object.isMatrixValid());
+                }
+                assertEquals(parentX + object.getPosX(), object.getMatrix()[12], 0.0001f);
+            }
+        }
+        assertEquals(nbLeft, mLeft.getChildArray().length);
+        assertEquals(nbRight, mRight.getChildArray().length);
+        assertNoDuplicate(mLeft);
+        assertNoDuplicate(mRight);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.opengl;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Vector;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The lists of objects returned by RenderPass and RenderObjectContainer, including the deprecated Vector ones.
+ */
+public class RenderObjectListsTest {
+
+    @Test
+    public void renderPass_snapshotIsUnmodifiable() {
+        RenderPass renderPass = new RenderPass();
+        Sprite sprite = new Sprite(10, 10);
+        renderPass.addRenderObject(sprite);
+        assertTrue(renderPass.getRenderObjectsSnapshot().isEmpty());    // queued until the next render
+        renderPass.applyChanges();
+
+        List<RenderObject> snapshot = renderPass.getRenderObjectsSnapshot();
+        assertEquals(1, snapshot.size());
+        assertSame(sprite, snapshot.get(0));
+        try {
+            snapshot.add(new Sprite(10, 10));
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void renderPass_deprecatedVectorAssertsOnMutation() {
+        RenderPass renderPass = new RenderPass();
+        Sprite sprite = new Sprite(10, 10);
+        renderPass.addRenderObject(sprite);
+        renderPass.applyChanges();
+
+        Vector<RenderObject> objects = renderPass.getRenderObjects();
+        assertEquals(1, objects.size());
+        assertSame(sprite, objects.firstElement());
+        try {
+            objects.add(new Sprite(10, 10));
+            fail();
+        } catch (RuntimeException e) {
+            // expected: the copy doesn't change the pass
+        }
+        try {
+            objects.clear();
+            fail();
+        } catch (RuntimeException e) {
+            // expected
+        }
+        renderPass.applyChanges();
+        assertEquals(1, renderPass.getRenderObjectsSnapshot().size());
+    }
+
+    @Test
+    public void container_rendersChildren() {
+        RenderObjectContainer container = new RenderObjectContainer(false);
+        Sprite sprite = new Sprite(10, 10);
+        container.addChild(sprite);
+        assertArrayEquals(new RenderObject[] { sprite }, container.getRenderObjectArray());
+    }
+
+    @Test
+    public void container_rendersDeprecatedOverride() {
+        final Sprite child = new Sprite(10, 10);
+        final Sprite other = new Sprite(10, 10);
+        RenderObjectContainer container = new RenderObjectContainer(false) {
+            @Override
+            @SuppressWarnings("deprecation")
+            protected Vector<RenderObject> getRenderObjects() {
+                Vector<RenderObject> objects = new Vector<>();
+                objects.add(other);
+                return objects;
+            }
+        };
+        container.addChild(child);
+        assertArrayEquals(new RenderObject[] { other }, container.getRenderObjectArray());
+    }
+}
@@ -0,0 +1,64 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.opengl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Simulation.add() rejects the objects without a transform on the caller's thread.
+ */
+public class SimulationTest {
+
+    private static final Simulation.Listener NO_STEP = new Simulation.Listener() {
+        @Override
+        public void onSimulationStep(Simulation simulation, float stepDuration) {
+        }
+    };
+
+    // a RenderObject without getTransform()
+    private static class FixedObject extends RenderObject {
+        FixedObject() {
+            super(true);
+        }
+
+        @Override
+        protected void computeMatrix(float[] matrix) {
+        }
+    }
+
+    @Test
+    public void add_unsupportedObject_throwsOnCaller() {
+        Simulation simulation = new Simulation(60, NO_STEP);
+        try {
+            simulation.add(new FixedObject());
+            throw new AssertionError("not rejected");
+        } catch (RuntimeException e) {
+            assertEquals("FixedObject can't be simulated", e.getMessage());
+        }
+    }
+
+    @Test
+    public void add_supportedObjects() {
+        Simulation simulation = new Simulation(60, NO_STEP);
+        simulation.add(new Object3D());
+        simulation.add(new Sprite(16, 16));
+        simulation.add(new RenderObjectContainer(false));
+        assertTrue(new AnimatedSprite(16, 16).canBeSimulated());
+    }
+}
@@ -0,0 +1,55 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.opengl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sprite.touchedBy() maps the touch into the space of the container of the sprite.
+ */
+public class SpriteTouchTest {
+
+    @Test
+    public void touchedBy_withoutContainer() {
+        Sprite sprite = new Sprite(10, 20);
+        sprite.setPos(100, 50);
+        assertTrue(sprite.touchedBy(105, 60));
+        assertFalse(sprite.touchedBy(95, 60));
+        assertFalse(sprite.touchedBy(105, 75));
+    }
+
+    @Test
+    public void touchedBy_inMovedContainer() {
+        RenderObjectContainer container = new RenderObjectContainer(false);
+        Sprite sprite = new Sprite(10, 20);
+        sprite.setPos(100, 50);
+        container.addChild(sprite);
+        container.setPos(200, 0, 0);
+        container.setScale(2, 2, 1);
+        // the sprite covers 400..420 x 100..140 on screen
+        assertTrue(sprite.touchedBy(405, 110));
+        assertTrue(sprite.touchedBy(419, 139));
+        assertFalse(sprite.touchedBy(105, 60));
+        assertFalse(sprite.touchedBy(425, 110));
+
+        container.setPos(0, 0, 0);      // the scratch arrays are reused with the new matrix
+        assertTrue(sprite.touchedBy(205, 110));
+        assertFalse(sprite.touchedBy(405, 110));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.opengl;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The UpdatePool skips the matrices of the objects not displayed, and keeps working on the calling thread once released.
+ */
+public class UpdatePoolTest {
+
+    private static final int NB_OBJECTS = 1000;     // enough slices for the workers
+
+    // counts its ticks, displayed or not whatever its visibility
+    private static class CountedObject extends Object3D {
+        final AtomicInteger mTicks = new AtomicInteger();
+        boolean mDisplayed = true;
+
+        @Override
+        public void tick(OpenGLRenderer renderer) {
+            mTicks.incrementAndGet();
+        }
+
+        @Override
+        public boolean isParallelSafe() {
+            return true;
+        }
+
+        @Override
+        public boolean shouldDisplay(OpenGLRenderer renderer) {
+            return mDisplayed && super.shouldDisplay(renderer);
+        }
+    }
+
+    private static CountedObject[] createObjects() {
+        CountedObject[] objects = new CountedObject[NB_OBJECTS];
+        for (int i = 0; i < NB_OBJECTS; ++i) {
+            objects[i] = new CountedObject();
+        }
+        return objects;
+    }
+
+    private static RenderStats update(UpdatePool pool, RenderObject[] objects) {
+        RenderStats stats = new RenderStats();
+        pool.update(null, objects, stats);
+        return stats;
+    }
+
+    @Test
+    public void update_skipsObjectsNotDisplayed() {
+        UpdatePool pool = new UpdatePool(2);
+        try {
+            CountedObject[] objects = createObjects();
+            objects[0].mDisplayed = false;
+            objects[1].setVisible(false);
+            RenderObjectContainer container = new RenderObjectContainer(true);
+            CountedObject child = new CountedObject();
+            container.addChild(child);
+            container.setVisible(false);
+            RenderObject[] pass = new RenderObject[NB_OBJECTS + 1];
+            System.arraycopy(objects, 0, pass, 0, NB_OBJECTS);
+            pass[NB_OBJECTS] = container;
+
+            assertEquals(NB_OBJECTS - 2, update(pool, pass).getMatricesComputed());
+            assertEquals(1, child.mTicks.get());    // ticked, even in a hidden container
+
+            objects[0].mDisplayed = true;
+            assertEquals(1, update(pool, pass).getMatricesComputed());
+        } finally {
+            pool.release();
+        }
+    }
+
+    @Test
+    public void update_afterRelease_runsOnCallingThread() {
+        UpdatePool pool = new UpdatePool(2);
+        CountedObject[] objects = createObjects();
+        assertEquals(NB_OBJECTS, update(pool, objects).getMatricesComputed());
+        pool.release();
+
+        for (CountedObject object : objects) {
+            object.setPos(1, 0, 0);
+        }
+        assertEquals(NB_OBJECTS, update(pool, objects).getMatricesComputed());
+        for (CountedObject object : objects) {
+            assertEquals(2, object.mTicks.get());
+        }
+    }
+}
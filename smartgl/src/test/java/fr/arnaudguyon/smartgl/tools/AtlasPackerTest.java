@@ -0,0 +1,132 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Positions computed by the AtlasPacker: inside the pages, padding included, without overlaps.
+ */
+public class AtlasPackerTest {
+
+    private static final int MAX_SIZE = 256;
+    private static final int PADDING = 2;
+
+    // checks the bounds of each rectangle and its padding, and that no two padded rectangles overlap
+    private static void assertValidPacking(AtlasPacker packer, int padding) {
+        final int nbRectangles = packer.getNbRectangles();
+        for (int i = 0; i < nbRectangles; ++i) {
+            final int page = packer.getPage(i);
+            assertTrue(page >= 0 && page < packer.getNbPages());
+            assertTrue("rectangle " + i + " left", packer.getX(i) - padding >= 0);
+            assertTrue("rectangle " + i + " top", packer.getY(i) - padding >= 0);
+            assertTrue("rectangle " + i + " right", packer.getX(i) + packer.getWidth(i) + padding <= packer.getPageWidth(page));
+            assertTrue("rectangle " + i + " bottom", packer.getY(i) + packer.getHeight(i) + padding <= packer.getPageHeight(page));
+            for (int j = i + 1; j < nbRectangles; ++j) {
+                if (packer.getPage(j) != page) {
+                    continue;
+                }
+                final boolean apart = (packer.getX(i) + packer.getWidth(i) + padding <= packer.getX(j) - padding)
+                        || (packer.getX(j) + packer.getWidth(j) + padding <= packer.getX(i) - padding)
+                        || (packer.getY(i) + packer.getHeight(i) + padding <= packer.getY(j) - padding)
+                        || (packer.getY(j) + packer.getHeight(j) + padding <= packer.getY(i) - padding);
+                assertTrue("rectangles " + i + " and " + j + " overlap", apart);
+            }
+        }
+    }
+
+    private static boolean isPowerOf2(int value) {
+        return (value > 0) && ((value & (value - 1)) == 0);
+    }
+
+    @Test
+    public void pack_randomSizes_noOverlap() {
+        Random random = new Random(42);
+        AtlasPacker packer = new AtlasPacker(MAX_SIZE, MAX_SIZE, PADDING);
+        for (int i = 0; i < 200; ++i) {
+            assertEquals(i, packer.add(1 + random.nextInt(60), 1 + random.nextInt(60)));
+        }
+        packer.pack();
+        assertTrue(packer.getNbPages() > 1);
+        assertValidPacking(packer, PADDING);
+    }
+
+    @Test
+    public void pack_withoutPadding_fillsPage() {
+        AtlasPacker packer = new AtlasPacker(MAX_SIZE, MAX_SIZE, 0);
+        for (int i = 0; i < 16; ++i) {
+            packer.add(64, 64);
+        }
+        packer.pack();
+        assertEquals(1, packer.getNbPages());
+        assertEquals(MAX_SIZE, packer.getPageWidth(0));
+        assertEquals(MAX_SIZE, packer.getPageHeight(0));
+        assertEquals(1f, packer.getEfficiency(), 0);
+        assertValidPacking(packer, 0);
+    }
+
+    @Test
+    public void pack_paddingOpensNewPage() {
+        // 16 tiles of 64 fill a page without padding, but not with it
+        AtlasPacker packer = new AtlasPacker(MAX_SIZE, MAX_SIZE, PADDING);
+        for (int i = 0; i < 16; ++i) {
+            packer.add(64, 64);
+        }
+        packer.pack();
+        assertEquals(2, packer.getNbPages());
+        assertValidPacking(packer, PADDING);
+    }
+
+    @Test
+    public void pack_pagesReducedToPowerOf2() {
+        AtlasPacker packer = new AtlasPacker(MAX_SIZE, MAX_SIZE, PADDING);
+        packer.add(30, 10);
+        packer.add(20, 20);
+        packer.pack();
+        assertEquals(1, packer.getNbPages());
+        assertTrue(isPowerOf2(packer.getPageWidth(0)) && packer.getPageWidth(0) < MAX_SIZE);
+        assertTrue(isPowerOf2(packer.getPageHeight(0)) && packer.getPageHeight(0) < MAX_SIZE);
+        final float efficiency = packer.getEfficiency();
+        assertTrue(efficiency > 0 && efficiency <= 1);
+        assertValidPacking(packer, PADDING);
+    }
+
+    @Test
+    public void pack_empty() {
+        AtlasPacker packer = new AtlasPacker(MAX_SIZE, MAX_SIZE, PADDING);
+        packer.pack();
+        assertEquals(0, packer.getNbPages());
+        assertEquals(0f, packer.getEfficiency(), 0);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void add_tooBigWithPadding_throws() {
+        new AtlasPacker(MAX_SIZE, MAX_SIZE, PADDING).add(MAX_SIZE - 1, 10);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void add_afterPack_throws() {
+        AtlasPacker packer = new AtlasPacker(MAX_SIZE, MAX_SIZE, PADDING);
+        packer.add(10, 10);
+        packer.pack();
+        packer.add(10, 10);
+    }
+}
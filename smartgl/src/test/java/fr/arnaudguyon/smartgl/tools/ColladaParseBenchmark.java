@@ -0,0 +1,145 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the Collada geometry parse, with the kXML XmlPullParser used on Android:
+ * ColladaModel (numbers read in place into primitive arrays) against the previous parse, reproduced in BoxedParser:
+ * every float_array and p list of the file split and boxed in a Vector, then copied in an object per element and per corner. Run with ./gradlew :smartgl:jmh -Pjmh.args="ColladaParseBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColladaParseBenchmark {
+
+    @Param({"space_cruiser_collada", "space_cruiser_collada_textured"})
+    public String mModel;
+
+    private byte[] mBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        File file = TestModels.getRawFile(mModel);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            mBytes = new byte[(int) randomAccessFile.length()];
+            randomAccessFile.readFully(mBytes);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    @Benchmark
+    public ColladaModel fastPath() {
+        return ColladaModel.parse(new ByteArrayInputStream(mBytes), ColladaModel.ParseProfile.GEOMETRY);
+    }
+
+    @Benchmark
+    public BoxedParser boxed() throws IOException, XmlPullParserException {
+        BoxedParser parser = new BoxedParser();
+        parser.parse(mBytes);
+        return parser;
+    }
+
+    static class BoxedParser {
+
+        static class Element {
+            final float mX, mY, mZ;
+
+            Element(float x, float y, float z) {
+                mX = x;
+                mY = y;
+                mZ = z;
+            }
+        }
+
+        static class Corner {
+            final Integer mVertex, mUV, mNormal;
+
+            Corner(Integer vertex, Integer uv, Integer normal) {
+                mVertex = vertex;
+                mUV = uv;
+                mNormal = normal;
+            }
+        }
+
+        final ArrayList<Vector<Float>> mFloatArrays = new ArrayList<>();
+        final ArrayList<Vector<Integer>> mIndexLists = new ArrayList<>();
+        final ArrayList<Element> mElements = new ArrayList<>();
+        final ArrayList<Corner> mCorners = new ArrayList<>();
+
+        void parse(byte[] bytes) throws IOException, XmlPullParserException {
+            XmlPullParser parser = XmlPullParserFactory.newInstance().newPullParser();
+            parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+            parser.setInput(new ByteArrayInputStream(bytes), null);
+            int eventType = parser.getEventType();
+            while (eventType != XmlPullParser.END_DOCUMENT) {
+                if (eventType == XmlPullParser.START_TAG) {
+                    if (parser.getName().equals("float_array")) {
+                        Vector<Float> values = new Vector<>();
+                        for (String value : parser.nextText().trim().split(" ")) {
+                            values.add(Float.parseFloat(value));
+                        }
+                        mFloatArrays.add(values);
+                    } else if (parser.getName().equals("p")) {
+                        Vector<Integer> values = new Vector<>();
+                        for (String value : parser.nextText().trim().split(" ")) {
+                            values.add(Integer.parseInt(value));
+                        }
+                        mIndexLists.add(values);
+                    }
+                }
+                eventType = parser.next();
+            }
+            for (Vector<Float> values : mFloatArrays) {
+                for (int i = 0; i + 2 < values.size(); i += 3) {
+                    mElements.add(new Element(values.get(i), values.get(i + 1), values.get(i + 2)));
+                }
+            }
+            for (Vector<Integer> values : mIndexLists) {
+                for (int i = 0; i + 2 < values.size(); i += 3) {
+                    mCorners.add(new Corner(values.get(i), values.get(i + 1), values.get(i + 2)));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of WavefrontModel.mergeStrips() on generated models of 1 strip per triangle, the materials alternating.
+ * The score must grow about linearly with the number of triangles: ./gradlew :smartgl:jmh -Pjmh.args="MergeStripsBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(1)
+public class MergeStripsBenchmark {
+
+    private static final int NB_MATERIALS = 8;
+
+    @Param({"10000", "30000", "100000"})
+    public int mNbTriangles;
+
+    private byte[] mBytes;
+    private WavefrontModel mModel;
+
+    @Setup(Level.Trial)
+    public void createModel() {
+        StringBuilder builder = new StringBuilder();
+        final int nbVertex = mNbTriangles + 2;  // a triangle strip
+        for (int i = 0; i < nbVertex; ++i) {
+            builder.append("v ").append(i).append(' ').append(i % 2).append(" 0\n");
+        }
+        for (int i = 0; i < mNbTriangles; ++i) {
+            builder.append("usemtl m").append(i % NB_MATERIALS).append('\n');
+            builder.append("f ").append(i + 1).append(' ').append(i + 2).append(' ').append(i + 3).append('\n');
+        }
+        mBytes = builder.toString().getBytes(Charset.forName("UTF-8"));
+    }
+
+    // mergeStrips() modifies the model: a new one for each measure
+    @Setup(Level.Iteration)
+    public void parseModel() {
+        mModel = WavefrontModel.parse(new ByteArrayInputStream(mBytes), false);
+    }
+
+    @Benchmark
+    public WavefrontModel mergeStrips() {
+        mModel.mergeStrips();
+        return mModel;
+    }
+}
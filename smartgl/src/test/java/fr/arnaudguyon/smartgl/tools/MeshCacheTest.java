@@ -0,0 +1,151 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round trip of the sample models through a MeshCache file, and cache misses on corrupted files.
+ */
+public class MeshCacheTest {
+
+    private static final long STAMP = 1234;
+
+    private static final int VERSION_OFFSET = 4;
+    private static final int NB_POSITIONS_OFFSET = 16;
+    private static final int NB_STRIPS_OFFSET = 32;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private void assertRoundTrip(String name, MeshData meshData) throws IOException {
+        File file = mFolder.newFile(name + ".mesh");
+        MeshCache.write(meshData, file, STAMP);
+        MeshData readData = MeshCache.read(file, STAMP);
+        assertNotNull(name, readData);
+        assertTrue(name, MeshCacheConverter.isSame(meshData, readData));
+    }
+
+    @Test
+    public void roundTrip_wavefront() throws IOException {
+        for (String name : TestModels.WAVEFRONT) {
+            assertRoundTrip(name, TestModels.parseWavefront(name, false));
+            assertRoundTrip(name + "_optimized", TestModels.parseWavefront(name, true));
+        }
+    }
+
+    @Test
+    public void roundTrip_collada() throws IOException {
+        for (String name : TestModels.COLLADA) {
+            assertRoundTrip(name, TestModels.parseCollada(name));
+        }
+    }
+
+    private File writeCube() throws IOException {
+        File file = mFolder.newFile("cube.mesh");
+        MeshCache.write(TestModels.parseWavefront("cube_color_obj", false), file, STAMP);
+        return file;
+    }
+
+    private static byte[] readBytes(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) randomAccessFile.length()];
+            randomAccessFile.readFully(bytes);
+            return bytes;
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static MeshData read(byte[] bytes) {
+        return MeshCache.read(ByteBuffer.wrap(bytes), STAMP);
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(offset, value);
+    }
+
+    @Test
+    public void read_outdatedStampIsMiss() throws IOException {
+        File file = writeCube();
+        assertNull(MeshCache.read(file, STAMP + 1));
+        assertNotNull(MeshCache.read(file, MeshCache.ANY_SOURCE));
+    }
+
+    @Test
+    public void read_otherVersionIsMiss() throws IOException {
+        byte[] bytes = readBytes(writeCube());
+        assertNotNull(read(bytes));
+        putInt(bytes, VERSION_OFFSET, 1);
+        assertNull(read(bytes));
+    }
+
+    @Test
+    public void read_truncatedIsMiss() throws IOException {
+        byte[] bytes = readBytes(writeCube());
+        for (int size = 0; size < bytes.length; ++size) {
+            byte[] truncated = new byte[size];
+            System.arraycopy(bytes, 0, truncated, 0, size);
+            assertNull("size " + size, read(truncated));
+        }
+    }
+
+    @Test
+    public void read_invalidCountsAreMiss() throws IOException {
+        final byte[] bytes = readBytes(writeCube());
+        for (int offset = NB_POSITIONS_OFFSET; offset <= NB_STRIPS_OFFSET; offset += 4) {
+            final int original = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getInt(offset);
+            final int[] counts = {-3, original + 1, Integer.MAX_VALUE - 1, bytes.length};
+            for (int count : counts) {
+                byte[] corrupted = bytes.clone();
+                putInt(corrupted, offset, count);
+                assertNull("offset " + offset + " count " + count, read(corrupted));
+            }
+        }
+    }
+
+    @Test
+    public void read_invalidIndexIsMiss() throws IOException {
+        MeshData meshData = TestModels.parseWavefront("cube_color_obj", false);
+        final int nbVertex = meshData.mPositions.length / 3;
+        File file = writeCube();
+        byte[] bytes = readBytes(file);
+        // last index of the last strip: normal index of the last corner
+        final int lastIndexOffset = bytes.length - 4;
+        putInt(bytes, lastIndexOffset, meshData.mNormals.length / 3);
+        assertNull(read(bytes));
+        putInt(bytes, lastIndexOffset, -1);
+        assertNull(read(bytes));
+        putInt(bytes, lastIndexOffset, 0);
+        MeshData readData = read(bytes);
+        assertNotNull(readData);
+        assertEquals(nbVertex, readData.mPositions.length / 3);
+    }
+}
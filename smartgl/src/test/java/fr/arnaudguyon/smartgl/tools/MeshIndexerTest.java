@@ -0,0 +1,155 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+
+import fr.arnaudguyon.smartgl.opengl.Face3D;
+import fr.arnaudguyon.smartgl.opengl.IndexList;
+import fr.arnaudguyon.smartgl.opengl.Object3D;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The indexed faces draw the same triangles as the strips, without the degenerate ones.
+ */
+public class MeshIndexerTest {
+
+    private static final int MAX_VERTICES = IndexList.MAX_VERTEX_INDEX + 1;
+
+    /**
+     * Counters expected from the strips of a MeshData, computed with the keys (vertex, uv, normal) of the elements
+     */
+    private static class ExpectedStats {
+        int mSourceVertices;
+        int mUniqueVertices;
+        int mTriangles;
+        int mDegenerateTriangles;
+
+        ExpectedStats(MeshData meshData) {
+            final boolean hasUV = (meshData.mUVs.length > 0);
+            final boolean hasNormals = (meshData.mNormals.length > 0);
+            LinkedHashMap<String, HashSet<String>> materials = new LinkedHashMap<>();
+            for (MeshData.Strip strip : meshData.mStrips) {
+                HashSet<String> keys = materials.get(strip.mMaterialName);
+                if (keys == null) {
+                    keys = new HashSet<>();
+                    materials.put(strip.mMaterialName, keys);
+                }
+                final int nbElements = strip.getNbElements();
+                mSourceVertices += nbElements;
+                String[] elements = new String[nbElements];
+                for (int i = 0; i < nbElements; ++i) {
+                    final int index = strip.mOffset + i * 3;
+                    elements[i] = strip.mIndexes[index]
+                            + "/" + (hasUV ? strip.mIndexes[index + 1] : 0)
+                            + "/" + (hasNormals ? strip.mIndexes[index + 2] : 0);
+                }
+                for (int t = 0; t + 2 < nbElements; ++t) {
+                    if (elements[t].equals(elements[t + 1]) || elements[t + 1].equals(elements[t + 2])
+                            || elements[t].equals(elements[t + 2])) {
+                        ++mDegenerateTriangles;
+                    } else {
+                        ++mTriangles;
+                        keys.add(elements[t]);
+                        keys.add(elements[t + 1]);
+                        keys.add(elements[t + 2]);
+                    }
+                }
+            }
+            for (HashSet<String> keys : materials.values()) {
+                mUniqueVertices += keys.size();
+            }
+        }
+    }
+
+    @Test
+    public void sampleModels_sameTrianglesAsStrips() throws Exception {
+        for (String name : TestModels.WAVEFRONT) {
+            for (boolean mergeStrips : new boolean[] {false, true}) {
+                checkModel(name, TestModels.parseWavefront(name, mergeStrips));
+            }
+        }
+        for (String name : TestModels.COLLADA) {
+            checkModel(name, TestModels.parseCollada(name));
+        }
+    }
+
+    private static void checkModel(String name, MeshData meshData) {
+        final MeshTriangles stripTriangles = MeshTriangles.fromStrips(TestModels.toStripObject3D(meshData));
+        final ExpectedStats expected = new ExpectedStats(meshData);
+        for (boolean optimizeVertexCache : new boolean[] {false, true}) {
+            final String message = name + " optimizeVertexCache " + optimizeVertexCache;
+            IndexingStats stats = new IndexingStats();
+            Object3D object3D = TestModels.toIndexedObject3D(meshData, optimizeVertexCache, stats);
+            assertEquals(message, stripTriangles, MeshTriangles.fromIndexedFaces(object3D));
+
+            assertEquals(message, expected.mSourceVertices, stats.getSourceVertices());
+            assertEquals(message, expected.mUniqueVertices, stats.getUniqueVertices());
+            assertEquals(message, (float) expected.mSourceVertices / expected.mUniqueVertices, stats.getDedupRatio(), 0);
+            assertEquals(message, expected.mTriangles, stats.getTriangles());
+            assertEquals(message, expected.mDegenerateTriangles, stats.getDegenerateTriangles());
+            assertEquals(message, expected.mTriangles * 3, stats.getIndexes());
+            assertEquals(message, object3D.getFaces().size(), stats.getFaces());
+            assertTrue(message, stats.getUniqueVertices() <= stats.getSourceVertices());
+        }
+    }
+
+    @Test
+    public void bigMaterial_splitInFaces() {
+        // a single strip of unique vertices: each triangle brings a new vertex
+        final int nbElements = MAX_VERTICES + 10000;
+        MeshData meshData = new MeshData();
+        meshData.mPositions = new float[nbElements * 3];
+        int[] indexes = new int[nbElements * 3];
+        for (int i = 0; i < nbElements; ++i) {
+            meshData.mPositions[i * 3] = i;
+            meshData.mPositions[i * 3 + 1] = i & 1;
+            indexes[i * 3] = i;
+        }
+        meshData.mStrips.add(new MeshData.Strip("material", indexes));
+
+        for (boolean optimizeVertexCache : new boolean[] {false, true}) {
+            IndexingStats stats = new IndexingStats();
+            Object3D object3D = TestModels.toIndexedObject3D(meshData, optimizeVertexCache, stats);
+            ArrayList<Face3D> faces = new ArrayList<>(object3D.getFaces());
+            assertEquals(2, faces.size());
+            assertEquals(2, stats.getFaces());
+            int nbVertices = 0;
+            for (Face3D face : faces) {
+                final int faceVertices = face.getVertexList().getNbElements();
+                assertTrue(faceVertices <= MAX_VERTICES);
+                for (int index : MeshTriangles.getIndexes(face.getIndexList())) {
+                    assertTrue(index < faceVertices);
+                }
+                nbVertices += faceVertices;
+            }
+            // the vertices of the triangles on both sides of the split are in both faces
+            assertTrue(nbVertices > nbElements);
+            assertEquals(nbVertices, stats.getUniqueVertices());
+            assertEquals(nbElements - 2, stats.getTriangles());
+            assertEquals(0, stats.getDegenerateTriangles());
+            MeshTriangles triangles = MeshTriangles.fromIndexedFaces(object3D);
+            assertEquals(nbElements - 2, triangles.getNbTriangles());
+            assertEquals(MeshTriangles.fromStrips(TestModels.toStripObject3D(meshData)), triangles);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import java.util.HashMap;
+
+import fr.arnaudguyon.smartgl.opengl.AttribList;
+import fr.arnaudguyon.smartgl.opengl.Face3D;
+import fr.arnaudguyon.smartgl.opengl.IndexList;
+import fr.arnaudguyon.smartgl.opengl.Object3D;
+
+/**
+ * Triangles drawn by an Object3D, as a multiset. Each corner is identified by its vertex attributes (position,
+ * uv or color, normal), so that faces drawn with strips and with indexes can be compared. The corners of a triangle are
+ * rotated to start with the smallest one: the winding is kept. Triangles with 2 identical corners are not drawn.
+ */
+class MeshTriangles {
+
+    private final HashMap<String, Integer> mCounts = new HashMap<>();
+    private int mNbTriangles;
+
+    /**
+     * @param object3D faces without IndexList, drawn with glDrawArrays(GL_TRIANGLE_STRIP) as by the renderer
+     */
+    static MeshTriangles fromStrips(Object3D object3D) {
+        MeshTriangles triangles = new MeshTriangles();
+        for (Face3D face : object3D.getFaces()) {
+            if (face.getIndexList() != null) {
+                throw new IllegalArgumentException("Indexed face");
+            }
+            final String[] corners = getCorners(face);
+            // triangle t is (t, t+1, t+2), or (t+1, t, t+2) for odd t, as in OpenGL
+            for (int t = 0; t + 2 < corners.length; ++t) {
+                if ((t & 1) == 0) {
+                    triangles.add(corners[t], corners[t + 1], corners[t + 2]);
+                } else {
+                    triangles.add(corners[t + 1], corners[t], corners[t + 2]);
+                }
+            }
+        }
+        return triangles;
+    }
+
+    /**
+     * @param object3D faces with a GL_TRIANGLES IndexList
+     */
+    static MeshTriangles fromIndexedFaces(Object3D object3D) {
+        MeshTriangles triangles = new MeshTriangles();
+        for (Face3D face : object3D.getFaces()) {
+            final IndexList indexList = face.getIndexList();
+            if ((indexList == null) || indexList.isTriangleStrip()) {
+                throw new IllegalArgumentException("Face not drawn with GL_TRIANGLES");
+            }
+            final String[] corners = getCorners(face);
+            final int[] indexes = getIndexes(indexList);
+            for (int i = 0; i + 2 < indexes.length; i += 3) {
+                triangles.add(corners[indexes[i]], corners[indexes[i + 1]], corners[indexes[i + 2]]);
+            }
+        }
+        return triangles;
+    }
+
+    /**
+     * @return the unsigned short indexes as int
+     */
+    static int[] getIndexes(IndexList indexList) {
+        final short[] values = indexList.getInternalBuffer();
+        int[] indexes = new int[indexList.getNbIndexes()];
+        for (int i = 0; i < indexes.length; ++i) {
+            indexes[i] = values[i] & 0xFFFF;
+        }
+        return indexes;
+    }
+
+    // attributes of each vertex of the face
+    private static String[] getCorners(Face3D face) {
+        final int nbVertices = face.getVertexList().getNbElements();
+        final AttribList[] lists = {face.getVertexList(), face.getUVList(), face.getColorList(), face.getNormalList()};
+        String[] corners = new String[nbVertices];
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < nbVertices; ++i) {
+            builder.setLength(0);
+            for (AttribList list : lists) {
+                builder.append('|');
+                if (list != null) {
+                    final int floatsPerElement = list.getNbFloatsPerElement();
+                    final float[] values = list.getInternalBuffer();
+                    for (int j = i * floatsPerElement; j < (i + 1) * floatsPerElement; ++j) {
+                        builder.append(Float.floatToIntBits(values[j])).append(',');
+                    }
+                }
+            }
+            corners[i] = builder.toString();
+        }
+        return corners;
+    }
+
+    private void add(String c0, String c1, String c2) {
+        if (c0.equals(c1) || c1.equals(c2) || c0.equals(c2)) {
+            return;
+        }
+        final String key;
+        if ((c0.compareTo(c1) < 0) && (c0.compareTo(c2) < 0)) {
+            key = c0 + '/' + c1 + '/' + c2;
+        } else if (c1.compareTo(c2) < 0) {
+            key = c1 + '/' + c2 + '/' + c0;
+        } else {
+            key = c2 + '/' + c0 + '/' + c1;
+        }
+        final Integer count = mCounts.get(key);
+        mCounts.put(key, (count == null) ? 1 : count + 1);
+        ++mNbTriangles;
+    }
+
+    int getNbTriangles() {
+        return mNbTriangles;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return (other instanceof MeshTriangles) && mCounts.equals(((MeshTriangles) other).mCounts);
+    }
+
+    @Override
+    public int hashCode() {
+        return mCounts.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return mNbTriangles + " triangles, " + mCounts.size() + " distinct";
+    }
+}
@@ -0,0 +1,211 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fr.arnaudguyon.smartgl.opengl.Face3D;
+import fr.arnaudguyon.smartgl.opengl.Object3D;
+import fr.arnaudguyon.smartgl.opengl.OpenGLRenderer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ModelLoaderTest {
+
+    private static final long TIMEOUT_SECONDS = 30;
+
+    /**
+     * Keeps the OpenGL thread tasks, run by the test thread
+     */
+    private static class TestRenderer extends OpenGLRenderer {
+
+        private final ConcurrentLinkedQueue<Runnable> mTasks = new ConcurrentLinkedQueue<>();
+
+        TestRenderer() {
+            super(null);
+        }
+
+        @Override
+        public void runOnGLThread(Runnable task) {
+            mTasks.add(task);
+        }
+
+        void runTasks() {
+            Runnable task = mTasks.poll();
+            while (task != null) {
+                task.run();
+                task = mTasks.poll();
+            }
+        }
+    }
+
+    private static class CountingListener implements ModelLoader.Listener {
+
+        final List<Object3D> mLoaded = new ArrayList<>();
+        final AtomicInteger mCalls = new AtomicInteger();
+
+        @Override
+        public void onModelLoaded(Object3D object3D) {
+            mLoaded.add(object3D);
+            mCalls.incrementAndGet();
+        }
+
+        @Override
+        public void onModelError(Throwable error) {
+            mCalls.incrementAndGet();
+        }
+    }
+
+    private TestRenderer mRenderer;
+    private ModelLoader mLoader;
+
+    @Before
+    public void setUp() {
+        mRenderer = new TestRenderer();
+        mLoader = new ModelLoader(mRenderer, 4);
+    }
+
+    @After
+    public void tearDown() {
+        mLoader.release();
+    }
+
+    private static Callable<Object3D> wavefrontLoading(final String name) {
+        return new Callable<Object3D>() {
+            @Override
+            public Object3D call() throws Exception {
+                return loadWavefront(name);
+            }
+        };
+    }
+
+    private static Object3D loadWavefront(String name) throws Exception {
+        InputStream inputStream = new FileInputStream(TestModels.getRawFile(name));
+        try {
+            return WavefrontModel.parse(inputStream, true).toObject3D();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private static void assertSameObject(String name, Object3D expected, Object3D actual) {
+        assertEquals(name, expected.getFaces().size(), actual.getFaces().size());
+        for (int i = 0; i < expected.getFaces().size(); ++i) {
+            Face3D expectedFace = expected.getFaces().get(i);
+            Face3D actualFace = actual.getFaces().get(i);
+            assertArrayEquals(name, expectedFace.getVertexList().getInternalBuffer(), actualFace.getVertexList().getInternalBuffer(), 0);
+            if (expectedFace.getUVList() != null) {
+                assertArrayEquals(name, expectedFace.getUVList().getInternalBuffer(), actualFace.getUVList().getInternalBuffer(), 0);
+            }
+            if (expectedFace.getNormalList() != null) {
+                assertArrayEquals(name, expectedFace.getNormalList().getInternalBuffer(), actualFace.getNormalList().getInternalBuffer(), 0);
+            }
+        }
+    }
+
+    @Test
+    public void parallelLoad_sameAsSynchronous() throws Exception {
+        final String[] names = TestModels.WAVEFRONT;
+        List<Future<Object3D>> futures = new ArrayList<>();
+        CountingListener listener = new CountingListener();
+        for (String name : names) {
+            futures.add(mLoader.load(wavefrontLoading(name), listener));
+        }
+        for (int i = 0; i < names.length; ++i) {
+            Object3D loaded = futures.get(i).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertSameObject(names[i], loadWavefront(names[i]), loaded);
+        }
+
+        // the Listener is called on the OpenGL thread only
+        assertEquals(0, listener.mCalls.get());
+        mRenderer.runTasks();
+        assertEquals(names.length, listener.mCalls.get());
+        assertEquals(names.length, listener.mLoaded.size());
+    }
+
+    @Test
+    public void release_noListenerCallAfter() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        Callable<Object3D> blocking = new Callable<Object3D>() {
+            @Override
+            public Object3D call() throws Exception {
+                started.countDown();
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw e;
+                }
+                return new Object3D();
+            }
+        };
+        CountingListener listener = new CountingListener();
+
+        // loaded but not delivered yet
+        Future<Object3D> loaded = mLoader.load(wavefrontLoading("cube_color_obj"), listener);
+        loaded.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        // running
+        Future<Object3D> running = mLoader.load(blocking, listener);
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        mLoader.release();
+        assertTrue(interrupted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(running.isCancelled());
+        mRenderer.runTasks();
+        assertEquals(0, listener.mCalls.get());
+    }
+
+    @Test
+    public void release_cancelsQueuedLoadings() throws Exception {
+        ModelLoader loader = new ModelLoader(mRenderer, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch end = new CountDownLatch(1);
+        CountingListener listener = new CountingListener();
+        Future<Object3D> running = loader.load(new Callable<Object3D>() {
+            @Override
+            public Object3D call() throws Exception {
+                started.countDown();
+                end.await();
+                return new Object3D();
+            }
+        }, listener);
+        Future<Object3D> queued = loader.load(wavefrontLoading("cube_color_obj"), listener);
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        loader.release();
+        end.countDown();
+        assertTrue(running.isCancelled());
+        assertTrue(queued.isCancelled());
+        mRenderer.runTasks();
+        assertEquals(0, listener.mCalls.get());
+    }
+}
@@ -0,0 +1,86 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+
+import fr.arnaudguyon.smartgl.opengl.Object3D;
+import fr.arnaudguyon.smartgl.opengl.Texture;
+
+/**
+ * Models of the sample application, used by the unit tests
+ */
+class TestModels {
+
+    static final String[] WAVEFRONT = {"bus_obj", "cube_color_obj", "earth_obj", "space_cruiser_obj", "space_frigate_obj"};
+    static final String[] COLLADA = {"space_cruiser_collada", "space_cruiser_collada_textured"};
+
+    private static final String RAW_DIR = "smartglapp/src/main/res/raw";
+    private static final float[] COLOR = {1, 1, 1};
+
+    /**
+     * @param name the raw resource name, without extension
+     */
+    static File getRawFile(String name) {
+        // unit tests run in the module directory, or in the root project
+        File file = new File("../" + RAW_DIR, name + ".txt");
+        if (!file.isFile()) {
+            file = new File(RAW_DIR, name + ".txt");
+        }
+        if (!file.isFile()) {
+            throw new IllegalStateException("Model not found " + file.getAbsolutePath());
+        }
+        return file;
+    }
+
+    static MeshData parseWavefront(String name, boolean optimize) throws IOException {
+        InputStream inputStream = new FileInputStream(getRawFile(name));
+        try {
+            WavefrontModel model = WavefrontModel.parse(inputStream, optimize);
+            return (model.mMeshData != null) ? model.mMeshData : model.toMeshData();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * @return the model as created with Builder.indexed(true), or optimizeVertexCache(true)
+     */
+    static Object3D toIndexedObject3D(MeshData meshData, boolean optimizeVertexCache, IndexingStats stats) {
+        return MeshIndexer.toObject3D(meshData, new HashMap<String, Texture>(), COLOR, optimizeVertexCache, stats);
+    }
+
+    /**
+     * @return the model as created without indexes, 1 strip per face
+     */
+    static Object3D toStripObject3D(MeshData meshData) {
+        return meshData.toObject3D(new HashMap<String, Texture>(), COLOR);
+    }
+
+    static MeshData parseCollada(String name) throws IOException {
+        InputStream inputStream = new FileInputStream(getRawFile(name));
+        try {
+            ColladaModel model = ColladaModel.parse(inputStream, ColladaModel.ParseProfile.GEOMETRY);
+            return (model.mMeshData != null) ? model.mMeshData : model.toMeshData();
+        } finally {
+            inputStream.close();
+        }
+    }
+}
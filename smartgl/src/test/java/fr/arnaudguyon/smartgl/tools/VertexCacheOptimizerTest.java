@@ -0,0 +1,86 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import org.junit.Test;
+
+import fr.arnaudguyon.smartgl.opengl.Face3D;
+import fr.arnaudguyon.smartgl.opengl.Object3D;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The vertex cache optimization reorders the triangles and vertices without changing what is drawn.
+ */
+public class VertexCacheOptimizerTest {
+
+    private static final String[] MODELS = {"bus_obj", "earth_obj", "space_cruiser_obj", "space_frigate_obj"};
+
+    @Test
+    public void optimizeVertexCache_sameTrianglesLowerAcmr() throws Exception {
+        for (String name : MODELS) {
+            MeshData meshData = TestModels.parseWavefront(name, false);     // strips not merged, as with indexed(true)
+            IndexingStats stats = new IndexingStats();
+            Object3D optimized = TestModels.toIndexedObject3D(meshData, true, stats);
+            Object3D indexed = TestModels.toIndexedObject3D(meshData, false, new IndexingStats());
+
+            assertTrue(name, stats.getAcmrAfter() <= stats.getAcmrBefore());
+            assertEquals(name, MeshTriangles.fromIndexedFaces(indexed), MeshTriangles.fromIndexedFaces(optimized));
+        }
+    }
+
+    @Test
+    public void optimizeVertexFetch_permutation() throws Exception {
+        for (String name : MODELS) {
+            Object3D indexed = TestModels.toIndexedObject3D(TestModels.parseWavefront(name, false), false, new IndexingStats());
+            for (Face3D face : indexed.getFaces()) {
+                final int nbVertices = face.getVertexList().getNbElements();
+                final int[] indexes = MeshTriangles.getIndexes(face.getIndexList());
+                VertexCacheOptimizer.optimizeTriangleOrder(indexes, indexes.length, nbVertices);
+                final int[] previousIndexes = indexes.clone();
+
+                final int[] previousNumbers = VertexCacheOptimizer.optimizeVertexFetch(indexes, indexes.length, nbVertices);
+                assertEquals(name, nbVertices, previousNumbers.length);
+                boolean[] found = new boolean[nbVertices];
+                for (int previous : previousNumbers) {
+                    assertTrue(name, (previous >= 0) && (previous < nbVertices));
+                    assertFalse(name, found[previous]);
+                    found[previous] = true;
+                }
+                // each index still designates the same vertex, and the vertices are in order of first use
+                int nextNew = 0;
+                for (int i = 0; i < indexes.length; ++i) {
+                    assertEquals(name, previousIndexes[i], previousNumbers[indexes[i]]);
+                    assertTrue(name, indexes[i] <= nextNew);
+                    if (indexes[i] == nextNew) {
+                        ++nextNew;
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void optimizeVertexFetch_unusedVerticesAtEnd() {
+        int[] indexes = {5, 2, 7, 7, 2, 0};
+        final int[] previousNumbers = VertexCacheOptimizer.optimizeVertexFetch(indexes, indexes.length, 8);
+        assertArrayEquals(new int[] {0, 1, 2, 2, 1, 3}, indexes);
+        assertArrayEquals(new int[] {5, 2, 7, 0, 1, 3, 4, 6}, previousNumbers);
+    }
+}
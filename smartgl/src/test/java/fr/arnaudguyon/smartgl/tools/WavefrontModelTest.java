@@ -0,0 +1,86 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Parse of generated models, big enough to be split in chunks by the parallel parse on a multi-core machine
+ */
+public class WavefrontModelTest {
+
+    private static final int NB_TRIANGLES = 100000;   // about 3MB
+    private static final int NB_MATERIALS = 3;
+
+    private static byte[] createModel(int errorLine) {
+        StringBuilder builder = new StringBuilder();
+        int line = 1;
+        final int nbVertex = NB_TRIANGLES + 2;
+        for (int i = 0; i < nbVertex; ++i, ++line) {
+            builder.append("v ").append(i).append(' ').append(i % 2).append(" 0.5\n");
+        }
+        builder.append("vn 0 0 1\n");
+        ++line;
+        for (int i = 0; i < NB_TRIANGLES; ++i) {
+            if (i % 1000 == 0) {
+                builder.append("usemtl m").append((i / 1000) % NB_MATERIALS).append('\n');
+                ++line;
+            }
+            if (line == errorLine) {
+                builder.append("f 1/1/1/1 2 3\n");
+            } else {
+                builder.append("f ").append(i + 1).append("//-1 ").append(i + 2).append("//-1 ").append(i + 3).append("//1\n");
+            }
+            ++line;
+        }
+        return builder.toString().getBytes(Charset.forName("UTF-8"));
+    }
+
+    private static MeshData parse(byte[] bytes, boolean parallel) {
+        WavefrontModel model = WavefrontModel.parse(new ByteArrayInputStream(bytes), false, parallel);
+        return model.toMeshData();
+    }
+
+    @Test
+    public void parallelParse_sameAsSequential() {
+        byte[] bytes = createModel(-1);
+        MeshData sequential = parse(bytes, false);
+        MeshData parallel = parse(bytes, true);
+        assertEquals(NB_TRIANGLES, sequential.mStrips.size());
+        assertTrue(MeshCacheConverter.isSame(sequential, parallel));
+    }
+
+    @Test
+    public void parallelParse_errorHasFileLineNumber() {
+        final int errorLine = NB_TRIANGLES + 50000;     // in a chunk after the first one
+        byte[] bytes = createModel(errorLine);
+        for (boolean parallel : new boolean[] {false, true}) {
+            try {
+                parse(bytes, parallel);
+                fail("no parse error");
+            } catch (RuntimeException e) {
+                assertEquals("Face error line " + errorLine, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the Wavefront parse: WavefrontTokenizer against the previous String.split() parse, reproduced in SplitParser.
+ * Run with ./gradlew :smartgl:jmh -Pjmh.args="WavefrontParseBenchmark -prof gc" to see the garbage per parse.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WavefrontParseBenchmark {
+
+    @Param({"space_frigate_obj", "bus_obj"})
+    public String mModel;
+
+    private byte[] mBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        File file = TestModels.getRawFile(mModel);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            mBytes = new byte[(int) randomAccessFile.length()];
+            randomAccessFile.readFully(mBytes);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    @Benchmark
+    public WavefrontModel tokenizer() {
+        return WavefrontModel.parse(new ByteArrayInputStream(mBytes), false);
+    }
+
+    @Benchmark
+    public SplitParser split() throws IOException {
+        SplitParser parser = new SplitParser();
+        parser.parse(mBytes);
+        return parser;
+    }
+
+    /**
+     * The parse before WavefrontTokenizer: a String[] per line and per face corner, a boxed Float per value, an object per element
+     */
+    static class SplitParser {
+
+        static class Element {
+            final float mX, mY, mZ;
+
+            Element(float x, float y, float z) {
+                mX = x;
+                mY = y;
+                mZ = z;
+            }
+        }
+
+        static class Corner {
+            final int mVertex, mUV, mNormal;
+
+            Corner(int vertex, int uv, int normal) {
+                mVertex = vertex;
+                mUV = uv;
+                mNormal = normal;
+            }
+        }
+
+        final ArrayList<Element> mVertex = new ArrayList<>();
+        final ArrayList<Element> mUVs = new ArrayList<>();
+        final ArrayList<Element> mNormals = new ArrayList<>();
+        final ArrayList<ArrayList<Corner>> mStrips = new ArrayList<>();
+
+        void parse(byte[] bytes) throws IOException {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(bytes), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] elements = line.split("\\s+");
+                switch (elements[0]) {
+                    case "v":
+                        mVertex.add(new Element(Float.valueOf(elements[1]), Float.valueOf(elements[2]), Float.valueOf(elements[3])));
+                        break;
+                    case "vt":
+                        mUVs.add(new Element(Float.valueOf(elements[1]), 1 - Float.valueOf(elements[2]), 0));
+                        break;
+                    case "vn":
+                        mNormals.add(new Element(Float.valueOf(elements[1]), Float.valueOf(elements[2]), Float.valueOf(elements[3])));
+                        break;
+                    case "f":
+                        ArrayList<Corner> strip = new ArrayList<>(3);
+                        for (int i = 1; i < elements.length; ++i) {
+                            strip.add(new Corner(intPart(elements[i], 0), intPart(elements[i], 1), intPart(elements[i], 2)));
+                        }
+                        mStrips.add(strip);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        private static Integer intPart(String element, int part) {
+            String[] parts = element.split("/");
+            if (parts.length > part) {
+                try {
+                    return Integer.parseInt(parts[part]);
+                } catch (NumberFormatException exception) {
+                    // missing
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WavefrontTokenizerTest {
+
+    private static final int MISSING = WavefrontTokenizer.MISSING;
+
+    private static WavefrontTokenizer tokenize(String line) throws IOException {
+        WavefrontTokenizer tokenizer = new WavefrontTokenizer(new ByteArrayInputStream(line.getBytes(Charset.forName("UTF-8"))));
+        assertTrue(tokenizer.nextLine());
+        assertTrue(tokenizer.nextToken());
+        return tokenizer;
+    }
+
+    private static void assertCorner(String token, int vertex, int uv, int normal) throws IOException {
+        int[] corner = new int[3];
+        assertTrue(token, tokenize(token).tokenToCorner(corner));
+        assertArrayEquals(token, new int[] {vertex, uv, normal}, corner);
+    }
+
+    private static void assertInvalidCorner(String token) throws IOException {
+        assertFalse(token, tokenize(token).tokenToCorner(new int[3]));
+    }
+
+    @Test
+    public void tokenToCorner_validForms() throws IOException {
+        assertCorner("1", 1, MISSING, MISSING);
+        assertCorner("1/2", 1, 2, MISSING);
+        assertCorner("1//3", 1, MISSING, 3);
+        assertCorner("1/2/3", 1, 2, 3);
+        assertCorner("-1/-2/-3", -1, -2, -3);
+        assertCorner("12345/0/7", 12345, 0, 7);
+    }
+
+    @Test
+    public void tokenToCorner_invalidForms() throws IOException {
+        assertInvalidCorner("/2/3");
+        assertInvalidCorner("a/2/3");
+        assertInvalidCorner("1/b/3");
+        assertInvalidCorner("1/2/3/4");
+        assertInvalidCorner("1/2/3/");
+        assertInvalidCorner("1//3//");
+    }
+
+    @Test
+    public void tokenToFloat() throws IOException {
+        WavefrontTokenizer tokenizer = tokenize("v 1.5 -0.25 3e2 .5");
+        final float[] expected = {1.5f, -0.25f, 300f, 0.5f};
+        for (float value : expected) {
+            assertTrue(tokenizer.nextToken());
+            assertEquals(value, tokenizer.tokenToFloat(), 0);
+        }
+        assertFalse(tokenizer.nextToken());
+        assertFalse(tokenizer.hasError());
+    }
+}
@@ -17,6 +17,7 @@ package fr.arnaudguyon.smartglapp;
 
 import android.content.Context;
 import android.support.annotation.NonNull;
+import android.util.Log;
 
 import fr.arnaudguyon.smartgl.math.Vector3D;
 import fr.arnaudguyon.smartgl.opengl.LightParallel;
@@ -29,6 +30,8 @@ import fr.arnaudguyon.smartgl.opengl.SmartGLView;
 import fr.arnaudguyon.smartgl.opengl.SmartGLViewController;
 import fr.arnaudguyon.smartgl.opengl.Sprite;
 import fr.arnaudguyon.smartgl.opengl.Texture;
+import fr.arnaudguyon.smartgl.opengl.TextureCache;
+import fr.arnaudguyon.smartgl.tools.ModelLoader;
 import fr.arnaudguyon.smartgl.tools.WavefrontModel;
 import fr.arnaudguyon.smartgl.touch.TouchHelperEvent;
 
@@ -38,6 +41,10 @@ import fr.arnaudguyon.smartgl.touch.TouchHelperEvent;
 
 public class GLViewController implements SmartGLViewController {
 
+    private static final String TAG = "GLViewController";
+    private static final long TEXTURE_BUDGET_BYTES = 32 * 1024 * 1024;
+    private static final int TEXTURE_UPLOAD_BYTES_PER_FRAME = 1024 * 1024;
+
     private Sprite mSprite;
     private Object3D mObject3D;
     private float mRandomRotationSpeed;
@@ -48,6 +55,7 @@ public class GLViewController implements SmartGLViewController {
     private Texture mObjectTexture;
     private Texture mSpaceFrigateTexture;
     private Texture mSpaceCruiserTexture;
+    private TextureCache mTextureCache;
 
     private RenderPassObject3D mRenderPassObject3D;
     private RenderPassObject3D mRenderPassObject3DColor;
@@ -62,6 +70,8 @@ public class GLViewController implements SmartGLViewController {
     private Object3D mNextObject = null;
     private Object3D mNextObjectColor = null;
 
+    private ModelLoader mModelLoader;
+
     public GLViewController() {
         mRandomRotationSpeed = (float) ((Math.random() * 50) + 100);
         if (Math.random() > 0.5f) {
@@ -91,10 +101,13 @@ public class GLViewController implements SmartGLViewController {
         LightParallel lightParallel = new LightParallel(lightColor, lightDirection);
         renderer.setLightParallel(lightParallel);
 
-        mSpriteTexture = new Texture(context, R.drawable.planet);
-        mObjectTexture = new Texture(context, R.drawable.coloredbg);
-        mSpaceFrigateTexture = new Texture(context, R.drawable.space_frigate_6_color);
-        mSpaceCruiserTexture = new Texture(context, R.drawable.space_cruiser_4_color);
+        mTextureCache = new TextureCache(context, TEXTURE_BUDGET_BYTES);
+        renderer.setTextureCache(mTextureCache);
+        renderer.setTextureUploadBudget(TEXTURE_UPLOAD_BYTES_PER_FRAME, 2);
+        mSpriteTexture = mTextureCache.acquire(R.drawable.planet);
+        mObjectTexture = mTextureCache.acquire(R.drawable.coloredbg);
+        mSpaceFrigateTexture = mTextureCache.acquire(R.drawable.space_frigate_6_color);
+        mSpaceCruiserTexture = mTextureCache.acquire(R.drawable.space_cruiser_4_color);
 
 
         mSprite = new Sprite(120, 120);
@@ -104,32 +117,29 @@ public class GLViewController implements SmartGLViewController {
         mSprite.setDisplayPriority(20);
         mRenderPassSprite.addSprite(mSprite);
 
-        mBus = loadBus(context);
-        mCube = loadCube(context);
-        mFrigate = loadFrigate(context);
-        mCruiser = loadCruiser(context);
-        mEarth = loadEarth(context);
-
-        switchToFrigate();
+        // models are parsed in the background, the frigate is displayed as soon as it's loaded
+        mModelLoader = new ModelLoader(renderer);
+        loadBus(context);
+        loadCube(context);
+        loadFrigate(context);
+        loadCruiser(context);
+        loadEarth(context);
     }
 
     @Override
     public void onReleaseView(SmartGLView smartGLView) {
-        if (mSpriteTexture != null) {
-            mSpriteTexture.release();
-            mSpriteTexture = null;
-        }
-        if (mObjectTexture != null) {
-            mObjectTexture.release();
-            mObjectTexture = null;
+        if (mModelLoader != null) {
+            mModelLoader.release();
+            mModelLoader = null;
         }
-        if (mSpaceFrigateTexture != null) {
-            mSpaceFrigateTexture.release();
-            mSpaceFrigateTexture = null;
-        }
-        if (mSpaceCruiserTexture != null) {
-            mSpaceCruiserTexture.release();
-            mSpaceCruiserTexture = null;
+        mSpriteTexture = null;
+        mObjectTexture = null;
+        mSpaceFrigateTexture = null;
+        mSpaceCruiserTexture = null;
+        if (mTextureCache != null) {
+            smartGLView.getSmartGLRenderer().setTextureCache(null);
+            mTextureCache.clear();
+            mTextureCache = null;
         }
     }
 
@@ -220,14 +230,24 @@ public class GLViewController implements SmartGLViewController {
         mRenderPassObject3DColor.clearObjects();
     }
 
-    private Object3D loadCruiser(@NonNull Context context) {
-        WavefrontModel model = new WavefrontModel.Builder(context, R.raw.space_cruiser_obj)
-                .addTexture("", mSpaceCruiserTexture)
-                .create();
-        Object3D object3D = model.toObject3D();
-        object3D.setScale(0.2f, 0.2f, 0.2f);
-        object3D.setPos(0, 0, -5);
-        return object3D;
+    private abstract static class ModelListener implements ModelLoader.Listener {
+        @Override
+        public void onModelError(Throwable error) {
+            Log.e(TAG, "Can't load model", error);
+        }
+    }
+
+    private void loadCruiser(@NonNull Context context) {
+        WavefrontModel.Builder builder = new WavefrontModel.Builder(context, R.raw.space_cruiser_obj)
+                .addTexture("", mSpaceCruiserTexture);
+        mModelLoader.load(builder, new ModelListener() {
+            @Override
+            public void onModelLoaded(Object3D object3D) {
+                object3D.setScale(0.2f, 0.2f, 0.2f);
+                object3D.setPos(0, 0, -5);
+                mCruiser = object3D;
+            }
+        });
     }
 
     void switchToCruiser() {
@@ -235,14 +255,20 @@ public class GLViewController implements SmartGLViewController {
         mNextObject = mCruiser;
     }
 
-    private Object3D loadFrigate(@NonNull Context context) {
-        WavefrontModel model = new WavefrontModel.Builder(context, R.raw.space_frigate_obj)
-                .addTexture("", mSpaceFrigateTexture)
-                .create();
-        Object3D object3D = model.toObject3D();
-        object3D.setScale(0.2f, 0.2f, 0.2f);
-        object3D.setPos(0, 0, -7);
-        return object3D;
+    private void loadFrigate(@NonNull Context context) {
+        WavefrontModel.Builder builder = new WavefrontModel.Builder(context, R.raw.space_frigate_obj)
+                .addTexture("", mSpaceFrigateTexture);
+        mModelLoader.load(builder, new ModelListener() {
+            @Override
+            public void onModelLoaded(Object3D object3D) {
+                object3D.setScale(0.2f, 0.2f, 0.2f);
+                object3D.setPos(0, 0, -7);
+                mFrigate = object3D;
+                if (mObject3D == null) {
+                    switchToFrigate();
+                }
+            }
+        });
     }
 
     void switchToFrigate() {
@@ -250,12 +276,15 @@ public class GLViewController implements SmartGLViewController {
         mNextObject = mFrigate;
     }
 
-    private Object3D loadCube(@NonNull Context context) {
-        WavefrontModel modelColored = new WavefrontModel.Builder(context, R.raw.cube_color_obj)
-                .create();
-        Object3D object3D = modelColored.toObject3D();
-        object3D.setPos(0, 0, -4);
-        return object3D;
+    private void loadCube(@NonNull Context context) {
+        WavefrontModel.Builder builder = new WavefrontModel.Builder(context, R.raw.cube_color_obj);
+        mModelLoader.load(builder, new ModelListener() {
+            @Override
+            public void onModelLoaded(Object3D object3D) {
+                object3D.setPos(0, 0, -4);
+                mCube = object3D;
+            }
+        });
     }
 
     void switchToCube() {
@@ -263,32 +292,38 @@ public class GLViewController implements SmartGLViewController {
         mNextObjectColor = mCube;
     }
 
-    private Object3D loadEarth(@NonNull Context context) {
-        WavefrontModel modelColored = new WavefrontModel.Builder(context, R.raw.earth_obj)
-                .setColor(0.2f, 0.6f, 1)
-                .create();
-        Object3D object3D = modelColored.toObject3D();
-        object3D.setPos(0, 0, -4);
-        return object3D;
+    private void loadEarth(@NonNull Context context) {
+        WavefrontModel.Builder builder = new WavefrontModel.Builder(context, R.raw.earth_obj)
+                .setColor(0.2f, 0.6f, 1);
+        mModelLoader.load(builder, new ModelListener() {
+            @Override
+            public void onModelLoaded(Object3D object3D) {
+                object3D.setPos(0, 0, -4);
+                mEarth = object3D;
+            }
+        });
     }
     void switchToEarth() {
         mNextObject = null;
         mNextObjectColor = mEarth;
     }
 
-    private Object3D loadBus(@NonNull Context context) {
-        WavefrontModel model = new WavefrontModel.Builder(context, R.raw.bus_obj)
+    private void loadBus(@NonNull Context context) {
+        WavefrontModel.Builder builder = new WavefrontModel.Builder(context, R.raw.bus_obj)
                 .addTexture("Mat_1", mObjectTexture)
                 .addTexture("Mat_2", mSpriteTexture)
                 .addTexture("Mat_3", mObjectTexture)
                 .addTexture("Mat_4", mSpriteTexture)
                 .addTexture("Mat_5", mObjectTexture)
-                .addTexture("Mat_6", mSpriteTexture)
-                .create();
-        Object3D object3D = model.toObject3D();
-        object3D.setScale(0.1f, 0.1f, 0.1f);
-        object3D.setPos(0, 0, -50);
-        return object3D;
+                .addTexture("Mat_6", mSpriteTexture);
+        mModelLoader.load(builder, new ModelListener() {
+            @Override
+            public void onModelLoaded(Object3D object3D) {
+                object3D.setScale(0.1f, 0.1f, 0.1f);
+                object3D.setPos(0, 0, -50);
+                mBus = object3D;
+            }
+        });
     }
 
     void switchToBus() {
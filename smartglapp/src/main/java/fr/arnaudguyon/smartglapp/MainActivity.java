@@ -38,6 +38,7 @@ public class MainActivity extends Activity {
         mActivityGLView = (SmartGLView) findViewById(R.id.activityGLView);
         mActivityGLView.setDefaultRenderer(this);
         mActivityGLView.setController(new GLViewController());
+        mActivityGLView.setKeepResourcesOnPause(true);  // resume without loading the models and textures again
 
         View screenshotButton = findViewById(R.id.screenshotButton);
         screenshotButton.setOnClickListener(new View.OnClickListener() {
@@ -47,6 +47,7 @@ public class MainGLFragment extends Fragment {
         mFragmentGLView.setDefaultRenderer(context);
         final GLViewController controller = new GLViewController();
         mFragmentGLView.setController(controller);
+        mFragmentGLView.setKeepResourcesOnPause(true);
 
         mFragmentGLView.getSmartGLRenderer().setClearColor(0.01f, 0.01f, 0.1f, 1);
 
@@ -0,0 +1,283 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+/**
+ * ETC1 compression for the desktop tools, written in the PKM format read by android.opengl.ETC1Util.
+ * Each block of 4x4 pixels is tried in its 4 encodings (2x4 or 4x2 halves, individual or differential base colors)
+ * with the 8 modifier tables, and the one with the smallest error is kept. Slow but exhaustive enough for offline use.
+ */
+final class Etc1Encoder {
+
+    static final int PKM_HEADER_SIZE = 16;
+
+    private static final int[][] MODIFIERS = {
+            {2, 8}, {5, 17}, {9, 29}, {13, 42}, {18, 60}, {24, 80}, {33, 106}, {47, 183}
+    };
+
+    private Etc1Encoder() {
+    }
+
+    /**
+     * @param pixels RGB of each pixel, alpha ignored
+     * @return PKM file: header then the blocks, 8 bytes each, lines of blocks from the top
+     */
+    static byte[] encode(int[] pixels, int width, int height) {
+        final int blocksX = (width + 3) / 4;
+        final int blocksY = (height + 3) / 4;
+        byte[] pkm = new byte[PKM_HEADER_SIZE + blocksX * blocksY * 8];
+        pkm[0] = 'P';
+        pkm[1] = 'K';
+        pkm[2] = 'M';
+        pkm[3] = ' ';
+        pkm[4] = '1';
+        pkm[5] = '0';
+        // format 0: ETC1_RGB_NO_MIPMAPS
+        writeShort(pkm, 8, blocksX * 4);
+        writeShort(pkm, 10, blocksY * 4);
+        writeShort(pkm, 12, width);
+        writeShort(pkm, 14, height);
+
+        int[] block = new int[16];      // column major, as the pixel indices of ETC1
+        int offset = PKM_HEADER_SIZE;
+        for (int blockY = 0; blockY < blocksY; ++blockY) {
+            for (int blockX = 0; blockX < blocksX; ++blockX) {
+                for (int x = 0; x < 4; ++x) {
+                    for (int y = 0; y < 4; ++y) {
+                        // pixels outside the picture repeat its border
+                        final int pixelX = Math.min(blockX * 4 + x, width - 1);
+                        final int pixelY = Math.min(blockY * 4 + y, height - 1);
+                        block[x * 4 + y] = pixels[pixelY * width + pixelX];
+                    }
+                }
+                final long encoded = encodeBlock(block);
+                for (int i = 0; i < 8; ++i) {
+                    pkm[offset++] = (byte) (encoded >>> (56 - i * 8));
+                }
+            }
+        }
+        return pkm;
+    }
+
+    /**
+     * @return RGB of the pixels of a PKM file written by encode(), to measure the compression error
+     */
+    static int[] decode(byte[] pkm, int width, int height) {
+        final int blocksX = (width + 3) / 4;
+        final int blocksY = (height + 3) / 4;
+        int[] pixels = new int[width * height];
+        int[] block = new int[16];
+        int offset = PKM_HEADER_SIZE;
+        for (int blockY = 0; blockY < blocksY; ++blockY) {
+            for (int blockX = 0; blockX < blocksX; ++blockX) {
+                long encoded = 0;
+                for (int i = 0; i < 8; ++i) {
+                    encoded = (encoded << 8) | (pkm[offset++] & 0xFF);
+                }
+                decodeBlock(encoded, block);
+                for (int x = 0; x < 4; ++x) {
+                    for (int y = 0; y < 4; ++y) {
+                        final int pixelX = blockX * 4 + x;
+                        final int pixelY = blockY * 4 + y;
+                        if ((pixelX < width) && (pixelY < height)) {
+                            pixels[pixelY * width + pixelX] = block[x * 4 + y];
+                        }
+                    }
+                }
+            }
+        }
+        return pixels;
+    }
+
+    private static void writeShort(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >> 8);
+        data[offset + 1] = (byte) value;
+    }
+
+    // sub block (0 or 1) of each pixel of the block, without and with flip
+    private static boolean isSecondHalf(int pixel, boolean flip) {
+        return flip ? ((pixel & 3) >= 2) : (pixel >= 8);
+    }
+
+    private static long encodeBlock(int[] block) {
+        long bestBlock = 0;
+        long bestError = Long.MAX_VALUE;
+        int[] averages = new int[6];
+        int[] colors = new int[6];
+        int[] indices = new int[16];
+        int[] bestIndices = new int[16];
+        int[] tables = new int[2];
+        for (int flipIndex = 0; flipIndex < 2; ++flipIndex) {
+            final boolean flip = (flipIndex == 1);
+            computeAverages(block, flip, averages);
+            for (int diffIndex = 0; diffIndex < 2; ++diffIndex) {
+                final boolean differential = (diffIndex == 1);
+                if (!quantize(averages, differential, colors)) {
+                    continue;
+                }
+                long error = 0;
+                for (int half = 0; half < 2; ++half) {
+                    long bestHalfError = Long.MAX_VALUE;
+                    for (int table = 0; table < MODIFIERS.length; ++table) {
+                        final long halfError = fitHalf(block, flip, half, colors, differential, table, indices);
+                        if (halfError < bestHalfError) {
+                            bestHalfError = halfError;
+                            tables[half] = table;
+                            for (int pixel = 0; pixel < 16; ++pixel) {
+                                if (isSecondHalf(pixel, flip) == (half == 1)) {
+                                    bestIndices[pixel] = indices[pixel];
+                                }
+                            }
+                        }
+                    }
+                    error += bestHalfError;
+                }
+                if (error < bestError) {
+                    bestError = error;
+                    bestBlock = pack(colors, differential, flip, tables, bestIndices);
+                }
+            }
+        }
+        return bestBlock;
+    }
+
+    private static void computeAverages(int[] block, boolean flip, int[] averages) {
+        int[] sums = new int[6];
+        for (int pixel = 0; pixel < 16; ++pixel) {
+            final int base = isSecondHalf(pixel, flip) ? 3 : 0;
+            final int color = block[pixel];
+            sums[base] += (color >> 16) & 0xFF;
+            sums[base + 1] += (color >> 8) & 0xFF;
+            sums[base + 2] += color & 0xFF;
+        }
+        for (int i = 0; i < 6; ++i) {
+            averages[i] = (sums[i] + 4) / 8;
+        }
+    }
+
+    // base colors of the 2 halves, on 4 bits (individual) or 5 bits (differential, only if the second is close enough)
+    private static boolean quantize(int[] averages, boolean differential, int[] colors) {
+        for (int i = 0; i < 6; ++i) {
+            colors[i] = differential ? (averages[i] * 31 + 127) / 255 : (averages[i] * 15 + 127) / 255;
+        }
+        if (differential) {
+            for (int i = 0; i < 3; ++i) {
+                final int delta = colors[i + 3] - colors[i];
+                if ((delta < -4) || (delta > 3)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int expand(int value, boolean differential) {
+        return differential ? ((value << 3) | (value >> 2)) : ((value << 4) | value);
+    }
+
+    // best modifier of each pixel of the half, for this table. Returns the squared error of the half.
+    private static long fitHalf(int[] block, boolean flip, int half, int[] colors, boolean differential, int table, int[] indices) {
+        final int red = expand(colors[half * 3], differential);
+        final int green = expand(colors[half * 3 + 1], differential);
+        final int blue = expand(colors[half * 3 + 2], differential);
+        long error = 0;
+        for (int pixel = 0; pixel < 16; ++pixel) {
+            if (isSecondHalf(pixel, flip) != (half == 1)) {
+                continue;
+            }
+            final int color = block[pixel];
+            final int pixelRed = (color >> 16) & 0xFF;
+            final int pixelGreen = (color >> 8) & 0xFF;
+            final int pixelBlue = color & 0xFF;
+            int bestIndex = 0;
+            int bestPixelError = Integer.MAX_VALUE;
+            for (int index = 0; index < 4; ++index) {
+                final int modifier = getModifier(table, index);
+                final int dRed = clamp(red + modifier) - pixelRed;
+                final int dGreen = clamp(green + modifier) - pixelGreen;
+                final int dBlue = clamp(blue + modifier) - pixelBlue;
+                final int pixelError = dRed * dRed + dGreen * dGreen + dBlue * dBlue;
+                if (pixelError < bestPixelError) {
+                    bestPixelError = pixelError;
+                    bestIndex = index;
+                }
+            }
+            indices[pixel] = bestIndex;
+            error += bestPixelError;
+        }
+        return error;
+    }
+
+    // index: 0 small positive, 1 big positive, 2 small negative, 3 big negative
+    private static int getModifier(int table, int index) {
+        final int modifier = MODIFIERS[table][index & 1];
+        return (index >= 2) ? -modifier : modifier;
+    }
+
+    private static int clamp(int value) {
+        return (value < 0) ? 0 : ((value > 255) ? 255 : value);
+    }
+
+    private static long pack(int[] colors, boolean differential, boolean flip, int[] tables, int[] indices) {
+        long high;
+        if (differential) {
+            high = ((long) colors[0] << 27) | ((long) ((colors[3] - colors[0]) & 7) << 24)
+                    | ((long) colors[1] << 19) | ((long) ((colors[4] - colors[1]) & 7) << 16)
+                    | ((long) colors[2] << 11) | ((long) ((colors[5] - colors[2]) & 7) << 8);
+        } else {
+            high = ((long) colors[0] << 28) | ((long) colors[3] << 24)
+                    | ((long) colors[1] << 20) | ((long) colors[4] << 16)
+                    | ((long) colors[2] << 12) | ((long) colors[5] << 8);
+        }
+        high |= (tables[0] << 5) | (tables[1] << 2) | (differential ? 2 : 0) | (flip ? 1 : 0);
+        long low = 0;
+        for (int pixel = 0; pixel < 16; ++pixel) {
+            final int index = indices[pixel];
+            low |= (long) (index >> 1) << (16 + pixel);     // most significant bits
+            low |= (long) (index & 1) << pixel;             // least significant bits
+        }
+        return (high << 32) | low;
+    }
+
+    private static void decodeBlock(long encoded, int[] block) {
+        final int high = (int) (encoded >>> 32);
+        final boolean differential = ((high & 2) != 0);
+        final boolean flip = ((high & 1) != 0);
+        int[] colors = new int[6];
+        if (differential) {
+            for (int channel = 0; channel < 3; ++channel) {
+                final int base = (high >>> (27 - channel * 8)) & 0x1F;
+                int delta = (high >>> (24 - channel * 8)) & 7;
+                delta = (delta >= 4) ? delta - 8 : delta;
+                colors[channel] = expand(base, true);
+                colors[channel + 3] = expand(base + delta, true);
+            }
+        } else {
+            for (int channel = 0; channel < 3; ++channel) {
+                colors[channel] = expand((high >>> (28 - channel * 8)) & 0xF, false);
+                colors[channel + 3] = expand((high >>> (24 - channel * 8)) & 0xF, false);
+            }
+        }
+        final int[] tables = {(high >>> 5) & 7, (high >>> 2) & 7};
+        for (int pixel = 0; pixel < 16; ++pixel) {
+            final int half = isSecondHalf(pixel, flip) ? 1 : 0;
+            final int index = (int) (((encoded >>> (16 + pixel)) & 1) << 1 | ((encoded >>> pixel) & 1));
+            final int modifier = getModifier(tables[half], index);
+            block[pixel] = 0xFF000000 | (clamp(colors[half * 3] + modifier) << 16)
+                    | (clamp(colors[half * 3 + 1] + modifier) << 8) | clamp(colors[half * 3 + 2] + modifier);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Minimal PNG decoder for the desktop tools, where android.graphics is not available: 8 bits grey, grey + alpha,
+ * RGB, RGBA and palette pictures (with tRNS transparency), not interlaced.
+ */
+final class PngReader {
+
+    private static final long SIGNATURE = 0x89504E470D0A1A0AL;
+    private static final int GREY = 0;
+    private static final int RGB = 2;
+    private static final int PALETTE = 3;
+    private static final int GREY_ALPHA = 4;
+    private static final int RGBA = 6;
+
+    private int mWidth;
+    private int mHeight;
+    private int[] mPixels;  // ARGB, not premultiplied
+
+    int getWidth() {
+        return mWidth;
+    }
+
+    int getHeight() {
+        return mHeight;
+    }
+
+    int[] getPixels() {
+        return mPixels;
+    }
+
+    void read(InputStream inputStream) throws IOException {
+        DataInputStream input = new DataInputStream(inputStream);
+        if (input.readLong() != SIGNATURE) {
+            throw new IOException("Not a PNG file");
+        }
+        int colorType = -1;
+        int[] palette = new int[256];
+        int transparentColor = -1;   // tRNS of grey and RGB pictures
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        while (true) {
+            final int length = input.readInt();
+            final int type = input.readInt();
+            byte[] data = new byte[length];
+            input.readFully(data);
+            input.readInt();    // crc
+            if (type == 0x49484452) {           // IHDR
+                mWidth = readInt(data, 0);
+                mHeight = readInt(data, 4);
+                final int bitDepth = data[8];
+                colorType = data[9];
+                if ((bitDepth != 8) || (data[12] != 0)) {
+                    throw new IOException("Only 8 bits, not interlaced PNG are supported");
+                }
+            } else if (type == 0x504C5445) {    // PLTE
+                for (int i = 0; i < length / 3; ++i) {
+                    palette[i] = 0xFF000000 | ((data[i * 3] & 0xFF) << 16) | ((data[i * 3 + 1] & 0xFF) << 8) | (data[i * 3 + 2] & 0xFF);
+                }
+            } else if (type == 0x74524E53) {    // tRNS
+                if (colorType == PALETTE) {
+                    for (int i = 0; i < length; ++i) {
+                        palette[i] = (palette[i] & 0xFFFFFF) | ((data[i] & 0xFF) << 24);
+                    }
+                } else if (colorType == GREY) {
+                    final int grey = data[1] & 0xFF;
+                    transparentColor = (grey << 16) | (grey << 8) | grey;
+                } else if (colorType == RGB) {
+                    transparentColor = ((data[1] & 0xFF) << 16) | ((data[3] & 0xFF) << 8) | (data[5] & 0xFF);
+                }
+            } else if (type == 0x49444154) {    // IDAT
+                compressed.write(data);
+            } else if (type == 0x49454E44) {    // IEND
+                break;
+            }
+        }
+
+        final int bytesPerPixel;
+        switch (colorType) {
+            case GREY:
+            case PALETTE:
+                bytesPerPixel = 1;
+                break;
+            case GREY_ALPHA:
+                bytesPerPixel = 2;
+                break;
+            case RGB:
+                bytesPerPixel = 3;
+                break;
+            case RGBA:
+                bytesPerPixel = 4;
+                break;
+            default:
+                throw new IOException("Unknown PNG color type " + colorType);
+        }
+        final int rowBytes = mWidth * bytesPerPixel;
+        byte[] raw = inflate(compressed.toByteArray(), (rowBytes + 1) * mHeight);
+        unfilter(raw, rowBytes, bytesPerPixel);
+
+        mPixels = new int[mWidth * mHeight];
+        for (int y = 0; y < mHeight; ++y) {
+            int src = y * (rowBytes + 1) + 1;
+            for (int x = 0; x < mWidth; ++x) {
+                int color;
+                switch (colorType) {
+                    case GREY:
+                        final int grey = raw[src] & 0xFF;
+                        color = (grey << 16) | (grey << 8) | grey;
+                        color |= (color == transparentColor) ? 0 : 0xFF000000;
+                        break;
+                    case PALETTE:
+                        color = palette[raw[src] & 0xFF];
+                        break;
+                    case GREY_ALPHA:
+                        final int level = raw[src] & 0xFF;
+                        color = ((raw[src + 1] & 0xFF) << 24) | (level << 16) | (level << 8) | level;
+                        break;
+                    case RGB:
+                        color = ((raw[src] & 0xFF) << 16) | ((raw[src + 1] & 0xFF) << 8) | (raw[src + 2] & 0xFF);
+                        color |= (color == transparentColor) ? 0 : 0xFF000000;
+                        break;
+                    default:
+                        color = ((raw[src + 3] & 0xFF) << 24) | ((raw[src] & 0xFF) << 16) | ((raw[src + 1] & 0xFF) << 8) | (raw[src + 2] & 0xFF);
+                        break;
+                }
+                mPixels[y * mWidth + x] = color;
+                src += bytesPerPixel;
+            }
+        }
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    private static byte[] inflate(byte[] compressed, int size) throws IOException {
+        Inflater inflater = new Inflater();
+        inflater.setInput(compressed);
+        byte[] raw = new byte[size];
+        try {
+            int length = 0;
+            while ((length < size) && !inflater.finished()) {
+                final int read = inflater.inflate(raw, length, size - length);
+                if ((read == 0) && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += read;
+            }
+            if (length != size) {
+                throw new IOException("Truncated PNG data");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted PNG data: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return raw;
+    }
+
+    // each row starts with its filter type
+    private static void unfilter(byte[] raw, int rowBytes, int bytesPerPixel) throws IOException {
+        final int stride = rowBytes + 1;
+        final int nbRows = raw.length / stride;
+        for (int y = 0; y < nbRows; ++y) {
+            final int row = y * stride + 1;
+            final int previous = row - stride;  // previous row, invalid for y == 0
+            final int filter = raw[row - 1];
+            for (int i = 0; i < rowBytes; ++i) {
+                final int left = (i >= bytesPerPixel) ? raw[row + i - bytesPerPixel] & 0xFF : 0;
+                final int up = (y > 0) ? raw[previous + i] & 0xFF : 0;
+                final int upLeft = ((y > 0) && (i >= bytesPerPixel)) ? raw[previous + i - bytesPerPixel] & 0xFF : 0;
+                int predictor;
+                switch (filter) {
+                    case 0:
+                        predictor = 0;
+                        break;
+                    case 1:
+                        predictor = left;
+                        break;
+                    case 2:
+                        predictor = up;
+                        break;
+                    case 3:
+                        predictor = (left + up) >> 1;
+                        break;
+                    case 4:
+                        predictor = paeth(left, up, upLeft);
+                        break;
+                    default:
+                        throw new IOException("Unknown PNG filter " + filter);
+                }
+                raw[row + i] = (byte) (raw[row + i] + predictor);
+            }
+        }
+    }
+
+    private static int paeth(int left, int up, int upLeft) {
+        final int estimate = left + up - upLeft;
+        final int toLeft = Math.abs(estimate - left);
+        final int toUp = Math.abs(estimate - up);
+        final int toUpLeft = Math.abs(estimate - upLeft);
+        if ((toLeft <= toUp) && (toLeft <= toUpLeft)) {
+            return left;
+        }
+        return (toUp <= toUpLeft) ? up : upLeft;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * Desktop (JVM) tool compressing a PNG picture to ETC1, to ship in res/raw and load with Texture.createEtc1().
+ * ETC1 has no alpha: the colors are premultiplied by the alpha (as the Bitmaps binded by GLUtils), and the alpha of
+ * translucent pictures is written in a second, grey, ETC1 file. Both are drawn with a ShaderTextureEtc1Alpha.
+ * Usage: java -jar smartgltools/build/libs/smartgltools.jar picture.png res/raw/picture (built by ./gradlew :smartgltools:jar)
+ * writes picture.pkm, and picture_alpha.pkm if the picture is translucent.
+ * Also prints the GPU memory of the picture as RGBA 8888, with the format chosen by Texture.Format.AUTO, and as ETC1,
+ * and the compression error (PSNR).
+ */
+public class TextureConverter {
+
+    private static final String COLOR_EXTENSION = ".pkm";
+    private static final String ALPHA_EXTENSION = "_alpha.pkm";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: TextureConverter picture.png output_prefix");
+            System.exit(1);
+            return;
+        }
+        File input = new File(args[0]);
+        PngReader png = new PngReader();
+        InputStream inputStream = new FileInputStream(input);
+        try {
+            png.read(inputStream);
+        } finally {
+            inputStream.close();
+        }
+        final int width = png.getWidth();
+        final int height = png.getHeight();
+        final int[] pixels = png.getPixels();
+
+        boolean opaque = true;
+        boolean grey = true;
+        final int nbPixels = width * height;
+        int[] colors = new int[nbPixels];
+        int[] alphas = new int[nbPixels];
+        for (int i = 0; i < nbPixels; ++i) {
+            final int pixel = pixels[i];
+            final int alpha = pixel >>> 24;
+            final int red = (pixel >> 16) & 0xFF;
+            final int green = (pixel >> 8) & 0xFF;
+            final int blue = pixel & 0xFF;
+            opaque &= (alpha == 0xFF);
+            grey &= (red == green) && (green == blue);
+            colors[i] = (premultiply(red, alpha) << 16) | (premultiply(green, alpha) << 8) | premultiply(blue, alpha);
+            alphas[i] = (alpha << 16) | (alpha << 8) | alpha;
+        }
+
+        long startTime = System.nanoTime();
+        byte[] colorPkm = Etc1Encoder.encode(colors, width, height);
+        File colorFile = new File(args[1] + COLOR_EXTENSION);
+        write(colorPkm, colorFile);
+        double psnr = computePsnr(colors, Etc1Encoder.decode(colorPkm, width, height));
+        long etc1Bytes = colorPkm.length - Etc1Encoder.PKM_HEADER_SIZE;
+        String alphaReport = "";
+        if (!opaque) {
+            byte[] alphaPkm = Etc1Encoder.encode(alphas, width, height);
+            File alphaFile = new File(args[1] + ALPHA_EXTENSION);
+            write(alphaPkm, alphaFile);
+            etc1Bytes += alphaPkm.length - Etc1Encoder.PKM_HEADER_SIZE;
+            alphaReport = " + " + alphaFile.getName() + " (alpha PSNR "
+                    + String.format(Locale.US, "%.1f", computePsnr(alphas, Etc1Encoder.decode(alphaPkm, width, height))) + "dB)";
+        }
+        long encodeTime = System.nanoTime() - startTime;
+
+        final long rgbaBytes = (long) nbPixels * 4;
+        final long autoBytes = (opaque || grey) ? (long) nbPixels * 2 : rgbaBytes;
+        final String autoFormat = opaque ? "RGB_565" : (grey ? "LUMINANCE_ALPHA" : "BITMAP");
+        System.out.println(input.getName() + " -> " + colorFile.getName() + alphaReport + ": " + width + "x" + height
+                + (opaque ? " opaque" : " translucent") + (grey ? " grey" : "") + ", PSNR "
+                + String.format(Locale.US, "%.1f", psnr) + "dB, encode " + (encodeTime / 1000000) + "ms");
+        System.out.println("GPU memory: RGBA " + rgbaBytes + " bytes, AUTO (" + autoFormat + ") " + autoBytes + " bytes, ETC1 "
+                + etc1Bytes + " bytes (" + String.format(Locale.US, "%.1f", (float) rgbaBytes / etc1Bytes) + "x smaller)");
+    }
+
+    private static int premultiply(int value, int alpha) {
+        return (value * alpha + 127) / 255;
+    }
+
+    private static void write(byte[] data, File file) throws IOException {
+        OutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(data);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    // peak signal to noise ratio of the RGB channels, in dB
+    private static double computePsnr(int[] expected, int[] actual) {
+        double squaredError = 0;
+        for (int i = 0; i < expected.length; ++i) {
+            for (int shift = 0; shift <= 16; shift += 8) {
+                final int delta = ((expected[i] >> shift) & 0xFF) - ((actual[i] >> shift) & 0xFF);
+                squaredError += delta * delta;
+            }
+        }
+        final double meanError = squaredError / (expected.length * 3);
+        return (meanError == 0) ? Double.POSITIVE_INFINITY : 10 * Math.log10(255 * 255 / meanError);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+    Copyright 2019 Mj Mendoza IV
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+ */
+package fr.arnaudguyon.smartgl.tools;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PKM header, decoding of a block written by hand from the ETC1 specification, and compression error of the encoder.
+ */
+public class Etc1EncoderTest {
+
+    private static int[] createGradient(int width, int height) {
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                final int red = x * 255 / Math.max(width - 1, 1);
+                final int green = y * 255 / Math.max(height - 1, 1);
+                pixels[y * width + x] = 0xFF000000 | (red << 16) | (green << 8) | 0x40;
+            }
+        }
+        return pixels;
+    }
+
+    private static int getMaxError(int[] expected, int[] actual) {
+        int maxError = 0;
+        for (int i = 0; i < expected.length; ++i) {
+            for (int shift = 0; shift <= 16; shift += 8) {
+                maxError = Math.max(maxError, Math.abs(((expected[i] >> shift) & 0xFF) - ((actual[i] >> shift) & 0xFF)));
+            }
+        }
+        return maxError;
+    }
+
+    private static int readShort(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    @Test
+    public void encode_header() {
+        byte[] pkm = Etc1Encoder.encode(new int[10 * 7], 10, 7);
+        assertEquals("PKM 10", new String(pkm, 0, 6));
+        assertEquals(0, readShort(pkm, 6));     // ETC1_RGB_NO_MIPMAPS
+        assertEquals(12, readShort(pkm, 8));    // size rounded to the blocks
+        assertEquals(8, readShort(pkm, 10));
+        assertEquals(10, readShort(pkm, 12));
+        assertEquals(7, readShort(pkm, 14));
+        assertEquals(Etc1Encoder.PKM_HEADER_SIZE + 3 * 2 * 8, pkm.length);
+    }
+
+    @Test
+    public void decode_blockFromSpecification() {
+        // individual mode, both base colors 0x8 (expanded to 0x88), tables 0, all pixel indices 0: modifier +2
+        byte[] pkm = new byte[Etc1Encoder.PKM_HEADER_SIZE + 8];
+        pkm[Etc1Encoder.PKM_HEADER_SIZE] = (byte) 0x88;
+        pkm[Etc1Encoder.PKM_HEADER_SIZE + 1] = (byte) 0x88;
+        pkm[Etc1Encoder.PKM_HEADER_SIZE + 2] = (byte) 0x88;
+        int[] pixels = Etc1Encoder.decode(pkm, 4, 4);
+        for (int pixel : pixels) {
+            assertEquals(0xFF8A8A8A, pixel);
+        }
+    }
+
+    @Test
+    public void encode_solidColors() {
+        final int[] colors = {0x000000, 0xFFFFFF, 0x808080, 0xFF0000, 0x123456, 0xC0FFEE};
+        for (int color : colors) {
+            int[] pixels = new int[8 * 8];
+            Arrays.fill(pixels, 0xFF000000 | color);
+            int[] decoded = Etc1Encoder.decode(Etc1Encoder.encode(pixels, 8, 8), 8, 8);
+            assertTrue(Integer.toHexString(color), getMaxError(pixels, decoded) <= 4);
+        }
+    }
+
+    @Test
+    public void encode_gradient_oddSize() {
+        final int width = 37;
+        final int height = 21;
+        int[] pixels = createGradient(width, height);
+        int[] decoded = Etc1Encoder.decode(Etc1Encoder.encode(pixels, width, height), width, height);
+        assertEquals(pixels.length, decoded.length);
+        assertTrue(getMaxError(pixels, decoded) <= 16);
+    }
+
+    @Test
+    public void encode_noise_boundedError() {
+        Random random = new Random(7);
+        final int width = 16;
+        final int height = 16;
+        int[] pixels = new int[width * height];
+        double squaredError = 0;
+        for (int i = 0; i < pixels.length; ++i) {
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        int[] decoded = Etc1Encoder.decode(Etc1Encoder.encode(pixels, width, height), width, height);
+        for (int i = 0; i < pixels.length; ++i) {
+            for (int shift = 0; shift <= 16; shift += 8) {
+                final int delta = ((pixels[i] >> shift) & 0xFF) - ((decoded[i] >> shift) & 0xFF);
+                squaredError += delta * delta;
+            }
+        }
+        // random colors are the worst case of ETC1, but each block still gets its best average color
+        final double rootMeanError = Math.sqrt(squaredError / (pixels.length * 3));
+        assertTrue("error " + rootMeanError, rootMeanError < 64);
+    }
+}